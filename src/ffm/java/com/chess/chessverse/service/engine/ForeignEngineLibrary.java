@@ -0,0 +1,228 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.config.EngineProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.lang.foreign.MemoryLayout.PathElement.groupElement;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * {@link NativeEngineLibrary} con java.lang.foreign: carica libchessverse_engine (stockfish-simple/native) e chiama
+ * le funzioni di chessverse_engine.h. Compilata solo dal profilo Maven native-engine (JDK 22+); l'applicazione va
+ * avviata con --enable-native-access=ALL-UNNAMED.
+ * <p>
+ * Ogni motore ha una sua arena con la struttura del risultato e il buffer della FEN già allocati: una ricerca su una
+ * posizione isolata non alloca memoria nativa e legge punteggio, profondità e variante direttamente dalla struttura.
+ */
+@Component
+public class ForeignEngineLibrary implements NativeEngineLibrary {
+
+    private static final int MAX_PV = 64;
+    private static final int SCORE_MATE = 2;
+
+    // Spazio per la FEN riservato a ogni motore (una FEN valida non supera i 100 byte)
+    private static final int TEXT_BUFFER = 256;
+
+    // struct cv_search_result di chessverse_engine.h
+    private static final MemoryLayout RESULT = MemoryLayout.structLayout(
+            JAVA_INT.withName("depth"),
+            JAVA_INT.withName("seldepth"),
+            JAVA_INT.withName("score_type"),
+            JAVA_INT.withName("score"),
+            JAVA_INT.withName("best_move"),
+            JAVA_INT.withName("ponder_move"),
+            JAVA_INT.withName("hashfull"),
+            JAVA_INT.withName("pv_length"),
+            JAVA_LONG.withName("nodes"),
+            JAVA_LONG.withName("time_ms"),
+            MemoryLayout.sequenceLayout(MAX_PV, JAVA_INT).withName("pv"));
+
+    private static final long DEPTH = offset("depth");
+    private static final long SELDEPTH = offset("seldepth");
+    private static final long SCORE_TYPE = offset("score_type");
+    private static final long SCORE = offset("score");
+    private static final long BEST_MOVE = offset("best_move");
+    private static final long PONDER_MOVE = offset("ponder_move");
+    private static final long HASHFULL = offset("hashfull");
+    private static final long PV_LENGTH = offset("pv_length");
+    private static final long NODES = offset("nodes");
+    private static final long TIME_MS = offset("time_ms");
+    private static final long PV = offset("pv");
+
+    @Autowired
+    private EngineProperties properties;
+
+    private MethodHandle create;
+    private MethodHandle setOption;
+    private MethodHandle newGame;
+    private MethodHandle search;
+    private MethodHandle destroy;
+
+    @Override
+    public NativeEngine create(int threads, int hashMb) {
+        load();
+        MemorySegment handle;
+        try {
+            handle = (MemorySegment) create.invokeExact(threads, hashMb);
+        } catch (Throwable e) {
+            throw new IllegalStateException("cv_engine_create fallita", e);
+        }
+        if (handle.address() == 0) {
+            throw new IllegalStateException("la libreria non ha potuto creare il motore");
+        }
+        return new ForeignEngine(handle);
+    }
+
+    // La libreria resta caricata fino alla chiusura dell'applicazione (arena globale)
+    private synchronized void load() {
+        if (create != null) return;
+        Path path = Path.of(properties.getInProcess().getLibrary());
+        if (!Files.isRegularFile(path)) {
+            throw new IllegalStateException("libreria non trovata: " + path);
+        }
+        SymbolLookup lookup = SymbolLookup.libraryLookup(path, Arena.global());
+        Linker linker = Linker.nativeLinker();
+        newGame = linker.downcallHandle(find(lookup, "cv_engine_new_game"), FunctionDescriptor.ofVoid(ADDRESS));
+        destroy = linker.downcallHandle(find(lookup, "cv_engine_destroy"), FunctionDescriptor.ofVoid(ADDRESS));
+        setOption = linker.downcallHandle(find(lookup, "cv_engine_set_option"),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS));
+        search = linker.downcallHandle(find(lookup, "cv_engine_search"),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, JAVA_INT, JAVA_LONG, JAVA_INT, ADDRESS));
+        create = linker.downcallHandle(find(lookup, "cv_engine_create"),
+                FunctionDescriptor.of(ADDRESS, JAVA_INT, JAVA_INT));
+        System.out.println("🔗 Libreria Stockfish caricata nel processo: " + path);
+    }
+
+    private static MemorySegment find(SymbolLookup lookup, String name) {
+        return lookup.find(name).orElseThrow(() -> new IllegalStateException("simbolo mancante: " + name));
+    }
+
+    private static long offset(String field) {
+        return RESULT.byteOffset(groupElement(field));
+    }
+
+    // Stringa C (UTF-8 terminata da zero) nell'arena indicata
+    private static MemorySegment cString(Arena arena, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        MemorySegment segment = arena.allocate(bytes.length + 1L);
+        MemorySegment.copy(bytes, 0, segment, ValueLayout.JAVA_BYTE, 0, bytes.length);
+        segment.set(ValueLayout.JAVA_BYTE, bytes.length, (byte) 0);
+        return segment;
+    }
+
+    private final class ForeignEngine implements NativeEngine {
+
+        private final MemorySegment handle;
+        private final Arena arena = Arena.ofShared();
+        private final MemorySegment result;
+        private final MemorySegment text;
+        private boolean closed = false;
+
+        ForeignEngine(MemorySegment handle) {
+            this.handle = handle;
+            this.result = arena.allocate(RESULT);
+            this.text = arena.allocate(TEXT_BUFFER);
+        }
+
+        @Override
+        public SearchResult search(String fen, List<String> moves, Limits limits) {
+            int status;
+            byte[] fenBytes = fen.getBytes(StandardCharsets.UTF_8);
+            // Caso comune (posizione isolata): la FEN va nel buffer del motore e la chiamata non alloca memoria nativa
+            if (moves.isEmpty() && fenBytes.length < TEXT_BUFFER) {
+                MemorySegment.copy(fenBytes, 0, text, ValueLayout.JAVA_BYTE, 0, fenBytes.length);
+                text.set(ValueLayout.JAVA_BYTE, fenBytes.length, (byte) 0);
+                status = invokeSearch(text, MemorySegment.NULL, limits);
+            } else {
+                try (Arena call = Arena.ofConfined()) {
+                    MemorySegment movesArg = moves.isEmpty() ? MemorySegment.NULL : cString(call, String.join(" ", moves));
+                    status = invokeSearch(cString(call, fen), movesArg, limits);
+                }
+            }
+            if (status != 0) {
+                throw new IllegalArgumentException("limite di ricerca non valido: " + limits);
+            }
+            return readResult();
+        }
+
+        private int invokeSearch(MemorySegment fen, MemorySegment moves, Limits limits) {
+            try {
+                return (int) search.invokeExact(handle, fen, moves, limits.depth(), limits.nodes(), limits.moveTimeMs(), result);
+            } catch (Throwable e) {
+                throw new IllegalStateException("cv_engine_search fallita", e);
+            }
+        }
+
+        // Dalla struttura nativa a SearchResult/SearchInfo, come se fossero le ultime righe "info" e "bestmove"
+        private SearchResult readResult() {
+            int best = result.get(JAVA_INT, BEST_MOVE);
+            int ponder = result.get(JAVA_INT, PONDER_MOVE);
+            int scoreType = result.get(JAVA_INT, SCORE_TYPE);
+
+            SearchInfo info = null;
+            if (scoreType != 0) {
+                info = new SearchInfo();
+                info.depth = result.get(JAVA_INT, DEPTH);
+                info.selDepth = result.get(JAVA_INT, SELDEPTH);
+                info.hasScore = true;
+                info.mate = scoreType == SCORE_MATE;
+                info.score = result.get(JAVA_INT, SCORE);
+                info.hashfull = result.get(JAVA_INT, HASHFULL);
+                info.nodes = result.get(JAVA_LONG, NODES);
+                info.timeMs = result.get(JAVA_LONG, TIME_MS);
+                info.nps = info.timeMs > 0 ? info.nodes * 1000 / info.timeMs : 0;
+                info.pvLength = Math.min(MAX_PV, result.get(JAVA_INT, PV_LENGTH));
+                MemorySegment.copy(result, JAVA_INT, PV, info.pv, 0, info.pvLength);
+            }
+            return new SearchResult(best != 0 ? SearchInfo.moveToString(best) : null,
+                    ponder != 0 ? SearchInfo.moveToString(ponder) : null, info);
+        }
+
+        @Override
+        public boolean setOption(String name, String value) {
+            try (Arena call = Arena.ofConfined()) {
+                return (int) setOption.invokeExact(handle, cString(call, name), cString(call, value)) == 0;
+            } catch (Throwable e) {
+                throw new IllegalStateException("cv_engine_set_option fallita", e);
+            }
+        }
+
+        @Override
+        public void newGame() {
+            try {
+                newGame.invokeExact(handle);
+            } catch (Throwable e) {
+                throw new IllegalStateException("cv_engine_new_game fallita", e);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) return;
+            closed = true;
+            try {
+                destroy.invokeExact(handle);
+            } catch (Throwable e) {
+                throw new IllegalStateException("cv_engine_destroy fallita", e);
+            } finally {
+                arena.close();
+            }
+        }
+    }
+}
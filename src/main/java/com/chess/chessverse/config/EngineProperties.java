@@ -0,0 +1,334 @@
+package com.chess.chessverse.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+
+/**
+ * Configurazione dei processi Stockfish (prefisso "stockfish" in application.properties)
+ */
+@Component
+@ConfigurationProperties(prefix = "stockfish")
+public class EngineProperties {
+
+    /** Percorso dell'eseguibile; se vuoto usa stockfish.exe nella directory di lavoro */
+    private String path;
+
+    /** Thread di ricerca per ogni processo (opzione UCI Threads) */
+    private int threads = 1;
+
+    /** Dimensione della hash table in MB per ogni processo (opzione UCI Hash) */
+    private int hash = 64;
+
+    private final Pool pool = new Pool();
+
+    private final Supervisor supervisor = new Supervisor();
+
+    private final Cache cache = new Cache();
+
+    private final Batch batch = new Batch();
+
+    private final Bot bot = new Bot();
+
+    private final Book book = new Book();
+
+    private final Syzygy syzygy = new Syzygy();
+
+    private final Store store = new Store();
+
+    private final InProcess inProcess = new InProcess();
+
+    public String getPath() {
+        if (path == null || path.isBlank()) {
+            return System.getProperty("user.dir") + File.separator + "stockfish.exe";
+        }
+        return path;
+    }
+
+    public void setPath(String path) { this.path = path; }
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public int getHash() { return hash; }
+    public void setHash(int hash) { this.hash = hash; }
+    public Pool getPool() { return pool; }
+    public Supervisor getSupervisor() { return supervisor; }
+    public Cache getCache() { return cache; }
+    public Batch getBatch() { return batch; }
+    public Bot getBot() { return bot; }
+    public Book getBook() { return book; }
+    public Syzygy getSyzygy() { return syzygy; }
+    public Store getStore() { return store; }
+    public InProcess getInProcess() { return inProcess; }
+
+    public static class Pool {
+
+        /** Motori tenuti sempre caldi */
+        private int minSize = 1;
+
+        /** Numero massimo di processi contemporanei */
+        private int maxSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        /** Attesa massima per ottenere un motore libero */
+        private long leaseTimeoutMs = 5000;
+
+        /** Dopo quanto tempo un motore inutilizzato oltre minSize viene chiuso */
+        private long idleTimeoutMs = 300_000;
+
+        /** Ogni quanti ms di attesa una richiesta in coda sale di una classe di priorità (evita che il batch resti fermo) */
+        private long agingMs = 2000;
+
+        /** Profondità della ricerca di riscaldamento fatta da ogni motore avviato in background (0 = nessuna) */
+        private int warmupDepth = 10;
+
+        public int getMinSize() { return minSize; }
+        public void setMinSize(int minSize) { this.minSize = minSize; }
+        public int getMaxSize() { return maxSize; }
+        public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+        public long getLeaseTimeoutMs() { return leaseTimeoutMs; }
+        public void setLeaseTimeoutMs(long leaseTimeoutMs) { this.leaseTimeoutMs = leaseTimeoutMs; }
+        public long getIdleTimeoutMs() { return idleTimeoutMs; }
+        public void setIdleTimeoutMs(long idleTimeoutMs) { this.idleTimeoutMs = idleTimeoutMs; }
+        public long getAgingMs() { return agingMs; }
+        public void setAgingMs(long agingMs) { this.agingMs = agingMs; }
+        public int getWarmupDepth() { return warmupDepth; }
+        public void setWarmupDepth(int warmupDepth) { this.warmupDepth = warmupDepth; }
+    }
+
+    public static class Supervisor {
+
+        /** Ogni quanto si controllano i motori (processi vivi, risposta a isready, ricerche bloccate) */
+        private long checkIntervalMs = 5000;
+
+        /** Attesa massima di "readyok" da un motore libero prima di sostituirlo */
+        private long pingTimeoutMs = 2000;
+
+        /** Una ricerca senza alcuna riga di output per questo tempo è considerata bloccata e il processo viene chiuso */
+        private long stallTimeoutMs = 30_000;
+
+        /** Attesa prima di riprovare dopo un avvio fallito; raddoppia a ogni fallimento consecutivo */
+        private long backoffInitialMs = 1000;
+
+        /** Attesa massima tra due tentativi di avvio */
+        private long backoffMaxMs = 60_000;
+
+        /**
+         * Un motore avviato senza riscaldamento conta come avvio riuscito solo dopo questo tempo; uno chiuso prima
+         * conta come avvio fallito
+         */
+        private long minUptimeMs = 30_000;
+
+        public long getCheckIntervalMs() { return checkIntervalMs; }
+        public void setCheckIntervalMs(long checkIntervalMs) { this.checkIntervalMs = checkIntervalMs; }
+        public long getPingTimeoutMs() { return pingTimeoutMs; }
+        public void setPingTimeoutMs(long pingTimeoutMs) { this.pingTimeoutMs = pingTimeoutMs; }
+        public long getStallTimeoutMs() { return stallTimeoutMs; }
+        public void setStallTimeoutMs(long stallTimeoutMs) { this.stallTimeoutMs = stallTimeoutMs; }
+        public long getBackoffInitialMs() { return backoffInitialMs; }
+        public void setBackoffInitialMs(long backoffInitialMs) { this.backoffInitialMs = backoffInitialMs; }
+        public long getBackoffMaxMs() { return backoffMaxMs; }
+        public void setBackoffMaxMs(long backoffMaxMs) { this.backoffMaxMs = backoffMaxMs; }
+        public long getMinUptimeMs() { return minUptimeMs; }
+        public void setMinUptimeMs(long minUptimeMs) { this.minUptimeMs = minUptimeMs; }
+    }
+
+    public static class Cache {
+
+        /** Numero massimo di posizioni valutate tenute in memoria */
+        private int maxEntries = 100_000;
+
+        /** Profondità minima perché una voce in cache basti a rispondere a /api/eval */
+        private int minEvalDepth = 18;
+
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+        public int getMinEvalDepth() { return minEvalDepth; }
+        public void setMinEvalDepth(int minEvalDepth) { this.minEvalDepth = minEvalDepth; }
+    }
+
+    public static class Batch {
+
+        /** Numero massimo di posizioni in una singola richiesta a /api/eval/batch */
+        private int maxPositions = 10_000;
+
+        /** Profondità usata per le posizioni senza depth, nodes o movetime */
+        private int defaultDepth = 18;
+
+        public int getMaxPositions() { return maxPositions; }
+        public void setMaxPositions(int maxPositions) { this.maxPositions = maxPositions; }
+        public int getDefaultDepth() { return defaultDepth; }
+        public void setDefaultDepth(int defaultDepth) { this.defaultDepth = defaultDepth; }
+    }
+
+    public static class Bot {
+
+        /** Profondità consecutive con la stessa mossa migliore dopo cui una ricerca a tempo viene chiusa in anticipo */
+        private int stableDepths = 6;
+
+        /** Profondità minima raggiunta prima di poter chiudere in anticipo */
+        private int minStableDepth = 12;
+
+        /** Percentuale minima del tempo concesso da spendere comunque prima di chiudere in anticipo */
+        private int minTimePercent = 20;
+
+        /** Margine sottratto al budget calcolato dall'orologio (rete, latenza del client) */
+        private long moveOverheadMs = 100;
+
+        /** Dopo la mossa del bot il motore pensa sulla risposta prevista (solo per le partite con gameId) */
+        private boolean ponder = true;
+
+        /** Livello minimo del bot da cui si usa il ponder */
+        private int ponderMinLevel = 11;
+
+        /** Oltre questo tempo senza la mossa dell'utente il motore in ponder torna al pool */
+        private long ponderTimeoutMs = 120_000;
+
+        public int getStableDepths() { return stableDepths; }
+        public void setStableDepths(int stableDepths) { this.stableDepths = stableDepths; }
+        public int getMinStableDepth() { return minStableDepth; }
+        public void setMinStableDepth(int minStableDepth) { this.minStableDepth = minStableDepth; }
+        public int getMinTimePercent() { return minTimePercent; }
+        public void setMinTimePercent(int minTimePercent) { this.minTimePercent = minTimePercent; }
+        public long getMoveOverheadMs() { return moveOverheadMs; }
+        public void setMoveOverheadMs(long moveOverheadMs) { this.moveOverheadMs = moveOverheadMs; }
+        public boolean isPonder() { return ponder; }
+        public void setPonder(boolean ponder) { this.ponder = ponder; }
+        public int getPonderMinLevel() { return ponderMinLevel; }
+        public void setPonderMinLevel(int ponderMinLevel) { this.ponderMinLevel = ponderMinLevel; }
+        public long getPonderTimeoutMs() { return ponderTimeoutMs; }
+        public void setPonderTimeoutMs(long ponderTimeoutMs) { this.ponderTimeoutMs = ponderTimeoutMs; }
+    }
+
+    public static class Book {
+
+        /** Le mosse di apertura del bot si cercano prima nel libro Polyglot, senza usare il motore */
+        private boolean enabled = true;
+
+        /** Percorso del libro .bin; se vuoto usa book.bin nella directory di lavoro */
+        private String path;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getPath() {
+            if (path == null || path.isBlank()) {
+                return System.getProperty("user.dir") + File.separator + "book.bin";
+            }
+            return path;
+        }
+
+        public void setPath(String path) { this.path = path; }
+    }
+
+    public static class Syzygy {
+
+        /** Nei finali coperti dalle tablebase mossa del bot e valutazione si leggono dai file, senza motore */
+        private boolean enabled = true;
+
+        /** Directory dei file .rtbw/.rtbz (più directory separate come nel PATH); se vuoto usa syzygy nella directory di lavoro */
+        private String path;
+
+        /** Numero massimo di blocchi decodificati tenuti in memoria */
+        private int blockCacheSize = 8192;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getPath() {
+            if (path == null || path.isBlank()) {
+                return System.getProperty("user.dir") + File.separator + "syzygy";
+            }
+            return path;
+        }
+
+        public void setPath(String path) { this.path = path; }
+        public int getBlockCacheSize() { return blockCacheSize; }
+        public void setBlockCacheSize(int blockCacheSize) { this.blockCacheSize = blockCacheSize; }
+    }
+
+    public static class Store {
+
+        /** Le valutazioni vengono salvate anche su disco e ritrovate dopo un riavvio */
+        private boolean enabled = true;
+
+        /** Percorso del file dell'archivio; se vuoto usa evalstore.bin nella directory di lavoro */
+        private String path;
+
+        /** Numero di slot della tabella (potenza di due, 16 byte ciascuno); cambiarlo azzera il file */
+        private int slots = 1 << 20;
+
+        /** Profondità minima perché una valutazione venga salvata su disco */
+        private int minDepth = 12;
+
+        /** Generazioni dopo cui una voce non più riscritta viene cancellata */
+        private int maxAgeGenerations = 30;
+
+        /** Ogni quante ore avanza la generazione (oltre che a ogni avvio) */
+        private long agingIntervalHours = 24;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getPath() {
+            if (path == null || path.isBlank()) {
+                return System.getProperty("user.dir") + File.separator + "evalstore.bin";
+            }
+            return path;
+        }
+
+        public void setPath(String path) { this.path = path; }
+        public int getSlots() { return slots; }
+        public void setSlots(int slots) { this.slots = slots; }
+        public int getMinDepth() { return minDepth; }
+        public void setMinDepth(int minDepth) { this.minDepth = minDepth; }
+        public int getMaxAgeGenerations() { return maxAgeGenerations; }
+        public void setMaxAgeGenerations(int maxAgeGenerations) { this.maxAgeGenerations = maxAgeGenerations; }
+        public long getAgingIntervalHours() { return agingIntervalHours; }
+        public void setAgingIntervalHours(long agingIntervalHours) { this.agingIntervalHours = agingIntervalHours; }
+    }
+
+    public static class InProcess {
+
+        /**
+         * Stockfish caricato come libreria nel processo Java (profilo Maven native-engine, JDK 22+):
+         * le ricerche brevi non passano dal protocollo UCI
+         */
+        private boolean enabled = false;
+
+        /** Percorso della libreria; se vuoto usa stockfish-simple/native/build/libchessverse_engine.so nella directory di lavoro */
+        private String library;
+
+        /** Motori caricati nella libreria (ognuno cerca su un thread alla volta) */
+        private int engines = 2;
+
+        /** Dimensione della hash table in MB di ogni motore */
+        private int hash = 16;
+
+        /** Livello massimo del bot servito dalla libreria (i livelli a profondità fissa sono 1-5) */
+        private int maxBotLevel = 5;
+
+        /** Le posizioni del batch a profondità o nodi fissi si valutano con la libreria */
+        private boolean batch = true;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getLibrary() {
+            if (library == null || library.isBlank()) {
+                return System.getProperty("user.dir") + File.separator + String.join(File.separator,
+                        "stockfish-simple", "native", "build", System.mapLibraryName("chessverse_engine"));
+            }
+            return library;
+        }
+
+        public void setLibrary(String library) { this.library = library; }
+        public int getEngines() { return engines; }
+        public void setEngines(int engines) { this.engines = engines; }
+        public int getHash() { return hash; }
+        public void setHash(int hash) { this.hash = hash; }
+        public int getMaxBotLevel() { return maxBotLevel; }
+        public void setMaxBotLevel(int maxBotLevel) { this.maxBotLevel = maxBotLevel; }
+        public boolean isBatch() { return batch; }
+        public void setBatch(boolean batch) { this.batch = batch; }
+    }
+}
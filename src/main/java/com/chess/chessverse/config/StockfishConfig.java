@@ -13,21 +13,26 @@ public class StockfishConfig {
     private StockfishService stockfishService;
     
     /**
-     * Inizializza Stockfish all'avvio dell'applicazione
+     * Inizializza Stockfish all'avvio dell'applicazione, in background: il server HTTP risponde subito
+     * e finché il motore non è pronto si usa il bot casuale
      */
     @Bean
     public ApplicationRunner initializeStockfish() {
         return args -> {
-            System.out.println("🚀 Inizializzazione Stockfish...");
-            stockfishService.initialize();
-            
-            if (stockfishService.isAvailable()) {
-                System.out.println("✅ Stockfish Level 1 pronto!");
-                System.out.println("ℹ️  " + stockfishService.getEngineInfo());
-            } else {
-                System.out.println("⚠️  Stockfish non disponibile - usando bot casuale come fallback");
-                System.out.println("💡 Per usare Stockfish, installa il motore e assicurati che sia nel PATH");
-            }
+            Thread init = new Thread(() -> {
+                System.out.println("🚀 Inizializzazione Stockfish...");
+                stockfishService.initialize();
+                
+                if (stockfishService.isAvailable()) {
+                    System.out.println("✅ Stockfish Level 1 pronto!");
+                    System.out.println("ℹ️  " + stockfishService.getEngineInfo());
+                } else {
+                    System.out.println("⚠️  Stockfish non disponibile - usando bot casuale come fallback");
+                    System.out.println("💡 Per usare Stockfish, installa il motore e assicurati che sia nel PATH");
+                }
+            }, "stockfish-init");
+            init.setDaemon(true);
+            init.start();
             
             // Aggiungi shutdown hook per chiudere Stockfish pulitamente
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -15,7 +15,7 @@ public class StockfishInitializer implements CommandLineRunner {
 
     @Override
     public void run(String... args) throws Exception {
-        // Inizializza Stockfish all'avvio dell'applicazione
+        // Inizializza Stockfish all'avvio dell'applicazione (il pool si avvia e si riscalda in background)
         stockfishSimpleService.initialize();
     }
 }
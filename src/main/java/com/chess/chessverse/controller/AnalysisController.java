@@ -0,0 +1,239 @@
+package com.chess.chessverse.controller;
+
+import com.chess.chessverse.service.GameReviewService;
+import com.chess.chessverse.service.StockfishSimpleService;
+import com.chess.chessverse.service.engine.AnalysisSessionRegistry;
+import com.chess.chessverse.service.engine.MultiPvCollector;
+import com.chess.chessverse.service.engine.SearchHandle;
+import com.chess.chessverse.service.engine.SearchInfo;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Analisi con più varianti: una sola ricerca Stockfish con MultiPV=N restituisce le N mosse candidate
+ * migliori, ognuna con punteggio, profondità e variante, invece di N chiamate separate a /api/eval.
+ */
+@RestController
+@RequestMapping("/api/analysis")
+public class AnalysisController {
+
+    private static final int MAX_LINES = 10;
+    private static final int MAX_DEPTH = 40;
+    private static final int MAX_MOVE_TIME_MS = 30_000;
+    private static final int DEFAULT_REVIEW_DEPTH = 14;
+
+    @Autowired
+    @Qualifier("stockfishSimple")
+    private StockfishSimpleService stockfishSimpleService;
+
+    @Autowired
+    private AnalysisSessionRegistry analysisSessions;
+
+    @Autowired
+    private GameReviewService gameReviewService;
+
+    // Risultato finale: { success, bestMove, lines: [{ rank, depth, eval, pv, ... }] }
+    @PostMapping("/multipv")
+    public DeferredResult<Map<String, Object>> analyze(@RequestBody Map<String, Object> payload, HttpServletRequest request) {
+        DeferredResult<Map<String, Object>> deferred = new DeferredResult<>(75_000L);
+        Map<String, Object> response = new HashMap<>();
+        String fen = payload.get("fen") != null ? payload.get("fen").toString() : null;
+        if (fen == null || fen.trim().isEmpty()) {
+            response.put("success", false);
+            response.put("error", "FEN mancante");
+            deferred.setResult(response);
+            return deferred;
+        }
+
+        int multiPv = lines(intParam(payload.get("lines")));
+        MultiPvCollector collector = new MultiPvCollector(multiPv, null);
+        SearchHandle handle = stockfishSimpleService.streamMultiPv(fen, multiPv,
+                depth(intParam(payload.get("depth"))), moveTime(intParam(payload.get("movetime"))), collector);
+        if (handle == null) {
+            response.put("success", false);
+            response.put("error", "Stockfish non disponibile");
+            deferred.setResult(response);
+            return deferred;
+        }
+        String session = analysisSession(payload.get("session"), request);
+        analysisSessions.register(session, handle);
+        deferred.onTimeout(() -> analysisSessions.abandon(handle));
+        deferred.onError(e -> analysisSessions.abandon(handle));
+        handle.result().whenComplete((result, error) -> {
+            response.put("success", result != null);
+            response.put("bestMove", result != null ? result.bestMove() : null);
+            response.put("lines", linesEvent(collector.snapshot()));
+            response.put("superseded", !analysisSessions.isCurrent(session, handle));
+            deferred.setResult(response);
+        });
+        return deferred;
+    }
+
+    // In streaming (Server-Sent Events): un evento "lines" con tutte le varianti a ogni iterazione completata,
+    // poi "bestmove" con le linee finali. Una nuova analisi della stessa sessione interrompe la precedente.
+    // Gli eventi partono da SseEventRelay, mai dal thread di lettura del motore.
+    @GetMapping(value = "/multipv/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam String fen,
+                             @RequestParam(required = false) Integer lines,
+                             @RequestParam(required = false) Integer depth,
+                             @RequestParam(required = false) Integer movetime,
+                             @RequestParam(required = false) String session,
+                             HttpServletRequest request) {
+        SseEmitter emitter = new SseEmitter(75_000L);
+        AtomicReference<SearchHandle> search = new AtomicReference<>();
+        SseEventRelay relay = new SseEventRelay(emitter, () -> analysisSessions.abandon(search.get()));
+        MultiPvCollector collector = new MultiPvCollector(lines(lines), snapshot -> {
+            Map<String, Object> event = new HashMap<>();
+            event.put("depth", snapshot.isEmpty() ? 0 : snapshot.get(0).getDepth());
+            event.put("lines", linesEvent(snapshot));
+            relay.progress("lines", event);
+        });
+
+        SearchHandle handle = stockfishSimpleService.streamMultiPv(fen, lines(lines), depth(depth), moveTime(movetime), collector);
+        if (handle == null) {
+            sendEvent(emitter, "unavailable", Map.of("error", "Stockfish non disponibile"));
+            emitter.complete();
+            return emitter;
+        }
+        search.set(handle);
+        analysisSessions.register(analysisSession(session, request), handle);
+
+        emitter.onCompletion(() -> analysisSessions.abandon(handle));
+        emitter.onTimeout(() -> analysisSessions.abandon(handle));
+        emitter.onError(e -> analysisSessions.abandon(handle));
+        handle.result().whenComplete((result, error) -> {
+            if (result != null) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("bestMove", result.bestMove());
+                event.put("ponder", result.ponderMove());
+                event.put("lines", linesEvent(collector.snapshot()));
+                relay.finish("bestmove", event);
+            } else {
+                relay.finish("unavailable", Map.of("error", "Analisi non riuscita"));
+            }
+        });
+        return emitter;
+    }
+
+    // Revisione di una partita: { pgn } oppure { moves: [...] o "e2e4 e7e5 ...", fen }, con depth opzionale.
+    // Restituisce per ogni mossa valutazione prima/dopo, perdita e classificazione, più l'accuratezza dei due lati.
+    @PostMapping("/review")
+    public DeferredResult<Map<String, Object>> review(@RequestBody Map<String, Object> payload) {
+        DeferredResult<Map<String, Object>> deferred = new DeferredResult<>(120_000L);
+        Map<String, Object> response = new HashMap<>();
+
+        GameReviewService.Game game;
+        Object pgn = payload.get("pgn");
+        Object moves = payload.get("moves");
+        if (pgn != null && !pgn.toString().isBlank()) {
+            game = GameReviewService.parsePgn(pgn.toString());
+        } else if (moves != null) {
+            List<String> moveList = new ArrayList<>();
+            if (moves instanceof List<?> list) {
+                list.forEach(m -> moveList.add(m.toString().trim()));
+            } else {
+                moveList.addAll(List.of(moves.toString().trim().split("\\s+")));
+            }
+            Object fen = payload.get("fen");
+            game = new GameReviewService.Game(fen != null && !fen.toString().isBlank() ? fen.toString().trim()
+                    : GameReviewService.START_FEN, moveList);
+        } else {
+            response.put("success", false);
+            response.put("error", "PGN o lista di mosse mancante");
+            deferred.setResult(response);
+            return deferred;
+        }
+
+        Integer depth = intParam(payload.get("depth"));
+        int reviewDepth = depth != null && depth > 0 ? Math.min(MAX_DEPTH, depth) : DEFAULT_REVIEW_DEPTH;
+        try {
+            gameReviewService.review(game, reviewDepth).whenComplete((review, error) -> {
+                if (review != null) {
+                    deferred.setResult(review);
+                } else {
+                    response.put("success", false);
+                    response.put("error", "Revisione non riuscita");
+                    deferred.setResult(response);
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            deferred.setResult(response);
+        }
+        return deferred;
+    }
+
+    private List<Map<String, Object>> linesEvent(List<SearchInfo> snapshot) {
+        List<Map<String, Object>> lines = new ArrayList<>(snapshot.size());
+        for (SearchInfo info : snapshot) {
+            Map<String, Object> line = new HashMap<>();
+            line.put("rank", info.getMultiPv());
+            line.put("depth", info.getDepth());
+            line.put("seldepth", info.getSelDepth());
+            line.put("eval", info.formatScore());
+            line.put("scoreCp", info.getScoreCp());
+            line.put("mate", info.getMate());
+            line.put("bound", info.getBound() == SearchInfo.BOUND_LOWER ? "lower"
+                    : info.getBound() == SearchInfo.BOUND_UPPER ? "upper" : null);
+            if (info.hasWdl()) {
+                line.put("wdl", List.of(info.getWdlWin(), info.getWdlDraw(), info.getWdlLoss()));
+            }
+            line.put("nodes", info.getNodes());
+            line.put("move", info.getBestMove());
+            line.put("pv", info.getPv());
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static int lines(Integer requested) {
+        return requested == null ? 3 : Math.max(1, Math.min(MAX_LINES, requested));
+    }
+
+    private static int depth(Integer requested) {
+        return requested == null ? 0 : Math.max(0, Math.min(MAX_DEPTH, requested));
+    }
+
+    private static int moveTime(Integer requested) {
+        return requested == null ? 0 : Math.max(0, Math.min(MAX_MOVE_TIME_MS, requested));
+    }
+
+    private static Integer intParam(Object value) {
+        if (value instanceof Number number) return number.intValue();
+        try {
+            return value != null ? Integer.valueOf(value.toString().trim()) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Le analisi MultiPV hanno una loro ricerca per scheda, separata da quella della barra di valutazione
+    private String analysisSession(Object explicit, HttpServletRequest request) {
+        if (explicit != null && !explicit.toString().isBlank()) {
+            return "multipv:" + explicit;
+        }
+        return "multipv:" + request.getSession(true).getId();
+    }
+
+    private boolean sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+}
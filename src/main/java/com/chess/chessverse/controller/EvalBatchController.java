@@ -0,0 +1,200 @@
+package com.chess.chessverse.controller;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.BatchEvaluationService;
+import com.chess.chessverse.service.BatchEvaluationService.BatchRun;
+import com.chess.chessverse.service.BatchEvaluationService.Job;
+import com.chess.chessverse.service.BatchEvaluationService.Result;
+import com.chess.chessverse.service.engine.EvalEntry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Valutazione di molte posizioni in una sola richiesta. Il corpo può essere:
+ * <ul>
+ *   <li>un array JSON di FEN o di oggetti { fen, id, depth, nodes, movetime }</li>
+ *   <li>un oggetto { positions: [...], depth, nodes, movetime } con il budget comune</li>
+ *   <li>NDJSON: una FEN o un oggetto JSON per riga</li>
+ * </ul>
+ * La risposta è NDJSON, una riga per posizione nell'ordine in cui le valutazioni finiscono
+ * (il campo "index" riporta la posizione nella richiesta).
+ */
+@RestController
+@RequestMapping("/api/eval")
+public class EvalBatchController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private static final int MAX_DEPTH = 40;
+    private static final int MAX_MOVE_TIME_MS = 60_000;
+    private static final long MAX_NODES = 1_000_000_000L;
+
+    @Autowired
+    private BatchEvaluationService batchEvaluationService;
+
+    @Autowired
+    private EngineProperties properties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PostMapping("/batch")
+    public ResponseEntity<?> evaluateBatch(@RequestBody String body,
+                                           @RequestParam(required = false) Integer depth,
+                                           @RequestParam(required = false) Long nodes,
+                                           @RequestParam(required = false) Integer movetime) {
+        List<Job> jobs;
+        try {
+            jobs = parseJobs(body, new Budget(depth, nodes, movetime));
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return badRequest("Richiesta non valida: " + e.getMessage());
+        }
+        if (jobs.isEmpty()) {
+            return badRequest("Nessuna posizione da valutare");
+        }
+        if (jobs.size() > properties.getBatch().getMaxPositions()) {
+            return badRequest("Troppe posizioni (massimo " + properties.getBatch().getMaxPositions() + ")");
+        }
+
+        // Nessun timeout complessivo: un batch grande può durare a lungo, la disconnessione del client lo annulla
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+        BatchRun run = batchEvaluationService.submit(jobs, result -> {
+            try {
+                emitter.send(objectMapper.writeValueAsString(resultLine(result)) + "\n", NDJSON);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        emitter.onCompletion(run::cancel);
+        emitter.onTimeout(run::cancel);
+        emitter.onError(e -> run.cancel());
+        run.done().whenComplete((v, e) -> emitter.complete());
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    private List<Job> parseJobs(String body, Budget defaults) throws JsonProcessingException {
+        List<Job> jobs = new ArrayList<>();
+        String trimmed = body == null ? "" : body.trim();
+
+        if (trimmed.startsWith("[")) {
+            for (JsonNode node : objectMapper.readTree(trimmed)) {
+                jobs.add(toJob(jobs.size(), node, defaults));
+            }
+            return jobs;
+        }
+        if (trimmed.startsWith("{")) {
+            JsonNode root = tryReadTree(trimmed);
+            if (root != null && root.has("positions")) {
+                Budget budget = defaults.overriddenBy(root);
+                for (JsonNode node : root.get("positions")) {
+                    jobs.add(toJob(jobs.size(), node, budget));
+                }
+                return jobs;
+            }
+        }
+
+        // NDJSON: una posizione per riga
+        for (String line : trimmed.split("\\r?\\n")) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            JsonNode node = line.startsWith("{") ? objectMapper.readTree(line) : objectMapper.getNodeFactory().textNode(line);
+            jobs.add(toJob(jobs.size(), node, defaults));
+        }
+        return jobs;
+    }
+
+    // Un singolo oggetto JSON o la prima riga di un NDJSON: nel secondo caso il parsing completo fallisce
+    private JsonNode tryReadTree(String text) {
+        try {
+            return objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private Job toJob(int index, JsonNode node, Budget defaults) {
+        if (node.isTextual()) {
+            return defaults.job(index, null, node.asText().trim());
+        }
+        JsonNode fen = node.get("fen");
+        if (fen == null || fen.asText().isBlank()) {
+            throw new IllegalArgumentException("posizione " + index + " senza FEN");
+        }
+        String id = node.hasNonNull("id") ? node.get("id").asText() : null;
+        return defaults.overriddenBy(node).job(index, id, fen.asText().trim());
+    }
+
+    private Map<String, Object> resultLine(Result result) {
+        Map<String, Object> line = new HashMap<>();
+        line.put("index", result.job().index());
+        if (result.job().id() != null) line.put("id", result.job().id());
+        line.put("fen", result.job().fen());
+        EvalEntry entry = result.entry();
+        line.put("success", entry != null);
+        if (entry != null) {
+            line.put("cached", result.cached());
+            line.put("depth", entry.depth());
+            line.put("eval", entry.formatScore());
+            line.put("scoreCp", entry.scoreCp());
+            line.put("mate", entry.mate());
+            line.put("bestMove", entry.bestMove());
+            line.put("pv", entry.pv());
+        } else {
+            line.put("error", result.error());
+        }
+        return line;
+    }
+
+    private ResponseEntity<Map<String, Object>> badRequest(String error) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", error);
+        return ResponseEntity.badRequest().body(response);
+    }
+
+    // Budget di ricerca: depth, nodes o movetime; senza nessuno dei tre si usa stockfish.batch.default-depth
+    private class Budget {
+        final Integer depth;
+        final Long nodes;
+        final Integer moveTime;
+
+        Budget(Integer depth, Long nodes, Integer moveTime) {
+            this.depth = depth;
+            this.nodes = nodes;
+            this.moveTime = moveTime;
+        }
+
+        Budget overriddenBy(JsonNode node) {
+            if (!node.has("depth") && !node.has("nodes") && !node.has("movetime")) return this;
+            return new Budget(node.has("depth") ? Integer.valueOf(node.get("depth").asInt()) : null,
+                    node.has("nodes") ? Long.valueOf(node.get("nodes").asLong()) : null,
+                    node.has("movetime") ? Integer.valueOf(node.get("movetime").asInt()) : null);
+        }
+
+        Job job(int index, String id, String fen) {
+            if (depth != null && depth > 0) {
+                return new Job(index, id, fen, Math.min(MAX_DEPTH, depth), 0, 0);
+            }
+            if (nodes != null && nodes > 0) {
+                return new Job(index, id, fen, 0, Math.min(MAX_NODES, nodes), 0);
+            }
+            if (moveTime != null && moveTime > 0) {
+                return new Job(index, id, fen, 0, 0, Math.min(MAX_MOVE_TIME_MS, moveTime));
+            }
+            return new Job(index, id, fen, Math.min(MAX_DEPTH, properties.getBatch().getDefaultDepth()), 0, 0);
+        }
+    }
+}
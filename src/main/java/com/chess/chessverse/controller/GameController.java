@@ -4,18 +4,36 @@ import com.chess.chessverse.model.Game;
 import com.chess.chessverse.model.Move;
 import com.chess.chessverse.repository.GameRepository;
 import com.chess.chessverse.service.ChessGameService;
-import com.chess.chessverse.service.ClassicChessLogic;
+import com.chess.chessverse.service.GameHistoryRegistry;
 import com.chess.chessverse.service.StockfishService;
 import com.chess.chessverse.service.StockfishSimpleService;
+import com.chess.chessverse.service.engine.AnalysisSessionRegistry;
+import com.chess.chessverse.service.engine.EvalEntry;
+import com.chess.chessverse.service.engine.GameClock;
+import com.chess.chessverse.service.engine.RunningSearch;
+import com.chess.chessverse.service.engine.SearchHandle;
+import com.chess.chessverse.service.engine.SearchInfo;
+import com.chess.chessverse.service.rules.GameHistory;
+import com.chess.chessverse.service.rules.MoveGenerator;
+import com.chess.chessverse.service.rules.MoveList;
+import com.chess.chessverse.service.rules.Position;
 import java.util.Map;
 import java.util.HashMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RestController
 @RequestMapping("/api")
@@ -28,6 +46,12 @@ public class GameController {
     @Qualifier("stockfishSimple")
     private StockfishSimpleService stockfishSimpleService;
     
+    @Autowired
+    private AnalysisSessionRegistry analysisSessions;
+    
+    @Autowired
+    private GameHistoryRegistry gameHistories;
+    
     // Classe per rappresentare lo stato del gioco
     private static class GameState {
         boolean isCheck;
@@ -60,34 +84,25 @@ public class GameController {
         String from = payload.get("from");
         String to = payload.get("to");
         String promotion = payload.get("promotion");
+        String gameId = payload.get("gameId");
         
         Map<String, Object> response = new HashMap<>();
         
         try {
-            if (isValidMove(fen, from, to, promotion)) {
-                String newFen = makeMove(fen, from, to, promotion);
-                
-                // Controlla lo stato del gioco
-                GameState gameState = analyzeGameState(newFen);
-                
-                response.put("success", true);
-                response.put("fen", newFen);
-                response.put("status", gameState.message);
-                response.put("gameOver", gameState.isGameOver);
-                response.put("inCheck", gameState.isCheck);
-                
-                // ✨ NUOVE INFORMAZIONI: Aggiungi dettagli su check, pin e attaccanti
-                response.put("boardAnalysis", getBoardAnalysis(newFen));
-                
-                if (gameState.isGameOver) {
-                    response.put("winner", gameState.winner);
-                    response.put("reason", gameState.reason);
-                }
-            } else {
+            // La FEN si legge una volta sola: validazione, mossa e analisi lavorano sulla stessa posizione,
+            // con le posizioni già viste nella partita (gameId) per riconoscere la ripetizione
+            Map<String, Object> played = gameHistories.withGame(gameId, fen, history -> playMove(history, from, to, promotion));
+            if (played == null) {
                 response.put("success", false);
                 response.put("error", "Mossa non valida");
                 return ResponseEntity.status(HttpStatus.OK).body(response);
             }
+            response.putAll(played);
+        } catch (IllegalArgumentException e) {
+            // FEN non leggibile
+            response.put("success", false);
+            response.put("error", "Mossa non valida");
+            return ResponseEntity.status(HttpStatus.OK).body(response);
         } catch (Exception e) {
             response.put("success", false);
             response.put("error", "Errore interno: " + e.getMessage());
@@ -97,12 +112,41 @@ public class GameController {
         return ResponseEntity.ok(response);
     }
     
+    // Gioca la mossa se è legale e descrive la nuova posizione, altrimenti null
+    private Map<String, Object> playMove(GameHistory history, String from, String to, String promotion) {
+        Position position = history.position();
+        int legalMove = legalMove(position, from, to, promotion);
+        if (legalMove == Position.NO_MOVE) {
+            return null;
+        }
+        history.play(legalMove);
+        
+        // Controlla lo stato del gioco
+        GameState gameState = analyzeGameState(history);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("fen", position.toFen());
+        response.put("status", gameState.message);
+        response.put("gameOver", gameState.isGameOver);
+        response.put("inCheck", gameState.isCheck);
+        
+        // ✨ NUOVE INFORMAZIONI: Aggiungi dettagli su check, pin e attaccanti
+        response.put("boardAnalysis", getBoardAnalysis(position));
+        
+        if (gameState.isGameOver) {
+            response.put("winner", gameState.winner);
+            response.put("reason", gameState.reason);
+        }
+        return response;
+    }
+    
     // ✨ NUOVO METODO: Analizza la scacchiera per fornire informazioni visive
     @PostMapping("/game/analyze")
     @ResponseBody
     public Map<String, Object> analyzeBoardState(@RequestBody Map<String, String> payload) {
         String fen = payload.get("fen");
-        return getBoardAnalysis(fen);
+        return getBoardAnalysis(Position.fromFen(fen));
     }
     
     // Endpoint per controllare se il re è sotto scacco
@@ -113,26 +157,22 @@ public class GameController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            String[] parts = fen.split(" ");
-            boolean isWhiteTurn = parts[1].equals("w");
+            Position position = Position.fromFen(fen);
+            boolean isWhiteTurn = position.sideToMove() == Position.WHITE;
             
             // Trova il re del giocatore di turno
-            String kingSquare = findKingSquare(fen, isWhiteTurn);
+            String kingSquare = findKingSquare(position);
             
             // Controlla se ci sono pezzi che attaccano il re
-            java.util.List<int[]> attackers = getAttackingPieces(fen, isWhiteTurn);
-            boolean inCheck = !attackers.isEmpty();
+            long attackers = position.checkers();
+            boolean inCheck = attackers != 0;
             
             response.put("inCheck", inCheck);
             response.put("sideInCheck", isWhiteTurn ? "white" : "black");
             response.put("kingSquare", kingSquare);
             
             if (inCheck) {
-                java.util.List<String> attackingSquares = new java.util.ArrayList<>();
-                for (int[] pos : attackers) {
-                    attackingSquares.add(coordinateToAlgebraic(pos[1], pos[0]));
-                }
-                response.put("attackingSquares", attackingSquares);
+                response.put("attackingSquares", squareNames(attackers));
             }
             
         } catch (Exception e) {
@@ -143,533 +183,105 @@ public class GameController {
         return response;
     }
     
-    private Map<String, Object> getBoardAnalysis(String fen) {
+    private Map<String, Object> getBoardAnalysis(Position position) {
         Map<String, Object> analysis = new HashMap<>();
         
-        String[] parts = fen.split(" ");
-        boolean isWhiteTurn = parts[1].equals("w");
-        
         // Trova pezzi che attaccano il re
-        java.util.List<int[]> attackers = getAttackingPieces(fen, isWhiteTurn);
-        java.util.List<String> attackingSquares = new java.util.ArrayList<>();
-        for (int[] pos : attackers) {
-            attackingSquares.add(coordinateToAlgebraic(pos[1], pos[0]));
-        }
+        long attackers = position.checkers();
         
         // Trova il re sotto scacco
-        String kingSquare = findKingSquare(fen, isWhiteTurn);
+        String kingSquare = findKingSquare(position);
         
-        // Trova pezzi inchiodati
-        java.util.List<String> pinnedSquares = findPinnedPieces(fen, isWhiteTurn);
-        
-        analysis.put("attackingPieces", attackingSquares);
-        analysis.put("kingInCheck", kingSquare != null && !attackers.isEmpty() ? kingSquare : null);
-        analysis.put("isDoubleCheck", attackers.size() >= 2);
-        analysis.put("pinnedPieces", pinnedSquares);
+        analysis.put("attackingPieces", squareNames(attackers));
+        analysis.put("kingInCheck", kingSquare != null && attackers != 0 ? kingSquare : null);
+        analysis.put("isDoubleCheck", Long.bitCount(attackers) >= 2);
+        // Pezzi inchiodati al re del giocatore di turno
+        analysis.put("pinnedPieces", squareNames(position.pinned()));
         
         return analysis;
     }
     
-    private String coordinateToAlgebraic(int col, int row) {
-        return "" + (char)('a' + col) + (8 - row);
-    }
-    
-    private String findKingSquare(String fen, boolean isWhiteTurn) {
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        char kingPiece = isWhiteTurn ? 'K' : 'k';
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != null && board[i][j].charAt(0) == kingPiece) {
-                    return coordinateToAlgebraic(j, i);
-                }
-            }
+    private static List<String> squareNames(long squares) {
+        List<String> names = new java.util.ArrayList<>(Long.bitCount(squares));
+        for (long b = squares; b != 0; b &= b - 1) {
+            names.add(Position.squareName(Long.numberOfTrailingZeros(b)));
         }
-        return null;
+        return names;
     }
     
-    private java.util.List<String> findPinnedPieces(String fen, boolean isWhiteTurn) {
-        java.util.List<String> pinnedPieces = new java.util.ArrayList<>();
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                String piece = board[i][j];
-                if (piece != null) {
-                    boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                    if (isPieceWhite == isWhiteTurn) { // È nostro pezzo
-                        if (isPiecePinned(fen, i, j, isWhiteTurn)) {
-                            pinnedPieces.add(coordinateToAlgebraic(j, i));
-                        }
-                    }
-                }
-            }
-        }
-        return pinnedPieces;
-    }
-
-    private boolean isValidMove(String fen, String from, String to, String promotion) {
-        try {
-            if (from == null || to == null || from.equals(to)) {
-                return false;
-            }
-            
-            String[] parts = fen.split(" ");
-            String board = parts[0];
-            String currentTurn = parts[1]; // "w" per bianco, "b" per nero
-            
-            // Converti coordinate
-            int fromCol = from.charAt(0) - 'a';
-            int fromRow = 8 - (from.charAt(1) - '0');
-            int toCol = to.charAt(0) - 'a';
-            int toRow = 8 - (to.charAt(1) - '0');
-            
-            // Verifica coordinate valide
-            if (fromRow < 0 || fromRow > 7 || fromCol < 0 || fromCol > 7 ||
-                toRow < 0 || toRow > 7 || toCol < 0 || toCol > 7) {
-                return false;
-            }
-            
-            // Converti FEN in array 2D
-            String[][] chessBoard = fenToBoard(board);
-            
-            // Verifica che ci sia un pezzo nella casella di partenza
-            String piece = chessBoard[fromRow][fromCol];
-            if (piece == null) {
-                return false;
-            }
-            
-            // Verifica che il pezzo appartenga al giocatore di turno
-            boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-            boolean isTurnWhite = currentTurn.equals("w");
-            
-            if (isPieceWhite != isTurnWhite) {
-                return false; // Non puoi muovere pezzi dell'avversario
-            }
-            
-            // Verifica che non catturi il proprio pezzo
-            String targetPiece = chessBoard[toRow][toCol];
-            if (targetPiece != null) {
-                boolean isTargetWhite = Character.isUpperCase(targetPiece.charAt(0));
-                if (isPieceWhite == isTargetWhite) {
-                    return false; // Non puoi catturare i tuoi pezzi
-                }
-            }
-            
-            // Usa ClassicChessLogic per validazione completa con arrocco e en passant
-            ClassicChessLogic logic = new ClassicChessLogic();
-            
-            // Controlla arrocco
-            if (piece.toLowerCase().charAt(0) == 'k' && Math.abs(toCol - fromCol) == 2) {
-                return logic.canCastle(fen, from, to);
-            }
-            
-            // Controlla en passant
-            boolean isPawn = piece.toLowerCase().charAt(0) == 'p';
-            if (isPawn && toCol != fromCol && targetPiece == null) {
-                return logic.canEnPassant(fen, from, to);
-            }
-            
-            // Validazione normale per altri pezzi
-            if (!isValidPieceMove(piece.toLowerCase().charAt(0), fromRow, fromCol, toRow, toCol, chessBoard)) {
-                return false;
-            }
-            
-            // ✨ CONTROLLO AVANZATO: Verifica che la mossa sia legale considerando pin e check
-            return isMoveLegal(fen, fromRow, fromCol, toRow, toCol, isTurnWhite);
-            
-        } catch (Exception e) {
-            return false;
-        }
+    private String findKingSquare(Position position) {
+        int king = position.kingSquare(position.sideToMove());
+        return king >= 0 ? Position.squareName(king) : null;
     }
     
-    private boolean isValidPieceMove(char pieceType, int fromRow, int fromCol, int toRow, int toCol, String[][] board) {
-        int rowDiff = Math.abs(toRow - fromRow);
-        int colDiff = Math.abs(toCol - fromCol);
-        
-        switch (pieceType) {
-            case 'p': // Pedone
-                return isValidPawnMove(fromRow, fromCol, toRow, toCol, board);
-            case 'r': // Torre
-                return (rowDiff == 0 || colDiff == 0) && isPathClear(fromRow, fromCol, toRow, toCol, board);
-            case 'n': // Cavallo
-                return (rowDiff == 2 && colDiff == 1) || (rowDiff == 1 && colDiff == 2);
-            case 'b': // Alfiere
-                return rowDiff == colDiff && isPathClear(fromRow, fromCol, toRow, toCol, board);
-            case 'q': // Regina
-                return ((rowDiff == 0 || colDiff == 0) || (rowDiff == colDiff)) && 
-                       isPathClear(fromRow, fromCol, toRow, toCol, board);
-            case 'k': // Re
-                return rowDiff <= 1 && colDiff <= 1;
-            default:
-                return false;
-        }
-    }
     
-    private boolean isValidPawnMove(int fromRow, int fromCol, int toRow, int toCol, String[][] board) {
-        String piece = board[fromRow][fromCol];
-        boolean isWhite = Character.isUpperCase(piece.charAt(0));
-        int direction = isWhite ? -1 : 1; // Bianco va verso l'alto (righe decrescenti), nero verso il basso
-        
-        int rowDiff = toRow - fromRow;
-        int colDiff = Math.abs(toCol - fromCol);
-        
-        // Movimento in avanti
-        if (colDiff == 0) {
-            // Mossa semplice
-            if (rowDiff == direction && board[toRow][toCol] == null) {
-                return true;
-            }
-            // Mossa doppia dalla posizione iniziale
-            if ((isWhite && fromRow == 6) || (!isWhite && fromRow == 1)) {
-                return rowDiff == 2 * direction && board[toRow][toCol] == null;
-            }
-        }
-        // Cattura diagonale
-        else if (colDiff == 1 && rowDiff == direction && board[toRow][toCol] != null) {
-            return true;
+    // La mossa se è legale nella posizione, altrimenti NO_MOVE
+    private int legalMove(Position position, String from, String to, String promotion) {
+        if (from == null || to == null || from.equals(to)) {
+            return Position.NO_MOVE;
         }
         
-        return false;
+        // Un solo controllo sulla posizione a bitboard: pezzo del giocatore di turno, movimento,
+        // arrocco, en passant e re che non resta sotto scacco (pin compresi)
+        int move = position.move(from, to, promotion);
+        return move != Position.NO_MOVE && position.isLegal(move) ? move : Position.NO_MOVE;
     }
     
-    private boolean isPathClear(int fromRow, int fromCol, int toRow, int toCol, String[][] board) {
-        int rowStep = Integer.compare(toRow, fromRow);
-        int colStep = Integer.compare(toCol, fromCol);
-        
-        int currentRow = fromRow + rowStep;
-        int currentCol = fromCol + colStep;
-        
-        while (currentRow != toRow || currentCol != toCol) {
-            if (board[currentRow][currentCol] != null) {
-                return false; // Percorso bloccato
-            }
-            currentRow += rowStep;
-            currentCol += colStep;
-        }
-        
-        return true;
-    }
-    
-    private String makeMove(String fen, String from, String to, String promotion) {
-        try {
-            // Usa ClassicChessLogic per gestire arrocco, en passant e aggiornare il FEN correttamente
-            ClassicChessLogic logic = new ClassicChessLogic();
-            return logic.updateFEN(fen, from, to, promotion);
-        } catch (Exception e) {
-            // Se c'è un errore, ritorna il FEN originale
-            return fen;
-        }
-    }
-    
-    private String[][] fenToBoard(String fen) {
-        String[][] board = new String[8][8];
-        String[] rows = fen.split("/");
-        
-        for (int i = 0; i < 8; i++) {
-            String row = rows[i];
-            int col = 0;
-            for (char c : row.toCharArray()) {
-                if (Character.isDigit(c)) {
-                    col += c - '0'; // Spazi vuoti
-                } else {
-                    board[i][col] = String.valueOf(c);
-                    col++;
-                }
-            }
-        }
-        return board;
-    }
-    
-    private String boardToFen(String[][] board) {
-        StringBuilder fen = new StringBuilder();
-        
-        for (int i = 0; i < 8; i++) {
-            int emptyCount = 0;
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == null) {
-                    emptyCount++;
-                } else {
-                    if (emptyCount > 0) {
-                        fen.append(emptyCount);
-                        emptyCount = 0;
-                    }
-                    fen.append(board[i][j]);
-                }
-            }
-            if (emptyCount > 0) {
-                fen.append(emptyCount);
-            }
-            if (i < 7) fen.append("/");
-        }
-        
-        return fen.toString();
-    }
-    
-    private GameState analyzeGameState(String fen) {
-        String[] parts = fen.split(" ");
-        String currentTurn = parts[1];
-        boolean isWhiteTurn = currentTurn.equals("w");
+    private GameState analyzeGameState(GameHistory history) {
+        Position position = history.position();
+        boolean isWhiteTurn = position.sideToMove() == Position.WHITE;
         
         // Controlla se il re è sotto scacco
-        java.util.List<int[]> attackers = getAttackingPieces(fen, isWhiteTurn);
-        boolean isInCheck = !attackers.isEmpty();
-        boolean isInDoubleCheck = attackers.size() >= 2;
+        long attackers = position.checkers();
+        boolean isInCheck = attackers != 0;
+        boolean isInDoubleCheck = Long.bitCount(attackers) >= 2;
+        
+        // Una sola generazione delle mosse legali decide sia lo scacco matto sia lo stallo
+        boolean hasLegalMove = MoveGenerator.hasLegalMove(position, new MoveList());
         
         // Se è in scacco, controlla se è scacco matto
-        if (isInCheck) {
-            boolean isCheckmate = isCheckmate(fen, isWhiteTurn);
-            if (isCheckmate) {
-                String winner = isWhiteTurn ? "black" : "white";
-                GameState state = new GameState(true, true, "Scacco Matto! Vince il " + (isWhiteTurn ? "Nero" : "Bianco"));
-                state.winner = winner;
-                state.reason = "checkmate";
-                return state;
-            } else {
-                // Fornisci informazioni dettagliate sul tipo di scacco
-                String checkMessage = isInDoubleCheck ? 
-                    "Doppio Scacco al " + (isWhiteTurn ? "Bianco" : "Nero") + "!" :
-                    "Scacco al " + (isWhiteTurn ? "Bianco" : "Nero");
-                return new GameState(true, false, checkMessage);
-            }
+        if (isInCheck && !hasLegalMove) {
+            String winner = isWhiteTurn ? "black" : "white";
+            GameState state = new GameState(true, true, "Scacco Matto! Vince il " + (isWhiteTurn ? "Nero" : "Bianco"));
+            state.winner = winner;
+            state.reason = "checkmate";
+            return state;
         }
         
         // Controlla stallo
-        boolean isStalemate = isStalemate(fen, isWhiteTurn);
-        if (isStalemate) {
+        if (!hasLegalMove) {
             GameState state = new GameState(false, true, "Stallo! Pareggio");
             state.winner = null;
             state.reason = "stalemate";
             return state;
         }
         
-        // Gioco normale
-        String turnMessage = "Turno del " + (isWhiteTurn ? "Bianco" : "Nero");
-        return new GameState(false, false, turnMessage);
-    }
-    
-    private boolean isKingInCheck(String fen, boolean isWhiteTurn) {
-        return getAttackingPieces(fen, isWhiteTurn).size() > 0;
-    }
-    
-    // Restituisce la lista dei pezzi che stanno attaccando il re
-    private java.util.List<int[]> getAttackingPieces(String fen, boolean isWhiteTurn) {
-        java.util.List<int[]> attackers = new java.util.ArrayList<>();
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        
-        // Trova la posizione del re
-        int kingRow = -1, kingCol = -1;
-        char kingPiece = isWhiteTurn ? 'K' : 'k';
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != null && board[i][j].charAt(0) == kingPiece) {
-                    kingRow = i;
-                    kingCol = j;
-                    break;
-                }
-            }
+        // Patte per regola, anche sotto scacco (scacco perpetuo): prima quelle automatiche (75 mosse, materiale),
+        // poi quelle che si possono reclamare
+        if (history.isSeventyFiveMoveRule()) {
+            return new GameState(isInCheck, true, "Patta per la regola delle 75 mosse", null, "seventyfive_moves");
         }
-        
-        if (kingRow == -1) return attackers; // Re non trovato
-        
-        // Controlla se qualche pezzo nemico può attaccare il re
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                String piece = board[i][j];
-                if (piece != null) {
-                    boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                    if (isPieceWhite != isWhiteTurn) { // Pezzo nemico
-                        char pieceType = piece.toLowerCase().charAt(0);
-                        if (isValidPieceMove(pieceType, i, j, kingRow, kingCol, board)) {
-                            attackers.add(new int[]{i, j}); // Aggiungi attaccante
-                        }
-                    }
-                }
-            }
+        if (history.isInsufficientMaterial()) {
+            return new GameState(isInCheck, true, "Patta per materiale insufficiente", null, "insufficient_material");
         }
-        
-        return attackers;
-    }
-    
-    // Controlla se c'è double check (re attaccato da 2+ pezzi)
-    private boolean isDoubleCheck(String fen, boolean isWhiteTurn) {
-        return getAttackingPieces(fen, isWhiteTurn).size() >= 2;
-    }
-    
-    // Controlla se un pezzo è inchiodato (pinned)
-    private boolean isPiecePinned(String fen, int pieceRow, int pieceCol, boolean isWhiteTurn) {
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        
-        // Trova il re
-        int kingRow = -1, kingCol = -1;
-        char kingPiece = isWhiteTurn ? 'K' : 'k';
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != null && board[i][j].charAt(0) == kingPiece) {
-                    kingRow = i;
-                    kingCol = j;
-                    break;
-                }
-            }
+        if (history.isThreefoldRepetition()) {
+            return new GameState(isInCheck, true, "Patta per triplice ripetizione", null, "threefold_repetition");
         }
-        
-        if (kingRow == -1) return false;
-        
-        // Se il pezzo e il re non sono sulla stessa linea/diagonale, non può essere pinned
-        boolean sameLine = (pieceRow == kingRow || pieceCol == kingCol);
-        boolean sameDiagonal = (Math.abs(pieceRow - kingRow) == Math.abs(pieceCol - kingCol));
-        
-        if (!sameLine && !sameDiagonal) return false;
-        
-        // Controlla se c'è un pezzo nemico sulla stessa linea dietro il nostro pezzo
-        int rowDir = Integer.compare(pieceRow - kingRow, 0);
-        int colDir = Integer.compare(pieceCol - kingCol, 0);
-        
-        // Vai oltre il pezzo nella stessa direzione
-        int checkRow = pieceRow + rowDir;
-        int checkCol = pieceCol + colDir;
-        
-        while (checkRow >= 0 && checkRow < 8 && checkCol >= 0 && checkCol < 8) {
-            String piece = board[checkRow][checkCol];
-            if (piece != null) {
-                boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                if (isPieceWhite != isWhiteTurn) { // Pezzo nemico
-                    char pieceType = piece.toLowerCase().charAt(0);
-                    // Se è una regina, torre (su linee) o alfiere (su diagonali) può fare pin
-                    if (pieceType == 'q' || 
-                        (sameLine && pieceType == 'r') || 
-                        (sameDiagonal && pieceType == 'b')) {
-                        return true; // Il pezzo è inchiodato
-                    }
-                }
-                break; // Un pezzo blocca, non c'è pin
-            }
-            checkRow += rowDir;
-            checkCol += colDir;
-        }
-        
-        return false;
-    }
-    
-    // Controlla se una mossa è legale considerando pin e check
-    private boolean isMoveLegal(String fen, int fromRow, int fromCol, int toRow, int toCol, boolean isWhiteTurn) {
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        
-        // Simula la mossa
-        String movingPiece = board[fromRow][fromCol];
-        String capturedPiece = board[toRow][toCol];
-        
-        board[toRow][toCol] = movingPiece;
-        board[fromRow][fromCol] = null;
-        
-        // Controlla se il re è ancora sotto scacco dopo la mossa
-        boolean stillInCheck = isKingInCheckOnBoard(board, isWhiteTurn);
-        
-        // Ripristina la posizione
-        board[fromRow][fromCol] = movingPiece;
-        board[toRow][toCol] = capturedPiece;
-        
-        return !stillInCheck;
-    }
-    
-    // Versione di isKingInCheck che lavora direttamente su una board
-    private boolean isKingInCheckOnBoard(String[][] board, boolean isWhiteTurn) {
-        // Trova la posizione del re
-        int kingRow = -1, kingCol = -1;
-        char kingPiece = isWhiteTurn ? 'K' : 'k';
-        
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] != null && board[i][j].charAt(0) == kingPiece) {
-                    kingRow = i;
-                    kingCol = j;
-                    break;
-                }
-            }
-        }
-        
-        if (kingRow == -1) return false; // Re non trovato
-        
-        // Controlla se qualche pezzo nemico può attaccare il re
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                String piece = board[i][j];
-                if (piece != null) {
-                    boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                    if (isPieceWhite != isWhiteTurn) { // Pezzo nemico
-                        char pieceType = piece.toLowerCase().charAt(0);
-                        if (isValidPieceMove(pieceType, i, j, kingRow, kingCol, board)) {
-                            return true; // Il re è sotto attacco
-                        }
-                    }
-                }
-            }
-        }
-        
-        return false;
-    }
-
-    private boolean isCheckmate(String fen, boolean isWhiteTurn) {
-        // Prova tutte le mosse possibili per vedere se ce n'è una che elimina lo scacco
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        
-        for (int fromRow = 0; fromRow < 8; fromRow++) {
-            for (int fromCol = 0; fromCol < 8; fromCol++) {
-                String piece = board[fromRow][fromCol];
-                if (piece != null) {
-                    boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                    if (isPieceWhite == isWhiteTurn) { // È un nostro pezzo
-                        for (int toRow = 0; toRow < 8; toRow++) {
-                            for (int toCol = 0; toCol < 8; toCol++) {
-                                String from = "" + (char)('a' + fromCol) + (8 - fromRow);
-                                String to = "" + (char)('a' + toCol) + (8 - toRow);
-                                
-                                if (isValidMove(fen, from, to, "q")) { // Prova la mossa
-                                    String newFen = makeMove(fen, from, to, "q");
-                                    if (!isKingInCheck(newFen, isWhiteTurn)) {
-                                        return false; // Trovata una mossa che elimina lo scacco
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        if (history.isFiftyMoveRule()) {
+            return new GameState(isInCheck, true, "Patta per la regola delle 50 mosse", null, "fifty_moves");
         }
         
-        return true; // Nessuna mossa può eliminare lo scacco = scacco matto
-    }
-    
-    private boolean isStalemate(String fen, boolean isWhiteTurn) {
-        // Simile al checkmate ma senza essere in scacco
-        if (isKingInCheck(fen, isWhiteTurn)) return false; // Non può essere stallo se è in scacco
-        
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        
-        for (int fromRow = 0; fromRow < 8; fromRow++) {
-            for (int fromCol = 0; fromCol < 8; fromCol++) {
-                String piece = board[fromRow][fromCol];
-                if (piece != null) {
-                    boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                    if (isPieceWhite == isWhiteTurn) {
-                        for (int toRow = 0; toRow < 8; toRow++) {
-                            for (int toCol = 0; toCol < 8; toCol++) {
-                                String from = "" + (char)('a' + fromCol) + (8 - fromRow);
-                                String to = "" + (char)('a' + toCol) + (8 - toRow);
-                                
-                                if (isValidMove(fen, from, to, "q")) {
-                                    return false; // Trovata una mossa legale
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        if (isInCheck) {
+            // Fornisci informazioni dettagliate sul tipo di scacco
+            String checkMessage = isInDoubleCheck ? 
+                "Doppio Scacco al " + (isWhiteTurn ? "Bianco" : "Nero") + "!" :
+                "Scacco al " + (isWhiteTurn ? "Bianco" : "Nero");
+            return new GameState(true, false, checkMessage);
         }
         
-        return true; // Nessuna mossa legale = stallo
+        // Gioco normale
+        String turnMessage = "Turno del " + (isWhiteTurn ? "Bianco" : "Nero");
+        return new GameState(false, false, turnMessage);
     }
     
     private String getCurrentTurn(String fen) {
@@ -715,7 +327,12 @@ public class GameController {
             else {
                 // Prova prima il nuovo Stockfish Simple con livello configurabile
                 if (stockfishSimpleService.isAvailable()) {
-                    bestMove = stockfishSimpleService.getBestMoveWithSkillLevel(fen, skillLevel);
+                    // Orologio opzionale (ms): wtime, btime, winc, binc, movestogo
+                    Long movesToGo = longParam(payload.get("movestogo"));
+                    GameClock clock = GameClock.of(longParam(payload.get("wtime")), longParam(payload.get("btime")),
+                            longParam(payload.get("winc")), longParam(payload.get("binc")),
+                            movesToGo != null ? movesToGo.intValue() : null);
+                    bestMove = stockfishSimpleService.getBestMoveWithSkillLevel(fen, skillLevel, clock, payload.get("gameId"));
                     engineUsed = "Stockfish " + skillLevel;
                 }
                 // Fallback al servizio originale
@@ -757,66 +374,161 @@ public class GameController {
         return response;
     }
     
-    private String findRandomValidMove(String fen) {
-        // Implementazione semplificata: troviamo tutte le mosse valide e ne scegliamo una a caso
-        String[][] board = fenToBoard(fen.split(" ")[0]);
-        String[] fenParts = fen.split(" ");
-        boolean isWhiteTurn = "w".equals(fenParts[1]);
-        
-        java.util.List<String> validMoves = new java.util.ArrayList<>();
-        
-        // Trova tutti i pezzi del giocatore corrente (il bot gioca sempre con i neri)
-        for (int fromRow = 0; fromRow < 8; fromRow++) {
-            for (int fromCol = 0; fromCol < 8; fromCol++) {
-                String piece = board[fromRow][fromCol];
-                if (piece != null) {
-                    boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                    // Il bot muove sempre i pezzi neri, quindi cerchiamo solo pezzi neri (!isPieceWhite)
-                    // E deve essere il turno del nero (!isWhiteTurn)
-                    if (isPieceWhite || isWhiteTurn) continue; // Salta se è un pezzo bianco o se è il turno del bianco
-                    
-                    // Prova tutte le caselle come destinazione
-                    for (int toRow = 0; toRow < 8; toRow++) {
-                        for (int toCol = 0; toCol < 8; toCol++) {
-                            if (fromRow == toRow && fromCol == toCol) continue;
-                            
-                            String fromSquare = coordinateToAlgebraic(fromCol, fromRow);
-                            String toSquare = coordinateToAlgebraic(toCol, toRow);
-                            
-                            // Controlla se la mossa è valida
-                            if (isValidMove(fen, fromSquare, toSquare, "q")) {
-                                validMoves.add(fromSquare + toSquare);
-                            }
-                        }
-                    }
-                }
-            }
+    private static Long longParam(String value) {
+        try {
+            return value != null && !value.isBlank() ? Long.valueOf(value.trim()) : null;
+        } catch (NumberFormatException e) {
+            return null;
         }
-        
-        if (validMoves.isEmpty()) {
+    }
+    
+    private String findRandomValidMove(String fen) {
+        // Tutte le mosse legali del giocatore di turno in una passata, poi una a caso
+        Position position = Position.fromFen(fen);
+        MoveList moves = new MoveList();
+        if (MoveGenerator.generate(position, moves) == 0) {
             return null;
         }
         
         // Restituisci una mossa casuale
-        java.util.Random random = new java.util.Random();
-        return validMoves.get(random.nextInt(validMoves.size()));
+        return Position.uci(moves.get(ThreadLocalRandom.current().nextInt(moves.size())));
     }
 
-    // Endpoint per ottenere la valutazione Stockfish 17 per una FEN
+    // Endpoint per ottenere la valutazione Stockfish 17 per una FEN.
+    // Asincrono: una nuova richiesta della stessa sessione di analisi, o la disconnessione del client,
+    // interrompe la ricerca e libera subito il motore.
     @PostMapping("/eval")
     @ResponseBody
-    public Map<String, Object> getEvaluation(@RequestBody Map<String, String> payload) {
+    public DeferredResult<Map<String, Object>> getEvaluation(@RequestBody Map<String, String> payload, HttpServletRequest request) {
         String fen = payload.get("fen");
+        DeferredResult<Map<String, Object>> deferred = new DeferredResult<>(30_000L);
         Map<String, Object> response = new HashMap<>();
         if (fen == null || fen.trim().isEmpty()) {
             response.put("success", false);
             response.put("error", "FEN mancante");
-            return response;
+            deferred.setResult(response);
+            return deferred;
+        }
+
+        EvalEntry cached = stockfishSimpleService.getCachedEvaluation(fen);
+        if (cached != null) {
+            response.put("success", true);
+            response.put("eval", cached.formatScore());
+            deferred.setResult(response);
+            return deferred;
+        }
+
+        // Richieste contemporanee per la stessa posizione condividono una sola ricerca
+        RunningSearch handle = stockfishSimpleService.shareEvaluation(fen);
+        if (handle == null) {
+            response.put("success", false);
+            response.put("eval", null);
+            deferred.setResult(response);
+            return deferred;
         }
-        String eval = stockfishSimpleService.getEvaluation(fen);
-        response.put("success", eval != null);
-        response.put("eval", eval);
+        String session = analysisSession(payload.get("session"), request);
+        analysisSessions.register(session, handle);
+        deferred.onTimeout(() -> analysisSessions.abandon(handle));
+        deferred.onError(e -> analysisSessions.abandon(handle));
+        handle.result().whenComplete((result, error) -> {
+            String eval = result != null ? result.formatScore() : null;
+            response.put("success", eval != null);
+            response.put("eval", eval);
+            // Ricerca interrotta da una richiesta più recente della stessa sessione
+            response.put("superseded", !analysisSessions.isCurrent(session, handle));
+            deferred.setResult(response);
+        });
+        return deferred;
+    }
+
+    // Valutazione in streaming (Server-Sent Events): un evento "info" per ogni profondità migliorata,
+    // poi un evento "bestmove" finale. Se il client si disconnette o la stessa sessione apre un nuovo
+    // stream, la ricerca viene interrotta. Gli eventi partono da SseEventRelay, mai dal thread di lettura del motore.
+    @GetMapping(value = "/eval/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvaluation(@RequestParam String fen, @RequestParam(required = false) String session,
+                                       HttpServletRequest request) {
+        SseEmitter emitter = new SseEmitter(30_000L);
+
+        EvalEntry cached = stockfishSimpleService.getCachedEvaluation(fen);
+        if (cached != null) {
+            sendEvent(emitter, "bestmove", evalEvent(cached.depth(), cached.formatScore(), cached.bestMove(), cached.pv()));
+            emitter.complete();
+            return emitter;
+        }
+
+        AtomicReference<SearchHandle> search = new AtomicReference<>();
+        SseEventRelay relay = new SseEventRelay(emitter, () -> analysisSessions.abandon(search.get()));
+        AtomicInteger lastDepth = new AtomicInteger();
+        SearchHandle handle = stockfishSimpleService.streamEvaluation(fen, info -> {
+            if (info.getMultiPv() != 1 || info.getDepth() <= lastDepth.get()) return;
+            lastDepth.set(info.getDepth());
+            relay.progress("info", evalEvent(info));
+        });
+        if (handle == null) {
+            sendEvent(emitter, "unavailable", Map.of("error", "Stockfish non disponibile"));
+            emitter.complete();
+            return emitter;
+        }
+        search.set(handle);
+        analysisSessions.register(analysisSession(session, request), handle);
+
+        emitter.onCompletion(() -> analysisSessions.abandon(handle));
+        emitter.onTimeout(() -> analysisSessions.abandon(handle));
+        emitter.onError(e -> analysisSessions.abandon(handle));
+        handle.result().whenComplete((result, error) -> {
+            if (result != null) {
+                SearchInfo info = result.info();
+                Map<String, Object> event = info != null
+                        ? evalEvent(info.getDepth(), info.formatScore(), result.bestMove(), info.getPv())
+                        : evalEvent(0, null, result.bestMove(), List.of());
+                event.put("ponder", result.ponderMove());
+                relay.finish("bestmove", event);
+            } else {
+                relay.finish("unavailable", Map.of("error", "Valutazione non riuscita"));
+            }
+        });
+        return emitter;
+    }
+
+    // Interrompe la ricerca in corso di una sessione di analisi (inviato dalla pagina quando viene chiusa)
+    @PostMapping("/eval/cancel")
+    @ResponseBody
+    public Map<String, Object> cancelEvaluation(@RequestBody Map<String, String> payload, HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("cancelled", analysisSessions.cancel(analysisSession(payload.get("session"), request)));
         return response;
     }
 
+    // Sessione di analisi: id inviato dalla pagina (una per scheda), altrimenti la sessione HTTP
+    private String analysisSession(String explicit, HttpServletRequest request) {
+        if (explicit != null && !explicit.isBlank()) {
+            return explicit;
+        }
+        return request.getSession(true).getId();
+    }
+
+    private Map<String, Object> evalEvent(SearchInfo info) {
+        return evalEvent(info.getDepth(), info.formatScore(), info.getBestMove(), info.getPv());
+    }
+
+    private Map<String, Object> evalEvent(int depth, String eval, String bestMove, List<String> pv) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("depth", depth);
+        event.put("eval", eval);
+        event.put("bestMove", bestMove);
+        event.put("pv", pv);
+        return event;
+    }
+
+    // Invia un evento SSE; false se il client non è più connesso
+    private boolean sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
 }
@@ -1,5 +1,16 @@
 package com.chess.chessverse.controller;
 
+import com.chess.chessverse.service.BatchEvaluationService;
+import com.chess.chessverse.service.StockfishSimpleService;
+import com.chess.chessverse.service.book.OpeningBook;
+import com.chess.chessverse.service.engine.AnalysisSessionRegistry;
+import com.chess.chessverse.service.engine.EnginePool;
+import com.chess.chessverse.service.engine.EvalCache;
+import com.chess.chessverse.service.engine.EvalStore;
+import com.chess.chessverse.service.engine.InProcessEngines;
+import com.chess.chessverse.service.tablebase.SyzygyTablebase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 import java.util.HashMap;
@@ -8,11 +19,49 @@ import java.util.Map;
 @RestController
 public class HealthController {
 
+    @Autowired
+    private EnginePool enginePool;
+
+    @Autowired
+    private EvalCache evalCache;
+
+    @Autowired
+    private EvalStore evalStore;
+
+    @Autowired
+    private InProcessEngines inProcessEngines;
+
+    @Autowired
+    private AnalysisSessionRegistry analysisSessions;
+
+    @Autowired
+    private BatchEvaluationService batchEvaluationService;
+
+    @Autowired
+    private OpeningBook openingBook;
+
+    @Autowired
+    private SyzygyTablebase tablebase;
+
+    @Autowired
+    @Qualifier("stockfishSimple")
+    private StockfishSimpleService stockfishSimpleService;
+
     @GetMapping("/api/health")
     public Map<String,Object> health(){
         Map<String,Object> res = new HashMap<>();
         res.put("status","UP");
         res.put("ok",true);
+        res.put("enginePool", enginePool.getStats());
+        res.put("evalCache", evalCache.getStats());
+        res.put("evalStore", evalStore.getStats());
+        res.put("inProcess", inProcessEngines.getStats());
+        res.put("analysisSessions", analysisSessions.getStats());
+        res.put("evalBatch", batchEvaluationService.getStats());
+        res.put("inFlight", stockfishSimpleService.getInFlightStats());
+        res.put("botGames", stockfishSimpleService.getBotGameStats());
+        res.put("openingBook", openingBook.getStats());
+        res.put("tablebase", tablebase.getStats());
         return res;
     }
 }
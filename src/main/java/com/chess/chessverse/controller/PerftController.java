@@ -0,0 +1,57 @@
+package com.chess.chessverse.controller;
+
+import com.chess.chessverse.service.PerftService;
+import com.chess.chessverse.service.rules.Position;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Perft del generatore di mosse: GET /api/perft esegue la suite (correttezza e nodi al secondo),
+ * POST /api/perft/diff confronta il conteggio per mossa con Stockfish su una FEN.
+ */
+@RestController
+@RequestMapping("/api/perft")
+public class PerftController {
+
+    // Oltre la profondità 6 la suite richiede minuti anche in parallelo
+    private static final int MAX_DEPTH = 6;
+    private static final int DEFAULT_SUITE_DEPTH = 4;
+
+    @Autowired
+    private PerftService perftService;
+
+    @GetMapping
+    public Map<String, Object> suite(@RequestParam(required = false) Integer depth,
+                                     @RequestParam(defaultValue = "false") boolean parallel) {
+        int maxDepth = depth != null && depth > 0 ? Math.min(MAX_DEPTH, depth) : DEFAULT_SUITE_DEPTH;
+        return perftService.runSuite(maxDepth, parallel);
+    }
+
+    // { fen, depth }: mosse su cui il generatore e "go perft" di Stockfish non sono d'accordo
+    @PostMapping("/diff")
+    public Map<String, Object> diff(@RequestBody Map<String, Object> payload) {
+        Map<String, Object> response = new HashMap<>();
+        Object fen = payload.get("fen");
+        Object depth = payload.get("depth");
+        int perftDepth;
+        try {
+            perftDepth = depth != null ? Math.min(MAX_DEPTH, Math.max(1, Integer.parseInt(depth.toString()))) : 3;
+        } catch (NumberFormatException e) {
+            response.put("success", false);
+            response.put("error", "Profondità non valida");
+            return response;
+        }
+
+        try {
+            return perftService.compareWithEngine(fen != null ? fen.toString().trim() : Position.START_FEN, perftDepth);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.put("success", false);
+            response.put("error", "Richiesta interrotta");
+        }
+        return response;
+    }
+}
@@ -0,0 +1,94 @@
+package com.chess.chessverse.controller;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Invio degli eventi SSE di una ricerca fuori dal thread di lettura del motore: un client lento non deve
+ * bloccare la lettura dell'output di Stockfish (e con essa "bestmove" e lo stop delle altre ricerche).
+ * <p>
+ * Gli eventi intermedi non si accodano: se il client non ha ancora ricevuto il precedente, il nuovo lo sostituisce.
+ * L'evento finale viene inviato dopo l'ultimo intermedio, poi lo stream si chiude.
+ */
+class SseEventRelay {
+
+    // Pochi thread condivisi da tutti gli stream: ognuno ha al massimo un invio in coda
+    private static final ExecutorService SENDERS = Executors.newFixedThreadPool(4, r -> {
+        Thread t = new Thread(r, "sse-sender");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private record Event(String name, Object data) {
+    }
+
+    private final SseEmitter emitter;
+    private final Runnable onDisconnect;
+    private final AtomicReference<Event> pending = new AtomicReference<>();
+    private final AtomicReference<Event> last = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    /**
+     * onDisconnect viene chiamato (dal thread di invio) quando un evento non arriva al client
+     */
+    SseEventRelay(SseEmitter emitter, Runnable onDisconnect) {
+        this.emitter = emitter;
+        this.onDisconnect = onDisconnect;
+    }
+
+    /**
+     * Evento intermedio: sostituisce quello non ancora inviato
+     */
+    void progress(String name, Object data) {
+        pending.set(new Event(name, data));
+        schedule();
+    }
+
+    /**
+     * Evento finale: inviato dopo l'eventuale intermedio in attesa, poi lo stream viene chiuso
+     */
+    void finish(String name, Object data) {
+        last.set(new Event(name, data));
+        schedule();
+    }
+
+    private void schedule() {
+        if (!closed && scheduled.compareAndSet(false, true)) {
+            SENDERS.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Event event;
+            while (!closed && (event = pending.getAndSet(null)) != null) {
+                send(event);
+            }
+            if (!closed && (event = last.getAndSet(null)) != null) {
+                send(event);
+                closed = true;
+                emitter.complete();
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // Un evento arrivato mentre il drain terminava non deve restare in attesa
+        if (!closed && (pending.get() != null || last.get() != null)) schedule();
+    }
+
+    private void send(Event event) {
+        try {
+            emitter.send(SseEmitter.event().name(event.name()).data(event.data(), MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            closed = true;
+            onDisconnect.run();
+        }
+    }
+}
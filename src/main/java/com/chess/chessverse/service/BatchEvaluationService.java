@@ -0,0 +1,307 @@
+package com.chess.chessverse.service;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.engine.EnginePool;
+import com.chess.chessverse.service.engine.EnginePriority;
+import com.chess.chessverse.service.engine.EvalCache;
+import com.chess.chessverse.service.engine.EvalEntry;
+import com.chess.chessverse.service.engine.InProcessEngines;
+import com.chess.chessverse.service.engine.SearchHandle;
+import com.chess.chessverse.service.engine.SearchResult;
+import com.chess.chessverse.service.engine.UciEngine;
+import com.chess.chessverse.service.rules.Position;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Valutazione di molte posizioni in parallelo (preparazione aperture, verifica dei puzzle).
+ * Le posizioni già in cache rispondono subito; le altre finiscono in una coda consumata da un worker
+ * per ogni motore del pool, che tiene il proprio motore tra una posizione e l'altra finché nessuna richiesta
+ * più urgente (mossa del bot, valutazione dal vivo) lo reclama. Con stockfish.in-process.batch le posizioni a
+ * profondità o nodi fissi passano prima da {@link InProcessEngines}, senza il protocollo UCI.
+ * I risultati arrivano al chiamante nell'ordine in cui vengono completati.
+ */
+@Service
+public class BatchEvaluationService {
+
+    // Tempo massimo per una singola posizione con budget a profondità o nodi
+    private static final long FIXED_BUDGET_TIMEOUT_MS = 60_000;
+
+    // Il batch ha la priorità più bassa: sotto carico può attendere a lungo un motore prima di arrendersi
+    private static final long LEASE_TIMEOUT_MS = 60_000;
+
+    private static final AtomicInteger WORKER_SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private EnginePool enginePool;
+
+    @Autowired
+    private EvalCache evalCache;
+
+    @Autowired
+    private InProcessEngines inProcessEngines;
+
+    @Autowired
+    private EngineProperties properties;
+
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "eval-batch-" + WORKER_SEQUENCE.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong positions = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong searched = new AtomicLong();
+    private final AtomicLong searchedInProcess = new AtomicLong();
+    private final AtomicLong preempted = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * Una posizione con il suo budget: vale il primo tra depth, nodes e movetime maggiore di zero
+     */
+    public record Job(int index, String id, String fen, int depth, long nodes, int moveTimeMs) {
+
+        String goCommand() {
+            if (depth > 0) return "go depth " + depth;
+            if (nodes > 0) return "go nodes " + nodes;
+            return "go movetime " + moveTimeMs;
+        }
+
+        long timeoutMs() {
+            return depth > 0 || nodes > 0 ? FIXED_BUDGET_TIMEOUT_MS : moveTimeMs + 3000L;
+        }
+
+        // Profondità che una voce in cache deve avere per valere come risultato; per nodi e tempo
+        // si usa la stessa soglia di /api/eval
+        int cacheDepth(int minEvalDepth) {
+            return depth > 0 ? depth : minEvalDepth;
+        }
+    }
+
+    public record Result(Job job, EvalEntry entry, boolean cached, String error) { }
+
+    /**
+     * Avvia il batch e restituisce subito. Ogni risultato viene passato a sink (da più thread, uno alla volta);
+     * se sink lancia un'eccezione il batch viene interrotto.
+     */
+    public BatchRun submit(List<Job> jobs, Consumer<Result> sink) {
+        batches.incrementAndGet();
+        positions.addAndGet(jobs.size());
+        running.incrementAndGet();
+        BatchRun run = new BatchRun(jobs.size(), sink);
+
+        int minEvalDepth = properties.getCache().getMinEvalDepth();
+        for (Job job : jobs) {
+            // Una posizione impossibile non arriva mai a Stockfish: potrebbe mandare in crash il motore
+            Position position = Position.playable(job.fen());
+            if (position == null) {
+                run.emit(new Result(job, null, false, "FEN non valida"));
+                continue;
+            }
+            long key = position.key();
+            EvalEntry cached = evalCache.get(key, job.cacheDepth(minEvalDepth));
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                run.emit(new Result(job, cached, true, null));
+            } else {
+                run.queue.add(new Pending(job, key));
+            }
+        }
+
+        if (run.queue.isEmpty()) {
+            return run;
+        }
+        if (!enginePool.isAvailable() && !inProcessEngines.isAvailable()) {
+            run.failRemaining("Stockfish non disponibile");
+            return run;
+        }
+        int workerCount = Math.min(run.queue.size(), Math.max(1, properties.getPool().getMaxSize()));
+        run.workers.set(workerCount);
+        run.engines = workerCount;
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(() -> work(run));
+        }
+        return run;
+    }
+
+    private void work(BatchRun run) {
+        UciEngine engine = null;
+        boolean inProcess = properties.getInProcess().isBatch() && inProcessEngines.isAvailable();
+        try {
+            while (!run.cancelled && !run.queue.isEmpty()) {
+                Pending pending = run.queue.poll();
+                if (pending == null) break;
+
+                // Budget a profondità o nodi fissi: prima Stockfish nel processo, il pool solo se è occupato
+                if (inProcess && (pending.job.depth() > 0 || pending.job.nodes() > 0)) {
+                    SearchResult result = inProcessEngines.search(pending.job.fen(), pending.job.goCommand(), 20);
+                    EvalEntry entry = EvalEntry.of(result);
+                    if (entry != null) {
+                        searched.incrementAndGet();
+                        searchedInProcess.incrementAndGet();
+                        evalCache.put(pending.key, entry);
+                        run.emit(new Result(pending.job, entry, false, null));
+                        continue;
+                    }
+                }
+
+                if (engine == null) {
+                    engine = enginePool.lease(EnginePriority.BATCH, LEASE_TIMEOUT_MS);
+                    if (engine == null) {
+                        // Pool occupato: se restano altri worker proseguono loro, altrimenti il batch non può finire
+                        run.queue.add(pending);
+                        return;
+                    }
+                    engine.setOption("Skill Level", 20);
+                }
+
+                SearchResult result;
+                SearchHandle handle = null;
+                try {
+                    handle = engine.search(pending.job.fen(), pending.job.goCommand(), null);
+                    run.active.add(handle);
+                    if (run.cancelled) handle.stop();
+                    result = handle.await(pending.job.timeoutMs());
+                    run.active.remove(handle);
+                } catch (RuntimeException e) {
+                    engine.markBroken();
+                    result = null;
+                }
+
+                // Interrotta per una mossa del bot: la posizione torna in coda e verrà cercata di nuovo per intero
+                if (handle != null && handle.wasPreempted() && engine.isHealthy() && !run.cancelled) {
+                    preempted.incrementAndGet();
+                    run.queue.add(pending);
+                    enginePool.release(engine);
+                    engine = null;
+                    continue;
+                }
+
+                EvalEntry entry = EvalEntry.of(result);
+                if (entry != null) {
+                    searched.incrementAndGet();
+                    evalCache.put(pending.key, entry);
+                    run.emit(new Result(pending.job, entry, false, null));
+                } else {
+                    run.emit(new Result(pending.job, null, false, "Valutazione non riuscita"));
+                }
+
+                // Un motore caduto (es. FEN che Stockfish non accetta) viene sostituito dal pool; se in coda c'è
+                // una richiesta più urgente il motore le viene ceduto e il worker tornerà in coda con priorità BATCH
+                if (!engine.isHealthy() || enginePool.shouldYield(engine)) {
+                    enginePool.release(engine);
+                    engine = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            enginePool.release(engine);
+            // L'ultimo worker che esce chiude il batch: anche quando ha trovato la coda vuota, un altro worker
+            // può avervi rimesso la sua posizione dopo un lease scaduto
+            if (run.workers.decrementAndGet() == 0 && !run.queue.isEmpty()) {
+                run.failRemaining("Nessun motore Stockfish libero");
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("batches", batches.get());
+        stats.put("running", running.get());
+        stats.put("positions", positions.get());
+        stats.put("cacheHits", cacheHits.get());
+        stats.put("searched", searched.get());
+        stats.put("searchedInProcess", searchedInProcess.get());
+        stats.put("preempted", preempted.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private record Pending(Job job, long key) { }
+
+    /**
+     * Un batch in corso: {@link #cancel()} interrompe le ricerche attive e scarta la coda,
+     * {@link #done()} si completa quando tutte le posizioni hanno un risultato (o il batch è stato annullato).
+     */
+    public class BatchRun {
+
+        private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+        private final Set<SearchHandle> active = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger workers = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final Consumer<Result> sink;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final long startedAt = System.currentTimeMillis();
+        private final int total;
+        private volatile boolean cancelled = false;
+        private volatile int engines = 0;
+
+        private BatchRun(int total, Consumer<Result> sink) {
+            this.total = total;
+            this.remaining = new AtomicInteger(total);
+            this.sink = sink;
+            if (total == 0) finish();
+        }
+
+        public void cancel() {
+            if (cancelled) return;
+            cancelled = true;
+            queue.clear();
+            active.forEach(SearchHandle::stop);
+            finish();
+        }
+
+        public CompletableFuture<Void> done() {
+            return done;
+        }
+
+        private void emit(Result result) {
+            if (cancelled) return;
+            try {
+                synchronized (this) {
+                    sink.accept(result);
+                }
+            } catch (RuntimeException e) {
+                cancel();
+                return;
+            }
+            if (remaining.decrementAndGet() == 0) finish();
+        }
+
+        private void failRemaining(String error) {
+            Pending pending;
+            while ((pending = queue.poll()) != null) {
+                emit(new Result(pending.job, null, false, error));
+            }
+        }
+
+        private void finish() {
+            if (!done.complete(null)) return;
+            running.decrementAndGet();
+            if (total > 0) {
+                long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+                System.out.println("📦 Batch di " + total + " posizioni " + (cancelled ? "annullato" : "completato")
+                        + " in " + elapsed + " ms (" + (total - remaining.get()) * 1000L / elapsed + " pos/s, "
+                        + engines + " motori)");
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.chess.chessverse.service;
+
+import com.chess.chessverse.service.engine.PositionKey;
+import com.chess.chessverse.service.engine.UciEngine;
+import com.chess.chessverse.service.rules.MoveGenerator;
+import com.chess.chessverse.service.rules.MoveList;
+import com.chess.chessverse.service.rules.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Una partita contro il bot vista dal server: posizione di partenza e mosse giocate, per inviare al motore
+ * "position fen ... moves ..." invece di una FEN isolata, e il motore su cui la partita preferisce tornare.
+ * Il client invia solo la FEN corrente: la mossa dell'utente si ricava confrontandola con la posizione
+ * lasciata dall'ultima mossa del bot. Non è thread-safe: le mosse della stessa partita si sincronizzano sull'istanza.
+ */
+class BotGame {
+
+    private String startFen;
+    private final List<String> moves = new ArrayList<>();
+    // Posizione dopo l'ultima mossa nota, aggiornata con makeMove senza passare dalla FEN
+    private Position position;
+    private final MoveList legalMoves = new MoveList();
+    private UciEngine engine;
+    private volatile long lastUsedAt = System.currentTimeMillis();
+
+    /**
+     * Porta la partita alla posizione fen: se è raggiungibile con una mossa legale dall'ultima posizione nota
+     * la mossa si aggiunge alla lista, altrimenti (nuova partita, annullamento, FEN modificata) si riparte da fen
+     */
+    void advanceTo(String fen) {
+        lastUsedAt = System.currentTimeMillis();
+        if (position != null) {
+            try {
+                long target = PositionKey.of(fen);
+                if (position.key() == target) return;
+                MoveGenerator.generate(position, legalMoves);
+                for (int i = 0; i < legalMoves.size(); i++) {
+                    int move = legalMoves.get(i);
+                    position.makeMove(move);
+                    if (position.key() == target) {
+                        moves.add(Position.uci(move));
+                        return;
+                    }
+                    position.unmakeMove(move);
+                }
+            } catch (RuntimeException e) {
+                // FEN non leggibile: si riparte da quella ricevuta
+            }
+        }
+        startFen = fen;
+        moves.clear();
+        try {
+            position = Position.fromFen(fen);
+        } catch (IllegalArgumentException e) {
+            position = null;
+        }
+    }
+
+    /**
+     * Registra la mossa del bot giocata dalla posizione corrente
+     */
+    void played(String move) {
+        if (position != null) position.makeMove(position.parseUci(move));
+        moves.add(move);
+    }
+
+    String getStartFen() { return startFen; }
+    List<String> getMoves() { return List.copyOf(moves); }
+    UciEngine getEngine() { return engine; }
+    void setEngine(UciEngine engine) { this.engine = engine; }
+    long getLastUsedAt() { return lastUsedAt; }
+}
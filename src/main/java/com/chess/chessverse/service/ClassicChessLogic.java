@@ -1,7 +1,13 @@
 package com.chess.chessverse.service;
 
+import com.chess.chessverse.service.rules.MoveGenerator;
+import com.chess.chessverse.service.rules.MoveList;
+import com.chess.chessverse.service.rules.Position;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class ClassicChessLogic {
     
@@ -10,96 +16,13 @@ public class ClassicChessLogic {
      */
     public String updateFEN(String fen, String from, String to, String promotion) {
         try {
-            String[] parts = fen.split(" ");
-            String board = parts[0];
-            String turn = parts[1];
-            String castlingRights = parts[2];
-            String enPassantTarget = parts[3];
-            int halfmoveClock = Integer.parseInt(parts[4]);
-            int fullmoveNumber = Integer.parseInt(parts[5]);
-            
-            // Converti coordinate algebraiche a indici
-            int fromCol = from.charAt(0) - 'a';
-            int fromRow = 8 - (from.charAt(1) - '0');
-            int toCol = to.charAt(0) - 'a';
-            int toRow = 8 - (to.charAt(1) - '0');
-            
-            // Converti FEN in array 2D
-            String[][] chessBoard = fenToBoard(board);
-            String piece = chessBoard[fromRow][fromCol];
-            
-            boolean isWhite = Character.isUpperCase(piece.charAt(0));
-            boolean isCapture = chessBoard[toRow][toCol] != null;
-            boolean isPawnMove = piece.toLowerCase().charAt(0) == 'p';
-            
-            // Gestisci arrocco
-            if (piece.toLowerCase().charAt(0) == 'k' && Math.abs(toCol - fromCol) == 2) {
-                if (canCastle(fen, from, to)) {
-                    // Esegui arrocco
-                    chessBoard[fromRow][fromCol] = null;
-                    chessBoard[toRow][toCol] = piece;
-                    
-                    // Muovi la torre
-                    if (toCol == 6) { // Arrocco corto
-                        String rook = chessBoard[fromRow][7];
-                        chessBoard[fromRow][7] = null;
-                        chessBoard[fromRow][5] = rook;
-                    } else { // Arrocco lungo
-                        String rook = chessBoard[fromRow][0];
-                        chessBoard[fromRow][0] = null;
-                        chessBoard[fromRow][3] = rook;
-                    }
-                }
-            }
-            // Gestisci en passant
-            else if (isPawnMove && toCol != fromCol && chessBoard[toRow][toCol] == null) {
-                if (canEnPassant(fen, from, to)) {
-                    // Esegui en passant
-                    chessBoard[fromRow][fromCol] = null;
-                    chessBoard[toRow][toCol] = piece;
-                    // Rimuovi il pedone catturato
-                    chessBoard[fromRow][toCol] = null;
-                }
+            Position position = Position.fromFen(fen);
+            int move = position.move(from, to, promotion);
+            if (move == Position.NO_MOVE || position.pieceAt(Position.from(move)) == 0) {
+                return fen;
             }
-            // Mossa normale
-            else {
-                chessBoard[fromRow][fromCol] = null;
-                
-                // Gestisci promozione pedone
-                if (isPawnMove && ((isWhite && toRow == 0) || (!isWhite && toRow == 7))) {
-                    if (promotion != null && !promotion.isEmpty()) {
-                        char promotionPiece = promotion.charAt(0);
-                        piece = isWhite ? String.valueOf(Character.toUpperCase(promotionPiece)) : 
-                                         String.valueOf(Character.toLowerCase(promotionPiece));
-                    } else {
-                        piece = isWhite ? "Q" : "q";
-                    }
-                }
-                
-                chessBoard[toRow][toCol] = piece;
-            }
-            
-            // Aggiorna diritti di arrocco
-            String newCastlingRights = updateCastlingRights(castlingRights, from, to, piece);
-            
-            // Aggiorna en passant target
-            String newEnPassantTarget = updateEnPassantTarget(from, to, piece);
-            
-            // Aggiorna halfmove clock
-            int newHalfmoveClock = (isCapture || isPawnMove) ? 0 : halfmoveClock + 1;
-            
-            // Aggiorna fullmove number
-            int newFullmoveNumber = turn.equals("b") ? fullmoveNumber + 1 : fullmoveNumber;
-            
-            // Cambia turno
-            String newTurn = turn.equals("w") ? "b" : "w";
-            
-            // Converti board in FEN
-            String newBoard = boardToFen(chessBoard);
-            
-            return newBoard + " " + newTurn + " " + newCastlingRights + " " + 
-                   newEnPassantTarget + " " + newHalfmoveClock + " " + newFullmoveNumber;
-                   
+            position.makeMove(move);
+            return position.toFen();
         } catch (Exception e) {
             return fen; // Ritorna FEN originale in caso di errore
         }
@@ -109,247 +32,125 @@ public class ClassicChessLogic {
      * Verifica se l'arrocco è possibile
      */
     public boolean canCastle(String fen, String from, String to) {
-        String[] parts = fen.split(" ");
-        String board = parts[0];
-        String turn = parts[1];
-        String castlingRights = parts[2];
-        
-        // Converti coordinate
-        int fromCol = from.charAt(0) - 'a';
-        int fromRow = 8 - (from.charAt(1) - '0');
-        int toCol = to.charAt(0) - 'a';
-        
-        boolean isWhite = turn.equals("w");
-        boolean isKingside = toCol == 6;
-        boolean isQueenside = toCol == 2;
-        
-        // Verifica diritti di arrocco
-        if (isWhite) {
-            if (isKingside && !castlingRights.contains("K")) return false;
-            if (isQueenside && !castlingRights.contains("Q")) return false;
-        } else {
-            if (isKingside && !castlingRights.contains("k")) return false;
-            if (isQueenside && !castlingRights.contains("q")) return false;
-        }
-        
-        // Verifica che le caselle siano libere
-        String[][] chessBoard = fenToBoard(board);
-        
-        if (isKingside) {
-            if (chessBoard[fromRow][5] != null || chessBoard[fromRow][6] != null) return false;
-        } else {
-            if (chessBoard[fromRow][1] != null || chessBoard[fromRow][2] != null || chessBoard[fromRow][3] != null) return false;
-        }
-        
-        // Verifica che il re non sia sotto scacco e non passi attraverso caselle attaccate
-        if (isSquareUnderAttack(fen, from, !isWhite)) return false;
-        
-        String middleSquare = isKingside ? 
-            String.valueOf((char)('a' + 5)) + from.charAt(1) :
-            String.valueOf((char)('a' + 3)) + from.charAt(1);
-        
-        if (isSquareUnderAttack(fen, middleSquare, !isWhite)) return false;
-        if (isSquareUnderAttack(fen, to, !isWhite)) return false;
-        
-        return true;
+        Position position = Position.fromFen(fen);
+        int fromSquare = Position.square(from);
+        int toSquare = Position.square(to);
+        if (fromSquare < 0 || toSquare < 0 || Math.abs(toSquare - fromSquare) != 2) return false;
+        if (Position.typeOf(position.pieceAt(fromSquare)) != Position.KING) return false;
+        
+        // Diritti, torre al suo posto, case libere e re mai sotto attacco lungo il percorso
+        return position.isLegal(Position.move(fromSquare, toSquare, 0));
     }
     
     /**
-     * Verifica se l'en passant è possibile
+     * Verifica se una mossa è legale: il pezzo del lato che muove può raggiungere la casella
+     * e il proprio re non resta sotto scacco dopo la mossa
      */
-    public boolean canEnPassant(String fen, String from, String to) {
-        String[] parts = fen.split(" ");
-        String enPassantTarget = parts[3];
-        
-        // Se non c'è target en passant, non è possibile
-        if (enPassantTarget.equals("-")) return false;
-        
-        // Verifica che la mossa corrisponda al target en passant
-        return to.equals(enPassantTarget);
-    }
-    
-    /**
-     * Converte FEN board in array 2D
-     */
-    private String[][] fenToBoard(String fen) {
-        String[][] board = new String[8][8];
-        String[] rows = fen.split("/");
-        
-        for (int i = 0; i < 8; i++) {
-            String row = rows[i];
-            int col = 0;
-            
-            for (char c : row.toCharArray()) {
-                if (Character.isDigit(c)) {
-                    int emptySquares = c - '0';
-                    for (int j = 0; j < emptySquares; j++) {
-                        board[i][col++] = null;
-                    }
-                } else {
-                    board[i][col++] = String.valueOf(c);
-                }
-            }
+    public boolean isLegalMove(String fen, String from, String to) {
+        try {
+            Position position = Position.fromFen(fen);
+            int move = position.move(from, to, null);
+            return move != Position.NO_MOVE && position.isLegal(move);
+        } catch (RuntimeException e) {
+            return false;
         }
-        
-        return board;
     }
     
     /**
-     * Converte array 2D in FEN board
+     * Tutte le mosse legali del lato che muove in notazione UCI; le promozioni compaiono una volta sola, a donna
      */
-    private String boardToFen(String[][] board) {
-        StringBuilder fen = new StringBuilder();
-        
-        for (int i = 0; i < 8; i++) {
-            if (i > 0) fen.append("/");
-            
-            int emptyCount = 0;
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == null) {
-                    emptyCount++;
-                } else {
-                    if (emptyCount > 0) {
-                        fen.append(emptyCount);
-                        emptyCount = 0;
-                    }
-                    fen.append(board[i][j]);
-                }
-            }
-            
-            if (emptyCount > 0) {
-                fen.append(emptyCount);
-            }
+    public List<String> legalMoves(String fen) {
+        Position position = Position.fromFen(fen);
+        MoveList list = new MoveList();
+        int count = MoveGenerator.generate(position, list);
+        List<String> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int move = list.get(i);
+            int promotion = Position.promotion(move);
+            if (promotion == 0 || promotion == Position.QUEEN) moves.add(Position.uci(move));
         }
-        
-        return fen.toString();
+        return moves;
     }
     
     /**
-     * Verifica se una casella è sotto attacco
+     * Converte una mossa in notazione algebrica (SAN, es. "Nbd7", "exd5", "O-O", "e8=Q+") nella notazione
+     * UCI ("b8d7", "e4d5", "e1g1", "e7e8q"). Restituisce null se la mossa non è legale o è ambigua.
      */
-    private boolean isSquareUnderAttack(String fen, String square, boolean byWhite) {
-        // Implementazione semplificata - verifica solo attacchi diretti
+    public String sanToUci(String fen, String san) {
         String[] parts = fen.split(" ");
-        String board = parts[0];
-        String[][] chessBoard = fenToBoard(board);
-        
-        int targetCol = square.charAt(0) - 'a';
-        int targetRow = 8 - (square.charAt(1) - '0');
-        
-        // Cerca pezzi che possono attaccare la casella target
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                String piece = chessBoard[row][col];
-                if (piece == null) continue;
-                
-                boolean isPieceWhite = Character.isUpperCase(piece.charAt(0));
-                if (isPieceWhite != byWhite) continue;
-                
-                // Verifica se questo pezzo può attaccare la casella target
-                if (canPieceAttack(chessBoard, row, col, targetRow, targetCol, piece.toLowerCase().charAt(0))) {
-                    return true;
-                }
-            }
+        boolean isWhite = parts[1].equals("w");
+        String move = san.replaceAll("[+#?!]", "").trim();
+        if (move.isEmpty()) return null;
+        
+        // Arrocco
+        if (move.startsWith("O-O") || move.startsWith("0-0")) {
+            String rank = isWhite ? "1" : "8";
+            String from = "e" + rank;
+            String to = (move.length() >= 5 ? "c" : "g") + rank;
+            return isLegalMove(fen, from, to) ? from + to : null;
         }
         
-        return false;
-    }
-    
-    /**
-     * Verifica se un pezzo può attaccare una casella specifica
-     */
-    private boolean canPieceAttack(String[][] board, int fromRow, int fromCol, int toRow, int toCol, char pieceType) {
-        int deltaRow = toRow - fromRow;
-        int deltaCol = toCol - fromCol;
-        
-        switch (pieceType) {
-            case 'p': // Pedone
-                boolean isWhite = Character.isUpperCase(board[fromRow][fromCol].charAt(0));
-                int direction = isWhite ? -1 : 1;
-                return deltaRow == direction && Math.abs(deltaCol) == 1;
-                
-            case 'r': // Torre
-                return (deltaRow == 0 || deltaCol == 0) && isPathClear(board, fromRow, fromCol, toRow, toCol);
-                
-            case 'n': // Cavallo
-                return (Math.abs(deltaRow) == 2 && Math.abs(deltaCol) == 1) || 
-                       (Math.abs(deltaRow) == 1 && Math.abs(deltaCol) == 2);
-                
-            case 'b': // Alfiere
-                return Math.abs(deltaRow) == Math.abs(deltaCol) && isPathClear(board, fromRow, fromCol, toRow, toCol);
-                
-            case 'q': // Regina
-                return ((deltaRow == 0 || deltaCol == 0) || (Math.abs(deltaRow) == Math.abs(deltaCol))) &&
-                       isPathClear(board, fromRow, fromCol, toRow, toCol);
-                
-            case 'k': // Re
-                return Math.abs(deltaRow) <= 1 && Math.abs(deltaCol) <= 1;
+        // Promozione: "e8=Q" oppure "e8Q"
+        String promotion = "";
+        int equals = move.indexOf('=');
+        if (equals >= 0) {
+            promotion = move.substring(equals + 1).toLowerCase();
+            move = move.substring(0, equals);
+        } else if (Character.isLowerCase(move.charAt(0)) && "QRBN".indexOf(move.charAt(move.length() - 1)) >= 0) {
+            promotion = String.valueOf(Character.toLowerCase(move.charAt(move.length() - 1)));
+            move = move.substring(0, move.length() - 1);
         }
-        
-        return false;
-    }
-    
-    /**
-     * Verifica se il percorso tra due caselle è libero
-     */
-    private boolean isPathClear(String[][] board, int fromRow, int fromCol, int toRow, int toCol) {
-        int deltaRow = Integer.signum(toRow - fromRow);
-        int deltaCol = Integer.signum(toCol - fromCol);
-        
-        int currentRow = fromRow + deltaRow;
-        int currentCol = fromCol + deltaCol;
-        
-        while (currentRow != toRow || currentCol != toCol) {
-            if (board[currentRow][currentCol] != null) {
-                return false;
-            }
-            currentRow += deltaRow;
-            currentCol += deltaCol;
+        // "=Q" senza casa di arrivo o un pezzo di promozione inesistente ("e8=K", "e8=")
+        if (move.isEmpty()) return null;
+        if (equals >= 0 && (promotion.length() != 1 || "nbrq".indexOf(promotion.charAt(0)) < 0)) return null;
+        
+        char pieceType = 'p';
+        if ("KQRBN".indexOf(move.charAt(0)) >= 0) {
+            pieceType = Character.toLowerCase(move.charAt(0));
+            move = move.substring(1);
         }
-        
-        return true;
-    }
-    
-    /**
-     * Aggiorna i diritti di arrocco dopo una mossa
-     */
-    private String updateCastlingRights(String castlingRights, String from, String to, String piece) {
-        StringBuilder newRights = new StringBuilder(castlingRights);
-        
-        // Se il re si muove, perde tutti i diritti di arrocco
-        if (piece.toLowerCase().charAt(0) == 'k') {
-            if (Character.isUpperCase(piece.charAt(0))) {
-                newRights = new StringBuilder(newRights.toString().replace("K", "").replace("Q", ""));
-            } else {
-                newRights = new StringBuilder(newRights.toString().replace("k", "").replace("q", ""));
+        move = move.replace("x", "").replace("-", "");
+        if (move.length() < 2) return null;
+        
+        String to = move.substring(move.length() - 2);
+        String hint = move.substring(0, move.length() - 2); // disambiguazione: colonna, traversa o casella
+        
+        Position position = Position.fromFen(fen);
+        int type = " pnbrqk".indexOf(pieceType);
+        String found = null;
+        for (long b = position.pieces(position.sideToMove(), type); b != 0; b &= b - 1) {
+            String from = Position.squareName(Long.numberOfTrailingZeros(b));
+            boolean matchesHint = true;
+            for (char c : hint.toCharArray()) {
+                if (c != from.charAt(0) && c != from.charAt(1)) matchesHint = false;
+            }
+            if (matchesHint && position.isLegal(position.move(from, to, null))) {
+                if (found != null) return null;
+                found = from;
             }
         }
+        if (found == null) return null;
         
-        // Se una torre si muove o viene catturata, perde il diritto di arrocco
-        if (from.equals("a1") || to.equals("a1")) newRights = new StringBuilder(newRights.toString().replace("Q", ""));
-        if (from.equals("h1") || to.equals("h1")) newRights = new StringBuilder(newRights.toString().replace("K", ""));
-        if (from.equals("a8") || to.equals("a8")) newRights = new StringBuilder(newRights.toString().replace("q", ""));
-        if (from.equals("h8") || to.equals("h8")) newRights = new StringBuilder(newRights.toString().replace("k", ""));
-        
-        return newRights.length() > 0 ? newRights.toString() : "-";
+        if (pieceType == 'p' && promotion.isEmpty() && (to.charAt(1) == '8' || to.charAt(1) == '1')) {
+            promotion = "q";
+        }
+        return found + to + promotion;
     }
     
     /**
-     * Aggiorna il target en passant dopo una mossa
+     * Verifica se l'en passant è possibile: un pedone del lato che muove prende sulla casa en passant
+     * e il proprio re non resta sotto scacco (anche per la traversa che si libera)
      */
-    private String updateEnPassantTarget(String from, String to, String piece) {
-        // Se un pedone si muove di due caselle, imposta en passant target
-        if (piece.toLowerCase().charAt(0) == 'p') {
-            int fromRow = 8 - (from.charAt(1) - '0');
-            int toRow = 8 - (to.charAt(1) - '0');
-            
-            if (Math.abs(toRow - fromRow) == 2) {
-                int targetRow = (fromRow + toRow) / 2;
-                char targetCol = from.charAt(0);
-                return String.valueOf(targetCol) + (8 - targetRow);
-            }
+    public boolean canEnPassant(String fen, String from, String to) {
+        try {
+            Position position = Position.fromFen(fen);
+            int fromSquare = Position.square(from);
+            int toSquare = Position.square(to);
+            if (fromSquare < 0 || toSquare < 0 || toSquare != position.epSquare()) return false;
+            if (Position.typeOf(position.pieceAt(fromSquare)) != Position.PAWN) return false;
+            return position.isLegal(Position.move(fromSquare, toSquare, 0));
+        } catch (RuntimeException e) {
+            return false;
         }
-        
-        return "-";
     }
 }
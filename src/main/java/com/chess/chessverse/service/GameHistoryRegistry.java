@@ -0,0 +1,53 @@
+package com.chess.chessverse.service;
+
+import com.chess.chessverse.service.rules.GameHistory;
+import com.chess.chessverse.service.rules.Position;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Storia delle partite giocate con /api/game/move, per gameId. Il client invia solo la FEN corrente:
+ * se è la posizione della storia, o ci si arriva con una mossa legale (la risposta dell'avversario),
+ * la storia prosegue; altrimenti (nuova partita, annullamento, FEN modificata) riparte da quella FEN.
+ * Le partite inattive da più di mezz'ora vengono dimenticate.
+ */
+@Component
+public class GameHistoryRegistry {
+
+    private static final long IDLE_TIMEOUT_MS = 30 * 60_000;
+
+    private final Map<String, Entry> games = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        GameHistory history;
+        volatile long lastUsedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Porta la storia della partita alla posizione fen ed esegue action, con la partita bloccata per tutta
+     * la durata: due richieste della stessa partita non si sovrappongono. Senza gameId la storia è nuova
+     * e vale solo per la richiesta. Una FEN non leggibile lancia IllegalArgumentException.
+     */
+    public <T> T withGame(String gameId, String fen, Function<GameHistory, T> action) {
+        if (gameId == null || gameId.isBlank()) return action.apply(GameHistory.fromFen(fen));
+
+        long now = System.currentTimeMillis();
+        games.entrySet().removeIf(entry -> now - entry.getValue().lastUsedAt > IDLE_TIMEOUT_MS);
+        Entry entry = games.computeIfAbsent(gameId, id -> new Entry());
+        synchronized (entry) {
+            entry.lastUsedAt = now;
+            Position target = Position.fromFen(fen);
+            if (entry.history == null || !entry.history.advanceTo(target.key())) {
+                entry.history = new GameHistory(target);
+            }
+            return action.apply(entry.history);
+        }
+    }
+
+    public int size() {
+        return games.size();
+    }
+}
@@ -0,0 +1,252 @@
+package com.chess.chessverse.service;
+
+import com.chess.chessverse.service.BatchEvaluationService.Job;
+import com.chess.chessverse.service.engine.EvalEntry;
+import com.chess.chessverse.service.engine.PositionKey;
+import com.chess.chessverse.service.engine.SearchInfo;
+import com.chess.chessverse.service.rules.Position;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Revisione di una partita intera: rigioca le mosse su una {@link Position}, valuta tutte
+ * le posizioni in parallelo sul pool (ogni posizione distinta una sola volta, la cache risponde per quelle
+ * già note) e classifica ogni mossa in base alla percentuale di vittoria persa, come fa Lichess.
+ */
+@Service
+public class GameReviewService {
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final Pattern UCI_MOVE = Pattern.compile("[a-h][1-8][a-h][1-8][qrbn]?");
+    private static final Pattern PGN_FEN_TAG = Pattern.compile("\\[FEN\\s+\"([^\"]+)\"\\]");
+    private static final Pattern MOVE_NUMBER = Pattern.compile("^\\d+\\.+");
+    private static final Set<String> RESULTS = Set.of("1-0", "0-1", "1/2-1/2", "*");
+
+    private static final int MATE_CP = 10_000;
+
+    @Autowired
+    private ClassicChessLogic chessLogic;
+
+    @Autowired
+    private BatchEvaluationService batchEvaluationService;
+
+    /**
+     * Partita da rivedere: posizione iniziale e mosse (UCI o SAN)
+     */
+    public record Game(String startFen, List<String> moves) { }
+
+    private record Ply(String input, String uci, String fenBefore, String fenAfter) { }
+
+    /**
+     * Estrae posizione iniziale (tag FEN, se presente) e mosse da un PGN, ignorando intestazioni,
+     * commenti, varianti, NAG, numeri di mossa e risultato
+     */
+    public static Game parsePgn(String pgn) {
+        Matcher fenTag = PGN_FEN_TAG.matcher(pgn);
+        String startFen = fenTag.find() ? fenTag.group(1) : START_FEN;
+
+        String movetext = pgn.replaceAll("(?m)^\\[.*\\]\\s*$", " ")
+                .replaceAll("\\{[^}]*\\}", " ")
+                .replaceAll("(?m);.*$", " ")
+                .replaceAll("\\$\\d+", " ");
+        // Le varianti possono essere annidate: si rimuovono dall'interno verso l'esterno
+        String previous;
+        do {
+            previous = movetext;
+            movetext = movetext.replaceAll("\\([^()]*\\)", " ");
+        } while (!movetext.equals(previous));
+
+        List<String> moves = new ArrayList<>();
+        for (String token : movetext.trim().split("\\s+")) {
+            token = MOVE_NUMBER.matcher(token).replaceFirst("");
+            if (token.isEmpty() || RESULTS.contains(token)) continue;
+            moves.add(token);
+        }
+        return new Game(startFen, moves);
+    }
+
+    /**
+     * Rigioca la partita e restituisce la revisione quando tutte le posizioni sono valutate.
+     * Lancia IllegalArgumentException (con il numero della semimossa) se una mossa non è legale.
+     */
+    public CompletableFuture<Map<String, Object>> review(Game game, int depth) {
+        List<Ply> plies = replay(game);
+
+        // Posizioni distinte della partita: le ripetizioni vengono valutate una volta sola
+        List<String> fens = new ArrayList<>();
+        fens.add(game.startFen());
+        plies.forEach(ply -> fens.add(ply.fenAfter()));
+        Map<Long, String> unique = new LinkedHashMap<>();
+        for (String fen : fens) {
+            unique.putIfAbsent(PositionKey.of(fen), fen);
+        }
+
+        List<Long> keys = new ArrayList<>(unique.keySet());
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            jobs.add(new Job(i, null, unique.get(keys.get(i)), depth, 0, 0));
+        }
+
+        long startedAt = System.currentTimeMillis();
+        Map<Long, EvalEntry> evals = new ConcurrentHashMap<>();
+        return batchEvaluationService.submit(jobs, result -> {
+            if (result.entry() != null) {
+                evals.put(keys.get(result.job().index()), result.entry());
+            }
+        }).done().thenApply(v -> {
+            System.out.println("🔍 Revisione di " + plies.size() + " semimosse (" + keys.size()
+                    + " posizioni distinte, depth " + depth + ") in " + (System.currentTimeMillis() - startedAt) + " ms");
+            return buildReview(game, plies, fens, evals, depth);
+        });
+    }
+
+    private List<Ply> replay(Game game) {
+        List<Ply> plies = new ArrayList<>();
+        // Una sola posizione per tutta la partita: la FEN si produce solo per le valutazioni
+        Position position = Position.fromFen(game.startFen());
+        String fen = game.startFen();
+        for (String input : game.moves()) {
+            int move = UCI_MOVE.matcher(input).matches() ? position.parseUci(input) : Position.NO_MOVE;
+            String uci = input;
+            if (move == Position.NO_MOVE || !position.isLegal(move)) {
+                uci = chessLogic.sanToUci(fen, input);
+                move = uci != null ? position.parseUci(uci) : Position.NO_MOVE;
+            }
+            if (move == Position.NO_MOVE) {
+                throw new IllegalArgumentException("Mossa non valida alla semimossa " + (plies.size() + 1) + ": " + input);
+            }
+            position.makeMove(move);
+            String next = position.toFen();
+            plies.add(new Ply(input, uci, fen, next));
+            fen = next;
+        }
+        return plies;
+    }
+
+    private Map<String, Object> buildReview(Game game, List<Ply> plies, List<String> fens,
+                                            Map<Long, EvalEntry> evals, int depth) {
+        // Valutazione di ogni posizione dal punto di vista del Bianco (centipedoni, matto = ±10000)
+        Integer[] whiteCp = new Integer[fens.size()];
+        for (int i = 0; i < fens.size(); i++) {
+            EvalEntry entry = evals.get(PositionKey.of(fens.get(i)));
+            whiteCp[i] = entry != null ? toWhiteCp(entry, isWhiteToMove(fens.get(i))) : null;
+        }
+
+        List<Map<String, Object>> moves = new ArrayList<>();
+        List<Double> whiteAccuracies = new ArrayList<>();
+        List<Double> blackAccuracies = new ArrayList<>();
+        Map<String, Map<String, Integer>> counts = Map.of("white", new HashMap<>(), "black", new HashMap<>());
+
+        for (int i = 0; i < plies.size(); i++) {
+            Ply ply = plies.get(i);
+            boolean white = isWhiteToMove(ply.fenBefore());
+            EvalEntry before = evals.get(PositionKey.of(ply.fenBefore()));
+
+            Map<String, Object> move = new HashMap<>();
+            move.put("ply", i + 1);
+            move.put("color", white ? "white" : "black");
+            move.put("move", ply.input());
+            move.put("uci", ply.uci());
+            move.put("fen", ply.fenAfter());
+            move.put("evalBefore", formatWhite(whiteCp[i]));
+            move.put("evalAfter", formatWhite(whiteCp[i + 1]));
+            move.put("bestMove", before != null ? before.bestMove() : null);
+
+            if (whiteCp[i] != null && whiteCp[i + 1] != null) {
+                int sign = white ? 1 : -1;
+                double winBefore = winPercent(sign * whiteCp[i]);
+                double winAfter = winPercent(sign * whiteCp[i + 1]);
+                double winLoss = Math.max(0, winBefore - winAfter);
+                double accuracy = moveAccuracy(winLoss);
+                String classification = classify(winLoss, before != null && ply.uci().equals(before.bestMove()));
+
+                move.put("cpLoss", Math.max(0, sign * (whiteCp[i] - whiteCp[i + 1])));
+                move.put("winLoss", Math.round(winLoss * 10) / 10.0);
+                move.put("accuracy", Math.round(accuracy * 10) / 10.0);
+                move.put("classification", classification);
+                (white ? whiteAccuracies : blackAccuracies).add(accuracy);
+                counts.get(white ? "white" : "black").merge(classification, 1, Integer::sum);
+            }
+            moves.add(move);
+        }
+
+        Map<String, Object> accuracy = new HashMap<>();
+        accuracy.put("white", sideAccuracy(whiteAccuracies));
+        accuracy.put("black", sideAccuracy(blackAccuracies));
+
+        Map<String, Object> review = new HashMap<>();
+        review.put("success", true);
+        review.put("startFen", game.startFen());
+        review.put("depth", depth);
+        review.put("positions", evals.size());
+        review.put("moves", moves);
+        review.put("accuracy", accuracy);
+        review.put("summary", counts);
+        return review;
+    }
+
+    private static boolean isWhiteToMove(String fen) {
+        String[] parts = fen.split(" ");
+        return parts.length < 2 || parts[1].equals("w");
+    }
+
+    private static int toWhiteCp(EvalEntry entry, boolean whiteToMove) {
+        int cp;
+        if (entry.mate() != null) {
+            // "mate 0": il lato che muove ha già subito matto
+            cp = entry.mate() > 0 ? MATE_CP - entry.mate() : -MATE_CP - entry.mate();
+        } else {
+            cp = entry.scoreCp() != null ? entry.scoreCp() : 0;
+        }
+        return whiteToMove ? cp : -cp;
+    }
+
+    private static String formatWhite(Integer cp) {
+        if (cp == null) return null;
+        if (Math.abs(cp) > MATE_CP - 1000) {
+            int mateIn = MATE_CP - Math.abs(cp);
+            return cp > 0 ? "#" + mateIn : "#-" + mateIn;
+        }
+        return SearchInfo.formatScore(cp, null);
+    }
+
+    // Probabilità di vittoria (0-100) dal vantaggio in centipedoni, stessa curva di Lichess
+    private static double winPercent(int cp) {
+        int clamped = Math.max(-1000, Math.min(1000, cp));
+        return 50 + 50 * (2 / (1 + Math.exp(-0.00368208 * clamped)) - 1);
+    }
+
+    private static double moveAccuracy(double winLoss) {
+        double accuracy = 103.1668 * Math.exp(-0.04354 * winLoss) - 3.1669 + 1;
+        return Math.max(0, Math.min(100, accuracy));
+    }
+
+    // Soglie di Lichess sulla probabilità di vittoria persa: 5% imprecisione, 10% errore, 15% errore grave
+    private static String classify(double winLoss, boolean engineMove) {
+        if (winLoss >= 15) return "blunder";
+        if (winLoss >= 10) return "mistake";
+        if (winLoss >= 5) return "inaccuracy";
+        return engineMove ? "best" : "good";
+    }
+
+    // Media tra media aritmetica e armonica: le mosse molto imprecise pesano più di quanto farebbero in una media semplice
+    private static Double sideAccuracy(List<Double> accuracies) {
+        if (accuracies.isEmpty()) return null;
+        double sum = 0;
+        double inverseSum = 0;
+        for (double accuracy : accuracies) {
+            sum += accuracy;
+            inverseSum += 1 / Math.max(accuracy, 1);
+        }
+        double mean = sum / accuracies.size();
+        double harmonic = accuracies.size() / inverseSum;
+        return Math.round((mean + harmonic) / 2 * 10) / 10.0;
+    }
+}
@@ -0,0 +1,147 @@
+package com.chess.chessverse.service;
+
+import com.chess.chessverse.service.engine.EnginePool;
+import com.chess.chessverse.service.engine.EnginePriority;
+import com.chess.chessverse.service.engine.UciEngine;
+import com.chess.chessverse.service.rules.Perft;
+import com.chess.chessverse.service.rules.Position;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Perft del generatore di mosse: la suite di posizioni note (correttezza e nodi al secondo, su un thread
+ * o in parallelo alla radice) e il confronto mossa per mossa con "go perft" di un motore del pool.
+ */
+@Service
+public class PerftService {
+
+    private static final long LEASE_TIMEOUT_MS = 10_000;
+    private static final long PERFT_TIMEOUT_MS = 120_000;
+
+    @Autowired
+    private EnginePool enginePool;
+
+    // Pool proprio per il perft parallelo: su commonPool i sotto-alberi occuperebbero i thread di chi lo usa già
+    // (parallel stream, CompletableFuture senza executor) per tutta la durata della suite
+    private final ForkJoinPool perftPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Esegue ogni posizione della suite fino a maxDepth (o alla profondità più alta di cui si conosce il valore)
+     * e riporta nodi, valore atteso, tempo e nodi al secondo
+     */
+    public Map<String, Object> runSuite(int maxDepth, boolean parallel) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        long totalNodes = 0;
+        long totalNanos = 0;
+        boolean allOk = true;
+
+        for (Perft.Case c : Perft.SUITE) {
+            int depth = Math.min(maxDepth, c.maxDepth());
+            Position position = Position.fromFen(c.fen());
+            Perft.Result result = parallel
+                    ? Perft.measureParallel(position, depth, perftPool)
+                    : Perft.measure(position, depth);
+            boolean ok = result.nodes() == c.expected(depth);
+            allOk &= ok;
+            totalNodes += result.nodes();
+            totalNanos += result.nanos();
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", c.name());
+            entry.put("fen", c.fen());
+            entry.put("depth", depth);
+            entry.put("nodes", result.nodes());
+            entry.put("expected", c.expected(depth));
+            entry.put("ok", ok);
+            entry.put("ms", result.nanos() / 1_000_000);
+            entry.put("nps", result.nodesPerSecond());
+            results.add(entry);
+        }
+
+        Perft.Result total = new Perft.Result(totalNodes, totalNanos);
+        System.out.println("🧮 Perft " + (parallel ? "parallelo" : "su un thread") + " fino a profondità " + maxDepth
+                + ": " + totalNodes + " nodi, " + total.nodesPerSecond() + " nodi/s" + (allOk ? "" : " ❌ conteggi errati"));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("ok", allOk);
+        response.put("parallel", parallel);
+        response.put("threads", parallel ? perftPool.getParallelism() : 1);
+        response.put("nodes", totalNodes);
+        response.put("ms", totalNanos / 1_000_000);
+        response.put("nps", total.nodesPerSecond());
+        response.put("positions", results);
+        return response;
+    }
+
+    /**
+     * Divide del generatore contro "go perft" di Stockfish sulla stessa posizione: riporta le mosse con
+     * conteggi diversi e quelle generate da uno solo dei due. Per trovare l'errore si ripete sulla posizione
+     * dopo la mossa sbagliata, con una profondità in meno. Una FEN che non può nascere da una partita
+     * (re mancanti, lato che non muove sotto scacco...) viene rifiutata prima di arrivare a Stockfish.
+     */
+    public Map<String, Object> compareWithEngine(String fen, int depth) throws InterruptedException {
+        Map<String, Object> response = new HashMap<>();
+        Position position = Position.playable(fen);
+        if (position == null) {
+            response.put("success", false);
+            response.put("error", "FEN non valida");
+            return response;
+        }
+        Map<String, Long> ours = Perft.divide(position, depth);
+
+        UciEngine engine = enginePool.lease(EnginePriority.BATCH, LEASE_TIMEOUT_MS);
+        if (engine == null) {
+            response.put("success", false);
+            response.put("error", "Nessun motore Stockfish libero");
+            return response;
+        }
+        Map<String, Long> theirs;
+        try {
+            theirs = engine.perft(fen, depth, PERFT_TIMEOUT_MS);
+        } catch (RuntimeException e) {
+            engine.markBroken();
+            theirs = null;
+        } finally {
+            enginePool.release(engine);
+        }
+        if (theirs == null) {
+            response.put("success", false);
+            response.put("error", "Stockfish non ha risposto a go perft");
+            return response;
+        }
+
+        List<Map<String, Object>> differences = new ArrayList<>();
+        Set<String> moves = new TreeSet<>(ours.keySet());
+        moves.addAll(theirs.keySet());
+        for (String move : moves) {
+            Long a = ours.get(move);
+            Long b = theirs.get(move);
+            if (!Objects.equals(a, b)) {
+                Map<String, Object> diff = new HashMap<>();
+                diff.put("move", move);
+                diff.put("ours", a);
+                diff.put("engine", b);
+                differences.add(diff);
+            }
+        }
+
+        response.put("success", true);
+        response.put("fen", fen);
+        response.put("depth", depth);
+        response.put("match", differences.isEmpty());
+        response.put("nodes", ours.values().stream().mapToLong(Long::longValue).sum());
+        response.put("engineNodes", theirs.values().stream().mapToLong(Long::longValue).sum());
+        response.put("differences", differences);
+        return response;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        perftPool.shutdownNow();
+    }
+}
@@ -1,16 +1,20 @@
 package com.chess.chessverse.service;
 
+import com.chess.chessverse.service.engine.SearchResult;
+import com.chess.chessverse.service.engine.UciEngine;
 import org.springframework.stereotype.Service;
 import java.io.*;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 public class StockfishService {
     
-    private Process stockfishProcess;
-    private BufferedReader processReader;
-    private OutputStreamWriter processWriter;
-    private boolean isInitialized = false;
+    private UciEngine engine;
+    private volatile boolean isInitialized = false;
     
     /**
      * Inizializza Stockfish se disponibile nel sistema
@@ -42,102 +46,35 @@ public class StockfishService {
                 System.out.println("     Esiste: " + file.exists() + ", Leggibile: " + file.canRead() + ", Eseguibile: " + file.canExecute());
             }
             
+            // Tutti i percorsi provati in parallelo: l'avvio dura quanto il tentativo più lento, non la loro somma
+            ExecutorService probes = Executors.newFixedThreadPool(possiblePaths.length, r -> {
+                Thread t = new Thread(r, "stockfish-probe");
+                t.setDaemon(true);
+                return t;
+            });
+            List<CompletableFuture<UciEngine>> attempts = new ArrayList<>();
             for (String path : possiblePaths) {
-                try {
-                    System.out.println("🔄 Tentativo con: " + path);
-                    
-                    // Verifica e imposta i permessi di esecuzione se necessario
-                    File stockfishFile = new File(path);
-                    if (stockfishFile.exists() && !stockfishFile.canExecute()) {
-                        System.out.println("📋 Impostazione permessi di esecuzione...");
-                        stockfishFile.setExecutable(true);
-                    }
-                    
-                    // Test semplice: prova solo ad avviare il processo
-                    ProcessBuilder pb = new ProcessBuilder(path);
-                    pb.redirectErrorStream(true);
-                    stockfishProcess = pb.start();
-                    
-                    // Aspetta un attimo che il processo si avvii
-                    Thread.sleep(100);
-                    
-                    // Verifica se il processo è ancora vivo
-                    if (!stockfishProcess.isAlive()) {
-                        System.out.println("     ❌ Il processo Stockfish è terminato immediatamente");
-                        continue;
-                    }
-                    
-                    processReader = new BufferedReader(new InputStreamReader(stockfishProcess.getInputStream()));
-                    processWriter = new OutputStreamWriter(stockfishProcess.getOutputStream());
-                    
-                    // Test inizializzazione UCI più semplice
-                    System.out.println("     📤 Invio comando UCI...");
-                    processWriter.write("uci\n");
-                    processWriter.flush();
-                    
-                    // Leggi per 2 secondi per vedere cosa arriva
-                    boolean foundUciOk = false;
-                    long startTime = System.currentTimeMillis();
-                    StringBuilder allOutput = new StringBuilder();
-                    
-                    while (System.currentTimeMillis() - startTime < 2000) {
-                        if (processReader.ready()) {
-                            String line = processReader.readLine();
-                            if (line != null) {
-                                allOutput.append(line).append("\n");
-                                System.out.println("     � << " + line);
-                                if (line.trim().equals("uciok")) {
-                                    foundUciOk = true;
-                                    break;
-                                }
-                            }
-                        } else {
-                            Thread.sleep(50);
-                        }
-                    }
-                    
-                    if (foundUciOk) {
-                        System.out.println("     ✅ UCI OK ricevuto!");
-                        
-                        // Configura per principianti
-                        processWriter.write("setoption name Skill Level value 0\n");
-                        processWriter.flush();
-                        processWriter.write("setoption name UCI_LimitStrength value true\n");
-                        processWriter.flush();
-                        processWriter.write("setoption name UCI_Elo value 800\n");
-                        processWriter.flush();
-                        processWriter.write("isready\n");
-                        processWriter.flush();
-                        
-                        // Aspetta readyok
-                        startTime = System.currentTimeMillis();
-                        while (System.currentTimeMillis() - startTime < 1000) {
-                            if (processReader.ready()) {
-                                String line = processReader.readLine();
-                                if (line != null && line.trim().equals("readyok")) {
-                                    break;
-                                }
-                            } else {
-                                Thread.sleep(50);
-                            }
-                        }
-                        
-                        isInitialized = true;
-                        System.out.println("✅ Stockfish inizializzato correttamente con livello principiante");
-                        return;
-                    } else {
-                        System.out.println("     ❌ Non ricevuto UCI OK. Output totale:");
-                        System.out.println(allOutput.toString());
-                    }
-                } catch (Exception e) {
-                    System.out.println("     ❌ Errore con " + path + ": " + e.getMessage());
-                    // Chiudi il processo se aperto
-                    if (stockfishProcess != null && stockfishProcess.isAlive()) {
-                        stockfishProcess.destroy();
-                    }
-                    continue;
+                attempts.add(CompletableFuture.supplyAsync(() -> tryStart(path), probes));
+            }
+            probes.shutdown();
+            
+            // Vince il primo percorso dell'elenco che ha risposto; gli altri processi avviati vengono chiusi
+            UciEngine chosen = null;
+            for (CompletableFuture<UciEngine> attempt : attempts) {
+                UciEngine candidate = attempt.join();
+                if (candidate == null) continue;
+                if (chosen == null) {
+                    chosen = candidate;
+                } else {
+                    candidate.close();
                 }
             }
+            if (chosen != null) {
+                engine = chosen;
+                isInitialized = true;
+                System.out.println("✅ Stockfish inizializzato correttamente con livello principiante");
+                return;
+            }
             
             System.out.println("⚠️ Stockfish non trovato. Usando bot random come fallback.");
             System.out.println("💡 Stockfish non disponibile - usando bot casuale come fallback");
@@ -149,35 +86,54 @@ public class StockfishService {
         }
     }
     
+    // Avvia il motore dal percorso dato e lo configura per principianti; null se non risponde
+    private UciEngine tryStart(String path) {
+        try {
+            // Verifica e imposta i permessi di esecuzione se necessario
+            File stockfishFile = new File(path);
+            if (stockfishFile.exists() && !stockfishFile.canExecute()) {
+                System.out.println("📋 Impostazione permessi di esecuzione per " + path);
+                stockfishFile.setExecutable(true);
+            }
+            
+            // Avvio e handshake UCI (la lettura dell'output avviene sul thread del motore)
+            UciEngine candidate = UciEngine.start(path);
+            if (candidate == null) {
+                System.out.println("     ❌ Non ricevuto UCI OK da " + path);
+                return null;
+            }
+            
+            // Configura per principianti
+            candidate.setOption("Skill Level", 0);
+            candidate.setOption("UCI_LimitStrength", true);
+            candidate.setOption("UCI_Elo", 800);
+            if (!candidate.isReady(1000)) {
+                candidate.close();
+                return null;
+            }
+            System.out.println("     ✅ UCI OK ricevuto da " + path);
+            return candidate;
+        } catch (Exception e) {
+            System.out.println("     ❌ Errore con " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
     /**
-     * Ottiene la migliore mossa da Stockfish per la posizione data
+     * Ottiene la migliore mossa da Stockfish per la posizione data.
+     * Sincronizzato: questo servizio usa un solo processo, una ricerca alla volta.
      */
-    public String getBestMove(String fen) {
-        if (!isInitialized) {
+    public synchronized String getBestMove(String fen) {
+        if (!isInitialized || !engine.isHealthy()) {
             return null; // Usa fallback
         }
         
         try {
-            // Imposta la posizione
-            sendCommand("position fen " + fen);
-            
-            // Cerca per tempo limitato (livello principiante)
-            sendCommand("go movetime 500"); // Solo 500ms di calcolo
-            
-            String response = readUntil("bestmove", 2000);
-            
-            if (response.contains("bestmove")) {
-                String[] parts = response.split("\\s+");
-                for (int i = 0; i < parts.length - 1; i++) {
-                    if ("bestmove".equals(parts[i]) && parts.length > i + 1) {
-                        String move = parts[i + 1];
-                        if (move.length() >= 4 && !move.equals("(none)")) {
-                            return move; // Formato: e2e4, g1f3, etc.
-                        }
-                    }
-                }
+            // Cerca per tempo limitato (livello principiante): solo 500ms di calcolo
+            SearchResult result = engine.search(fen, "go movetime 500", null).await(2000);
+            if (result != null && result.bestMove() != null && result.bestMove().length() >= 4) {
+                return result.bestMove(); // Formato: e2e4, g1f3, etc.
             }
-            
         } catch (Exception e) {
             System.out.println("⚠️ Errore ottenendo mossa da Stockfish: " + e.getMessage());
         }
@@ -222,60 +178,12 @@ public class StockfishService {
         return "Stockfish Level 1 (ELO ~800) - Modalità Principiante";
     }
     
-    // ========== METODI PRIVATI ==========
-    
-    private void sendCommand(String command) throws IOException {
-        processWriter.write(command + "\n");
-        processWriter.flush();
-    }
-    
-    private String readUntil(String expectedResponse, int timeoutMs) throws IOException {
-        StringBuilder response = new StringBuilder();
-        long startTime = System.currentTimeMillis();
-        
-        System.out.println("     🕐 Attendo risposta con '" + expectedResponse + "' per " + timeoutMs + "ms...");
-        
-        while (System.currentTimeMillis() - startTime < timeoutMs) {
-            if (processReader.ready()) {
-                String line = processReader.readLine();
-                if (line != null) {
-                    System.out.println("     📋 Linea ricevuta: [" + line + "]");
-                    response.append(line).append("\n");
-                    if (line.contains(expectedResponse)) {
-                        System.out.println("     ✅ Trovata risposta attesa!");
-                        break;
-                    }
-                }
-            } else {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        }
-        
-        long elapsed = System.currentTimeMillis() - startTime;
-        System.out.println("     ⏱️ Tempo trascorso: " + elapsed + "ms");
-        
-        return response.toString();
-    }
-    
     /**
      * Chiude Stockfish quando l'applicazione si spegne
      */
     public void shutdown() {
-        try {
-            if (stockfishProcess != null) {
-                sendCommand("quit");
-                stockfishProcess.destroy();
-                if (!stockfishProcess.waitFor(2, TimeUnit.SECONDS)) {
-                    stockfishProcess.destroyForcibly();
-                }
-            }
-        } catch (Exception e) {
-            System.out.println("Errore chiusura Stockfish: " + e.getMessage());
+        if (engine != null) {
+            engine.close();
         }
     }
 }
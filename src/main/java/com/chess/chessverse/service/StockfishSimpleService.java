@@ -1,171 +1,282 @@
 
 package com.chess.chessverse.service;
 
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.book.OpeningBook;
+import com.chess.chessverse.service.engine.EnginePool;
+import com.chess.chessverse.service.engine.EnginePriority;
+import com.chess.chessverse.service.engine.EngineState;
+import com.chess.chessverse.service.engine.EvalCache;
+import com.chess.chessverse.service.engine.EvalEntry;
+import com.chess.chessverse.service.engine.GameClock;
+import com.chess.chessverse.service.engine.InProcessEngines;
+import com.chess.chessverse.service.engine.MultiPvCollector;
+import com.chess.chessverse.service.engine.PonderSession;
+import com.chess.chessverse.service.engine.PositionKey;
+import com.chess.chessverse.service.engine.RunningSearch;
+import com.chess.chessverse.service.engine.SearchHandle;
+import com.chess.chessverse.service.engine.SearchListener;
+import com.chess.chessverse.service.engine.SearchResult;
+import com.chess.chessverse.service.engine.SharedSearch;
+import com.chess.chessverse.service.engine.SingleFlight;
+import com.chess.chessverse.service.engine.StableMoveMonitor;
+import com.chess.chessverse.service.engine.UciEngine;
+import com.chess.chessverse.service.rules.Position;
+import com.chess.chessverse.service.tablebase.SyzygyTablebase;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.io.*;
-import java.util.concurrent.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 @Service("stockfishSimple")
 public class StockfishSimpleService {
 
+    @Autowired
+    private EnginePool enginePool;
+
+    @Autowired
+    private EvalCache evalCache;
+
+    @Autowired
+    private EngineProperties properties;
+
+    @Autowired
+    private ClassicChessLogic chessLogic;
+
+    @Autowired
+    private OpeningBook openingBook;
+
+    @Autowired
+    private SyzygyTablebase tablebase;
+
+    @Autowired
+    private InProcessEngines inProcessEngines;
+
+    // Profondità attribuita ai risultati delle tablebase: esatti, valgono più di qualsiasi ricerca
+    private static final int TABLEBASE_DEPTH = 99;
+
+    // Tempo massimo per un'analisi MultiPV a profondità fissa
+    private static final long MULTIPV_DEPTH_TIMEOUT_MS = 60_000;
+
+    // Attesa massima di chi si accoda a una mossa del bot già in calcolo (il livello 17 cerca fino a 20s)
+    private static final long BOT_MOVE_FOLLOWER_TIMEOUT_MS = 30_000;
+
+    // Richieste identiche in corso: stessa posizione normalizzata e stessi parametri di ricerca
+    private final SingleFlight<Long, SharedSearch> evalFlights = new SingleFlight<>();
+    private final SingleFlight<BotMoveKey, String> botMoveFlights = new SingleFlight<>();
+
+    private record BotMoveKey(long position, int skillLevel, boolean opening, long budgetMs) { }
+
+    // Ricerca di una mossa del bot: Skill Level, comando go, attesa massima e budget delle ricerche a tempo (0 se a profondità)
+    private record BotSearch(int engineSkill, String goCommand, long timeoutMs, long timedBudgetMs) { }
+
+    // Una partita contro il bot senza mosse da più di mezz'ora viene dimenticata
+    private static final long BOT_GAME_IDLE_TIMEOUT_MS = 30 * 60_000;
+
+    // Partite contro il bot (mosse giocate e motore preferito) e partite il cui motore sta pensando sulla risposta prevista
+    private final Map<String, BotGame> botGames = new ConcurrentHashMap<>();
+    private final Map<String, PonderSession> ponderSessions = new ConcurrentHashMap<>();
+    private final AtomicLong gameEngineReuses = new AtomicLong();
+    private final AtomicLong gameReassignments = new AtomicLong();
+    private final AtomicLong ponderHits = new AtomicLong();
+    private final AtomicLong ponderMisses = new AtomicLong();
+
     /**
      * Ottiene la valutazione (score) per una posizione FEN usando Stockfish 17 (max skill, max tempo ragionevole)
      * Restituisce una stringa tipo "+1.23" (centipawn) o "#-3" (mate in 3 per il nero)
      * Esegue solo la valutazione, senza handshake UCI (che avviene solo in initialize)
      */
     public String getEvaluation(String fen) {
-        if (!isInitialized || stockfishProcess == null || !stockfishProcess.isAlive()) {
+        if (Position.playable(fen) == null) {
             return null;
         }
-        try {
-            processWriter.println("setoption name Skill Level value 20");
-            processWriter.println("position fen " + fen);
-            int moveTime = isOpeningPosition(fen) ? 2000 : 10000;
-            processWriter.println("go movetime " + moveTime);
-            processWriter.flush();
+        EvalEntry cached = getCachedEvaluation(fen);
+        if (cached != null) {
+            return cached.formatScore();
+        }
+        return withRequeue(EnginePriority.LIVE, engine -> {
+            try {
+                engine.setOption("Skill Level", 20);
+                int moveTime = evalMoveTime(fen);
+                SearchResult result = engine.search(fen, "go movetime " + moveTime, null).await(moveTime + 3000);
+                if (result == null || result.info() == null) {
+                    return null;
+                }
+                System.out.println("[StockfishSimpleService] Eval depth " + result.info().getDepth()
+                        + ": " + result.formatScore() + " (best " + result.bestMove() + ")");
+                evalCache.put(fen, EvalEntry.of(result));
+                return result.formatScore();
+            } catch (Exception e) {
+                System.out.println("❌ Errore durante valutazione posizione: " + e.getMessage());
+                engine.markBroken();
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Esegue la ricerca su un motore ottenuto dal pool e lo restituisce. Se il processo muore durante la ricerca
+     * (crash o chiusura da parte del supervisore) la richiesta viene ripetuta una sola volta su un altro motore.
+     */
+    private <T> T withRequeue(EnginePriority priority, Function<UciEngine, T> search) {
+        for (int attempt = 0; ; attempt++) {
+            UciEngine engine = leaseEngine(priority);
+            if (engine == null) {
+                return null;
+            }
+            T value;
+            try {
+                value = search.apply(engine);
+            } finally {
+                enginePool.release(engine);
+            }
+            if (value != null || attempt > 0 || !engine.isLost()) {
+                return value;
+            }
+            enginePool.recordRequeue(engine);
+        }
+    }
+    
+    /**
+     * Valutazione esatta dalle tablebase o già in cache abbastanza profonda per /api/eval, o null
+     */
+    public EvalEntry getCachedEvaluation(String fen) {
+        EvalEntry exact = getTablebaseEvaluation(fen);
+        if (exact != null) {
+            return exact;
+        }
+        return evalCache.get(fen, properties.getCache().getMinEvalDepth());
+    }
 
-            final BufferedReader reader = processReader;
-            final String[] lastScore = {null};
-            final boolean[] gotBestmove = {false};
-            final StringBuilder debugLog = new StringBuilder();
+    /**
+     * Valutazione esatta dalle tablebase Syzygy (finali con pochi pezzi), o null se la posizione non è coperta
+     */
+    private EvalEntry getTablebaseEvaluation(String fen) {
+        SyzygyTablebase.Result result = tablebase.probe(fen);
+        if (result == null) {
+            return null;
+        }
+        List<String> pv = result.bestMove() != null ? List.of(result.bestMove()) : List.of();
+        return new EvalEntry(TABLEBASE_DEPTH, result.scoreCp(), null, result.bestMove(), pv);
+    }
+    
+    /**
+     * Avvia la stessa ricerca di getEvaluation senza attenderla: il listener riceve ogni riga "info"
+     * appena il motore la produce, l'handle si completa al "bestmove". Il motore torna al pool da solo
+     * a fine ricerca; handle.stop() la interrompe subito. Restituisce null se Stockfish non è disponibile.
+     */
+    public SearchHandle streamEvaluation(String fen, SearchListener listener) {
+        int moveTime = evalMoveTime(fen);
+        return startSearch(fen, 1, "go movetime " + moveTime, moveTime + 3000L, listener);
+    }
 
-            Thread t = new Thread(() -> {
-                try {
-                    String l;
-                    while ((l = reader.readLine()) != null) {
-                        debugLog.append(l).append("\n");
-                        if (l.contains("score ")) {
-                            int idx = l.indexOf("score ");
-                            String sub = l.substring(idx + 6);
-                            if (sub.startsWith("cp ")) {
-                                String[] parts = sub.split(" ");
-                                if (parts.length >= 2) {
-                                    try {
-                                        int cp = Integer.parseInt(parts[1]);
-                                        double pawns = cp / 100.0;
-                                        lastScore[0] = String.format("%+.2f", pawns);
-                                    } catch (Exception ignore) {}
-                                }
-                            } else if (sub.startsWith("mate ")) {
-                                String[] parts = sub.split(" ");
-                                if (parts.length >= 2) {
-                                    try {
-                                        int mate = Integer.parseInt(parts[1]);
-                                        lastScore[0] = (mate > 0 ? "#" : "#-") + Math.abs(mate);
-                                    } catch (Exception ignore) {}
-                                }
-                            }
-                        }
-                        if (l.startsWith("bestmove ")) {
-                            gotBestmove[0] = true;
-                            break;
-                        }
-                    }
-                } catch (Exception e) {
-                    debugLog.append("[EXC] ").append(e.getMessage()).append("\n");
-                }
-            });
-            t.start();
-            t.join(moveTime + 3000); // Attendi massimo tempo + margine
-            if (t.isAlive()) t.interrupt();
-            System.out.println("[StockfishSimpleService] Eval debug log:\n" + debugLog);
-            return lastScore[0];
-        } catch (Exception e) {
-            System.out.println("❌ Errore durante valutazione posizione: " + e.getMessage());
+    /**
+     * Come streamEvaluation, ma le richieste contemporanee per la stessa posizione condividono una sola ricerca:
+     * ognuna riceve la propria sottoscrizione e la ricerca si ferma solo quando tutte hanno rinunciato.
+     * Restituisce null se Stockfish non è disponibile.
+     */
+    public RunningSearch shareEvaluation(String fen) {
+        Position position = Position.playable(fen);
+        if (position == null) {
             return null;
         }
+        SharedSearch shared = evalFlights.execute(position.key(), () -> {
+            SearchHandle handle = streamEvaluation(fen, null);
+            return handle != null ? new SharedSearch(handle) : null;
+        }, SharedSearch::result).join();
+        if (shared == null) {
+            return null;
+        }
+        RunningSearch subscription = shared.subscribe();
+        // La ricerca condivisa è appena finita o è stata interrotta: se ne avvia una propria
+        return subscription != null ? subscription : streamEvaluation(fen, null);
+    }
+
+    /**
+     * Analisi con le prime multiPv varianti in un'unica ricerca (MultiPV=N). Ferma la ricerca a depth
+     * se indicata, altrimenti dopo moveTimeMs (0 = tempo della valutazione standard). Il motore torna
+     * al pool con MultiPV=1, così l'impostazione non arriva alle partite contro il bot.
+     */
+    public SearchHandle streamMultiPv(String fen, int multiPv, int depth, int moveTimeMs, MultiPvCollector collector) {
+        if (depth > 0) {
+            return startSearch(fen, multiPv, "go depth " + depth, MULTIPV_DEPTH_TIMEOUT_MS, collector);
+        }
+        int moveTime = moveTimeMs > 0 ? moveTimeMs : evalMoveTime(fen);
+        return startSearch(fen, multiPv, "go movetime " + moveTime, moveTime + 3000L, collector);
+    }
+
+    // Ricerca a forza piena senza attesa: la variante principale finisce in cache, il motore torna al pool a fine ricerca
+    private SearchHandle startSearch(String fen, int multiPv, String goCommand, long timeoutMs, SearchListener listener) {
+        // Una posizione impossibile può mandare in crash il motore: non si cerca
+        if (Position.playable(fen) == null) {
+            System.out.println("❌ FEN non valida, ricerca non avviata: " + fen);
+            return null;
+        }
+        UciEngine engine = leaseEngine(EnginePriority.LIVE);
+        if (engine == null) {
+            return null;
+        }
+        try {
+            engine.setOption("Skill Level", 20);
+            engine.setOption("MultiPV", multiPv);
+            SearchHandle handle = engine.search(fen, goCommand, listener);
+            handle.result()
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((result, error) -> {
+                        if (result != null) {
+                            evalCache.put(fen, EvalEntry.of(result));
+                        }
+                        enginePool.release(engine);
+                    });
+            return handle;
+        } catch (RuntimeException e) {
+            engine.markBroken();
+            enginePool.release(engine);
+            throw e;
+        }
     }
     
-    private Process stockfishProcess;
-    private PrintWriter processWriter;
-    private BufferedReader processReader;
-    private boolean isInitialized = false;
+    private int evalMoveTime(String fen) {
+        return isOpeningPosition(fen) ? 2000 : 10000;
+    }
     
+    /**
+     * Avvia il pool di processi Stockfish (dimensione, Threads e Hash in application.properties)
+     */
     public void initialize() {
         System.out.println("🚀 Inizializzazione Stockfish Simple...");
-        
-        String stockfishPath = System.getProperty("user.dir") + File.separator + "stockfish.exe";
-        System.out.println("📁 Percorso Stockfish: " + stockfishPath);
-        
-    try {
-            // Test se il file esiste
-            File stockfishFile = new File(stockfishPath);
-            if (!stockfishFile.exists()) {
-                System.out.println("❌ File Stockfish non trovato: " + stockfishPath);
-                return;
-            }
-            
-            System.out.println("✅ File trovato: " + stockfishFile.length() + " bytes");
-            
-            // Avvia il processo
-            ProcessBuilder pb = new ProcessBuilder(stockfishPath);
-            pb.directory(new File(System.getProperty("user.dir")));
-            stockfishProcess = pb.start();
-
-            // Aspetta che il processo si avvii
-            Thread.sleep(200);
-
-            if (!stockfishProcess.isAlive()) {
-                System.out.println("❌ Il processo Stockfish è terminato");
-                return;
-            }
-
-            System.out.println("✅ Processo Stockfish avviato con PID: " + stockfishProcess.pid());
-
-            // Configura i stream
-            processWriter = new PrintWriter(stockfishProcess.getOutputStream(), true);
-            processReader = new BufferedReader(new InputStreamReader(stockfishProcess.getInputStream()));
-
-            // Handshake UCI SOLO UNA VOLTA
-            processWriter.println("uci");
-            processWriter.flush();
-            String line;
-            boolean gotUciOk = false;
-            long start = System.currentTimeMillis();
-            while (System.currentTimeMillis() - start < 5000) {
-                if (processReader.ready()) {
-                    line = processReader.readLine();
-                    System.out.println("[StockfishSimpleService][UCI] " + line);
-                    if (line != null && line.trim().equals("uciok")) {
-                        gotUciOk = true;
-                        break;
-                    }
-                }
-            }
-            if (!gotUciOk) {
-                System.out.println("[StockfishSimpleService] UCI handshake fallito");
-                return;
-            }
+        enginePool.start();
+    }
 
-            // Invia 'isready' e attendi 'readyok'
-            processWriter.println("isready");
-            processWriter.flush();
-            boolean gotReadyOk = false;
-            start = System.currentTimeMillis();
-            while (System.currentTimeMillis() - start < 5000) {
-                if (processReader.ready()) {
-                    line = processReader.readLine();
-                    System.out.println("[StockfishSimpleService][READY] " + line);
-                    if (line != null && line.trim().equals("readyok")) {
-                        gotReadyOk = true;
-                        break;
-                    }
-                }
-            }
-            if (!gotReadyOk) {
-                System.out.println("[StockfishSimpleService] isready handshake fallito");
-                return;
+    // Ottiene un motore in uso esclusivo per una singola ricerca
+    private UciEngine leaseEngine(EnginePriority priority) {
+        return leaseEngine(priority, null);
+    }
+    
+    // Come sopra, preferendo il motore indicato se è libero e poi quelli non legati ad altre partite in corso
+    private UciEngine leaseEngine(EnginePriority priority, UciEngine preferred) {
+        try {
+            UciEngine engine = enginePool.lease(priority, preferred,
+                    candidate -> candidate.getGameId() != null && botGames.containsKey(candidate.getGameId()));
+            if (engine == null) {
+                System.out.println(enginePool.getState() == EngineState.READY
+                        ? "⏳ Nessun motore Stockfish libero entro il timeout"
+                        : "⏳ Stockfish non ancora pronto (" + enginePool.getState() + ")");
             }
-
-            isInitialized = true;
-            System.out.println("✅ Stockfish inizializzato correttamente!");
-        } catch (Exception e) {
-            System.out.println("❌ Errore inizializzazione Stockfish: " + e.getMessage());
-            e.printStackTrace();
-        }
-        
-        if (!isInitialized) {
-            System.out.println("💡 Stockfish non disponibile - usando bot casuale come fallback");
+            return engine;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
     
@@ -174,126 +285,422 @@ public class StockfishSimpleService {
     }
     
     public String getBestMoveWithSkillLevel(String fen, int skillLevel) {
-        if (!isInitialized || stockfishProcess == null || !stockfishProcess.isAlive()) {
+        return getBestMoveWithSkillLevel(fen, skillLevel, null);
+    }
+    
+    /**
+     * Mossa del bot con l'orologio della partita (clock può essere null): il tempo di riflessione non supera
+     * il budget che l'orologio consente, e con una sola mossa legale si risponde senza interpellare Stockfish
+     */
+    public String getBestMoveWithSkillLevel(String fen, int skillLevel, GameClock clock) {
+        return getBestMoveWithSkillLevel(fen, skillLevel, clock, null);
+    }
+    
+    /**
+     * Come sopra, per una partita identificata da gameId (può essere null): il motore della partita
+     * pensa durante il turno dell'utente (ponder) e la sua risposta è spesso già pronta
+     */
+    public String getBestMoveWithSkillLevel(String fen, int skillLevel, GameClock clock, String gameId) {
+        // Clamp del livello tra 1 e 17
+        skillLevel = Math.max(1, Math.min(17, skillLevel));
+        
+        // FEN non leggibile o posizione impossibile: non arriva a Stockfish, che potrebbe andare in crash
+        Position position = Position.playable(fen);
+        if (position == null) {
+            expirePonder(gameId);
+            System.out.println("❌ Stockfish Level " + skillLevel + " FEN non valida: " + fen);
             return null;
         }
         
-        // Clamp del livello tra 1 e 17
-        skillLevel = Math.max(1, Math.min(17, skillLevel));
+        // Unica risposta possibile: nessuna ricerca da fare
+        List<String> legalMoves = chessLogic.legalMoves(fen);
+        if (legalMoves.size() == 1) {
+            expirePonder(gameId);
+            System.out.println("♟️ Stockfish Level " + skillLevel + " unica mossa legale: " + legalMoves.get(0));
+            return legalMoves.get(0);
+        }
+        
+        // Posizione nel libro di aperture: la mossa arriva subito e il motore resta libero
+        String bookMove = openingBook.pick(fen, skillLevel);
+        if (bookMove != null) {
+            expirePonder(gameId);
+            System.out.println("📖 Stockfish Level " + skillLevel + " mossa dal libro: " + bookMove);
+            return bookMove;
+        }
+        
+        // Finale coperto dalle tablebase: mossa perfetta (DTZ ottimale) letta dai file, senza ricerca
+        SyzygyTablebase.Result endgame = tablebase.probe(fen);
+        if (endgame != null && endgame.bestMove() != null) {
+            expirePonder(gameId);
+            System.out.println("🏁 Stockfish Level " + skillLevel + " mossa dalle tablebase: " + endgame.bestMove()
+                    + " (wdl " + endgame.wdl() + ", dtz " + endgame.dtz() + ")");
+            return endgame.bestMove();
+        }
+        
+        // � OPENING DETECTION: Velocizza le prime mosse
+        boolean isOpening = isOpeningPosition(fen);
+        
+        // Ai livelli a forza piena una valutazione in cache abbastanza profonda vale quanto una nuova ricerca
+        int cacheDepth = requiredCacheDepth(skillLevel, isOpening);
+        if (cacheDepth > 0) {
+            EvalEntry cached = evalCache.get(fen, cacheDepth);
+            if (cached != null && cached.bestMove() != null) {
+                expirePonder(gameId);
+                System.out.println("♟️ Stockfish Level " + skillLevel + " mossa dalla cache (depth " + cached.depth() + "): " + cached.bestMove());
+                return cached.bestMove();
+            }
+        }
         
+        if (gameId != null) {
+            return playGameMove(gameId, fen, skillLevel, isOpening, clock);
+        }
+        
+        // Stessa posizione allo stesso livello già in calcolo per un'altra partita: si attende quella ricerca
+        long budgetMs = clock != null ? clockBudgetMs(fen, clock) : 0;
+        BotMoveKey key = new BotMoveKey(position.key(), skillLevel, isOpening, budgetMs);
+        int level = skillLevel;
+        CompletableFuture<String> flight = botMoveFlights.execute(key, () -> searchBestMove(fen, level, isOpening, clock), null);
         try {
-            // � OPENING DETECTION: Velocizza le prime mosse
-            boolean isOpening = isOpeningPosition(fen);
-            
-            // �🔥 SISTEMA RIVOLUZIONARIO: Livelli alti = Stockfish UNLEASHED
-            String searchCommand;
-            int timeoutSeconds;
+            return flight.get(BOT_MOVE_FOLLOWER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+    
+    private String searchBestMove(String fen, int skillLevel, boolean isOpening, GameClock clock) {
+        BotSearch plan = planBotSearch(fen, skillLevel, isOpening, clock);
+        // Livelli bassi a limite fisso: Stockfish caricato nel processo, senza passare dalla pipe UCI
+        if (skillLevel <= properties.getInProcess().getMaxBotLevel()) {
+            SearchResult result = inProcessEngines.search(fen, plan.goCommand(), plan.engineSkill());
+            if (result != null) {
+                return botMoveResult(fen, skillLevel, plan, result);
+            }
+        }
+        return withRequeue(EnginePriority.INTERACTIVE, engine -> {
+            try {
+                SearchResult result = runBotSearch(engine, fen, List.of(), plan);
+                return botMoveResult(fen, skillLevel, plan, result);
+            } catch (Exception e) {
+                System.out.println("❌ Errore durante calcolo mossa Level " + skillLevel + ": " + e.getMessage());
+                engine.markBroken();
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Mossa del bot in una partita identificata da gameId. La partita torna sul motore che l'ha servita finora
+     * (se è libero) e gli invia la lista delle mosse dall'inizio, così la hash della ricerca precedente resta valida;
+     * "ucinewgame" arriva solo quando la partita cambia motore. Se il motore della partita stava pensando sulla
+     * risposta prevista e l'utente l'ha giocata, la ricerca prosegue con "ponderhit" invece di ricominciare.
+     * Dopo la mossa, ai livelli alti, il motore resta alla partita e pensa sulla prossima risposta prevista.
+     */
+    private String playGameMove(String gameId, String fen, int skillLevel, boolean isOpening, GameClock clock) {
+        long now = System.currentTimeMillis();
+        botGames.entrySet().removeIf(entry -> now - entry.getValue().getLastUsedAt() > BOT_GAME_IDLE_TIMEOUT_MS);
+        BotGame game = botGames.computeIfAbsent(gameId, id -> new BotGame());
+        
+        synchronized (game) {
+            game.advanceTo(fen);
+            PonderSession session = ponderSessions.remove(gameId);
+            UciEngine engine = session != null ? session.claim() : null;
+            BotSearch plan = planBotSearch(fen, skillLevel, isOpening, clock);
+            SearchResult result = null;
+            if (session != null && engine == null) {
+                // Ponder a profondità fissa già arrivato in fondo: la mossa è pronta, il motore era già tornato al pool
+                result = session.finishedResult(PositionKey.of(fen), skillLevel);
+                if (result != null) {
+                    ponderHits.incrementAndGet();
+                    System.out.println("🎯 Ponderhit partita " + gameId + ": mossa già calcolata (ponder da " + session.getAgeMs() + " ms)");
+                }
+            }
             
-            if (skillLevel <= 5) {
-                // Livelli 1-5: Skill Level limitato (principianti)
-                processWriter.println("setoption name Skill Level value " + Math.min(skillLevel * 2, 10));
-                if (isOpening) {
-                    searchCommand = "go depth " + (skillLevel + 1); // Più veloce negli opening
-                    timeoutSeconds = 1;
+            try {
+                // Livelli bassi: ricerca nel processo sulla posizione corrente, senza occupare un motore UCI
+                if (result == null && engine == null && skillLevel <= properties.getInProcess().getMaxBotLevel()) {
+                    result = inProcessEngines.search(fen, plan.goCommand(), plan.engineSkill());
+                    if (result != null) {
+                        String move = botMoveResult(fen, skillLevel, plan, result);
+                        if (move != null) game.played(move);
+                        return move;
+                    }
+                }
+                if (engine != null) {
+                    long startedAt = System.currentTimeMillis();
+                    SearchHandle pondered = session.resolve(PositionKey.of(fen), skillLevel);
+                    if (pondered != null) {
+                        result = pondered.await(plan.timeoutMs());
+                        ponderHits.incrementAndGet();
+                        System.out.println("🎯 Ponderhit partita " + gameId + ": mossa pronta in " + (System.currentTimeMillis() - startedAt)
+                                + " ms (ponder da " + session.getAgeMs() + " ms)");
+                    } else {
+                        ponderMisses.incrementAndGet();
+                    }
+                    if (!engine.isHealthy()) {
+                        // Motore reclamato dal pool durante il ponder: si ricomincia con un motore qualsiasi
+                        enginePool.release(engine);
+                        engine = null;
+                        result = null;
+                    }
+                }
+                if (engine == null) {
+                    engine = leaseEngine(EnginePriority.INTERACTIVE, game.getEngine());
+                    if (engine == null) return null;
+                }
+                if (engine.assignGame(gameId)) {
+                    gameReassignments.incrementAndGet();
                 } else {
-                    searchCommand = "go depth " + (skillLevel + 2);
-                    timeoutSeconds = 3;
+                    gameEngineReuses.incrementAndGet();
                 }
-                System.out.println("🎯 Stockfish Level " + skillLevel + " (Limitato) - Skill=" + (skillLevel * 2) + (isOpening ? " OPENING" : ""));
-                
-            } else if (skillLevel <= 10) {
-                // Livelli 6-10: Skill Level medio con più tempo
-                processWriter.println("setoption name Skill Level value " + Math.min(skillLevel + 5, 15));
-                int baseTime = isOpening ? 500 : (1000 + (skillLevel - 5) * 500);
-                searchCommand = "go movetime " + baseTime;
-                timeoutSeconds = isOpening ? 2 : 5;
-                System.out.println("🚀 Stockfish Level " + skillLevel + " (Intermedio) - Skill=" + (skillLevel + 5) + ", Time=" + baseTime + "ms" + (isOpening ? " OPENING" : ""));
-                
-            } else if (skillLevel <= 14) {
-                // Livelli 11-14: Skill Level alto + tempo lungo
-                processWriter.println("setoption name Skill Level value " + Math.min(skillLevel + 5, 20));
-                int baseTime = isOpening ? 1000 : (3000 + (skillLevel - 10) * 1000);
-                searchCommand = "go movetime " + baseTime;
-                timeoutSeconds = isOpening ? 3 : 8;
-                System.out.println("⚡ Stockfish Level " + skillLevel + " (Avanzato) - Skill=" + (skillLevel + 5) + ", Time=" + baseTime + "ms" + (isOpening ? " OPENING" : ""));
+                if (!engine.isHealthy()) {
+                    // Nessuna risposta dopo ucinewgame: motore perso, la partita passa a un altro
+                    enginePool.recordRequeue(engine);
+                    enginePool.release(engine);
+                    engine = leaseEngine(EnginePriority.INTERACTIVE);
+                    if (engine == null) return null;
+                    engine.assignGame(gameId);
+                }
+                game.setEngine(engine);
                 
-            } else {
-                // Livelli 15-17: STOCKFISH SCATENATO! 🔥
-                processWriter.println("setoption name Skill Level value 20"); // MASSIMO SKILL
+                if (result == null) {
+                    result = runBotSearch(engine, game.getStartFen(), game.getMoves(), plan);
+                }
+                if (result == null && engine.isLost()) {
+                    // Motore morto durante la ricerca: la mossa si ricalcola una volta su un altro motore
+                    enginePool.recordRequeue(engine);
+                    enginePool.release(engine);
+                    engine = leaseEngine(EnginePriority.INTERACTIVE);
+                    if (engine == null) return null;
+                    engine.assignGame(gameId);
+                    game.setEngine(engine);
+                    result = runBotSearch(engine, game.getStartFen(), game.getMoves(), plan);
+                }
+                String move = botMoveResult(fen, skillLevel, plan, result);
+                if (move == null) return null;
                 
-                if (skillLevel == 15) {
-                    int moveTime = isOpening ? 2000 : 8000;
-                    searchCommand = "go movetime " + moveTime;
-                    System.out.println("🔥 Stockfish Level 15 (SUPER MAESTRO) - SKILL MASSIMO + " + moveTime/1000 + "s" + (isOpening ? " OPENING" : ""));
-                } else if (skillLevel == 16) {
-                    int depth = isOpening ? 12 : 18;
-                    searchCommand = "go depth " + depth;
-                    System.out.println("💀 Stockfish Level 16 (KILLER) - SKILL MASSIMO + DEPTH " + depth + (isOpening ? " OPENING" : ""));
-                } else { // Level 17
-                    int moveTime = isOpening ? 3000 : 15000;
-                    searchCommand = "go movetime " + moveTime;
-                    System.out.println("👑 Stockfish Level 17 (MONDIALE) - SKILL MASSIMO + " + moveTime/1000 + "s" + (isOpening ? " OPENING" : " BEAST MODE"));
+                game.played(move);
+                if (startPonder(gameId, engine, game, fen, move, result.ponderMove(), skillLevel, clock)) {
+                    engine = null; // il motore resta alla partita
                 }
-                timeoutSeconds = isOpening ? 5 : 20;
+                return move;
+            } catch (Exception e) {
+                System.out.println("❌ Errore durante calcolo mossa Level " + skillLevel + ": " + e.getMessage());
+                if (engine != null) engine.markBroken();
+                return null;
+            } finally {
+                enginePool.release(engine);
             }
+        }
+    }
+    
+    private void expirePonder(String gameId) {
+        PonderSession session = gameId != null ? ponderSessions.remove(gameId) : null;
+        if (session != null) session.expire();
+    }
+    
+    // Avvia il ponder sulla risposta prevista; false se il livello è troppo basso, manca la previsione o troppe partite stanno già pensando
+    private boolean startPonder(String gameId, UciEngine engine, BotGame game, String fen, String move, String ponderMove,
+                                int skillLevel, GameClock clock) {
+        EngineProperties.Bot bot = properties.getBot();
+        // Le sessioni il cui motore è stato reclamato dal pool non occupano più un posto
+        ponderSessions.values().removeIf(session -> !session.isActive());
+        if (!bot.isPonder() || skillLevel < bot.getPonderMinLevel() || ponderMove == null
+                || ponderSessions.size() >= Math.max(1, properties.getPool().getMaxSize() / 2)) {
+            return false;
+        }
+        String expected;
+        BotSearch plan;
+        try {
+            String afterBot = chessLogic.updateFEN(fen, move.substring(0, 2), move.substring(2, 4), move.length() > 4 ? move.substring(4) : null);
+            expected = chessLogic.updateFEN(afterBot, ponderMove.substring(0, 2), ponderMove.substring(2, 4),
+                    ponderMove.length() > 4 ? ponderMove.substring(4) : null);
+            plan = planBotSearch(expected, skillLevel, isOpeningPosition(expected), clock);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        
+        List<String> line = new ArrayList<>(game.getMoves());
+        line.add(ponderMove);
+        PonderSession session = PonderSession.start(enginePool, engine, game.getStartFen(), line, PositionKey.of(expected),
+                skillLevel, plan.goCommand());
+        PonderSession previous = ponderSessions.put(gameId, session);
+        if (previous != null) previous.expire();
+        // Una partita abbandonata non tiene il motore oltre ponder-timeout-ms
+        CompletableFuture.delayedExecutor(bot.getPonderTimeoutMs(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (ponderSessions.remove(gameId, session)) session.expire();
+        });
+        System.out.println("🧠 Ponder partita " + gameId + " sulla risposta prevista " + ponderMove);
+        return true;
+    }
+    
+    // Parametri di ricerca del livello: le tabelle storiche, limitate dall'orologio se presente
+    private BotSearch planBotSearch(String fen, int skillLevel, boolean isOpening, GameClock clock) {
+        // �🔥 SISTEMA RIVOLUZIONARIO: Livelli alti = Stockfish UNLEASHED
+        String searchCommand;
+        int timeoutSeconds;
+        int engineSkill;
+        
+        if (skillLevel <= 5) {
+            // Livelli 1-5: Skill Level limitato (principianti)
+            engineSkill = Math.min(skillLevel * 2, 10);
+            if (isOpening) {
+                searchCommand = "go depth " + (skillLevel + 1); // Più veloce negli opening
+                timeoutSeconds = 1;
+            } else {
+                searchCommand = "go depth " + (skillLevel + 2);
+                timeoutSeconds = 3;
+            }
+            System.out.println("🎯 Stockfish Level " + skillLevel + " (Limitato) - Skill=" + (skillLevel * 2) + (isOpening ? " OPENING" : ""));
             
-            // Imposta posizione e calcola
-            processWriter.println("position fen " + fen);
-            processWriter.println(searchCommand);
-            
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            Future<String> future = executor.submit(() -> {
-                try {
-                    String line;
-                    while ((line = processReader.readLine()) != null) {
-                        if (line.startsWith("bestmove")) {
-                            String[] parts = line.split(" ");
-                            if (parts.length >= 2) {
-                                return parts[1]; // La mossa è il secondo elemento
-                            }
-                        }
-                    }
-                    return null;
-                } catch (Exception e) {
-                    return null;
-                }
-            });
+        } else if (skillLevel <= 10) {
+            // Livelli 6-10: Skill Level medio con più tempo
+            engineSkill = Math.min(skillLevel + 5, 15);
+            int baseTime = isOpening ? 500 : (1000 + (skillLevel - 5) * 500);
+            searchCommand = "go movetime " + baseTime;
+            timeoutSeconds = isOpening ? 2 : 5;
+            System.out.println("🚀 Stockfish Level " + skillLevel + " (Intermedio) - Skill=" + (skillLevel + 5) + ", Time=" + baseTime + "ms" + (isOpening ? " OPENING" : ""));
             
-            String move = future.get(timeoutSeconds, TimeUnit.SECONDS);
-            executor.shutdown();
+        } else if (skillLevel <= 14) {
+            // Livelli 11-14: Skill Level alto + tempo lungo
+            engineSkill = Math.min(skillLevel + 5, 20);
+            int baseTime = isOpening ? 1000 : (3000 + (skillLevel - 10) * 1000);
+            searchCommand = "go movetime " + baseTime;
+            timeoutSeconds = isOpening ? 3 : 8;
+            System.out.println("⚡ Stockfish Level " + skillLevel + " (Avanzato) - Skill=" + (skillLevel + 5) + ", Time=" + baseTime + "ms" + (isOpening ? " OPENING" : ""));
             
-            System.out.println("♟️ Stockfish Level " + skillLevel + " mossa: " + move);
-            return move;
+        } else {
+            // Livelli 15-17: STOCKFISH SCATENATO! 🔥
+            engineSkill = 20; // MASSIMO SKILL
             
-        } catch (Exception e) {
-            System.out.println("❌ Errore durante calcolo mossa Level " + skillLevel + ": " + e.getMessage());
-            return null;
+            if (skillLevel == 15) {
+                int moveTime = isOpening ? 2000 : 8000;
+                searchCommand = "go movetime " + moveTime;
+                System.out.println("🔥 Stockfish Level 15 (SUPER MAESTRO) - SKILL MASSIMO + " + moveTime/1000 + "s" + (isOpening ? " OPENING" : ""));
+            } else if (skillLevel == 16) {
+                int depth = isOpening ? 12 : 18;
+                searchCommand = "go depth " + depth;
+                System.out.println("💀 Stockfish Level 16 (KILLER) - SKILL MASSIMO + DEPTH " + depth + (isOpening ? " OPENING" : ""));
+            } else { // Level 17
+                int moveTime = isOpening ? 3000 : 15000;
+                searchCommand = "go movetime " + moveTime;
+                System.out.println("👑 Stockfish Level 17 (MONDIALE) - SKILL MASSIMO + " + moveTime/1000 + "s" + (isOpening ? " OPENING" : " BEAST MODE"));
+            }
+            timeoutSeconds = isOpening ? 5 : 20;
+        }
+        
+        // Con l'orologio: i livelli a forza piena lasciano gestire il tempo a Stockfish (go wtime/btime),
+        // gli altri non superano il budget che l'orologio concede per questa mossa
+        long timeoutMs = timeoutSeconds * 1000L;
+        long timedBudgetMs = searchCommand.startsWith("go movetime ") ? Long.parseLong(searchCommand.substring(12)) : 0;
+        if (clock != null) {
+            long overhead = properties.getBot().getMoveOverheadMs();
+            long budget = clockBudgetMs(fen, clock);
+            if (skillLevel == 15 || skillLevel == 17) {
+                searchCommand = clock.goCommand(overhead);
+                timeoutMs = Math.min(clock.remainingMs(isWhiteToMove(fen)), budget * 4) + 1000;
+                timedBudgetMs = budget;
+            } else if (timedBudgetMs > 0) {
+                timedBudgetMs = Math.min(timedBudgetMs, budget);
+                searchCommand = "go movetime " + timedBudgetMs;
+            } else {
+                // Ricerca a profondità fissa: il primo limite raggiunto tra depth e movetime chiude la ricerca
+                searchCommand += " movetime " + budget;
+            }
+            System.out.println("⏱️ Orologio: " + clock.remainingMs(isWhiteToMove(fen)) + " ms rimasti, budget " + budget + " ms (" + searchCommand + ")");
+        }
+        
+        return new BotSearch(engineSkill, searchCommand, timeoutMs, timedBudgetMs);
+    }
+    
+    // Ricerca sulla posizione raggiunta da fen con le mosse indicate (vuote per una posizione isolata)
+    private SearchResult runBotSearch(UciEngine engine, String fen, List<String> moves, BotSearch plan) {
+        // Imposta posizione e calcola; le ricerche a tempo si chiudono in anticipo quando la mossa migliore è stabile
+        engine.setOption("Skill Level", plan.engineSkill());
+        StableMoveMonitor monitor = null;
+        if (plan.timedBudgetMs() > 0) {
+            EngineProperties.Bot bot = properties.getBot();
+            monitor = new StableMoveMonitor(bot.getStableDepths(), bot.getMinStableDepth(),
+                    plan.timedBudgetMs() * bot.getMinTimePercent() / 100);
+        }
+        long startedAt = System.currentTimeMillis();
+        SearchHandle handle = engine.search(fen, moves, plan.goCommand(), monitor);
+        if (monitor != null) monitor.attach(handle);
+        SearchResult result = handle.await(plan.timeoutMs());
+        if (monitor != null && monitor.isTriggered()) {
+            System.out.println("⏱️ Mossa stabile: ricerca chiusa dopo " + (System.currentTimeMillis() - startedAt)
+                    + " ms su " + plan.timedBudgetMs() + " ms");
+        }
+        return result;
+    }
+    
+    private String botMoveResult(String fen, int skillLevel, BotSearch plan, SearchResult result) {
+        String move = result != null ? result.bestMove() : null;
+        if (plan.engineSkill() == 20) {
+            evalCache.put(fen, EvalEntry.of(result));
+        }
+        System.out.println("♟️ Stockfish Level " + skillLevel + " mossa: " + move);
+        return move;
+    }
+    
+    // Budget per la mossa del lato che muove, dal numero di mossa del FEN
+    private long clockBudgetMs(String fen, GameClock clock) {
+        String[] parts = fen.trim().split("\\s+");
+        int fullMove = 1;
+        try {
+            if (parts.length > 5) fullMove = Integer.parseInt(parts[5]);
+        } catch (NumberFormatException e) {
+            // numero di mossa non valido: si considera l'inizio della partita
+        }
+        return clock.budgetMs(isWhiteToMove(fen), fullMove, properties.getBot().getMoveOverheadMs());
+    }
+    
+    private static boolean isWhiteToMove(String fen) {
+        String[] parts = fen.trim().split("\\s+");
+        return parts.length < 2 || parts[1].equals("w");
+    }
+    
+    /**
+     * Profondità che una valutazione in cache deve avere per sostituire la ricerca di un livello.
+     * Solo i livelli 15-17 giocano a Skill Level 20: sotto, Stockfish indebolisce di proposito la scelta
+     * e la mossa migliore in cache lo renderebbe più forte del previsto (restituisce -1).
+     */
+    private int requiredCacheDepth(int skillLevel, boolean isOpening) {
+        switch (skillLevel) {
+            case 15: return isOpening ? 16 : 20;
+            case 16: return isOpening ? 12 : 18; // stessa profondità del "go depth" del livello
+            case 17: return isOpening ? 18 : 24;
+            default: return -1;
         }
     }
     
     public boolean isAvailable() {
-        return isInitialized && stockfishProcess != null && stockfishProcess.isAlive();
+        return enginePool.isAvailable();
+    }
+    
+    public Map<String, Object> getBotGameStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("games", botGames.size());
+        stats.put("sameEngine", gameEngineReuses.get());
+        stats.put("newGameSent", gameReassignments.get());
+        stats.put("ponderEnabled", properties.getBot().isPonder());
+        stats.put("pondering", ponderSessions.values().stream().filter(PonderSession::isActive).count());
+        stats.put("ponderHits", ponderHits.get());
+        stats.put("ponderMisses", ponderMisses.get());
+        return stats;
+    }
+    
+    public Map<String, Object> getInFlightStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("eval", evalFlights.getStats());
+        stats.put("botMove", botMoveFlights.getStats());
+        return stats;
     }
     
     public void shutdown() {
-        if (stockfishProcess != null) {
-            try {
-                if (processWriter != null) {
-                    processWriter.println("quit");
-                    processWriter.close();
-                }
-                if (processReader != null) {
-                    processReader.close();
-                }
-                stockfishProcess.waitFor(2, TimeUnit.SECONDS);
-                if (stockfishProcess.isAlive()) {
-                    stockfishProcess.destroyForcibly();
-                }
-                System.out.println("✅ Stockfish chiuso correttamente");
-            } catch (Exception e) {
-                System.out.println("❌ Errore chiusura Stockfish: " + e.getMessage());
-            }
-        }
+        enginePool.shutdown();
     }
     
     // 🚀 METODO PER RILEVARE LE APERTURE
@@ -0,0 +1,195 @@
+package com.chess.chessverse.service.book;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.ClassicChessLogic;
+import com.chess.chessverse.service.GameReviewService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Libro di aperture del bot: se la posizione è nel libro Polyglot la mossa si sceglie tra quelle del libro,
+ * in proporzione al loro peso, senza interpellare Stockfish. La varietà dipende dal livello: ai livelli bassi
+ * ogni mossa del libro è ugualmente probabile, a quelli alti si gioca quasi sempre la linea principale.
+ * Senza un file .bin il libro è disattivato e tutte le mosse passano dal motore.
+ */
+@Component
+public class OpeningBook {
+
+    @Autowired
+    private EngineProperties properties;
+
+    @Autowired
+    private ClassicChessLogic chessLogic;
+
+    private volatile PolyglotBook book;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+
+    @PostConstruct
+    void open() {
+        EngineProperties.Book settings = properties.getBook();
+        if (!settings.isEnabled()) return;
+        Path path = Path.of(settings.getPath());
+        if (!Files.isRegularFile(path)) {
+            System.out.println("📖 Nessun libro di aperture in " + path + ": le aperture le calcola Stockfish");
+            return;
+        }
+        try {
+            book = PolyglotBook.open(path);
+            // Prima ricerca a vuoto: carica le tabelle e le prime pagine del file prima della prima partita
+            book.lookup(PolyglotKey.of(GameReviewService.START_FEN));
+            System.out.println("📖 Libro di aperture " + path.getFileName() + " mappato in memoria: " + book.size() + " voci");
+        } catch (IOException e) {
+            System.out.println("❌ Libro di aperture non leggibile (" + path + "): " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        PolyglotBook current = book;
+        book = null;
+        if (current == null) return;
+        try {
+            current.close();
+        } catch (IOException e) {
+            // chiusura a fine applicazione: niente da fare
+        }
+    }
+
+    public boolean isAvailable() {
+        return book != null;
+    }
+
+    /**
+     * Mossa del libro (UCI) per il bot al livello dato, o null se la posizione non è nel libro
+     */
+    public String pick(String fen, int skillLevel) {
+        List<PolyglotBook.Entry> moves = moves(fen);
+        if (moves.isEmpty()) return null;
+
+        // Peso 0 = mossa da non giocare, a meno che il libro non dia solo pesi nulli
+        boolean anyWeight = moves.stream().anyMatch(entry -> entry.weight() > 0);
+        double exponent = varietyExponent(skillLevel);
+        double[] weights = new double[moves.size()];
+        double total = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int weight = moves.get(i).weight();
+            weights[i] = anyWeight && weight == 0 ? 0 : Math.pow(Math.max(weight, 1), exponent);
+            total += weights[i];
+        }
+        double target = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < moves.size(); i++) {
+            target -= weights[i];
+            if (target < 0) return moves.get(i).move();
+        }
+        return moves.get(moves.size() - 1).move();
+    }
+
+    /**
+     * Mosse legali del libro per la posizione, con l'arrocco in notazione UCI; lista vuota se fuori dal libro
+     */
+    public List<PolyglotBook.Entry> moves(String fen) {
+        PolyglotBook current = book;
+        if (current == null) return List.of();
+
+        List<PolyglotBook.Entry> entries;
+        long startedAt = System.nanoTime();
+        try {
+            entries = current.lookup(PolyglotKey.of(fen));
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        } finally {
+            lookupNanos.add(System.nanoTime() - startedAt);
+        }
+        if (entries.isEmpty()) {
+            misses.increment();
+            return List.of();
+        }
+
+        // Una collisione di chiave o un libro per un'altra variante darebbe mosse impossibili: si tengono solo quelle legali
+        List<String> legal;
+        try {
+            legal = chessLogic.legalMoves(fen);
+        } catch (RuntimeException e) {
+            return List.of();
+        }
+        List<PolyglotBook.Entry> moves = new ArrayList<>(entries.size());
+        for (PolyglotBook.Entry entry : entries) {
+            String move = castlingToUci(fen, entry.move());
+            if (legal.contains(move)) {
+                moves.add(new PolyglotBook.Entry(move, entry.weight()));
+            }
+        }
+        if (moves.isEmpty()) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return moves;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        PolyglotBook current = book;
+        stats.put("loaded", current != null);
+        stats.put("path", current != null ? current.getPath().toString() : properties.getBook().getPath());
+        stats.put("entries", current != null ? current.size() : 0);
+        long lookups = hits.sum() + misses.sum();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("avgLookupMicros", lookups > 0 ? Math.round(lookupNanos.sum() / 10.0 / lookups) / 100.0 : 0);
+        return stats;
+    }
+
+    // 0 = tutte le mosse del libro equiprobabili, 1 = in proporzione al peso, 2 = al peso al quadrato
+    private static double varietyExponent(int skillLevel) {
+        if (skillLevel <= 5) return 0;
+        if (skillLevel <= 11) return 1;
+        return 2;
+    }
+
+    // Polyglot scrive l'arrocco come "re prende la propria torre": e1h1 diventa e1g1 solo se in e1 c'è il re
+    private static String castlingToUci(String fen, String move) {
+        String to;
+        switch (move) {
+            case "e1h1": to = "g1"; break;
+            case "e1a1": to = "c1"; break;
+            case "e8h8": to = "g8"; break;
+            case "e8a8": to = "c8"; break;
+            default: return move;
+        }
+        char king = move.charAt(1) == '1' ? 'K' : 'k';
+        return pieceAt(fen, move.substring(0, 2)) == king ? move.substring(0, 2) + to : move;
+    }
+
+    private static char pieceAt(String fen, String square) {
+        String[] ranks = fen.trim().split("\\s+")[0].split("/");
+        int rankIndex = '8' - square.charAt(1);
+        int file = square.charAt(0) - 'a';
+        if (ranks.length != 8) return 0;
+        int col = 0;
+        for (char c : ranks[rankIndex].toCharArray()) {
+            if (Character.isDigit(c)) {
+                col += c - '0';
+            } else {
+                if (col == file) return c;
+                col++;
+            }
+        }
+        return 0;
+    }
+}
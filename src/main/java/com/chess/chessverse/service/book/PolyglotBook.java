@@ -0,0 +1,120 @@
+package com.chess.chessverse.service.book;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Libro di aperture Polyglot (.bin) mappato in memoria: voci da 16 byte big-endian (chiave, mossa, peso, learn)
+ * ordinate per chiave, cercate per bisezione direttamente nel file mappato. Il libro non viene copiato nello heap:
+ * le pagine le carica il sistema operativo alla prima lettura e restano condivise tra i processi.
+ * Le letture assolute sul buffer non ne modificano lo stato, quindi le ricerche sono thread-safe.
+ */
+public class PolyglotBook implements Closeable {
+
+    private static final int ENTRY_SIZE = 16;
+
+    /**
+     * Mossa del libro in notazione UCI, con il suo peso (frequenza o qualità assegnata da chi ha creato il libro).
+     * L'arrocco resta nella codifica Polyglot, re che prende la propria torre (e1h1): per tradurlo in e1g1
+     * serve sapere che in e1 c'è il re, vedi {@link OpeningBook}.
+     */
+    public record Entry(String move, int weight) { }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long entries;
+
+    private PolyglotBook(Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.entries = buffer.capacity() / ENTRY_SIZE;
+    }
+
+    public static PolyglotBook open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Libro troppo grande (" + size + " byte, massimo 2 GB)");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size - size % ENTRY_SIZE);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new PolyglotBook(path, channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Mosse del libro per la chiave Polyglot data, nell'ordine del file (di solito per peso decrescente)
+     */
+    public List<Entry> lookup(long key) {
+        List<Entry> moves = new ArrayList<>(4);
+        // Prima voce con chiave >= key (confronto senza segno, come l'ordinamento del file)
+        long low = 0;
+        long high = entries;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (long i = low; i < entries && keyAt(i) == key; i++) {
+            int offset = (int) (i * ENTRY_SIZE);
+            int move = Short.toUnsignedInt(buffer.getShort(offset + 8));
+            int weight = Short.toUnsignedInt(buffer.getShort(offset + 10));
+            String uci = decode(move);
+            if (uci != null) {
+                moves.add(new Entry(uci, weight));
+            }
+        }
+        return moves;
+    }
+
+    public long size() {
+        return entries;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Il mapping viene rilasciato dal GC insieme al buffer
+        channel.close();
+    }
+
+    private long keyAt(long index) {
+        return buffer.getLong((int) (index * ENTRY_SIZE));
+    }
+
+    // Bit 0-2 colonna di arrivo, 3-5 traversa di arrivo, 6-8 colonna di partenza, 9-11 traversa di partenza, 12-14 promozione
+    static String decode(int move) {
+        int toFile = move & 7;
+        int toRow = (move >> 3) & 7;
+        int fromFile = (move >> 6) & 7;
+        int fromRow = (move >> 9) & 7;
+        int promotion = (move >> 12) & 7;
+        if (move == 0 || promotion > 4) return null;
+
+        String uci = square(fromFile, fromRow) + square(toFile, toRow);
+        return promotion == 0 ? uci : uci + " nbrq".charAt(promotion);
+    }
+
+    private static String square(int file, int row) {
+        return "" + (char) ('a' + file) + (char) ('1' + row);
+    }
+}
@@ -0,0 +1,18 @@
+package com.chess.chessverse.service.book;
+
+import com.chess.chessverse.service.rules.Position;
+
+/**
+ * Chiave Zobrist nel formato Polyglot: è la chiave con cui sono ordinate le voci dei libri .bin.
+ * Coincide con {@link Position#key()}, che usa gli stessi numeri casuali standard di Polyglot per pezzi,
+ * arrocchi, en passant e lato che muove.
+ */
+public final class PolyglotKey {
+
+    private PolyglotKey() {
+    }
+
+    public static long of(String fen) {
+        return Position.fromFen(fen).key();
+    }
+}
@@ -0,0 +1,63 @@
+package com.chess.chessverse.service.engine;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ricerche di analisi attive per sessione (una scheda della analysis board).
+ * Ogni sessione ha al massimo una ricerca: registrarne una nuova interrompe con "stop" la precedente,
+ * che consuma il proprio "bestmove" e restituisce subito il motore al pool.
+ */
+@Component
+public class AnalysisSessionRegistry {
+
+    private final Map<String, RunningSearch> active = new ConcurrentHashMap<>();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    public void register(String sessionId, RunningSearch handle) {
+        if (sessionId == null || handle == null) return;
+        RunningSearch previous = active.put(sessionId, handle);
+        if (previous != null && previous != handle && !previous.result().isDone()) {
+            superseded.incrementAndGet();
+            previous.stop();
+        }
+        handle.result().whenComplete((result, error) -> active.remove(sessionId, handle));
+    }
+
+    /**
+     * La richiesta HTTP che attendeva la ricerca non c'è più (client disconnesso o timeout)
+     */
+    public void abandon(RunningSearch handle) {
+        if (handle != null && !handle.result().isDone()) {
+            abandoned.incrementAndGet();
+            handle.stop();
+        }
+    }
+
+    /**
+     * Interrompe la ricerca attiva della sessione, se c'è (es. la pagina di analisi viene chiusa)
+     */
+    public boolean cancel(String sessionId) {
+        RunningSearch handle = sessionId != null ? active.get(sessionId) : null;
+        if (handle == null || handle.result().isDone()) return false;
+        abandon(handle);
+        return true;
+    }
+
+    public boolean isCurrent(String sessionId, RunningSearch handle) {
+        return sessionId == null || active.getOrDefault(sessionId, handle) == handle;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("active", active.size());
+        stats.put("superseded", superseded.get());
+        stats.put("abandoned", abandoned.get());
+        return stats;
+    }
+}
@@ -0,0 +1,631 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.config.EngineProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Pool di processi Stockfish già inizializzati.
+ * Ogni ricerca ottiene un motore in uso esclusivo con {@link #lease(EnginePriority, long)} e lo restituisce con
+ * {@link #release}: così due utenti non leggono mai le righe "bestmove" l'uno dell'altro.
+ * Quando il pool è pieno le richieste in coda sono servite per classe di priorità (vedi {@link EnginePriority}).
+ * <p>
+ * L'avvio non blocca l'applicazione: i motori si avviano in parallelo in background e il pool diventa
+ * {@link EngineState#READY} solo quando il primo ha risposto "readyok" e ha fatto una breve ricerca di riscaldamento
+ * (caricamento della rete NNUE, allocazione della hash). Fino ad allora le richieste vanno al bot di riserva.
+ * <p>
+ * Ogni stockfish.supervisor.check-interval-ms il pool controlla i motori: quelli liberi devono rispondere a "isready",
+ * quelli in ricerca devono produrre output; i processi morti o bloccati vengono chiusi e sostituiti, con un backoff
+ * esponenziale sugli avvii falliti (vedi {@link EngineSupervisor}).
+ */
+@Component
+public class EnginePool {
+
+    @Autowired
+    private EngineProperties properties;
+
+    // I motori liberi: in testa quelli usati più di recente (restano caldi), in coda quelli da chiudere
+    private final BlockingDeque<UciEngine> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger leased = new AtomicInteger();
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong replaced = new AtomicLong();
+    private final AtomicLong retired = new AtomicLong();
+    private final AtomicLong leaseTimeouts = new AtomicLong();
+
+    // Richieste in attesa di un motore e motori in uso con la loro classe di priorità
+    private final Object lock = new Object();
+    private final List<Waiter> waiters = new ArrayList<>();
+    private final Map<UciEngine, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<EnginePriority, ClassStats> classStats = new EnumMap<>(EnginePriority.class);
+    private int pendingPreemptions = 0;
+    // Motori avviati da lease() senza riscaldamento: l'avvio è confermato dopo stockfish.supervisor.min-uptime-ms
+    private final Set<UciEngine> unconfirmed = ConcurrentHashMap.newKeySet();
+
+    {
+        for (EnginePriority priority : EnginePriority.values()) {
+            classStats.put(priority, new ClassStats());
+        }
+    }
+
+    // Posizione di mediogioco per la ricerca di riscaldamento: tocca tutta la rete NNUE, non solo l'apertura
+    private static final String WARMUP_FEN = "r1bq1rk1/pp2bppp/2n1pn2/2pp4/3P4/2PBPN2/PP1N1PPP/R1BQ1RK1 w - - 0 8";
+
+    private EngineSupervisor supervisor;
+    private ScheduledExecutorService maintenance;
+    private volatile boolean started = false;
+    private volatile EngineState state = EngineState.STARTING;
+    private volatile long startRequestedAt;
+    private volatile long readyAfterMs = -1;
+
+    @PostConstruct
+    void init() {
+        supervisor = new EngineSupervisor(properties.getSupervisor());
+    }
+
+    /**
+     * Avvia in background i motori minimi (in parallelo, ciascuno con la sua ricerca di riscaldamento) e il controllo
+     * periodico (sostituzione dei processi morti, chiusura di quelli inattivi). Ritorna subito.
+     */
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        startRequestedAt = System.nanoTime();
+
+        String path = properties.getPath();
+        System.out.println("🚀 Avvio pool Stockfish in background: " + path + " (min=" + properties.getPool().getMinSize()
+                + ", max=" + properties.getPool().getMaxSize() + ")");
+        if (!new File(path).exists()) {
+            state = EngineState.UNAVAILABLE;
+            System.out.println("❌ File Stockfish non trovato: " + path);
+            System.out.println("💡 Stockfish non disponibile - usando bot casuale come fallback");
+            return;
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "engine-pool-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Almeno un motore anche con minSize=0: serve a dichiarare il pool pronto (quelli in più li chiude maintain)
+        int count = Math.min(Math.max(1, properties.getPool().getMinSize()), Math.max(1, properties.getPool().getMaxSize()));
+        ExecutorService startup = Executors.newFixedThreadPool(count, r -> {
+            Thread t = new Thread(r, "engine-pool-startup");
+            t.setDaemon(true);
+            return t;
+        });
+        CompletableFuture<?>[] spawns = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            spawns[i] = CompletableFuture.runAsync(this::spawnIdle, startup);
+        }
+        CompletableFuture.allOf(spawns).whenComplete((v, e) -> {
+            startup.shutdown();
+            if (size.get() > 0) {
+                System.out.println("✅ Pool Stockfish pronto con " + size.get() + " motori in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startRequestedAt) + " ms");
+            } else {
+                state = EngineState.UNAVAILABLE;
+                System.out.println("💡 Stockfish non disponibile - usando bot casuale come fallback");
+            }
+            long interval = Math.max(100, properties.getSupervisor().getCheckIntervalMs());
+            maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Stato del pool: {@link EngineState#STARTING} finché nessun motore ha finito il riscaldamento
+     */
+    public EngineState getState() {
+        return state;
+    }
+
+    /**
+     * Ottiene un motore in uso esclusivo. Se non ce ne sono liberi ne avvia uno nuovo (fino a maxSize),
+     * altrimenti si mette in coda e attende al massimo timeoutMs. Restituisce null se il tempo scade.
+     * <p>
+     * La coda è servita per priorità: chi ha una classe più urgente riceve per primo il motore che si libera,
+     * e ogni stockfish.pool.aging-ms di attesa fanno salire una richiesta di una classe, così il batch non resta
+     * mai fermo. Una richiesta {@link EnginePriority#INTERACTIVE} che trova il pool pieno interrompe con "stop"
+     * la ricerca meno urgente in corso.
+     */
+    public UciEngine lease(EnginePriority priority, long timeoutMs) throws InterruptedException {
+        if (state != EngineState.READY) return null;
+        long requestedAt = System.nanoTime();
+        long deadline = requestedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        ClassStats stats = classStats.get(priority);
+
+        while (true) {
+            UciEngine engine;
+            synchronized (lock) {
+                // Con richieste già in coda i motori liberi sono stati assegnati a loro: si passa dalla coda
+                engine = waiters.isEmpty() ? idle.pollFirst() : null;
+            }
+            if (engine == null && tryReserveSlot()) {
+                engine = spawnReserved();
+                if (engine != null) unconfirmed.add(engine);
+            }
+            if (engine == null) {
+                engine = awaitHandOff(priority, deadline);
+                if (engine == null) {
+                    leaseTimeouts.incrementAndGet();
+                    stats.timeouts.incrementAndGet();
+                    return null;
+                }
+            }
+
+            if (!engine.isHealthy()) {
+                discard(engine);
+                continue;
+            }
+            return checkOut(engine, priority, System.nanoTime() - requestedAt);
+        }
+    }
+
+    /**
+     * Come {@link #lease(EnginePriority)}, ma se il motore indicato è libero si ottiene proprio quello:
+     * una partita che torna sul proprio motore ne ritrova la hash table e le opzioni. Altrimenti si preferisce
+     * un motore libero per cui reserved è falso (ad esempio non legato a un'altra partita in corso).
+     */
+    public UciEngine lease(EnginePriority priority, UciEngine preferred, Predicate<UciEngine> reserved) throws InterruptedException {
+        if (state == EngineState.READY) {
+            UciEngine taken = null;
+            synchronized (lock) {
+                if (waiters.isEmpty()) {
+                    if (preferred != null && idle.remove(preferred)) {
+                        taken = preferred;
+                    } else {
+                        for (UciEngine engine : idle) {
+                            if (!reserved.test(engine) && idle.remove(engine)) {
+                                taken = engine;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            if (taken != null) {
+                if (taken.isHealthy()) {
+                    return checkOut(taken, priority, 0);
+                }
+                discard(taken);
+            }
+        }
+        return lease(priority);
+    }
+
+    private UciEngine checkOut(UciEngine engine, EnginePriority priority, long waitNanos) {
+        engine.touch();
+        leased.incrementAndGet();
+        leases.put(engine, new Lease(priority));
+        classStats.get(priority).record(waitNanos);
+        return engine;
+    }
+
+    public UciEngine lease(EnginePriority priority) throws InterruptedException {
+        return lease(priority, properties.getPool().getLeaseTimeoutMs());
+    }
+
+    /**
+     * Restituisce un motore al pool. I motori morti o segnati come guasti vengono chiusi e sostituiti.
+     */
+    public void release(UciEngine engine) {
+        if (engine == null) return;
+        Lease lease = leases.remove(engine);
+        if (lease != null && lease.preempted) {
+            synchronized (lock) {
+                pendingPreemptions--;
+            }
+        }
+        leased.decrementAndGet();
+        engine.touch();
+        if (engine.isHealthy()) {
+            engine.restoreOptions();
+            handOff(engine, true);
+        } else {
+            discard(engine);
+        }
+        // Il motore liberato può essere andato a una richiesta invecchiata in coda: se c'è ancora una mossa del bot
+        // in attesa si interrompe un'altra ricerca
+        preemptFor(EnginePriority.INTERACTIVE);
+    }
+
+    /**
+     * Cambia la classe di un motore già ottenuto, ad esempio quando una partita lo trattiene per il ponder
+     * (che può essere interrotto da qualsiasi mossa del bot) e poi lo riusa per la propria mossa
+     */
+    public void changePriority(UciEngine engine, EnginePriority priority) {
+        leases.computeIfPresent(engine, (e, lease) -> lease.preempted ? lease : new Lease(priority));
+    }
+
+    /**
+     * Per chi tiene un motore per più ricerche di fila (batch): vero se conviene restituirlo subito
+     * perché è stato interrotto o perché in coda c'è una richiesta più urgente della sua
+     */
+    public boolean shouldYield(UciEngine engine) {
+        Lease lease = leases.get(engine);
+        if (lease == null) return false;
+        if (lease.preempted) return true;
+        synchronized (lock) {
+            long now = System.nanoTime();
+            for (Waiter waiter : waiters) {
+                if (waiter.rank(now, agingNanos()) < lease.priority.ordinal()) return true;
+            }
+        }
+        return false;
+    }
+
+    // Attende in coda che release() assegni un motore a questa richiesta
+    private UciEngine awaitHandOff(EnginePriority priority, long deadline) throws InterruptedException {
+        Waiter waiter = new Waiter(priority);
+        ClassStats stats = classStats.get(priority);
+        synchronized (lock) {
+            // Un motore può essersi liberato tra il controllo in lease() e l'ingresso in coda
+            if (waiters.isEmpty()) {
+                UciEngine engine = idle.pollFirst();
+                if (engine != null) return engine;
+            }
+            waiters.add(waiter);
+            stats.waiting.incrementAndGet();
+        }
+        if (priority == EnginePriority.INTERACTIVE) {
+            preemptFor(priority);
+        }
+
+        synchronized (lock) {
+            boolean taken = false;
+            try {
+                while (waiter.engine == null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                taken = true;
+                return waiter.engine;
+            } finally {
+                if (waiters.remove(waiter)) {
+                    stats.waiting.decrementAndGet();
+                } else if (!taken && waiter.engine != null) {
+                    // Interrotti dopo l'assegnazione: il motore passa al prossimo in coda
+                    handOff(waiter.engine, true);
+                }
+            }
+        }
+    }
+
+    // Assegna un motore libero alla richiesta in coda con priorità effettiva più alta, altrimenti lo rimette tra i liberi
+    private void handOff(UciEngine engine, boolean first) {
+        synchronized (lock) {
+            Waiter best = null;
+            long bestRank = Long.MAX_VALUE;
+            long now = System.nanoTime();
+            for (Waiter waiter : waiters) {
+                long rank = waiter.rank(now, agingNanos());
+                // A parità di classe effettiva passa prima la classe di partenza più urgente, poi chi aspetta da più tempo
+                if (best == null || rank < bestRank || (rank == bestRank && (waiter.priority.compareTo(best.priority) < 0
+                        || (waiter.priority == best.priority && waiter.since < best.since)))) {
+                    best = waiter;
+                    bestRank = rank;
+                }
+            }
+            if (best != null) {
+                waiters.remove(best);
+                classStats.get(best.priority).waiting.decrementAndGet();
+                best.engine = engine;
+                lock.notifyAll();
+            } else if (first) {
+                idle.offerFirst(engine);
+            } else {
+                idle.offerLast(engine);
+            }
+        }
+    }
+
+    /**
+     * Interrompe la ricerca in corso con la classe meno urgente (e, a parità, la più recente, che ha fatto meno lavoro)
+     * per liberare un motore. Non si interrompe più di una ricerca per ogni richiesta interattiva in attesa.
+     */
+    private void preemptFor(EnginePriority priority) {
+        UciEngine victim = null;
+        synchronized (lock) {
+            long waiting = waiters.stream().filter(w -> w.priority == priority).count();
+            if (pendingPreemptions >= waiting) return;
+
+            Lease chosen = null;
+            for (Map.Entry<UciEngine, Lease> entry : leases.entrySet()) {
+                Lease lease = entry.getValue();
+                if (lease.preempted || lease.priority.compareTo(priority) <= 0) continue;
+                if (chosen == null || lease.priority.compareTo(chosen.priority) > 0
+                        || (lease.priority == chosen.priority && lease.since > chosen.since)) {
+                    chosen = lease;
+                    victim = entry.getKey();
+                }
+            }
+            if (chosen == null) return;
+            chosen.preempted = true;
+            pendingPreemptions++;
+            classStats.get(chosen.priority).preempted.incrementAndGet();
+        }
+        System.out.println("⏸️ Ricerca sul motore #" + victim.getId() + " interrotta per una richiesta " + priority);
+        victim.stopCurrent();
+    }
+
+    private long agingNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(1, properties.getPool().getAgingMs()));
+    }
+
+    /**
+     * Vero se ci sono motori pronti: durante l'avvio e il riscaldamento si usa il bot di riserva
+     */
+    public boolean isAvailable() {
+        return state == EngineState.READY && size.get() > 0;
+    }
+
+    // Riserva uno slot per un nuovo processo, se il pool non è pieno e non c'è un backoff in corso
+    private boolean tryReserveSlot() {
+        if (!supervisor.canSpawn()) return false;
+        int max = Math.max(1, properties.getPool().getMaxSize());
+        while (true) {
+            int current = size.get();
+            if (current >= max) return false;
+            if (size.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    // Avvia un processo per uno slot già riservato; in caso di errore libera lo slot. L'handshake da solo non
+    // azzera il backoff: lo fa il riscaldamento o, per i motori avviati da lease(), maintain() dopo min-uptime-ms
+    private UciEngine spawnReserved() {
+        String reason = "handshake UCI fallito";
+        try {
+            UciEngine engine = UciEngine.start(properties.getPath());
+            if (engine != null) {
+                engine.setOption("Threads", properties.getThreads());
+                engine.setOption("Hash", properties.getHash());
+                if (engine.isReady(5000)) {
+                    created.incrementAndGet();
+                    System.out.println("✅ Motore #" + engine.getId() + " pronto (Threads=" + properties.getThreads()
+                            + ", Hash=" + properties.getHash() + "MB)");
+                    return engine;
+                }
+                System.out.println("[EnginePool] isready handshake fallito per il motore #" + engine.getId());
+                reason = "isready fallito";
+                engine.close();
+            }
+        } catch (Exception e) {
+            System.out.println("❌ Errore avvio motore Stockfish: " + e.getMessage());
+            reason = "errore di avvio: " + e.getMessage();
+        }
+        size.decrementAndGet();
+        supervisor.spawnFailed(reason);
+        return null;
+    }
+
+    private void discard(UciEngine engine) {
+        size.decrementAndGet();
+        replaced.incrementAndGet();
+        unconfirmed.remove(engine);
+        String reason = engine.getFailure() != null ? engine.getFailure() : "non più utilizzabile";
+        supervisor.recordRestart(engine.getId(), reason, System.currentTimeMillis() - engine.getStartedAt());
+        System.out.println("⚠️ Motore #" + engine.getId() + " sostituito: " + reason);
+        engine.close();
+        // Un motore morto poco dopo l'avvio ha fatto partire il backoff: il rimpiazzo aspetta maintain()
+        if (maintenance != null && supervisor.canSpawn()) {
+            maintenance.execute(this::fillToMinimum);
+        }
+    }
+
+    private void fillToMinimum() {
+        while (size.get() < properties.getPool().getMinSize() && supervisor.canSpawn()) {
+            if (!spawnIdle()) return;
+        }
+    }
+
+    // Avvia e riscalda un motore e lo mette tra i liberi; il primo che arriva rende il pool pronto
+    private boolean spawnIdle() {
+        if (!tryReserveSlot()) return false;
+        UciEngine engine = spawnReserved();
+        if (engine == null) return false;
+        if (!warmUp(engine)) {
+            // Niente discard(): rilancerebbe subito un altro avvio, ci riprova maintain() dopo il backoff
+            engine.close();
+            size.decrementAndGet();
+            supervisor.spawnFailed("riscaldamento fallito");
+            return false;
+        }
+        supervisor.spawnSucceeded();
+        handOff(engine, false);
+        markReady();
+        return true;
+    }
+
+    /**
+     * Ricerca breve a stockfish.pool.warmup-depth: la prima valutazione carica i pesi NNUE e tocca la hash,
+     * così il costo non ricade sulla prima richiesta vera
+     */
+    private boolean warmUp(UciEngine engine) {
+        int depth = properties.getPool().getWarmupDepth();
+        if (depth <= 0) return true;
+        long startedAt = System.nanoTime();
+        SearchResult result = engine.search(WARMUP_FEN, "go depth " + depth, null).await(10_000);
+        if (result == null || !engine.isReady(5000)) {
+            System.out.println("⚠️ Riscaldamento fallito per il motore #" + engine.getId());
+            return false;
+        }
+        System.out.println("🔥 Motore #" + engine.getId() + " riscaldato in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+        return true;
+    }
+
+    private synchronized void markReady() {
+        if (state == EngineState.READY) return;
+        state = EngineState.READY;
+        readyAfterMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startRequestedAt);
+        System.out.println("✅ Stockfish pronto dopo " + readyAfterMs + " ms dall'avvio");
+    }
+
+    /**
+     * Il motore indicato è morto durante una ricerca e la richiesta viene ripetuta su un altro motore
+     */
+    public void recordRequeue(UciEngine lost) {
+        supervisor.recordRequeue();
+        System.out.println("🔁 Motore #" + lost.getId() + " perso durante la ricerca (" + lost.getFailure()
+                + "): richiesta riaccodata su un altro motore");
+    }
+
+    // Controllo periodico: ricerche bloccate, motori liberi morti o muti, chiusura di quelli inattivi, minimo garantito
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            EngineProperties.Supervisor checks = properties.getSupervisor();
+
+            // Una ricerca senza output oltre stall-timeout-ms non finirà più: il processo viene chiuso, la ricerca
+            // fallisce e chi la attendeva può ripeterla su un altro motore. Un ponder può tacere finché l'utente
+            // pensa: lo limita ponder-timeout-ms
+            for (UciEngine engine : leases.keySet()) {
+                long silentMs = now - engine.getLastOutputAt();
+                if (engine.isSearching() && !engine.isPondering() && !engine.isLost()
+                        && silentMs > checks.getStallTimeoutMs()) {
+                    System.out.println("🧊 Motore #" + engine.getId() + " senza output da " + silentMs + " ms durante una ricerca: chiuso");
+                    engine.kill("ricerca bloccata");
+                }
+            }
+
+            // Motori avviati da lease() ancora vivi dopo min-uptime-ms: l'avvio è riuscito
+            for (UciEngine engine : unconfirmed) {
+                if (engine.isHealthy() && now - engine.getStartedAt() >= supervisor.getMinUptimeMs()
+                        && unconfirmed.remove(engine)) {
+                    supervisor.spawnSucceeded();
+                }
+            }
+
+            long idleTimeout = properties.getPool().getIdleTimeoutMs();
+            Iterator<UciEngine> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                UciEngine engine = it.next();
+                if (!engine.isHealthy()) {
+                    if (idle.remove(engine)) discard(engine);
+                } else if (size.get() > properties.getPool().getMinSize()
+                        && now - engine.getLastUsedAt() > idleTimeout
+                        && idle.remove(engine)) {
+                    size.decrementAndGet();
+                    retired.incrementAndGet();
+                    unconfirmed.remove(engine);
+                    engine.close();
+                } else if (now - engine.getLastUsedAt() > checks.getCheckIntervalMs() && idle.remove(engine)) {
+                    // Processo vivo ma forse bloccato: deve rispondere a isready, altrimenti viene sostituito
+                    if (engine.isReady(checks.getPingTimeoutMs())) {
+                        handOff(engine, false);
+                    } else {
+                        engine.markBroken("nessuna risposta a isready");
+                        discard(engine);
+                    }
+                }
+            }
+            fillToMinimum();
+        } catch (Exception e) {
+            System.out.println("❌ Errore manutenzione pool Stockfish: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", state.name().toLowerCase());
+        stats.put("readyAfterMs", readyAfterMs);
+        stats.put("size", size.get());
+        stats.put("idle", idle.size());
+        stats.put("leased", leased.get());
+        stats.put("minSize", properties.getPool().getMinSize());
+        stats.put("maxSize", properties.getPool().getMaxSize());
+        stats.put("created", created.get());
+        stats.put("replaced", replaced.get());
+        stats.put("retired", retired.get());
+        stats.put("leaseTimeouts", leaseTimeouts.get());
+        Map<String, Object> scheduler = new HashMap<>();
+        classStats.forEach((priority, classStat) -> scheduler.put(priority.name().toLowerCase(), classStat.toMap()));
+        stats.put("scheduler", scheduler);
+        stats.put("supervisor", supervisor.getStats());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        UciEngine engine;
+        while ((engine = idle.pollFirst()) != null) {
+            engine.close();
+            size.decrementAndGet();
+        }
+        System.out.println("✅ Pool Stockfish chiuso");
+    }
+
+    // Una richiesta in coda: il motore le viene assegnato da handOff()
+    private static class Waiter {
+        final EnginePriority priority;
+        final long since = System.nanoTime();
+        UciEngine engine;
+
+        Waiter(EnginePriority priority) {
+            this.priority = priority;
+        }
+
+        // Classe effettiva: quella di partenza, migliorata di uno per ogni intervallo di aging trascorso in coda
+        long rank(long now, long agingNanos) {
+            return Math.max(0, priority.ordinal() - (now - since) / agingNanos);
+        }
+    }
+
+    private static class Lease {
+        final EnginePriority priority;
+        final long since = System.nanoTime();
+        volatile boolean preempted = false;
+
+        Lease(EnginePriority priority) {
+            this.priority = priority;
+        }
+    }
+
+    private static class ClassStats {
+        final AtomicInteger waiting = new AtomicInteger();
+        final AtomicLong leases = new AtomicLong();
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong preempted = new AtomicLong();
+
+        void record(long waitNanos) {
+            leases.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        }
+
+        Map<String, Object> toMap() {
+            long count = leases.get();
+            Map<String, Object> map = new HashMap<>();
+            map.put("waiting", waiting.get());
+            map.put("leases", count);
+            map.put("avgWaitMs", count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count) : 0);
+            map.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+            map.put("timeouts", timeouts.get());
+            map.put("preempted", preempted.get());
+            return map;
+        }
+    }
+}
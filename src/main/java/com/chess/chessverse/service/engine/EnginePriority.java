@@ -0,0 +1,16 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Classi di priorità per ottenere un motore dal pool, dalla più urgente
+ */
+public enum EnginePriority {
+
+    /** Mossa del bot: un giocatore sta aspettando */
+    INTERACTIVE,
+
+    /** Valutazione e analisi dal vivo della analysis board */
+    LIVE,
+
+    /** Lavoro in background: batch e revisione delle partite */
+    BATCH
+}
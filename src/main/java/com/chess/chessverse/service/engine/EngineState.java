@@ -0,0 +1,17 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Stato del pool di motori: finché non è {@link #READY} le richieste non aspettano Stockfish
+ * e passano subito al bot di riserva
+ */
+public enum EngineState {
+
+    /** Motori in avvio e in riscaldamento in background */
+    STARTING,
+
+    /** Almeno un motore ha risposto "readyok" e ha completato la ricerca di riscaldamento */
+    READY,
+
+    /** Eseguibile non trovato o nessun motore avviato: si usa il bot di riserva */
+    UNAVAILABLE
+}
@@ -0,0 +1,123 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.config.EngineProperties;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registro dei riavvii del {@link EnginePool}: conta i motori sostituiti per motivo (processo terminato,
+ * nessuna risposta a isready, ricerca bloccata...) e applica un backoff esponenziale agli avvii falliti,
+ * così un eseguibile che si chiude subito non viene rilanciato in un ciclo continuo.
+ */
+final class EngineSupervisor {
+
+    private static final int RECENT_EVENTS = 20;
+
+    private final EngineProperties.Supervisor settings;
+
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong spawnFailures = new AtomicLong();
+    private final AtomicLong requeued = new AtomicLong();
+    private final Map<String, AtomicLong> reasons = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+
+    // Avvii falliti di fila e istante (System.currentTimeMillis) prima del quale non se ne tenta un altro
+    private int consecutiveFailures = 0;
+    private long nextAttemptAt = 0;
+
+    EngineSupervisor(EngineProperties.Supervisor settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Vero se si può avviare un nuovo processo (nessun backoff in corso)
+     */
+    synchronized boolean canSpawn() {
+        return System.currentTimeMillis() >= nextAttemptAt;
+    }
+
+    /**
+     * Avvio confermato: il motore ha finito il riscaldamento o è vivo da stockfish.supervisor.min-uptime-ms.
+     * Solo allora il backoff si azzera, così un eseguibile che supera l'handshake e muore subito dopo non
+     * viene rilanciato in un ciclo continuo
+     */
+    synchronized void spawnSucceeded() {
+        consecutiveFailures = 0;
+        nextAttemptAt = 0;
+    }
+
+    /**
+     * Avvio fallito: il prossimo tentativo aspetta il doppio del precedente, fino a stockfish.supervisor.backoff-max-ms
+     */
+    synchronized void spawnFailed(String reason) {
+        spawnFailures.incrementAndGet();
+        long backoff = Math.min(settings.getBackoffMaxMs(),
+                settings.getBackoffInitialMs() << Math.min(consecutiveFailures, 20));
+        consecutiveFailures++;
+        nextAttemptAt = System.currentTimeMillis() + backoff;
+        System.out.println("⏱️ Avvio Stockfish fallito (" + reason + "), nuovo tentativo tra " + backoff + " ms");
+        record(0, "avvio fallito: " + reason);
+    }
+
+    /**
+     * Un motore viene chiuso e sostituito per il motivo indicato. Se era vivo da meno di
+     * stockfish.supervisor.min-uptime-ms conta anche come avvio fallito
+     */
+    void recordRestart(int engineId, String reason, long uptimeMs) {
+        restarts.incrementAndGet();
+        reasons.computeIfAbsent(reason, r -> new AtomicLong()).incrementAndGet();
+        record(engineId, reason);
+        if (uptimeMs < settings.getMinUptimeMs()) {
+            spawnFailed(reason + " dopo " + uptimeMs + " ms");
+        }
+    }
+
+    long getMinUptimeMs() {
+        return settings.getMinUptimeMs();
+    }
+
+    void recordRequeue() {
+        requeued.incrementAndGet();
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("restarts", restarts.get());
+        stats.put("spawnFailures", spawnFailures.get());
+        stats.put("requeued", requeued.get());
+        Map<String, Long> byReason = new HashMap<>();
+        reasons.forEach((reason, count) -> byReason.put(reason, count.get()));
+        stats.put("reasons", byReason);
+        synchronized (this) {
+            stats.put("consecutiveFailures", consecutiveFailures);
+            stats.put("nextAttemptInMs", Math.max(0, nextAttemptAt - System.currentTimeMillis()));
+        }
+        List<Map<String, Object>> events;
+        synchronized (recent) {
+            events = new ArrayList<>(recent);
+        }
+        stats.put("recent", events);
+        return stats;
+    }
+
+    private void record(int engineId, String reason) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("at", Instant.now().toString());
+        if (engineId > 0) event.put("engine", engineId);
+        event.put("reason", reason);
+        synchronized (recent) {
+            recent.addFirst(event);
+            while (recent.size() > RECENT_EVENTS) {
+                recent.removeLast();
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.config.EngineProperties;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache in memoria delle valutazioni, indicizzata per {@link PositionKey}.
+ * Divisa in segmenti LRU indipendenti per ridurre la contesa; una voce viene sovrascritta
+ * solo da un risultato almeno altrettanto profondo. Dietro la memoria c'è l'{@link EvalStore} su disco:
+ * le mancate si cercano lì e ogni voce memorizzata viene salvata anche nel file.
+ */
+@Component
+public class EvalCache {
+
+    private static final int SEGMENTS = 16;
+
+    @Autowired
+    private EngineProperties properties;
+
+    @Autowired
+    private EvalStore store;
+
+    private Segment[] segments;
+
+    // Una ricerca trovata su disco è un successo della cache: le mancate sono solo quelle assenti da entrambi i livelli
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        int perSegment = Math.max(1, properties.getCache().getMaxEntries() / SEGMENTS);
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Restituisce la voce se presente con profondità almeno minDepth (in memoria o nell'archivio su disco), altrimenti null
+     */
+    public EvalEntry get(long key, int minDepth) {
+        Segment segment = segmentFor(key);
+        EvalEntry entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        if (entry != null && entry.depth() >= minDepth) {
+            hits.increment();
+            return entry;
+        }
+
+        EvalEntry stored = store.get(key, minDepth);
+        if (stored == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            diskHits.increment();
+            // Trovata su disco: torna in memoria, senza sostituire una variante completa con quella ridotta
+            synchronized (segment) {
+                EvalEntry existing = segment.get(key);
+                if (existing == null || existing.depth() < stored.depth()) {
+                    segment.put(key, stored);
+                }
+            }
+        }
+        return stored;
+    }
+
+    public EvalEntry get(String fen, int minDepth) {
+        return get(PositionKey.of(fen), minDepth);
+    }
+
+    /**
+     * Memorizza la voce, a meno che la cache non ne contenga già una più profonda
+     */
+    public void put(long key, EvalEntry entry) {
+        if (entry == null) return;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            EvalEntry existing = segment.get(key);
+            if (existing != null && existing.depth() > entry.depth()) {
+                rejected.increment();
+                return;
+            }
+            segment.put(key, entry);
+        }
+        stores.increment();
+        store.put(key, entry);
+    }
+
+    public void put(String fen, EvalEntry entry) {
+        put(PositionKey.of(fen), entry);
+    }
+
+    public Map<String, Object> getStats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", size);
+        stats.put("maxEntries", properties.getCache().getMaxEntries());
+        stats.put("hits", h);
+        stats.put("diskHits", diskHits.sum());
+        stats.put("misses", m);
+        stats.put("hitRate", h + m > 0 ? (double) h / (h + m) : 0.0);
+        stats.put("stores", stores.sum());
+        stats.put("rejectedShallower", rejected.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) (key >>> 60) & (SEGMENTS - 1)];
+    }
+
+    // Un segmento LRU: LinkedHashMap in ordine di accesso che scarta la voce meno recente
+    private class Segment extends LinkedHashMap<Long, EvalEntry> {
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, EvalEntry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.List;
+
+/**
+ * Valutazione memorizzata di una posizione: punteggio (dal lato che muove), profondità, mossa migliore e variante.
+ */
+public record EvalEntry(int depth, Integer scoreCp, Integer mate, String bestMove, List<String> pv) {
+
+    /**
+     * Costruisce la voce dal risultato di una ricerca; null se il motore non ha prodotto punteggi
+     */
+    public static EvalEntry of(SearchResult result) {
+        if (result == null || result.info() == null) return null;
+        SearchInfo info = result.info();
+        String best = result.bestMove() != null ? result.bestMove() : info.getBestMove();
+        return new EvalEntry(info.getDepth(), info.getScoreCp(), info.getMate(), best, List.copyOf(info.getPv()));
+    }
+
+    public String formatScore() {
+        return SearchInfo.formatScore(scoreCp, mate);
+    }
+}
@@ -0,0 +1,156 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.config.EngineProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Secondo livello della cache delle valutazioni: la {@link EvalTable} su disco, che sopravvive ai riavvii.
+ * {@link EvalCache} la consulta quando una posizione non è in memoria e vi scrive ogni valutazione abbastanza
+ * profonda, così le posizioni più frequenti non vengono rianalizzate a ogni avvio.
+ * <p>
+ * Invecchiamento: ogni avvio e ogni stockfish.store.aging-interval-hours fanno avanzare la generazione della
+ * tabella, e le voci non riscritte da più di stockfish.store.max-age-generations generazioni vengono cancellate.
+ */
+@Component
+public class EvalStore {
+
+    @Autowired
+    private EngineProperties properties;
+
+    private volatile EvalTable table;
+    private ScheduledExecutorService aging;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong compacted = new AtomicLong();
+
+    @PostConstruct
+    void open() {
+        EngineProperties.Store settings = properties.getStore();
+        if (!settings.isEnabled()) return;
+        Path path = Path.of(settings.getPath());
+        try {
+            table = EvalTable.open(path, settings.getSlots());
+            System.out.println("💾 Archivio valutazioni " + path.getFileName() + " mappato in memoria: "
+                    + table.getSlots() + " slot, generazione " + table.getGeneration());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("❌ Archivio valutazioni non disponibile (" + path + "): " + e.getMessage());
+            return;
+        }
+
+        aging = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "eval-store-aging");
+            t.setDaemon(true);
+            return t;
+        });
+        // Pulizia iniziale in background (le voci delle esecuzioni precedenti sono appena invecchiate), poi periodica
+        aging.execute(this::compact);
+        long interval = Math.max(1, settings.getAgingIntervalHours());
+        aging.scheduleWithFixedDelay(this::age, interval, interval, TimeUnit.HOURS);
+    }
+
+    @PreDestroy
+    void close() {
+        if (aging != null) {
+            aging.shutdownNow();
+        }
+        EvalTable current = table;
+        table = null;
+        if (current == null) return;
+        try {
+            current.close();
+        } catch (IOException e) {
+            // chiusura a fine applicazione: niente da fare
+        }
+    }
+
+    public boolean isAvailable() {
+        return table != null;
+    }
+
+    /**
+     * Voce su disco con profondità almeno minDepth, altrimenti null
+     */
+    public EvalEntry get(long key, int minDepth) {
+        EvalTable current = table;
+        if (current == null) return null;
+        EvalEntry entry = current.get(key);
+        if (entry != null && entry.depth() >= minDepth) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Scrive la voce se la ricerca è arrivata almeno a stockfish.store.min-depth
+     */
+    public void put(long key, EvalEntry entry) {
+        EvalTable current = table;
+        if (current == null || entry == null || entry.depth() < properties.getStore().getMinDepth()) return;
+        if (current.put(key, entry)) {
+            stores.increment();
+        } else {
+            rejected.increment();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        EvalTable current = table;
+        stats.put("loaded", current != null);
+        stats.put("path", properties.getStore().getPath());
+        stats.put("slots", current != null ? current.getSlots() : 0);
+        stats.put("used", current != null ? current.count() : 0);
+        stats.put("generation", current != null ? current.getGeneration() : 0);
+        long h = hits.sum();
+        long m = misses.sum();
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m > 0 ? (double) h / (h + m) : 0.0);
+        stats.put("stores", stores.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("compacted", compacted.get());
+        return stats;
+    }
+
+    // Nuova generazione, pulizia delle voci troppo vecchie e scrittura su disco
+    private void age() {
+        EvalTable current = table;
+        if (current == null) return;
+        current.nextGeneration();
+        compact();
+    }
+
+    private void compact() {
+        EvalTable current = table;
+        if (current == null) return;
+        try {
+            int cleared = current.compact(properties.getStore().getMaxAgeGenerations());
+            compacted.addAndGet(cleared);
+            current.flush();
+            if (cleared > 0) {
+                System.out.println("💾 Archivio valutazioni: " + cleared + " voci scadute rimosse (generazione "
+                        + current.getGeneration() + ")");
+            }
+        } catch (RuntimeException e) {
+            System.out.println("⚠️ Pulizia archivio valutazioni fallita: " + e.getMessage());
+        }
+    }
+}
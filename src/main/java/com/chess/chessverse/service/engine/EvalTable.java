@@ -0,0 +1,275 @@
+package com.chess.chessverse.service.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tabella delle valutazioni su disco, mappata in memoria: indirizzamento aperto a dimensione fissa, indicizzato
+ * dalla chiave a 64 bit di {@link PositionKey}. Il file ha un'intestazione di 64 byte (magic, numero di slot,
+ * generazione corrente) seguita da bucket di 4 slot da 16 byte: [chiave XOR dati, dati].
+ * <p>
+ * Niente lock: ogni parola da 8 byte si scrive e si legge in modo atomico, e chi legge controlla che
+ * chiave XOR dati torni alla chiave cercata. Due scritture concorrenti sullo stesso slot possono lasciare
+ * una coppia incoerente, che semplicemente non corrisponde a nessuna chiave e viene trattata come vuota
+ * (la stessa tecnica della hash table di Stockfish).
+ * <p>
+ * I 64 bit di dati contengono: punteggio (16 bit con segno, centipawn o mosse al matto), profondità (8 bit),
+ * mossa migliore (16 bit: da, a, promozione), generazione (16 bit) e flag (valida, matto).
+ */
+public class EvalTable implements Closeable {
+
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 16;
+    static final int BUCKET_SLOTS = 4;
+
+    /** Oltre i 2 GB non si può mappare il file con un solo buffer */
+    static final int MAX_SLOTS = 1 << 26;
+
+    // 02: chiavi Zobrist al posto dell'hash della FEN, i file vecchi si ricreano vuoti
+    private static final byte[] MAGIC = "CVEVAL02".getBytes(StandardCharsets.US_ASCII);
+    private static final int SLOTS_OFFSET = 8;
+    private static final int GENERATION_OFFSET = 16;
+
+    private static final int FLAG_VALID = 1;
+    private static final int FLAG_MATE = 2;
+    private static final String PROMOTIONS = " nbrq";
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int buckets;
+    private volatile int generation;
+
+    private EvalTable(FileChannel channel, MappedByteBuffer buffer, int slots, int generation) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.buckets = slots / BUCKET_SLOTS;
+        this.generation = generation;
+    }
+
+    /**
+     * Apre (o crea) il file con il numero di slot indicato, arrotondato a una potenza di due.
+     * Un file con un'intestazione diversa o con un altro numero di slot viene azzerato.
+     * Ogni apertura fa avanzare la generazione: le voci scritte nelle esecuzioni precedenti risultano più vecchie.
+     */
+    public static EvalTable open(Path path, int slots) throws IOException {
+        int size = Integer.highestOneBit(Math.max(BUCKET_SLOTS, Math.min(slots, MAX_SLOTS)));
+        long length = HEADER_SIZE + (long) size * SLOT_SIZE;
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean fresh = channel.size() != length;
+            if (fresh) {
+                channel.truncate(0);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(0, magic);
+            if (fresh || !Arrays.equals(magic, MAGIC) || buffer.getLong(SLOTS_OFFSET) != size) {
+                // File nuovo (già pieno di zeri) o di un altro formato: si riparte da una tabella vuota
+                if (!fresh) {
+                    for (int offset = 0; offset < length; offset += 8) {
+                        buffer.putLong(offset, 0L);
+                    }
+                }
+                buffer.put(0, MAGIC);
+                buffer.putLong(SLOTS_OFFSET, size);
+            }
+            int generation = (buffer.getShort(GENERATION_OFFSET) + 1) & 0xFFFF;
+            buffer.putShort(GENERATION_OFFSET, (short) generation);
+            return new EvalTable(channel, buffer, size, generation);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Voce memorizzata per la chiave, o null. La variante contiene solo la mossa migliore.
+     */
+    public EvalEntry get(long key) {
+        int base = bucketOffset(key);
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            int offset = base + i * SLOT_SIZE;
+            long data = (long) LONGS.getAcquire(buffer, offset + 8);
+            long check = (long) LONGS.getAcquire(buffer, offset);
+            if ((check ^ data) == key && (flags(data) & FLAG_VALID) != 0) {
+                return decode(data);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scrive la voce. Se la chiave è già presente la si sostituisce solo con una ricerca almeno altrettanto
+     * profonda o con una voce di una generazione più recente; altrimenti si usa uno slot vuoto del bucket
+     * o si rimpiazza quello che vale meno (poco profondo e vecchio). Restituisce false se la voce non è stata scritta.
+     */
+    public boolean put(long key, EvalEntry entry) {
+        if (entry == null || (entry.scoreCp() == null && entry.mate() == null)) return false;
+        long data = encode(entry, generation);
+        int base = bucketOffset(key);
+
+        int target = -1;
+        int worstValue = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET_SLOTS; i++) {
+            int offset = base + i * SLOT_SIZE;
+            long existing = (long) LONGS.getAcquire(buffer, offset + 8);
+            long check = (long) LONGS.getAcquire(buffer, offset);
+            if ((check ^ existing) == key && (flags(existing) & FLAG_VALID) != 0) {
+                if (depth(existing) > entry.depth() && age(existing) == 0) return false;
+                target = offset;
+                break;
+            }
+            int value = (flags(existing) & FLAG_VALID) == 0 ? Integer.MIN_VALUE : depth(existing) - 8 * age(existing);
+            if (value < worstValue) {
+                worstValue = value;
+                target = offset;
+            }
+        }
+        // Prima i dati, poi la chiave: chi legge a metà vede una coppia che non torna e la ignora
+        LONGS.setRelease(buffer, target + 8, data);
+        LONGS.setRelease(buffer, target, key ^ data);
+        return true;
+    }
+
+    /**
+     * Fa avanzare la generazione: da qui in poi le voci esistenti contano come più vecchie di un passo
+     */
+    public synchronized int nextGeneration() {
+        generation = (generation + 1) & 0xFFFF;
+        buffer.putShort(GENERATION_OFFSET, (short) generation);
+        return generation;
+    }
+
+    /**
+     * Svuota gli slot con voci più vecchie di maxAge generazioni (o non valide), così le posizioni non più
+     * richieste lasciano posto alle nuove. Restituisce il numero di slot liberati.
+     */
+    public int compact(int maxAge) {
+        int cleared = 0;
+        int slots = buckets * BUCKET_SLOTS;
+        for (int i = 0; i < slots; i++) {
+            int offset = HEADER_SIZE + i * SLOT_SIZE;
+            long data = (long) LONGS.getAcquire(buffer, offset + 8);
+            if (data == 0L) continue;
+            if ((flags(data) & FLAG_VALID) == 0 || age(data) > maxAge) {
+                LONGS.setRelease(buffer, offset, 0L);
+                LONGS.setRelease(buffer, offset + 8, 0L);
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Numero di slot occupati (scorre tutta la tabella)
+     */
+    public int count() {
+        int used = 0;
+        int slots = buckets * BUCKET_SLOTS;
+        for (int i = 0; i < slots; i++) {
+            long data = (long) LONGS.getAcquire(buffer, HEADER_SIZE + i * SLOT_SIZE + 8);
+            if ((flags(data) & FLAG_VALID) != 0) used++;
+        }
+        return used;
+    }
+
+    public int getSlots() {
+        return buckets * BUCKET_SLOTS;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Chiede al sistema operativo di scrivere su disco le pagine modificate
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private int bucketOffset(long key) {
+        return HEADER_SIZE + (int) (key & (buckets - 1)) * BUCKET_SLOTS * SLOT_SIZE;
+    }
+
+    private int age(long data) {
+        return (generation - (int) (data >>> 40 & 0xFFFF)) & 0xFFFF;
+    }
+
+    private static int depth(long data) {
+        return (int) (data >>> 16 & 0xFF);
+    }
+
+    private static int flags(long data) {
+        return (int) (data >>> 56 & 0xFF);
+    }
+
+    static long encode(EvalEntry entry, int generation) {
+        boolean mate = entry.mate() != null;
+        int score = mate ? entry.mate() : entry.scoreCp();
+        score = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score));
+        int depth = Math.max(0, Math.min(255, entry.depth()));
+        int flags = FLAG_VALID | (mate ? FLAG_MATE : 0);
+        return (score & 0xFFFFL)
+                | (long) depth << 16
+                | (long) encodeMove(entry.bestMove()) << 24
+                | (long) (generation & 0xFFFF) << 40
+                | (long) flags << 56;
+    }
+
+    static EvalEntry decode(long data) {
+        int score = (short) (data & 0xFFFF);
+        boolean mate = (flags(data) & FLAG_MATE) != 0;
+        String move = decodeMove((int) (data >>> 24 & 0xFFFF));
+        return new EvalEntry(depth(data), mate ? null : score, mate ? score : null, move,
+                move != null ? List.of(move) : List.of());
+    }
+
+    // Mossa UCI in 16 bit: casa di partenza (6), di arrivo (6), promozione (3), presente (1)
+    private static int encodeMove(String uci) {
+        if (uci == null || uci.length() < 4) return 0;
+        int from = square(uci.charAt(0), uci.charAt(1));
+        int to = square(uci.charAt(2), uci.charAt(3));
+        if (from < 0 || to < 0) return 0;
+        int promotion = uci.length() > 4 ? Math.max(0, PROMOTIONS.indexOf(uci.charAt(4))) : 0;
+        return 1 << 15 | promotion << 12 | to << 6 | from;
+    }
+
+    private static String decodeMove(int move) {
+        if ((move & 1 << 15) == 0) return null;
+        int from = move & 63;
+        int to = move >>> 6 & 63;
+        int promotion = move >>> 12 & 7;
+        StringBuilder uci = new StringBuilder(5)
+                .append((char) ('a' + (from & 7))).append((char) ('1' + (from >>> 3)))
+                .append((char) ('a' + (to & 7))).append((char) ('1' + (to >>> 3)));
+        if (promotion > 0) uci.append(PROMOTIONS.charAt(promotion));
+        return uci.toString();
+    }
+
+    private static int square(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') return -1;
+        return (rank - '1') * 8 + (file - 'a');
+    }
+}
@@ -0,0 +1,50 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Orologio della partita al momento della mossa (millisecondi rimasti e incremento per lato).
+ * Serve sia per il comando "go wtime/btime/winc/binc" sia per calcolare un budget per mossa.
+ */
+public record GameClock(long whiteMs, long blackMs, long whiteIncMs, long blackIncMs, int movesToGo) {
+
+    // Budget minimo per una mossa, anche con l'orologio quasi a zero
+    private static final long MIN_BUDGET_MS = 20;
+
+    /**
+     * Restituisce null se non è indicato il tempo di nessuno dei due lati
+     */
+    public static GameClock of(Long whiteMs, Long blackMs, Long whiteIncMs, Long blackIncMs, Integer movesToGo) {
+        if (whiteMs == null && blackMs == null) return null;
+        long white = whiteMs != null ? whiteMs : blackMs;
+        long black = blackMs != null ? blackMs : whiteMs;
+        return new GameClock(Math.max(0, white), Math.max(0, black),
+                whiteIncMs != null ? Math.max(0, whiteIncMs) : 0,
+                blackIncMs != null ? Math.max(0, blackIncMs) : 0,
+                movesToGo != null ? Math.max(0, movesToGo) : 0);
+    }
+
+    public String goCommand(long overheadMs) {
+        StringBuilder go = new StringBuilder("go")
+                .append(" wtime ").append(Math.max(1, whiteMs - overheadMs))
+                .append(" btime ").append(Math.max(1, blackMs - overheadMs))
+                .append(" winc ").append(whiteIncMs)
+                .append(" binc ").append(blackIncMs);
+        if (movesToGo > 0) go.append(" movestogo ").append(movesToGo);
+        return go.toString();
+    }
+
+    public long remainingMs(boolean white) {
+        return white ? whiteMs : blackMs;
+    }
+
+    /**
+     * Tempo da dedicare a questa mossa: il tempo rimasto diviso per le mosse che mancano (stimate dal numero di
+     * mossa se movestogo non è indicato) più tre quarti dell'incremento, mai oltre un quarto del tempo rimasto
+     */
+    public long budgetMs(boolean white, int fullMoveNumber, long overheadMs) {
+        long remaining = Math.max(0, remainingMs(white) - overheadMs);
+        long increment = white ? whiteIncMs : blackIncMs;
+        int movesLeft = movesToGo > 0 ? Math.min(movesToGo, 50) : Math.max(20, 50 - fullMoveNumber / 2);
+        long budget = remaining / movesLeft + increment * 3 / 4;
+        return Math.max(MIN_BUDGET_MS, Math.min(budget, remaining / 4));
+    }
+}
@@ -0,0 +1,170 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.rules.Position;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Motori Stockfish caricati nel processo Java con la libreria di stockfish-simple/native (stockfish.in-process.*).
+ * Servono le ricerche brevi a limite fisso (livelli bassi del bot, batch a nodi o profondità fissi), dove il costo
+ * di scrivere i comandi sulla pipe e di analizzare le righe "info" pesa quanto la ricerca stessa: qui una chiamata
+ * costa pochi microsecondi oltre alla ricerca e il risultato arriva già come struttura.
+ * <p>
+ * Non sostituisce il {@link EnginePool}: {@link #search} restituisce null quando la modalità è disattivata,
+ * il comando non è a limite fisso o tutti i motori sono occupati, e chi chiama usa il pool di processi.
+ * Un crash della libreria però chiude l'intera applicazione: le FEN vengono controllate prima di arrivarci.
+ */
+@Component
+public class InProcessEngines {
+
+    @Autowired
+    private EngineProperties properties;
+
+    // Presente solo se l'applicazione è compilata con il profilo Maven native-engine
+    @Autowired(required = false)
+    private NativeEngineLibrary library;
+
+    // Motori liberi: in testa quello usato più di recente, che ha cache e hash calde
+    private final BlockingDeque<Slot> idle = new LinkedBlockingDeque<>();
+    private final List<Slot> engines = new CopyOnWriteArrayList<>();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private volatile boolean closed = false;
+    private volatile String failure;
+
+    // Un motore della libreria con lo Skill Level impostato per ultimo (Stockfish parte da 20)
+    private static final class Slot {
+        final NativeEngine engine;
+        int skillLevel = 20;
+
+        Slot(NativeEngine engine) {
+            this.engine = engine;
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        EngineProperties.InProcess settings = properties.getInProcess();
+        if (!settings.isEnabled()) return;
+        if (library == null) {
+            failure = "profilo native-engine non attivo";
+            System.out.println("⚠️ Motore in-process richiesto ma l'applicazione è compilata senza il profilo native-engine");
+            return;
+        }
+
+        // Ogni motore carica la rete NNUE e alloca la hash: in background, come l'avvio del pool di processi
+        Thread startup = new Thread(() -> {
+            long startedAt = System.nanoTime();
+            try {
+                for (int i = 0; i < Math.max(1, settings.getEngines()) && !closed; i++) {
+                    Slot slot = new Slot(library.create(1, settings.getHash()));
+                    engines.add(slot);
+                    idle.addLast(slot);
+                }
+                System.out.println("✅ Motore in-process pronto: " + engines.size() + " istanze di "
+                        + settings.getLibrary() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt) + " ms");
+            } catch (RuntimeException | LinkageError e) {
+                failure = e.getMessage();
+                System.out.println("❌ Motore in-process non disponibile (" + settings.getLibrary() + "): " + e.getMessage());
+            }
+        }, "in-process-startup");
+        startup.setDaemon(true);
+        startup.start();
+    }
+
+    @PreDestroy
+    void close() {
+        closed = true;
+        // Solo i motori liberi: uno ancora in ricerca viene lasciato alla chiusura del processo
+        Slot slot;
+        while ((slot = idle.pollFirst()) != null) {
+            engines.remove(slot);
+            slot.engine.close();
+        }
+    }
+
+    public boolean isAvailable() {
+        return !closed && !engines.isEmpty();
+    }
+
+    /**
+     * Ricerca su un motore libero della libreria con il comando "go depth/nodes/movetime N" e lo Skill Level indicati.
+     * Restituisce null (e la ricerca va fatta sul pool di processi) se il comando ha un altro limite,
+     * se la FEN non è accettabile o se non c'è un motore libero: non si attende mai.
+     */
+    public SearchResult search(String fen, String goCommand, int skillLevel) {
+        if (closed || engines.isEmpty()) return null;
+        NativeEngine.Limits limits = NativeEngine.Limits.parse(goCommand);
+        if (limits == null) return null;
+        if (!isSafeFen(fen)) {
+            rejected.increment();
+            return null;
+        }
+        Slot slot = idle.pollFirst();
+        if (slot == null) {
+            busy.increment();
+            return null;
+        }
+        long startedAt = System.nanoTime();
+        try {
+            if (slot.skillLevel != skillLevel) {
+                slot.engine.setOption("Skill Level", Integer.toString(skillLevel));
+                slot.skillLevel = skillLevel;
+            }
+            SearchResult result = slot.engine.search(fen, List.of(), limits);
+            searches.increment();
+            searchNanos.add(System.nanoTime() - startedAt);
+            return result;
+        } catch (RuntimeException e) {
+            failures.increment();
+            System.out.println("❌ Errore nel motore in-process: " + e.getMessage());
+            return null;
+        } finally {
+            idle.addFirst(slot);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        EngineProperties.InProcess settings = properties.getInProcess();
+        stats.put("enabled", settings.isEnabled());
+        stats.put("compiled", library != null);
+        stats.put("library", settings.getLibrary());
+        stats.put("engines", engines.size());
+        stats.put("idle", idle.size());
+        long count = searches.sum();
+        stats.put("searches", count);
+        stats.put("avgSearchMicros", count > 0 ? searchNanos.sum() / count / 1000 : 0);
+        stats.put("busy", busy.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("failures", failures.sum());
+        if (failure != null) stats.put("failure", failure);
+        return stats;
+    }
+
+    /**
+     * Controllo della FEN prima di passarla alla libreria ({@link Position#illegalReason()}): re, scacco al lato
+     * che non muove, pedoni, diritti di arrocco ed en passant. Un processo Stockfish che riceve una posizione
+     * impossibile può cadere e il pool lo sostituisce; nel processo Java un crash porta giù tutta la JVM.
+     */
+    static boolean isSafeFen(String fen) {
+        return Position.playable(fen) != null;
+    }
+}
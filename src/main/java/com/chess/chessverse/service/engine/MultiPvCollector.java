@@ -0,0 +1,55 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Raccoglie le varianti di una ricerca con MultiPV: una riga "info" per ogni variante è copiata nello slot
+ * del suo numero (multipv 1 = la migliore). Quando arriva l'ultima variante di un'iterazione notifica
+ * una fotografia ordinata di tutte le linee.
+ * <p>
+ * Se la posizione ha meno mosse legali di N, Stockfish produce meno varianti: l'ultima è quella col numero
+ * più alto visto finora.
+ */
+public class MultiPvCollector implements SearchListener {
+
+    private final SearchInfo[] lines;
+    private final Consumer<List<SearchInfo>> onUpdate;
+    private int highestIndex = 0;
+
+    public MultiPvCollector(int multiPv, Consumer<List<SearchInfo>> onUpdate) {
+        this.lines = new SearchInfo[multiPv];
+        for (int i = 0; i < multiPv; i++) {
+            lines[i] = new SearchInfo();
+        }
+        this.onUpdate = onUpdate;
+    }
+
+    @Override
+    public void onInfo(SearchInfo info) {
+        int index = info.getMultiPv();
+        if (index < 1 || index > lines.length) return;
+
+        boolean lastOfIteration;
+        synchronized (this) {
+            lines[index - 1].copyFrom(info);
+            if (index > highestIndex) highestIndex = index;
+            lastOfIteration = index == highestIndex;
+        }
+        if (lastOfIteration && onUpdate != null) {
+            onUpdate.accept(snapshot());
+        }
+    }
+
+    /**
+     * Copie delle varianti ricevute finora, dalla migliore
+     */
+    public synchronized List<SearchInfo> snapshot() {
+        List<SearchInfo> snapshot = new ArrayList<>(highestIndex);
+        for (int i = 0; i < highestIndex; i++) {
+            if (lines[i].hasScore()) snapshot.add(lines[i].copy());
+        }
+        return snapshot;
+    }
+}
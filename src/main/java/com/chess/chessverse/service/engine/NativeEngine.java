@@ -0,0 +1,55 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.List;
+
+/**
+ * Un motore Stockfish caricato nel processo Java (vedi {@link NativeEngineLibrary}). La ricerca è sincrona e
+ * restituisce direttamente un {@link SearchResult}: niente righe UCI da scrivere sulla pipe e da analizzare.
+ * Un'istanza va usata da un thread alla volta.
+ */
+public interface NativeEngine extends AutoCloseable {
+
+    /**
+     * Limite di una ricerca: vale il primo tra depth, nodes e moveTimeMs maggiore di zero
+     */
+    record Limits(int depth, long nodes, int moveTimeMs) {
+
+        /**
+         * Limite di un comando "go depth N", "go nodes N" o "go movetime N"; null per gli altri comandi
+         * (ricerche con l'orologio o infinite, che restano al pool di processi)
+         */
+        public static Limits parse(String goCommand) {
+            String[] parts = goCommand.trim().split("\\s+");
+            if (parts.length != 3 || !parts[0].equals("go")) return null;
+            long value;
+            try {
+                value = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (value <= 0) return null;
+            switch (parts[1]) {
+                case "depth": return value <= 245 ? new Limits((int) value, 0, 0) : null;
+                case "nodes": return new Limits(0, value, 0);
+                case "movetime": return value <= Integer.MAX_VALUE ? new Limits(0, 0, (int) value) : null;
+                default: return null;
+            }
+        }
+    }
+
+    /**
+     * Cerca la posizione raggiunta da fen con le mosse indicate (UCI, anche vuote) e attende il risultato
+     */
+    SearchResult search(String fen, List<String> moves, Limits limits);
+
+    /**
+     * Come "setoption name ... value ...": false se l'opzione non esiste
+     */
+    boolean setOption(String name, String value);
+
+    /** Come "ucinewgame": svuota la hash e la storia della ricerca */
+    void newGame();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,14 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * La libreria libchessverse_engine (stockfish-simple/native) caricata nel processo. L'implementazione usa
+ * java.lang.foreign e si compila solo con il profilo Maven native-engine (JDK 22+): senza quel profilo non
+ * esiste nessun bean di questo tipo e {@link InProcessEngines} resta disattivato.
+ */
+public interface NativeEngineLibrary {
+
+    /**
+     * Carica la libreria (alla prima chiamata) e crea un motore con i thread e la hash indicati
+     */
+    NativeEngine create(int threads, int hashMb);
+}
@@ -0,0 +1,150 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Un motore che, dopo la mossa del bot, continua a pensare ("go ponder") sulla risposta prevista dell'avversario.
+ * Il motore resta in prestito alla partita finché:
+ * <ul>
+ *   <li>arriva la mossa dell'utente: {@link #claim()} lo consegna a chi calcola la risposta del bot</li>
+ *   <li>il pool lo reclama per una richiesta più urgente, o il ponder scade: la ricerca viene fermata e il motore restituito</li>
+ * </ul>
+ */
+public class PonderSession {
+
+    // Attesa del "bestmove" dopo lo stop di un ponder sulla mossa sbagliata
+    private static final long STOP_TIMEOUT_MS = 1000;
+    private static final Pattern DEPTH_LIMIT = Pattern.compile("^go depth (\\d+)$");
+    private static final Pattern MOVE_TIME = Pattern.compile("^go movetime (\\d+)$");
+
+    private final EnginePool pool;
+    private final UciEngine engine;
+    private final SearchHandle handle;
+    private final long expectedPosition;
+    private final int skillLevel;
+    // Budget di "go movetime": parte dal ponderhit, lo applica resolve() (0 = limiti lasciati a Stockfish)
+    private final long moveTimeMs;
+    private final long startedAt = System.currentTimeMillis();
+
+    private boolean claimed = false;
+    private boolean ended = false;
+    // Ricerca a profondità fissa fermata al suo limite prima del ponderhit: il risultato è già la risposta
+    private volatile boolean depthReached = false;
+
+    private PonderSession(EnginePool pool, UciEngine engine, SearchHandle handle, long expectedPosition, int skillLevel,
+                          long moveTimeMs) {
+        this.pool = pool;
+        this.engine = engine;
+        this.handle = handle;
+        this.expectedPosition = expectedPosition;
+        this.skillLevel = skillLevel;
+        this.moveTimeMs = moveTimeMs;
+    }
+
+    /**
+     * Avvia il ponder sulla posizione fen + mosse della partita, che terminano con la mossa del bot e la risposta
+     * prevista. goCommand è il comando della ricerca normale ("go movetime 3000"). Stockfish conta il tempo dal "go",
+     * non dal ponderhit: con "go ponder movetime N" un ponder più lungo di N ms finirebbe appena arriva il ponderhit.
+     * Per questo il ponder parte come "go ponder infinite" e dopo il ponderhit la ricerca viene fermata allo scadere
+     * di N ms; con l'orologio (wtime/btime) il tempo resta gestito da Stockfish.
+     * Con "go depth N" Stockfish, arrivato alla profondità durante il ponder, resterebbe fermo ad aspettare il ponderhit:
+     * la ricerca viene invece fermata lì, il motore torna al pool e la mossa resta pronta per {@link #finishedResult}.
+     */
+    public static PonderSession start(EnginePool pool, UciEngine engine, String fen, List<String> moves,
+                                      long expectedPosition, int skillLevel, String goCommand) {
+        Matcher depthLimit = DEPTH_LIMIT.matcher(goCommand);
+        int depth = depthLimit.matches() ? Integer.parseInt(depthLimit.group(1)) : 0;
+        Matcher moveTime = MOVE_TIME.matcher(goCommand);
+        long moveTimeMs = moveTime.matches() ? Long.parseLong(moveTime.group(1)) : 0;
+        AtomicReference<PonderSession> sessionRef = new AtomicReference<>();
+        SearchListener listener = depth == 0 ? null : info -> {
+            // Sul thread di lettura: solo l'invio di "stop", che non attende nulla
+            PonderSession session = sessionRef.get();
+            if (session != null && session.handle.isPondering() && info.getMultiPv() == 1
+                    && info.getDepth() >= depth && info.getBound() == SearchInfo.BOUND_EXACT) {
+                session.depthReached = true;
+                session.handle.stop();
+            }
+        };
+        String ponderCommand = moveTimeMs > 0 ? "go ponder infinite" : "go ponder" + goCommand.substring(2);
+        SearchHandle handle = engine.search(fen, moves, ponderCommand, listener);
+        pool.changePriority(engine, EnginePriority.BATCH);
+        PonderSession session = new PonderSession(pool, engine, handle, expectedPosition, skillLevel, moveTimeMs);
+        sessionRef.set(session);
+        handle.result().whenComplete((result, error) -> session.end());
+        return session;
+    }
+
+    /**
+     * Prende il motore per calcolare la risposta del bot; null se il ponder è già terminato e il motore restituito
+     */
+    public synchronized UciEngine claim() {
+        if (ended) return null;
+        claimed = true;
+        pool.changePriority(engine, EnginePriority.INTERACTIVE);
+        return engine;
+    }
+
+    /**
+     * Dopo {@link #claim()}: se la posizione arrivata è quella prevista la ricerca prosegue ("ponderhit") e il suo
+     * handle viene restituito (già completo se la profondità richiesta era stata raggiunta); altrimenti viene fermata
+     * e il motore è pronto per una nuova ricerca (null)
+     */
+    public SearchHandle resolve(long position, int skillLevel) {
+        if (matches(position, skillLevel) && (depthReached || !handle.result().isDone())) {
+            handle.ponderHit();
+            if (moveTimeMs > 0) {
+                // Ricerca infinita: il budget della mossa parte adesso
+                CompletableFuture.delayedExecutor(moveTimeMs, TimeUnit.MILLISECONDS).execute(handle::stop);
+            }
+            return handle;
+        }
+        handle.stop();
+        handle.await(STOP_TIMEOUT_MS);
+        return null;
+    }
+
+    /**
+     * Mossa del ponder già terminato alla sua profondità, se la posizione arrivata è quella prevista; null altrimenti.
+     * Il motore è già tornato al pool: {@link #claim()} restituisce null
+     */
+    public SearchResult finishedResult(long position, int skillLevel) {
+        if (!depthReached || !matches(position, skillLevel) || handle.result().isCompletedExceptionally()) return null;
+        return handle.result().getNow(null);
+    }
+
+    /**
+     * Ponder non più utile (partita abbandonata o scaduta): ferma la ricerca, il motore torna al pool
+     */
+    public synchronized void expire() {
+        if (claimed || ended) return;
+        handle.stop();
+    }
+
+    /**
+     * Falso quando il motore è già stato preso per la mossa o restituito al pool
+     */
+    public synchronized boolean isActive() {
+        return !claimed && !ended;
+    }
+
+    public long getAgeMs() {
+        return System.currentTimeMillis() - startedAt;
+    }
+
+    private boolean matches(long position, int skillLevel) {
+        return position == expectedPosition && skillLevel == this.skillLevel && !handle.wasPreempted();
+    }
+
+    // La ricerca è terminata senza che nessuno abbia preso il motore (stop per prelazione o scadenza)
+    private synchronized void end() {
+        if (claimed || ended) return;
+        ended = true;
+        pool.release(engine);
+    }
+}
@@ -0,0 +1,39 @@
+package com.chess.chessverse.service.engine;
+
+import com.chess.chessverse.service.rules.Position;
+
+/**
+ * Chiave di posizione per le cache e per l'archivio delle valutazioni: la chiave Zobrist di {@link Position}
+ * (la stessa del libro Polyglot). Non conta i contatori di mosse e considera l'en passant solo se catturabile,
+ * così la stessa posizione raggiunta con ordini di mosse diversi ha la stessa chiave.
+ * Chi ha già una {@link Position} usa direttamente {@link Position#key()}.
+ */
+public final class PositionKey {
+
+    private PositionKey() {
+    }
+
+    public static long of(String fen) {
+        try {
+            return Position.fromFen(fen).key();
+        } catch (IllegalArgumentException e) {
+            return ofText(fen);
+        }
+    }
+
+    // FEN non leggibile: hash del testo, così la cache funziona comunque per quella stringa
+    private static long ofText(String fen) {
+        String text = fen.trim();
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // Finalizzatore splitmix64 per distribuire meglio i bit
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,17 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Una ricerca in corso vista da chi la attende: può essere un {@link SearchHandle} oppure una delle
+ * sottoscrizioni di una {@link SharedSearch}.
+ */
+public interface RunningSearch {
+
+    CompletableFuture<SearchResult> result();
+
+    /**
+     * Chi attende rinuncia al risultato: la ricerca viene interrotta se nessun altro la sta aspettando
+     */
+    void stop();
+}
@@ -0,0 +1,137 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Una ricerca in corso su un {@link UciEngine}. Si completa quando il motore stampa "bestmove".
+ */
+public class SearchHandle implements RunningSearch {
+
+    // Margine concesso al motore per rispondere a "stop"
+    private static final long STOP_GRACE_MS = 1000;
+
+    private final UciEngine engine;
+    private final SearchListener listener;
+    private final CompletableFuture<SearchResult> result = new CompletableFuture<>();
+    // Copia dell'ultima riga "info" principale: l'istanza ricevuta da onInfo viene riutilizzata dal parser
+    private final SearchInfo lastInfo = new SearchInfo();
+    private volatile boolean hasInfo = false;
+    private volatile boolean preempted = false;
+    // "go ponder" in attesa del ponderhit: il motore può restare muto a lungo senza essere bloccato
+    private volatile boolean pondering;
+
+    SearchHandle(UciEngine engine, SearchListener listener, boolean pondering) {
+        this.engine = engine;
+        this.listener = listener;
+        this.pondering = pondering;
+    }
+
+    void onInfo(SearchInfo info) {
+        if (info.getMultiPv() == 1) {
+            synchronized (lastInfo) {
+                lastInfo.copyFrom(info);
+            }
+            hasInfo = true;
+        }
+        if (listener != null) {
+            try {
+                listener.onInfo(info);
+            } catch (Exception e) {
+                System.out.println("⚠️ Errore nel listener di ricerca: " + e.getMessage());
+            }
+        }
+    }
+
+    void complete(String bestMoveLine) {
+        String[] parts = bestMoveLine.split(" ");
+        String best = parts.length >= 2 && !parts[1].equals("(none)") ? parts[1] : null;
+        String ponder = parts.length >= 4 && parts[2].equals("ponder") ? parts[3] : null;
+        SearchInfo info = null;
+        if (hasInfo) {
+            synchronized (lastInfo) {
+                info = lastInfo.copy();
+            }
+        }
+        result.complete(new SearchResult(best, ponder, info));
+    }
+
+    void fail(Throwable error) {
+        result.completeExceptionally(error);
+    }
+
+    /**
+     * Vero per una ricerca "go ponder" finché non arriva il ponderhit
+     */
+    public boolean isPondering() {
+        return pondering;
+    }
+
+    void markPreempted() {
+        preempted = true;
+    }
+
+    /**
+     * Vero se il pool ha interrotto la ricerca per dare il motore a una richiesta più urgente:
+     * il risultato è quello trovato fino a quel momento, non quello del budget richiesto
+     */
+    public boolean wasPreempted() {
+        return preempted;
+    }
+
+    /**
+     * Chiede al motore di terminare subito la ricerca; il risultato arriverà con il "bestmove" finale.
+     */
+    @Override
+    public void stop() {
+        if (!result.isDone()) {
+            engine.stop(this);
+        }
+    }
+
+    /**
+     * Per una ricerca avviata con "go ponder": la mossa prevista è stata giocata, la ricerca diventa normale
+     * e termina con i limiti di tempo o profondità del comando go
+     */
+    public void ponderHit() {
+        pondering = false;
+        if (!result.isDone()) {
+            engine.ponderHit(this);
+        }
+    }
+
+    @Override
+    public CompletableFuture<SearchResult> result() {
+        return result;
+    }
+
+    /**
+     * Attende il risultato al massimo timeoutMs; allo scadere invia "stop" e restituisce la mossa migliore trovata.
+     * Se il motore non risponde nemmeno a "stop" viene segnato come guasto e il risultato è null.
+     */
+    public SearchResult await(long timeoutMs) {
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            stop();
+            try {
+                return result.get(STOP_GRACE_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException ex) {
+                engine.markBroken("nessuna risposta a stop");
+                return null;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                engine.markBroken("nessuna risposta a stop");
+                return null;
+            }
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+            return null;
+        }
+    }
+}
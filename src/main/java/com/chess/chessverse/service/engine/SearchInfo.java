@@ -0,0 +1,168 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Una riga "info" di Stockfish con punteggio, già analizzata da {@link UciInfoParser}.
+ * Il punteggio è dal punto di vista del lato che muove, come nel protocollo UCI.
+ * <p>
+ * È mutabile e riutilizzata: l'istanza passata a {@link SearchListener#onInfo} vale solo durante la chiamata,
+ * chi deve conservarla usa {@link #copy()} o {@link #copyFrom}. Le mosse della variante sono codificate
+ * come int (vedi {@link #encodeMove}) per non allocare stringhe a ogni riga.
+ */
+public class SearchInfo {
+
+    public static final int BOUND_EXACT = 0;
+    public static final int BOUND_LOWER = 1;
+    public static final int BOUND_UPPER = 2;
+
+    private static final int MAX_PV = 128;
+
+    int depth;
+    int selDepth;
+    int multiPv = 1;
+    boolean hasScore;
+    boolean mate;
+    int score;
+    int bound;
+    boolean hasWdl;
+    int wdlWin;
+    int wdlDraw;
+    int wdlLoss;
+    long nodes;
+    long nps;
+    int hashfull;
+    long timeMs;
+    final int[] pv = new int[MAX_PV];
+    int pvLength;
+
+    void reset() {
+        depth = 0;
+        selDepth = 0;
+        multiPv = 1;
+        hasScore = false;
+        mate = false;
+        score = 0;
+        bound = BOUND_EXACT;
+        hasWdl = false;
+        wdlWin = wdlDraw = wdlLoss = 0;
+        nodes = 0;
+        nps = 0;
+        hashfull = 0;
+        timeMs = 0;
+        pvLength = 0;
+    }
+
+    public void copyFrom(SearchInfo other) {
+        depth = other.depth;
+        selDepth = other.selDepth;
+        multiPv = other.multiPv;
+        hasScore = other.hasScore;
+        mate = other.mate;
+        score = other.score;
+        bound = other.bound;
+        hasWdl = other.hasWdl;
+        wdlWin = other.wdlWin;
+        wdlDraw = other.wdlDraw;
+        wdlLoss = other.wdlLoss;
+        nodes = other.nodes;
+        nps = other.nps;
+        hashfull = other.hashfull;
+        timeMs = other.timeMs;
+        pvLength = other.pvLength;
+        System.arraycopy(other.pv, 0, pv, 0, other.pvLength);
+    }
+
+    public SearchInfo copy() {
+        SearchInfo copy = new SearchInfo();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Analizza una riga "info ..." in una nuova istanza. Restituisce null per le righe senza punteggio.
+     * Per il percorso caldo (thread di lettura del motore) usare un {@link UciInfoParser} riutilizzato.
+     */
+    public static SearchInfo parse(String line) {
+        SearchInfo info = new SearchInfo();
+        return new UciInfoParser().parse(line, info) ? info : null;
+    }
+
+    /** Punteggio nel formato "+1.23" (pedoni) o "#3" / "#-3" (matto) */
+    public String formatScore() {
+        if (!hasScore) return null;
+        return mate ? formatScore(null, score) : formatScore(score, null);
+    }
+
+    public static String formatScore(Integer scoreCp, Integer mate) {
+        if (mate != null) {
+            return (mate > 0 ? "#" : "#-") + Math.abs(mate);
+        }
+        if (scoreCp == null) return null;
+        int abs = Math.abs(scoreCp);
+        int cents = abs % 100;
+        return (scoreCp < 0 ? "-" : "+") + (abs / 100) + "." + (cents < 10 ? "0" : "") + cents;
+    }
+
+    public int getDepth() { return depth; }
+    public int getSelDepth() { return selDepth; }
+    public int getMultiPv() { return multiPv; }
+    public boolean hasScore() { return hasScore; }
+    public boolean isMate() { return mate; }
+    /** Centipedoni, oppure mosse al matto se {@link #isMate()} */
+    public int getScore() { return score; }
+    public int getBound() { return bound; }
+    public Integer getScoreCp() { return hasScore && !mate ? score : null; }
+    public Integer getMate() { return hasScore && mate ? score : null; }
+    public boolean hasWdl() { return hasWdl; }
+    public int getWdlWin() { return wdlWin; }
+    public int getWdlDraw() { return wdlDraw; }
+    public int getWdlLoss() { return wdlLoss; }
+    public long getNodes() { return nodes; }
+    public long getNps() { return nps; }
+    public int getHashfull() { return hashfull; }
+    public long getTimeMs() { return timeMs; }
+    public int getPvLength() { return pvLength; }
+    public int getPvMove(int index) { return pv[index]; }
+
+    public String getBestMove() {
+        return pvLength > 0 ? moveToString(pv[0]) : null;
+    }
+
+    public List<String> getPv() {
+        List<String> moves = new ArrayList<>(pvLength);
+        for (int i = 0; i < pvLength; i++) {
+            moves.add(moveToString(pv[i]));
+        }
+        return moves;
+    }
+
+    /**
+     * Mossa UCI codificata: bit 0-5 casella di partenza, 6-11 arrivo (a1 = 0, h8 = 63), 12-14 promozione
+     * (0 nessuna, 1 n, 2 b, 3 r, 4 q)
+     */
+    public static int encodeMove(int from, int to, int promotion) {
+        return from | (to << 6) | (promotion << 12);
+    }
+
+    public static String moveToString(int move) {
+        int from = move & 63;
+        int to = (move >>> 6) & 63;
+        int promotion = (move >>> 12) & 7;
+        char[] chars = new char[promotion == 0 ? 4 : 5];
+        chars[0] = (char) ('a' + (from & 7));
+        chars[1] = (char) ('1' + (from >>> 3));
+        chars[2] = (char) ('a' + (to & 7));
+        chars[3] = (char) ('1' + (to >>> 3));
+        if (promotion != 0) chars[4] = " nbrq".charAt(promotion);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return "SearchInfo{depth=" + depth + ", multipv=" + multiPv + ", score=" + formatScore()
+                + ", nodes=" + nodes + ", pv=" + Arrays.toString(getPv().toArray()) + "}";
+    }
+}
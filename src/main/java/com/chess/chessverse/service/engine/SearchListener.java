@@ -0,0 +1,12 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Riceve le righe "info" di una ricerca man mano che il motore le produce.
+ * Viene invocato sul thread di lettura del motore: non deve bloccare, e l'istanza ricevuta viene
+ * riutilizzata per la riga successiva (usare {@link SearchInfo#copy()} per conservarla).
+ */
+@FunctionalInterface
+public interface SearchListener {
+
+    void onInfo(SearchInfo info);
+}
@@ -0,0 +1,13 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Esito di una ricerca: la riga "bestmove" e l'ultima riga "info" della linea principale.
+ * bestMove è null se la posizione non ha mosse legali; info è null se il motore non ha prodotto punteggi.
+ */
+public record SearchResult(String bestMove, String ponderMove, SearchInfo info) {
+
+    /** Punteggio nel formato "+1.23" / "#-3", o null se non disponibile */
+    public String formatScore() {
+        return info != null ? info.formatScore() : null;
+    }
+}
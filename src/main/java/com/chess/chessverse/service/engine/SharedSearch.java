@@ -0,0 +1,58 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Una ricerca condivisa da più richieste identiche arrivate insieme. Ognuna ottiene la propria
+ * sottoscrizione con {@link #subscribe()}; "stop" arriva al motore solo quando l'ultima rinuncia,
+ * così una scheda che cambia posizione non interrompe la valutazione di un altro utente.
+ */
+public class SharedSearch {
+
+    private final SearchHandle handle;
+    private int subscribers = 0;
+    private boolean stopped = false;
+
+    public SharedSearch(SearchHandle handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Nuova sottoscrizione, o null se la ricerca è già finita o in fase di interruzione
+     */
+    public synchronized RunningSearch subscribe() {
+        if (stopped || handle.result().isDone()) return null;
+        subscribers++;
+        return new Subscription();
+    }
+
+    public CompletableFuture<SearchResult> result() {
+        return handle.result();
+    }
+
+    private void unsubscribe() {
+        synchronized (this) {
+            if (--subscribers > 0 || stopped) return;
+            stopped = true;
+        }
+        handle.stop();
+    }
+
+    private class Subscription implements RunningSearch {
+
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public CompletableFuture<SearchResult> result() {
+            return handle.result();
+        }
+
+        @Override
+        public void stop() {
+            if (cancelled.compareAndSet(false, true)) {
+                unsubscribe();
+            }
+        }
+    }
+}
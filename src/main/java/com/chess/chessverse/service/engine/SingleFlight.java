@@ -0,0 +1,58 @@
+package com.chess.chessverse.service.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Deduplica le chiamate identiche in corso: la prima richiesta per una chiave esegue il lavoro,
+ * quelle che arrivano mentre è ancora in corso ricevono lo stesso risultato invece di rifarlo.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+
+    /**
+     * Se per key c'è già una chiamata in corso ne restituisce il future; altrimenti esegue call sul thread
+     * corrente. La chiave resta occupata finché il valore è in corso: fino al completamento di until(valore)
+     * se indicato, altrimenti fino alla fine di call.
+     */
+    public CompletableFuture<V> execute(K key, Supplier<V> call, Function<V, CompletionStage<?>> until) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            followers.increment();
+            return existing;
+        }
+        leaders.increment();
+        try {
+            V value = call.get();
+            CompletionStage<?> end = value != null && until != null ? until.apply(value) : null;
+            mine.complete(value);
+            if (end == null) {
+                inFlight.remove(key, mine);
+            } else {
+                end.whenComplete((result, error) -> inFlight.remove(key, mine));
+            }
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("executed", leaders.sum());
+        stats.put("coalesced", followers.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,69 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Chiude in anticipo una ricerca a tempo quando la mossa migliore non cambia più: se resta la stessa per
+ * stableDepths iterazioni consecutive (da minDepth in poi) con un punteggio che oscilla poco, il tempo rimasto
+ * non cambierebbe la scelta e la ricerca viene fermata con "stop".
+ */
+public class StableMoveMonitor implements SearchListener {
+
+    // Oscillazione massima del punteggio tra due iterazioni perché la mossa conti come stabile
+    private static final int MAX_SCORE_SWING_CP = 30;
+
+    private final int stableDepths;
+    private final int minDepth;
+    private final long minElapsedMs;
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile RunningSearch search;
+    private volatile boolean triggered = false;
+
+    private int lastDepth = 0;
+    private int lastMove = -1;
+    private int lastScore = 0;
+    private int stableCount = 0;
+
+    public StableMoveMonitor(int stableDepths, int minDepth, long minElapsedMs) {
+        this.stableDepths = stableDepths;
+        this.minDepth = minDepth;
+        this.minElapsedMs = minElapsedMs;
+    }
+
+    /**
+     * Collega la ricerca da fermare (disponibile solo dopo l'avvio, quando le prime righe "info" possono già essere arrivate)
+     */
+    public void attach(RunningSearch search) {
+        this.search = search;
+        if (triggered) search.stop();
+    }
+
+    public boolean isTriggered() {
+        return triggered;
+    }
+
+    @Override
+    public void onInfo(SearchInfo info) {
+        // Solo iterazioni complete della variante principale: i risultati parziali (lowerbound/upperbound) non contano
+        if (triggered || info.getMultiPv() != 1 || !info.hasScore() || info.getBound() != SearchInfo.BOUND_EXACT
+                || info.getPvLength() == 0 || info.getDepth() <= lastDepth) {
+            return;
+        }
+        int move = info.getPvMove(0);
+        int score = info.isMate() ? (info.getScore() > 0 ? 100_000 : -100_000) : info.getScore();
+        if (move == lastMove && Math.abs(score - lastScore) <= MAX_SCORE_SWING_CP) {
+            stableCount++;
+        } else {
+            stableCount = 1;
+        }
+        lastDepth = info.getDepth();
+        lastMove = move;
+        lastScore = score;
+
+        if (stableCount >= stableDepths && lastDepth >= minDepth
+                && System.currentTimeMillis() - startedAt >= minElapsedMs) {
+            triggered = true;
+            RunningSearch current = search;
+            if (current != null) current.stop();
+        }
+    }
+}
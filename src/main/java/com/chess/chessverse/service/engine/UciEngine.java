@@ -0,0 +1,386 @@
+package com.chess.chessverse.service.engine;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un singolo processo Stockfish con i suoi stream UCI.
+ * Un thread dedicato legge stdout, analizza ogni riga una sola volta e la inoltra alla ricerca in corso
+ * (o a chi attende "uciok"/"readyok"): nessun polling e nessun thread creato per singola richiesta.
+ * Un motore viene usato da un solo chiamante alla volta: lo si ottiene e lo si restituisce tramite {@link EnginePool}.
+ */
+public class UciEngine {
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    // Opzioni che solo alcune ricerche cambiano: tornano al valore predefinito quando il motore rientra nel pool
+    private static final Map<String, String> RESTORED_OPTIONS = Map.of("MultiPV", "1");
+
+    private final int id = SEQUENCE.incrementAndGet();
+    private final Process process;
+    private final PrintWriter writer;
+    private final long startedAt = System.currentTimeMillis();
+    private volatile long lastUsedAt = startedAt;
+    private volatile boolean broken = false;
+    private volatile boolean terminated = false;
+    // Perché il motore non è più utilizzabile (per le statistiche dei riavvii)
+    private volatile String failure;
+    // Ultima riga ricevuta (o inizio dell'ultima ricerca): una ricerca muta troppo a lungo è bloccata
+    private volatile long lastOutputAt = startedAt;
+
+    // Ultimo valore inviato per ogni opzione, per non ripetere setoption identici
+    private final Map<String, String> options = new HashMap<>();
+
+    // Partita servita per ultima: quando il motore passa a un'altra partita riceve "ucinewgame"
+    private volatile String gameId;
+
+    // Ricerca in corso (al massimo una) e risposta attesa da un comando sincrono
+    private volatile SearchHandle current;
+    private volatile String awaitedToken;
+    private volatile CompletableFuture<Void> tokenFuture;
+
+    // "go perft" in corso: righe "e2e4: 20" per mossa alla radice, chiuse da "Nodes searched: N"
+    private volatile Map<String, Long> perftCounts;
+    private volatile CompletableFuture<Long> perftFuture;
+
+    // Usati solo dal thread di lettura: ogni riga "info" riempie sempre la stessa istanza
+    private final UciInfoParser infoParser = new UciInfoParser();
+    private final SearchInfo scratchInfo = new SearchInfo();
+
+    private UciEngine(Process process) {
+        this.process = process;
+        this.writer = new PrintWriter(process.getOutputStream(), true);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        Thread readerThread = new Thread(() -> readLoop(reader), "uci-reader-" + id);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Avvia il processo ed esegue l'handshake UCI. Restituisce null se il motore non risponde.
+     */
+    public static UciEngine start(String path) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(path);
+        pb.directory(new File(System.getProperty("user.dir")));
+        UciEngine engine = new UciEngine(pb.start());
+
+        if (!engine.command("uci", "uciok", 5000)) {
+            System.out.println("[UciEngine#" + engine.id + "] UCI handshake fallito");
+            engine.close();
+            return null;
+        }
+        return engine;
+    }
+
+    public void send(String command) {
+        writer.println(command);
+        writer.flush();
+    }
+
+    public synchronized void setOption(String name, Object value) {
+        String text = String.valueOf(value);
+        if (text.equals(options.put(name, text))) return;
+        send("setoption name " + name + " value " + text);
+    }
+
+    /**
+     * Riporta al valore predefinito le opzioni come MultiPV, così non passano da un'analisi alla partita successiva
+     */
+    synchronized void restoreOptions() {
+        RESTORED_OPTIONS.forEach((name, value) -> {
+            String current = options.get(name);
+            if (current != null && !current.equals(value)) {
+                setOption(name, value);
+            }
+        });
+    }
+
+    /**
+     * Invia "isready" e attende "readyok"
+     */
+    public boolean isReady(long timeoutMs) {
+        return command("isready", "readyok", timeoutMs);
+    }
+
+    /**
+     * Avvia una ricerca sulla posizione data. Le righe "info" arrivano al listener (sul thread di lettura),
+     * il risultato completa l'handle alla riga "bestmove".
+     */
+    public SearchHandle search(String fen, String goCommand, SearchListener listener) {
+        return search(fen, List.of(), goCommand, listener);
+    }
+
+    /**
+     * Come {@link #search(String, String, SearchListener)}, sulla posizione raggiunta giocando le mosse UCI indicate
+     * a partire dalla FEN (es. la mossa del bot e la risposta prevista per il ponder)
+     */
+    public synchronized SearchHandle search(String fen, List<String> moves, String goCommand, SearchListener listener) {
+        if (current != null) {
+            throw new IllegalStateException("Motore #" + id + " ha già una ricerca in corso");
+        }
+        SearchHandle handle = new SearchHandle(this, listener, goCommand.startsWith("go ponder"));
+        current = handle;
+        lastOutputAt = System.currentTimeMillis();
+        if (terminated) {
+            // Processo già morto: nessun "bestmove" arriverà, la ricerca fallisce subito
+            current = null;
+            handle.fail(new IOException("Processo Stockfish #" + id + " terminato"));
+            return handle;
+        }
+        send(moves.isEmpty() ? "position fen " + fen : "position fen " + fen + " moves " + String.join(" ", moves));
+        send(goCommand);
+        return handle;
+    }
+
+    /**
+     * Invia "stop" solo se la ricerca indicata è ancora quella in corso: uno stop tardivo non deve
+     * interrompere la ricerca di chi ha ottenuto il motore dopo.
+     */
+    synchronized void stop(SearchHandle handle) {
+        if (current == handle) {
+            send("stop");
+        }
+    }
+
+    /**
+     * "go perft depth" sulla posizione: il conteggio per mossa alla radice (divide), in ordine alfabetico.
+     * Restituisce null se il motore non risponde entro il timeout; in quel caso il motore sta ancora contando
+     * e viene segnato come guasto. Come una ricerca, non può sovrapporsi a un'altra ricerca sullo stesso motore.
+     */
+    public synchronized Map<String, Long> perft(String fen, int depth, long timeoutMs) {
+        if (current != null) {
+            throw new IllegalStateException("Motore #" + id + " ha già una ricerca in corso");
+        }
+        Map<String, Long> counts = new TreeMap<>();
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        perftCounts = counts;
+        perftFuture = future;
+        lastOutputAt = System.currentTimeMillis();
+        try {
+            send("position fen " + fen);
+            send("go perft " + depth);
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return counts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (TimeoutException e) {
+            markBroken("perft senza risposta");
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            perftFuture = null;
+            perftCounts = null;
+        }
+    }
+
+    /**
+     * Assegna il motore a una partita. Se prima serviva un'altra partita invia "ucinewgame" (svuota la hash
+     * della partita precedente) e restituisce true; se è la stessa partita non invia nulla.
+     * L'attesa di "readyok" avviene fuori dal lock del motore, che serve al thread di lettura per "bestmove".
+     * Senza risposta il processo viene chiuso: il motore risulta non più sano e la partita va su un altro.
+     */
+    public boolean assignGame(String gameId) {
+        synchronized (this) {
+            if (gameId.equals(this.gameId)) return false;
+            this.gameId = gameId;
+        }
+        send("ucinewgame");
+        if (!isReady(5000)) {
+            System.out.println("⚠️ Motore #" + id + " senza risposta a isready dopo ucinewgame");
+            kill("nessuna risposta a isready dopo ucinewgame");
+        }
+        return true;
+    }
+
+    public String getGameId() {
+        return gameId;
+    }
+
+    // La risposta prevista è arrivata: la ricerca "go ponder" prosegue come ricerca normale
+    synchronized void ponderHit(SearchHandle handle) {
+        if (current == handle) {
+            send("ponderhit");
+        }
+    }
+
+    /**
+     * Interrompe la ricerca in corso, chiunque l'abbia avviata (prelazione da parte del pool)
+     */
+    synchronized void stopCurrent() {
+        if (current != null) {
+            current.markPreempted();
+            send("stop");
+        }
+    }
+
+    // Invia un comando e attende la riga di risposta indicata
+    private boolean command(String command, String token, long timeoutMs) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        awaitedToken = token;
+        tokenFuture = future;
+        try {
+            send(command);
+            future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        } finally {
+            tokenFuture = null;
+        }
+    }
+
+    private void readLoop(BufferedReader reader) {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lastOutputAt = System.currentTimeMillis();
+                dispatch(line);
+            }
+        } catch (IOException e) {
+            // Stream chiuso: il processo è terminato
+        }
+        if (failure == null) {
+            failure = "processo terminato" + exitCode();
+        }
+        terminated = true;
+        broken = true;
+        IOException eof = new IOException("Processo Stockfish #" + id + " terminato");
+        SearchHandle search = current;
+        current = null;
+        if (search != null) search.fail(eof);
+        CompletableFuture<Void> waiter = tokenFuture;
+        if (waiter != null) waiter.completeExceptionally(eof);
+        CompletableFuture<Long> perft = perftFuture;
+        if (perft != null) perft.completeExceptionally(eof);
+    }
+
+    private void dispatch(String line) {
+        if (line.startsWith("info ")) {
+            SearchHandle search = current;
+            if (search != null) {
+                if (infoParser.parse(line, scratchInfo)) search.onInfo(scratchInfo);
+            }
+            return;
+        }
+        if (line.startsWith("bestmove")) {
+            SearchHandle search;
+            synchronized (this) {
+                search = current;
+                current = null;
+            }
+            if (search != null) search.complete(line);
+            return;
+        }
+        CompletableFuture<Long> perft = perftFuture;
+        if (perft != null && parsePerftLine(line.trim(), perft)) {
+            return;
+        }
+        CompletableFuture<Void> waiter = tokenFuture;
+        if (waiter != null && line.trim().equals(awaitedToken)) {
+            waiter.complete(null);
+        }
+    }
+
+    // "e2e4: 20" (anche "e7e8q: 5") o la riga finale "Nodes searched: N", che completa il perft
+    private boolean parsePerftLine(String line, CompletableFuture<Long> perft) {
+        int colon = line.indexOf(": ");
+        if (colon < 0) return false;
+        try {
+            long nodes = Long.parseLong(line.substring(colon + 2));
+            String head = line.substring(0, colon);
+            if (head.equals("Nodes searched")) {
+                perft.complete(nodes);
+            } else if (head.length() == 4 || head.length() == 5) {
+                Map<String, Long> counts = perftCounts;
+                if (counts != null) counts.put(head, nodes);
+            } else {
+                return false;
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Codice di uscita del processo, se è già terminato
+    private String exitCode() {
+        try {
+            return process.waitFor(200, TimeUnit.MILLISECONDS) ? " (exit code " + process.exitValue() + ")" : "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    public int getId() { return id; }
+    public long getStartedAt() { return startedAt; }
+    public long getLastUsedAt() { return lastUsedAt; }
+    public long getLastOutputAt() { return lastOutputAt; }
+    void touch() { lastUsedAt = System.currentTimeMillis(); }
+
+    /**
+     * Segna il motore come inutilizzabile: il pool lo chiuderà invece di riassegnarlo.
+     */
+    public void markBroken() { markBroken("segnato come guasto"); }
+
+    public void markBroken(String reason) {
+        if (failure == null) failure = reason;
+        broken = true;
+    }
+
+    /**
+     * Termina subito il processo (motore bloccato): la ricerca in corso fallisce e chi l'ha avviata può riprovare
+     */
+    void kill(String reason) {
+        markBroken(reason);
+        process.destroyForcibly();
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public boolean isHealthy() {
+        return !broken && current == null && process.isAlive();
+    }
+
+    /**
+     * Vero se il processo è terminato (uscito da solo o chiuso dal supervisore): una ricerca fallita
+     * per questo motivo non dipende dalla richiesta e può essere ripetuta su un altro motore
+     */
+    public boolean isLost() {
+        return terminated || !process.isAlive();
+    }
+
+    boolean isSearching() {
+        return current != null;
+    }
+
+    // Ponder in attesa del ponderhit: arrivato al limite di profondità Stockfish aspetta in silenzio
+    boolean isPondering() {
+        SearchHandle search = current;
+        return search != null && search.isPondering();
+    }
+
+    public void close() {
+        try {
+            send("quit");
+            writer.close();
+            if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (Exception e) {
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.chess.chessverse.service.engine;
+
+/**
+ * Analizzatore delle righe "info" UCI senza allocazioni: scorre la riga carattere per carattere,
+ * riconosce le parole chiave confrontandole sul posto e converte i numeri a mano, scrivendo in un
+ * {@link SearchInfo} riutilizzato. Nessuno split, substring o Integer.parseInt.
+ * <p>
+ * Non è thread-safe: ogni {@link UciEngine} ne usa uno sul proprio thread di lettura.
+ */
+public class UciInfoParser {
+
+    private CharSequence line;
+    private int length;
+    private int pos;
+    private int tokenStart;
+    private int tokenEnd;
+
+    /**
+     * Riempie info con i campi della riga. Restituisce true se la riga contiene un punteggio
+     * (le righe "info string", "info currmove", ecc. vengono ignorate dal chiamante).
+     */
+    public boolean parse(CharSequence line, SearchInfo info) {
+        this.line = line;
+        this.length = line.length();
+        this.pos = 0;
+        info.reset();
+
+        if (!nextToken() || !tokenIs("info")) return false;
+
+        while (nextToken()) {
+            switch (line.charAt(tokenStart)) {
+                case 'd':
+                    if (tokenIs("depth")) info.depth = (int) nextNumber();
+                    break;
+                case 's':
+                    if (tokenIs("seldepth")) info.selDepth = (int) nextNumber();
+                    else if (tokenIs("score")) parseScore(info);
+                    else if (tokenIs("string")) pos = length;
+                    break;
+                case 'm':
+                    if (tokenIs("multipv")) info.multiPv = (int) nextNumber();
+                    break;
+                case 'w':
+                    if (tokenIs("wdl")) {
+                        info.wdlWin = (int) nextNumber();
+                        info.wdlDraw = (int) nextNumber();
+                        info.wdlLoss = (int) nextNumber();
+                        info.hasWdl = true;
+                    }
+                    break;
+                case 'n':
+                    if (tokenIs("nodes")) info.nodes = nextNumber();
+                    else if (tokenIs("nps")) info.nps = nextNumber();
+                    break;
+                case 'h':
+                    if (tokenIs("hashfull")) info.hashfull = (int) nextNumber();
+                    break;
+                case 't':
+                    if (tokenIs("time")) info.timeMs = nextNumber();
+                    break;
+                case 'p':
+                    if (tokenIs("pv")) parsePv(info);
+                    break;
+                case 'c':
+                    // "currline" e "refutation" occupano il resto della riga; currmove/cpuload hanno un solo valore
+                    if (tokenIs("currline")) pos = length;
+                    break;
+                case 'r':
+                    if (tokenIs("refutation")) pos = length;
+                    break;
+                default:
+                    // Parola chiave non gestita (tbhits, currmove, ...): il suo valore verrà saltato come token sconosciuto
+                    break;
+            }
+        }
+        this.line = null;
+        return info.hasScore;
+    }
+
+    // "score cp <x>" / "score mate <y>", eventualmente seguito da "lowerbound" o "upperbound"
+    private void parseScore(SearchInfo info) {
+        if (!nextToken()) return;
+        if (tokenIs("cp")) {
+            info.mate = false;
+        } else if (tokenIs("mate")) {
+            info.mate = true;
+        } else {
+            return;
+        }
+        info.score = (int) nextNumber();
+        info.hasScore = true;
+
+        int mark = pos;
+        if (nextToken()) {
+            if (tokenIs("lowerbound")) info.bound = SearchInfo.BOUND_LOWER;
+            else if (tokenIs("upperbound")) info.bound = SearchInfo.BOUND_UPPER;
+            else pos = mark;
+        }
+    }
+
+    // Legge mosse in notazione UCI finché ce ne sono; si ferma alla prima parola che non è una mossa
+    private void parsePv(SearchInfo info) {
+        while (true) {
+            int mark = pos;
+            if (!nextToken()) return;
+            int move = tokenAsMove();
+            if (move < 0) {
+                pos = mark;
+                return;
+            }
+            if (info.pvLength < info.pv.length) {
+                info.pv[info.pvLength++] = move;
+            }
+        }
+    }
+
+    private int tokenAsMove() {
+        int len = tokenEnd - tokenStart;
+        if (len != 4 && len != 5) return -1;
+        int from = square(tokenStart);
+        int to = square(tokenStart + 2);
+        if (from < 0 || to < 0) return -1;
+        int promotion = 0;
+        if (len == 5) {
+            switch (line.charAt(tokenStart + 4)) {
+                case 'n': promotion = 1; break;
+                case 'b': promotion = 2; break;
+                case 'r': promotion = 3; break;
+                case 'q': promotion = 4; break;
+                default: return -1;
+            }
+        }
+        return SearchInfo.encodeMove(from, to, promotion);
+    }
+
+    private int square(int index) {
+        char file = line.charAt(index);
+        char rank = line.charAt(index + 1);
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') return -1;
+        return (rank - '1') * 8 + (file - 'a');
+    }
+
+    private boolean nextToken() {
+        while (pos < length && line.charAt(pos) == ' ') pos++;
+        if (pos >= length) return false;
+        tokenStart = pos;
+        while (pos < length && line.charAt(pos) != ' ') pos++;
+        tokenEnd = pos;
+        return true;
+    }
+
+    private boolean tokenIs(String keyword) {
+        int len = keyword.length();
+        if (tokenEnd - tokenStart != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (line.charAt(tokenStart + i) != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Numero intero (anche negativo) nel token successivo; 0 se manca o non è numerico
+    private long nextNumber() {
+        if (!nextToken()) return 0;
+        int i = tokenStart;
+        boolean negative = false;
+        if (line.charAt(i) == '-' || line.charAt(i) == '+') {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long value = 0;
+        for (; i < tokenEnd; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') return 0;
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+}
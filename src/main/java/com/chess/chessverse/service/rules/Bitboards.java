@@ -0,0 +1,209 @@
+package com.chess.chessverse.service.rules;
+
+/**
+ * Tabelle di attacco su bitboard a 64 bit (bit 0 = a1, bit 63 = h8).
+ * Re, cavallo e pedone hanno una tabella per casa; torre e alfiere usano le "fancy magic bitboards":
+ * le case occupate sulla linea del pezzo, moltiplicate per un numero magico, danno direttamente l'indice
+ * della bitboard degli attacchi. I numeri magici vengono cercati all'avvio con un generatore a seme fisso
+ * (gli stessi semi per traversa di Stockfish), in pochi millisecondi e sempre con lo stesso risultato.
+ * PEXT (BMI2) non è raggiungibile da Java, ma una moltiplicazione e uno shift costano quasi lo stesso.
+ */
+public final class Bitboards {
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_8 = RANK_1 << 56;
+
+    static final long[] KNIGHT_ATTACKS = new long[64];
+    static final long[] KING_ATTACKS = new long[64];
+    // [colore][casa]: case attaccate da un pedone di quel colore
+    static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    // [a][b]: case strettamente comprese tra a e b se sono allineate, altrimenti 0
+    private static final long[][] BETWEEN = new long[64][64];
+    // [a][b]: l'intera linea (traversa, colonna o diagonale) che passa per a e b, altrimenti 0
+    private static final long[][] LINE = new long[64][64];
+
+    private static final Magic[] ROOK_MAGICS = new Magic[64];
+    private static final Magic[] BISHOP_MAGICS = new Magic[64];
+    private static final long[] ROOK_TABLE = new long[0x19000];
+    private static final long[] BISHOP_TABLE = new long[0x1480];
+
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {0, 1}, {-1, 0}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {-1, 1}, {-1, -1}, {1, -1}};
+
+    private record Magic(long mask, long magic, int shift, int offset) {
+        int index(long occupied) {
+            return offset + (int) (((occupied & mask) * magic) >>> shift);
+        }
+    }
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT_ATTACKS[sq] = steps(sq, new int[][]{{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}});
+            KING_ATTACKS[sq] = steps(sq, new int[][]{{1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}});
+            PAWN_ATTACKS[Position.WHITE][sq] = steps(sq, new int[][]{{-1, 1}, {1, 1}});
+            PAWN_ATTACKS[Position.BLACK][sq] = steps(sq, new int[][]{{-1, -1}, {1, -1}});
+        }
+        initMagics(ROOK_DIRECTIONS, ROOK_MAGICS, ROOK_TABLE);
+        initMagics(BISHOP_DIRECTIONS, BISHOP_MAGICS, BISHOP_TABLE);
+        for (int a = 0; a < 64; a++) {
+            for (int b = 0; b < 64; b++) {
+                if (a == b) continue;
+                long ab = bit(a) | bit(b);
+                if ((rookAttacks(a, 0) & bit(b)) != 0) {
+                    BETWEEN[a][b] = rookAttacks(a, bit(b)) & rookAttacks(b, bit(a));
+                    LINE[a][b] = (rookAttacks(a, 0) & rookAttacks(b, 0)) | ab;
+                } else if ((bishopAttacks(a, 0) & bit(b)) != 0) {
+                    BETWEEN[a][b] = bishopAttacks(a, bit(b)) & bishopAttacks(b, bit(a));
+                    LINE[a][b] = (bishopAttacks(a, 0) & bishopAttacks(b, 0)) | ab;
+                }
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    public static long bit(int sq) {
+        return 1L << sq;
+    }
+
+    public static int rankOf(int sq) {
+        return sq >>> 3;
+    }
+
+    public static int fileOf(int sq) {
+        return sq & 7;
+    }
+
+    /** Casa più bassa della bitboard (64 se è vuota) */
+    public static int first(long bb) {
+        return Long.numberOfTrailingZeros(bb);
+    }
+
+    public static long rookAttacks(int sq, long occupied) {
+        Magic m = ROOK_MAGICS[sq];
+        return ROOK_TABLE[m.index(occupied)];
+    }
+
+    public static long bishopAttacks(int sq, long occupied) {
+        Magic m = BISHOP_MAGICS[sq];
+        return BISHOP_TABLE[m.index(occupied)];
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    public static long knightAttacks(int sq) {
+        return KNIGHT_ATTACKS[sq];
+    }
+
+    public static long kingAttacks(int sq) {
+        return KING_ATTACKS[sq];
+    }
+
+    public static long pawnAttacks(int color, int sq) {
+        return PAWN_ATTACKS[color][sq];
+    }
+
+    public static long between(int a, int b) {
+        return BETWEEN[a][b];
+    }
+
+    public static long line(int a, int b) {
+        return LINE[a][b];
+    }
+
+    private static long steps(int sq, int[][] deltas) {
+        long attacks = 0;
+        for (int[] d : deltas) {
+            int file = fileOf(sq) + d[0];
+            int rank = rankOf(sq) + d[1];
+            if (file >= 0 && file < 8 && rank >= 0 && rank < 8) attacks |= bit(rank * 8 + file);
+        }
+        return attacks;
+    }
+
+    // Attacchi calcolati raggio per raggio: solo per riempire le tabelle
+    private static long slidingAttacks(int sq, long occupied, int[][] directions) {
+        long attacks = 0;
+        for (int[] d : directions) {
+            int file = fileOf(sq) + d[0];
+            int rank = rankOf(sq) + d[1];
+            while (file >= 0 && file < 8 && rank >= 0 && rank < 8) {
+                long b = bit(rank * 8 + file);
+                attacks |= b;
+                if ((occupied & b) != 0) break;
+                file += d[0];
+                rank += d[1];
+            }
+        }
+        return attacks;
+    }
+
+    private static void initMagics(int[][] directions, Magic[] magics, long[] table) {
+        final long[] seeds = {728, 10316, 55013, 32803, 12281, 15100, 16645, 255};
+        long[] occupancy = new long[4096];
+        long[] reference = new long[4096];
+        int[] epoch = new int[4096];
+        int attempt = 0;
+        int offset = 0;
+
+        for (int sq = 0; sq < 64; sq++) {
+            // Le case sul bordo non cambiano gli attacchi e restano fuori dalla maschera
+            long edges = ((RANK_1 | RANK_8) & ~(RANK_1 << (8 * rankOf(sq)))) | ((FILE_A | FILE_H) & ~(FILE_A << fileOf(sq)));
+            long mask = slidingAttacks(sq, 0, directions) & ~edges;
+            int shift = 64 - Long.bitCount(mask);
+
+            // Tutti i sottoinsiemi della maschera (carry-rippler) con i relativi attacchi
+            int size = 0;
+            long b = 0;
+            do {
+                occupancy[size] = b;
+                reference[size] = slidingAttacks(sq, b, directions);
+                size++;
+                b = (b - mask) & mask;
+            } while (b != 0);
+
+            long seed = seeds[rankOf(sq)];
+            long magic;
+            int i;
+            do {
+                do {
+                    seed = xorshift(seed);
+                    long r1 = seed * 2685821657736338717L;
+                    seed = xorshift(seed);
+                    long r2 = seed * 2685821657736338717L;
+                    seed = xorshift(seed);
+                    long r3 = seed * 2685821657736338717L;
+                    magic = r1 & r2 & r3;
+                } while (Long.bitCount((magic * mask) >>> 56) < 6);
+
+                // Un numero va bene se ogni occupazione finisce in un indice libero o con gli stessi attacchi
+                attempt++;
+                for (i = 0; i < size; i++) {
+                    int idx = offset + (int) ((occupancy[i] * magic) >>> shift);
+                    if (epoch[idx - offset] < attempt) {
+                        epoch[idx - offset] = attempt;
+                        table[idx] = reference[i];
+                    } else if (table[idx] != reference[i]) {
+                        break;
+                    }
+                }
+            } while (i < size);
+
+            magics[sq] = new Magic(mask, magic, shift, offset);
+            offset += size;
+        }
+    }
+
+    private static long xorshift(long s) {
+        s ^= s >>> 12;
+        s ^= s << 25;
+        s ^= s >>> 27;
+        return s;
+    }
+}
@@ -0,0 +1,121 @@
+package com.chess.chessverse.service.rules;
+
+import java.util.Arrays;
+
+/**
+ * Una partita giocata mossa per mossa su una {@link Position}, con le chiavi Zobrist delle posizioni già viste
+ * per le patte automatiche e reclamabili (ripetizione, regole delle 50 e 75 mosse, materiale insufficiente).
+ * <p>
+ * Le occorrenze stanno in una tabella a indirizzamento aperto chiave → conteggio: ogni mossa costa un solo
+ * inserimento, e la tabella si svuota a ogni mossa irreversibile (pedone o cattura), dopo la quale nessuna
+ * posizione precedente può ripresentarsi. Non è thread-safe.
+ */
+public final class GameHistory {
+
+    private final Position position;
+    private final MoveList legalMoves = new MoveList();
+
+    private long[] keys = new long[64];
+    private int[] counts = new int[64];
+    private int size;
+    // Occorrenze della posizione corrente, lei compresa
+    private int repetitions;
+
+    public GameHistory(Position start) {
+        this.position = start;
+        record();
+    }
+
+    public static GameHistory fromFen(String fen) {
+        return new GameHistory(Position.fromFen(fen));
+    }
+
+    /** La posizione corrente: si modifica solo tramite {@link #play(int)} */
+    public Position position() {
+        return position;
+    }
+
+    /** Gioca una mossa legale nella posizione corrente */
+    public void play(int move) {
+        position.makeMove(move);
+        record();
+    }
+
+    /**
+     * Se una mossa legale porta dalla posizione corrente a quella con chiave key la gioca e restituisce true;
+     * con la stessa chiave non fa nulla e restituisce true
+     */
+    public boolean advanceTo(long key) {
+        if (position.key() == key) return true;
+        MoveGenerator.generate(position, legalMoves);
+        for (int i = 0; i < legalMoves.size(); i++) {
+            int move = legalMoves.get(i);
+            position.makeMove(move);
+            if (position.key() == key) {
+                record();
+                return true;
+            }
+            position.unmakeMove(move);
+        }
+        return false;
+    }
+
+    public int repetitions() {
+        return repetitions;
+    }
+
+    public boolean isThreefoldRepetition() {
+        return repetitions >= 3;
+    }
+
+    /** 50 mosse per parte senza catture né mosse di pedone: la patta si può reclamare */
+    public boolean isFiftyMoveRule() {
+        return position.halfmoveClock() >= 100;
+    }
+
+    /** 75 mosse per parte: la partita è patta senza bisogno di reclamarla */
+    public boolean isSeventyFiveMoveRule() {
+        return position.halfmoveClock() >= 150;
+    }
+
+    public boolean isInsufficientMaterial() {
+        return position.isInsufficientMaterial();
+    }
+
+    private void record() {
+        if (position.halfmoveClock() == 0 && size > 0) {
+            Arrays.fill(counts, 0);
+            size = 0;
+        }
+        if (2 * (size + 1) > keys.length) grow();
+        long key = position.key();
+        int i = slot(keys, counts, key);
+        if (counts[i] == 0) {
+            keys[i] = key;
+            size++;
+        }
+        repetitions = ++counts[i];
+    }
+
+    // Posto della chiave, o il primo posto libero dove inserirla. Le chiavi Zobrist sono già casuali:
+    // i bit bassi bastano come indice
+    private static int slot(long[] keys, int[] counts, long key) {
+        int mask = keys.length - 1;
+        int i = (int) key & mask;
+        while (counts[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] == 0) continue;
+            int j = slot(keys, counts, oldKeys[i]);
+            keys[j] = oldKeys[i];
+            counts[j] = oldCounts[i];
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.chess.chessverse.service.rules;
+
+import static com.chess.chessverse.service.rules.Bitboards.between;
+import static com.chess.chessverse.service.rules.Bitboards.bishopAttacks;
+import static com.chess.chessverse.service.rules.Bitboards.bit;
+import static com.chess.chessverse.service.rules.Bitboards.first;
+import static com.chess.chessverse.service.rules.Bitboards.line;
+import static com.chess.chessverse.service.rules.Bitboards.rookAttacks;
+import static com.chess.chessverse.service.rules.Position.BISHOP;
+import static com.chess.chessverse.service.rules.Position.KNIGHT;
+import static com.chess.chessverse.service.rules.Position.PAWN;
+import static com.chess.chessverse.service.rules.Position.QUEEN;
+import static com.chess.chessverse.service.rules.Position.ROOK;
+import static com.chess.chessverse.service.rules.Position.WHITE;
+
+/**
+ * Generatore di mosse legali in una sola passata, senza provare le mosse sulla scacchiera.
+ * <ul>
+ *   <li>scacco doppio: muove solo il re;</li>
+ *   <li>scacco semplice: le altre mosse devono catturare chi dà scacco o interporsi (maschera di scacco);</li>
+ *   <li>pezzo inchiodato: resta sulla linea tra il re e chi lo inchioda;</li>
+ *   <li>re: non va su case attaccate, calcolate togliendo il re dalla scacchiera per non "coprirsi" da solo.</li>
+ * </ul>
+ * Solo l'en passant, che toglie due pezzi dalla stessa traversa, viene verificato ricalcolando gli attacchi al re.
+ */
+public final class MoveGenerator {
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Svuota la lista, la riempie con tutte le mosse legali del lato che muove (promozioni a cavallo,
+     * alfiere, torre e donna) e restituisce il numero di mosse
+     */
+    public static int generate(Position pos, MoveList list) {
+        list.clear();
+        int us = pos.sideToMove();
+        int them = us ^ 1;
+        long ours = pos.pieces(us);
+        long theirs = pos.pieces(them);
+        long occupied = ours | theirs;
+        int king = pos.kingSquare(us);
+
+        long checkers = pos.checkers();
+        long pinned = pos.pinned();
+
+        if (king >= 0) {
+            long withoutKing = occupied ^ bit(king);
+            for (long b = Bitboards.kingAttacks(king) & ~ours; b != 0; b &= b - 1) {
+                int to = first(b);
+                if ((pos.attackersTo(to, withoutKing) & theirs) == 0) list.add(Position.move(king, to, 0));
+            }
+            if (checkers == 0) addCastling(pos, list, us, king, occupied);
+        }
+        // Con due pezzi che danno scacco l'unica difesa è muovere il re
+        if (Long.bitCount(checkers) > 1) return list.size();
+
+        long target = ~ours;
+        if (checkers != 0) target &= checkers | between(king, first(checkers));
+
+        for (long b = pos.pieces(us, KNIGHT) & ~pinned; b != 0; b &= b - 1) {
+            int from = first(b);
+            addAll(list, from, Bitboards.knightAttacks(from) & target);
+        }
+        long diagonal = pos.pieces(us, BISHOP) | pos.pieces(us, QUEEN);
+        for (long b = diagonal; b != 0; b &= b - 1) {
+            int from = first(b);
+            long moves = bishopAttacks(from, occupied) & target;
+            if ((pinned & bit(from)) != 0) moves &= line(king, from);
+            addAll(list, from, moves);
+        }
+        long straight = pos.pieces(us, ROOK) | pos.pieces(us, QUEEN);
+        for (long b = straight; b != 0; b &= b - 1) {
+            int from = first(b);
+            long moves = rookAttacks(from, occupied) & target;
+            if ((pinned & bit(from)) != 0) moves &= line(king, from);
+            addAll(list, from, moves);
+        }
+
+        addPawnMoves(pos, list, us, king, occupied, theirs, target, pinned);
+        return list.size();
+    }
+
+    /** true se il lato che muove ha almeno una mossa legale */
+    public static boolean hasLegalMove(Position pos, MoveList list) {
+        return generate(pos, list) > 0;
+    }
+
+    private static void addAll(MoveList list, int from, long targets) {
+        for (; targets != 0; targets &= targets - 1) {
+            list.add(Position.move(from, first(targets), 0));
+        }
+    }
+
+    private static void addPawnMoves(Position pos, MoveList list, int us, int king, long occupied, long theirs,
+                                     long target, long pinned) {
+        int push = us == WHITE ? 8 : -8;
+        int startRank = us == WHITE ? 1 : 6;
+        int lastRank = us == WHITE ? 7 : 0;
+        int ep = pos.epSquare();
+
+        // Un pedone sull'ultima traversa (FEN impossibile) non ha mosse
+        for (long b = pos.pieces(us, PAWN) & ~(Bitboards.RANK_1 << (8 * lastRank)); b != 0; b &= b - 1) {
+            int from = first(b);
+            long allowed = (pinned & bit(from)) != 0 ? line(king, from) : -1L;
+
+            int single = from + push;
+            if ((occupied & bit(single)) == 0) {
+                if ((target & allowed & bit(single)) != 0) addPawn(list, from, single, lastRank);
+                int dbl = single + push;
+                if (from >> 3 == startRank && (occupied & bit(dbl)) == 0 && (target & allowed & bit(dbl)) != 0) {
+                    list.add(Position.move(from, dbl, 0));
+                }
+            }
+            for (long c = Bitboards.pawnAttacks(us, from) & theirs & target & allowed; c != 0; c &= c - 1) {
+                addPawn(list, from, first(c), lastRank);
+            }
+            if (ep >= 0 && (Bitboards.pawnAttacks(us, from) & bit(ep)) != 0 && (occupied & bit(ep)) == 0
+                    && isLegalEnPassant(pos, us, king, from, ep, ep - push, occupied)) {
+                list.add(Position.move(from, ep, 0));
+            }
+        }
+    }
+
+    private static void addPawn(MoveList list, int from, int to, int lastRank) {
+        if (to >> 3 == lastRank) {
+            for (int promo = QUEEN; promo >= KNIGHT; promo--) list.add(Position.move(from, to, promo));
+        } else {
+            list.add(Position.move(from, to, 0));
+        }
+    }
+
+    // Il pedone catturato deve esserci, e dopo aver tolto i due pedoni e occupato la casa en passant il re non è attaccato
+    private static boolean isLegalEnPassant(Position pos, int us, int king, int from, int to, int captured, long occupied) {
+        int them = us ^ 1;
+        if (pos.pieceAt(captured) != (them << 3 | PAWN)) return false;
+        if (king < 0) return true;
+        long after = (occupied ^ bit(from) ^ bit(captured)) | bit(to);
+        return (pos.attackersTo(king, after) & pos.pieces(them) & ~bit(captured)) == 0;
+    }
+
+    private static void addCastling(Position pos, MoveList list, int us, int king, long occupied) {
+        int home = us == WHITE ? 4 : 60;
+        if (king != home) return;
+        int rights = pos.castlingRights() >> (2 * us);
+        int them = us ^ 1;
+        int rook = us << 3 | ROOK;
+        if ((rights & 1) != 0 && pos.pieceAt(home + 3) == rook && (between(home, home + 3) & occupied) == 0
+                && !pos.isAttacked(home + 1, them) && !pos.isAttacked(home + 2, them)) {
+            list.add(Position.move(home, home + 2, 0));
+        }
+        if ((rights & 2) != 0 && pos.pieceAt(home - 4) == rook && (between(home, home - 4) & occupied) == 0
+                && !pos.isAttacked(home - 1, them) && !pos.isAttacked(home - 2, them)) {
+            list.add(Position.move(home, home - 2, 0));
+        }
+    }
+}
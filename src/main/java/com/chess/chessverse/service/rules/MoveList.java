@@ -0,0 +1,41 @@
+package com.chess.chessverse.service.rules;
+
+/**
+ * Lista di mosse su un array di int preallocato, riempita da {@link MoveGenerator}.
+ * 256 posti bastano per qualsiasi posizione legale (il massimo noto è 218): una lista si crea una volta
+ * e si riusa con {@link #clear()}, senza allocare nulla durante la generazione.
+ */
+public final class MoveList {
+
+    public static final int CAPACITY = 256;
+
+    private final int[] moves = new int[CAPACITY];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    void add(int move) {
+        moves[size++] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int index) {
+        return moves[index];
+    }
+
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+package com.chess.chessverse.service.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft: il numero di posizioni raggiungibili con tutte le sequenze di mosse legali di una data lunghezza.
+ * Confrontato con i valori noti controlla il generatore di mosse (arrocchi, en passant, promozioni, pin)
+ * e ne misura la velocità.
+ * <ul>
+ *   <li>all'ultimo livello non si gioca nulla: si contano le mosse generate ("bulk counting");</li>
+ *   <li>{@link #countParallel} divide il lavoro per mossa alla radice su un {@link ForkJoinPool},
+ *       ogni sotto-albero con la propria copia della posizione;</li>
+ *   <li>{@link #divide} dà il conteggio per mossa alla radice, lo stesso formato di "go perft" di Stockfish,
+ *       per trovare la mossa su cui due generatori non sono d'accordo.</li>
+ * </ul>
+ */
+public final class Perft {
+
+    /** Posizione di prova con i conteggi noti: nodes[d - 1] è il perft a profondità d */
+    public record Case(String name, String fen, long... nodes) {
+        public int maxDepth() {
+            return nodes.length;
+        }
+
+        public long expected(int depth) {
+            return nodes[depth - 1];
+        }
+    }
+
+    /** Esito di un conteggio */
+    public record Result(long nodes, long nanos) {
+        public long nodesPerSecond() {
+            return nanos > 0 ? nodes * 1_000_000_000L / nanos : 0;
+        }
+    }
+
+    // Le sei posizioni della Chess Programming Wiki e i casi limite della suite di Martin Sedlak
+    public static final List<Case> SUITE = List.of(
+            new Case("start", Position.START_FEN, 20, 400, 8902, 197281, 4865609, 119060324),
+            new Case("kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                    48, 2039, 97862, 4085603, 193690690),
+            new Case("position3", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                    14, 191, 2812, 43238, 674624, 11030083),
+            new Case("position4", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                    6, 264, 9467, 422333, 15833292),
+            new Case("position5", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                    44, 1486, 62379, 2103487, 89941194),
+            new Case("position6", "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                    46, 2079, 89890, 3894594, 164075551),
+            new Case("ep-discovered-check", "3k4/3p4/8/K1P4r/8/8/8/8 b - - 0 1",
+                    18, 92, 1670, 10138, 185429, 1134888),
+            new Case("ep-illegal", "8/8/4k3/8/2p5/8/B2P2K1/8 w - - 0 1",
+                    13, 102, 1266, 10276, 135655, 1015133),
+            new Case("ep-gives-check", "8/8/1k6/2b5/2pP4/8/5K2/8 b - d3 0 1",
+                    15, 126, 1928, 13931, 206379, 1440467),
+            new Case("castle-gives-check", "5k2/8/8/8/8/8/8/4K2R w K - 0 1",
+                    15, 66, 1198, 6399, 120330, 661072),
+            new Case("long-castle-gives-check", "3k4/8/8/8/8/8/8/R3K3 w Q - 0 1",
+                    16, 71, 1286, 7418, 141077, 803711),
+            new Case("castling-rights", "r3k2r/1b4bq/8/8/8/8/7B/R3K2R w KQkq - 0 1",
+                    26, 1141, 27826, 1274206),
+            new Case("castling-prevented", "r3k2r/8/3Q4/8/8/5q2/8/R3K2R b KQkq - 0 1",
+                    44, 1494, 50509, 1720476),
+            new Case("promote-out-of-check", "2K2r2/4P3/8/8/8/8/8/3k4 w - - 0 1",
+                    11, 133, 1442, 19174, 266199, 3821001),
+            new Case("discovered-check", "8/8/1P2K3/8/2n5/1q6/8/5k2 b - - 0 1",
+                    29, 165, 5160, 31961, 1004658),
+            new Case("promote-to-check", "4k3/1P6/8/8/8/8/K7/8 w - - 0 1",
+                    9, 40, 472, 2661, 38983, 217342),
+            new Case("underpromote-to-check", "8/P1k5/K7/8/8/8/8/8 w - - 0 1",
+                    6, 27, 273, 1329, 18135, 92683),
+            new Case("self-stalemate", "K1k5/8/P7/8/8/8/8/8 w - - 0 1",
+                    2, 6, 13, 63, 382, 2217),
+            new Case("stalemate-checkmate", "8/k1P5/8/1K6/8/8/8/8 w - - 0 1",
+                    10, 25, 268, 926, 10857, 43261, 567584),
+            new Case("double-check", "8/8/2k5/5q2/5n2/8/5K2/8 b - - 0 1",
+                    37, 183, 6559, 23527)
+    );
+
+    private Perft() {
+    }
+
+    /** Perft su un solo thread. La posizione torna com'era */
+    public static long count(Position pos, int depth) {
+        if (depth <= 0) return 1;
+        return count(pos, depth, newLists(depth));
+    }
+
+    /** Come {@link #count(Position, int)} con il tempo impiegato */
+    public static Result measure(Position pos, int depth) {
+        long start = System.nanoTime();
+        long nodes = count(pos, depth);
+        return new Result(nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * Perft con un sotto-albero per mossa alla radice, in parallelo sul pool indicato.
+     * La posizione non viene modificata
+     */
+    public static long countParallel(Position pos, int depth, ForkJoinPool pool) {
+        if (depth <= 1) return count(pos, depth);
+        MoveList moves = new MoveList();
+        MoveGenerator.generate(pos, moves);
+        List<Subtree> subtrees = new ArrayList<>(moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            subtrees.add(new Subtree(pos, moves.get(i), depth - 1));
+        }
+        return pool.invoke(new RecursiveTask<Long>() {
+            @Override
+            protected Long compute() {
+                long nodes = 0;
+                for (Subtree subtree : ForkJoinTask.invokeAll(subtrees)) {
+                    nodes += subtree.join();
+                }
+                return nodes;
+            }
+        });
+    }
+
+    /** Come {@link #countParallel(Position, int, ForkJoinPool)} con il tempo impiegato */
+    public static Result measureParallel(Position pos, int depth, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        long nodes = countParallel(pos, depth, pool);
+        return new Result(nodes, System.nanoTime() - start);
+    }
+
+    /** Conteggio per mossa alla radice (in UCI, in ordine alfabetico) */
+    public static Map<String, Long> divide(Position pos, int depth) {
+        Map<String, Long> counts = new TreeMap<>();
+        if (depth <= 0) return counts;
+        MoveList moves = new MoveList();
+        MoveGenerator.generate(pos, moves);
+        MoveList[] lists = newLists(depth);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            pos.makeMove(move);
+            counts.put(Position.uci(move), depth == 1 ? 1 : count(pos, depth - 1, lists));
+            pos.unmakeMove(move);
+        }
+        return counts;
+    }
+
+    private static long count(Position pos, int depth, MoveList[] lists) {
+        MoveList moves = lists[depth];
+        int n = MoveGenerator.generate(pos, moves);
+        if (depth == 1) return n;
+        long nodes = 0;
+        for (int i = 0; i < n; i++) {
+            int move = moves.get(i);
+            pos.makeMove(move);
+            nodes += count(pos, depth - 1, lists);
+            pos.unmakeMove(move);
+        }
+        return nodes;
+    }
+
+    // Una lista per livello: la ricorsione non alloca nulla
+    private static MoveList[] newLists(int depth) {
+        MoveList[] lists = new MoveList[depth + 1];
+        for (int i = 0; i <= depth; i++) lists[i] = new MoveList();
+        return lists;
+    }
+
+    private static final class Subtree extends RecursiveTask<Long> {
+        private final Position root;
+        private final int move;
+        private final int depth;
+
+        Subtree(Position root, int move, int depth) {
+            this.root = root;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            Position pos = root.copy();
+            pos.makeMove(move);
+            return count(pos, depth);
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.chess.chessverse.service.rules;
+
+import java.util.Arrays;
+
+import static com.chess.chessverse.service.rules.Bitboards.bishopAttacks;
+import static com.chess.chessverse.service.rules.Bitboards.bit;
+import static com.chess.chessverse.service.rules.Bitboards.rookAttacks;
+
+/**
+ * Posizione di scacchi su bitboard: una bitboard per tipo di pezzo e una per colore, più la scacchiera
+ * casa per casa (mailbox) per sapere subito quale pezzo sta su una casa. Tiene lato che muove, diritti
+ * di arrocco, casa en passant e i due contatori della FEN, e si converte da e verso FEN senza perdite
+ * (i diritti di arrocco sono sempre scritti nell'ordine KQkq).
+ * <p>
+ * La chiave Zobrist ({@link #key()}) è aggiornata a ogni mossa ed è la stessa di Polyglot: è la chiave di posizione
+ * di tutte le cache dell'applicazione.
+ * <p>
+ * Case da 0 (a1) a 63 (h8). I pezzi sono codificati come nei file Syzygy: colore &lt;&lt; 3 | tipo,
+ * con i tipi da 1 (pedone) a 6 (re). Le mosse sono interi: casa di partenza (bit 0-5), di arrivo (6-11)
+ * e tipo del pezzo di promozione (12-14); arrocco ed en passant si riconoscono dal pezzo che muove.
+ * <p>
+ * Non è thread-safe: ogni richiesta costruisce la sua posizione dalla FEN.
+ */
+public final class Position {
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+
+    public static final int WHITE_OO = 1;
+    public static final int WHITE_OOO = 2;
+    public static final int BLACK_OO = 4;
+    public static final int BLACK_OOO = 8;
+
+    /** Nessuna mossa (a1a1 non è mai una mossa valida) */
+    public static final int NO_MOVE = 0;
+
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    /** Semimosse che la pila di annullamento contiene senza crescere */
+    public static final int MAX_PLY = 1024;
+
+    private static final String PIECE_CHARS = " PNBRQK  pnbrqk";
+
+    // a1, c1, ..., b2, d2, ...: le case scure
+    private static final long DARK_SQUARES = 0xAA55AA55AA55AA55L;
+
+    // Voce della pila di annullamento: pezzo catturato (bit 0-3), diritti di arrocco (4-7), casa en passant + 1 (8-14),
+    // mossa speciale (15-17) e contatore delle semimosse (32-63)
+    private static final int CASTLED = 1 << 15;
+    private static final int PROMOTED = 1 << 16;
+    private static final int EN_PASSANT = 1 << 17;
+
+    // Diritti che restano quando una mossa parte da o arriva su una casa (re e torri nelle case iniziali)
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_MASK, 15);
+        CASTLING_MASK[0] = ~WHITE_OOO & 15;
+        CASTLING_MASK[4] = ~(WHITE_OO | WHITE_OOO) & 15;
+        CASTLING_MASK[7] = ~WHITE_OO & 15;
+        CASTLING_MASK[56] = ~BLACK_OOO & 15;
+        CASTLING_MASK[60] = ~(BLACK_OO | BLACK_OOO) & 15;
+        CASTLING_MASK[63] = ~BLACK_OO & 15;
+    }
+
+    private final long[] byType = new long[7];
+    private final long[] byColor = new long[2];
+    private final byte[] board = new byte[64];
+    private int side = WHITE;
+    private int castling;
+    private int epSquare = -1;
+    private int halfmoveClock;
+    private int fullmoveNumber = 1;
+    private long key;
+
+    // Quello che unmakeMove non può ricostruire dalla mossa, una voce per semimossa giocata;
+    // keys[i] è la chiave prima della semimossa i
+    private long[] undo = new long[MAX_PLY];
+    private long[] keys = new long[MAX_PLY];
+    private int ply;
+
+    private Position() {
+    }
+
+    /**
+     * Legge una FEN; se mancano i campi finali valgono "w - - 0 1".
+     * Lancia IllegalArgumentException se la FEN non è valida.
+     */
+    public static Position fromFen(String fen) {
+        if (fen == null) throw new IllegalArgumentException("FEN mancante");
+        String[] parts = fen.trim().split("\\s+");
+        String[] ranks = parts[0].split("/", -1);
+        if (ranks.length != 8) throw new IllegalArgumentException("FEN non valida: " + fen);
+
+        Position pos = new Position();
+        for (int i = 0; i < 8; i++) {
+            int rank = 7 - i;
+            int file = 0;
+            for (char c : ranks[i].toCharArray()) {
+                if (c >= '1' && c <= '8') {
+                    file += c - '0';
+                    continue;
+                }
+                int piece = PIECE_CHARS.indexOf(c);
+                if (piece <= 0 || file > 7) throw new IllegalArgumentException("FEN non valida: " + fen);
+                pos.put(rank * 8 + file, piece);
+                file++;
+            }
+            if (file != 8) throw new IllegalArgumentException("FEN non valida: " + fen);
+        }
+
+        if (parts.length > 1) {
+            if (!parts[1].equals("w") && !parts[1].equals("b")) throw new IllegalArgumentException("FEN non valida: " + fen);
+            pos.side = parts[1].equals("w") ? WHITE : BLACK;
+        }
+        if (parts.length > 2 && !parts[2].equals("-")) {
+            for (char c : parts[2].toCharArray()) {
+                int right = "KQkq".indexOf(c);
+                if (right < 0) throw new IllegalArgumentException("FEN non valida: " + fen);
+                pos.castling |= 1 << right;
+            }
+        }
+        if (parts.length > 3 && !parts[3].equals("-")) {
+            pos.epSquare = square(parts[3]);
+            if (pos.epSquare < 0) throw new IllegalArgumentException("FEN non valida: " + fen);
+        }
+        try {
+            if (parts.length > 4) pos.halfmoveClock = Integer.parseInt(parts[4]);
+            if (parts.length > 5) pos.fullmoveNumber = Integer.parseInt(parts[5]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("FEN non valida: " + fen);
+        }
+        // I pezzi sono già nella chiave (put)
+        pos.key ^= Zobrist.CASTLING[pos.castling] ^ (pos.side == WHITE ? Zobrist.WHITE_TO_MOVE : 0) ^ pos.epKey();
+        return pos;
+    }
+
+    /**
+     * La posizione della FEN se si può dare a un motore, altrimenti null: una FEN non leggibile o una posizione
+     * impossibile (vedi {@link #illegalReason()}) può mandare in crash Stockfish
+     */
+    public static Position playable(String fen) {
+        try {
+            Position pos = fromFen(fen);
+            return pos.illegalReason() == null ? pos : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Perché la posizione non può nascere da una partita, o null se va bene. Sono i casi che mandano fuori
+     * dalla scacchiera le tabelle di Stockfish:
+     * <ul>
+     *   <li>un re per parte, al massimo 16 pezzi e 8 pedoni per parte, nessun pedone sulla prima o sull'ultima traversa;</li>
+     *   <li>il lato che non muove non è sotto scacco;</li>
+     *   <li>ogni diritto di arrocco ha re e torre sulle case di partenza;</li>
+     *   <li>la casa en passant è dietro un pedone avversario che può aver appena fatto il doppio passo.</li>
+     * </ul>
+     */
+    public String illegalReason() {
+        if (Long.bitCount(pieces(WHITE, KING)) != 1 || Long.bitCount(pieces(BLACK, KING)) != 1) {
+            return "serve esattamente un re per parte";
+        }
+        for (int color = WHITE; color <= BLACK; color++) {
+            if (Long.bitCount(byColor[color]) > 16 || Long.bitCount(pieces(color, PAWN)) > 8) {
+                return "troppi pezzi per una parte";
+            }
+        }
+        if ((byType[PAWN] & (Bitboards.RANK_1 | Bitboards.RANK_8)) != 0) {
+            return "pedone sulla prima o sull'ultima traversa";
+        }
+        if (isAttacked(kingSquare(side ^ 1), side)) {
+            return "il re del lato che non muove è sotto scacco";
+        }
+        if (((castling & WHITE_OO) != 0 && !hasHomeRook(WHITE, 7))
+                || ((castling & WHITE_OOO) != 0 && !hasHomeRook(WHITE, 0))
+                || ((castling & BLACK_OO) != 0 && !hasHomeRook(BLACK, 63))
+                || ((castling & BLACK_OOO) != 0 && !hasHomeRook(BLACK, 56))) {
+            return "diritto di arrocco senza re o torre sulla casa di partenza";
+        }
+        if (epSquare >= 0) {
+            int them = side ^ 1;
+            int push = side == WHITE ? -8 : 8;
+            // Bianco al tratto: casa en passant in sesta traversa, pedone nero in quinta, settima traversa libera
+            if (Bitboards.rankOf(epSquare) != (side == WHITE ? 5 : 2)
+                    || board[epSquare + push] != (them << 3 | PAWN)
+                    || board[epSquare] != 0 || board[epSquare - push] != 0) {
+                return "casa en passant senza un pedone che abbia appena fatto il doppio passo";
+            }
+        }
+        return null;
+    }
+
+    private boolean hasHomeRook(int color, int rookSquare) {
+        return board[color == WHITE ? 4 : 60] == (color << 3 | KING) && board[rookSquare] == (color << 3 | ROOK);
+    }
+
+    public String toFen() {
+        StringBuilder sb = new StringBuilder(90);
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                int piece = board[rank * 8 + file];
+                if (piece == 0) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) sb.append(empty);
+                empty = 0;
+                sb.append(PIECE_CHARS.charAt(piece));
+            }
+            if (empty > 0) sb.append(empty);
+            if (rank > 0) sb.append('/');
+        }
+        sb.append(side == WHITE ? " w " : " b ");
+        if (castling == 0) sb.append('-');
+        for (int i = 0; i < 4; i++) {
+            if ((castling & (1 << i)) != 0) sb.append("KQkq".charAt(i));
+        }
+        sb.append(' ').append(epSquare >= 0 ? squareName(epSquare) : "-");
+        sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
+        return sb.toString();
+    }
+
+    public Position copy() {
+        Position p = new Position();
+        System.arraycopy(byType, 0, p.byType, 0, byType.length);
+        System.arraycopy(byColor, 0, p.byColor, 0, byColor.length);
+        System.arraycopy(board, 0, p.board, 0, 64);
+        p.side = side;
+        p.castling = castling;
+        p.epSquare = epSquare;
+        p.halfmoveClock = halfmoveClock;
+        p.fullmoveNumber = fullmoveNumber;
+        p.key = key;
+        p.undo = undo.clone();
+        p.keys = keys.clone();
+        p.ply = ply;
+        return p;
+    }
+
+    // ---- case, pezzi e mosse ----
+
+    /** Casa di una coordinata come "e4"; -1 se non è una casa */
+    public static int square(String name) {
+        if (name == null || name.length() != 2) return -1;
+        int file = name.charAt(0) - 'a';
+        int rank = name.charAt(1) - '1';
+        return file >= 0 && file < 8 && rank >= 0 && rank < 8 ? rank * 8 + file : -1;
+    }
+
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + (sq & 7)) + (char) ('1' + (sq >> 3));
+    }
+
+    public static int colorOf(int piece) { return piece >> 3; }
+    public static int typeOf(int piece) { return piece & 7; }
+    public static int move(int from, int to, int promotion) { return from | to << 6 | promotion << 12; }
+    public static int from(int move) { return move & 63; }
+    public static int to(int move) { return (move >> 6) & 63; }
+    public static int promotion(int move) { return move >> 12; }
+
+    public static String uci(int move) {
+        String uci = squareName(from(move)) + squareName(to(move));
+        return promotion(move) != 0 ? uci + " pnbrq".charAt(promotion(move)) : uci;
+    }
+
+    /**
+     * Mossa da coordinate ("e7", "e8", "n"). Un pedone che arriva in fondo senza pezzo indicato promuove a donna;
+     * NO_MOVE se le case non esistono o la promozione non è un pezzo. Non controlla che la mossa sia legale.
+     */
+    public int move(String from, String to, String promotion) {
+        int f = square(from);
+        int t = square(to);
+        if (f < 0 || t < 0) return NO_MOVE;
+        int promo = 0;
+        if (typeOf(board[f]) == PAWN && (t >> 3 == 0 || t >> 3 == 7)) {
+            promo = QUEEN;
+            if (promotion != null && !promotion.isEmpty()) {
+                promo = "nbrq".indexOf(Character.toLowerCase(promotion.charAt(0))) + KNIGHT;
+                if (promo < KNIGHT) return NO_MOVE;
+            }
+        }
+        return move(f, t, promo);
+    }
+
+    /** Mossa da notazione UCI ("e2e4", "e7e8q"); NO_MOVE se non è leggibile */
+    public int parseUci(String uci) {
+        if (uci == null || uci.length() < 4) return NO_MOVE;
+        return move(uci.substring(0, 2), uci.substring(2, 4), uci.length() > 4 ? uci.substring(4) : null);
+    }
+
+    public int sideToMove() { return side; }
+    public int castlingRights() { return castling; }
+    public int epSquare() { return epSquare; }
+    public int halfmoveClock() { return halfmoveClock; }
+    public int fullmoveNumber() { return fullmoveNumber; }
+
+    /** Chiave Zobrist (Polyglot) della posizione: pezzi, lato che muove, arrocchi ed en passant catturabile */
+    public long key() { return key; }
+
+    /** Pezzo sulla casa (0 se vuota) */
+    public int pieceAt(int sq) { return board[sq]; }
+
+    public long occupied() { return byColor[WHITE] | byColor[BLACK]; }
+    public long pieces(int color) { return byColor[color]; }
+    public long pieces(int color, int type) { return byColor[color] & byType[type]; }
+
+    /** Casa del re del colore indicato, -1 se manca */
+    public int kingSquare(int color) {
+        long king = pieces(color, KING);
+        return king != 0 ? Bitboards.first(king) : -1;
+    }
+
+    // ---- attacchi ----
+
+    /** Pezzi di entrambi i colori che attaccano la casa con le case occupate indicate */
+    public long attackersTo(int sq, long occupied) {
+        return (Bitboards.pawnAttacks(BLACK, sq) & pieces(WHITE, PAWN))
+                | (Bitboards.pawnAttacks(WHITE, sq) & pieces(BLACK, PAWN))
+                | (Bitboards.knightAttacks(sq) & byType[KNIGHT])
+                | (Bitboards.kingAttacks(sq) & byType[KING])
+                | (rookAttacks(sq, occupied) & (byType[ROOK] | byType[QUEEN]))
+                | (bishopAttacks(sq, occupied) & (byType[BISHOP] | byType[QUEEN]));
+    }
+
+    public boolean isAttacked(int sq, int byColor) {
+        return sq >= 0 && (attackersTo(sq, occupied()) & this.byColor[byColor]) != 0;
+    }
+
+    /** Pezzi avversari che danno scacco al re del lato che muove */
+    public long checkers() {
+        int king = kingSquare(side);
+        return king < 0 ? 0 : attackersTo(king, occupied()) & byColor[side ^ 1];
+    }
+
+    public boolean inCheck() {
+        return checkers() != 0;
+    }
+
+    /** Pezzi del lato che muove inchiodati al proprio re da una torre, un alfiere o una donna avversari */
+    public long pinned() {
+        int king = kingSquare(side);
+        if (king < 0) return 0;
+        int them = side ^ 1;
+        long snipers = ((rookAttacks(king, 0) & (byType[ROOK] | byType[QUEEN]))
+                | (bishopAttacks(king, 0) & (byType[BISHOP] | byType[QUEEN]))) & byColor[them];
+        long occupied = occupied();
+        long pinned = 0;
+        while (snipers != 0) {
+            int sniper = Bitboards.first(snipers);
+            snipers &= snipers - 1;
+            long blockers = Bitboards.between(king, sniper) & occupied;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) pinned |= blockers & byColor[side];
+        }
+        return pinned;
+    }
+
+    /**
+     * Nessuna sequenza di mosse può dare scacco matto: re contro re, un solo pezzo leggero, oppure solo alfieri
+     * tutti sulle case dello stesso colore
+     */
+    public boolean isInsufficientMaterial() {
+        if ((byType[PAWN] | byType[ROOK] | byType[QUEEN]) != 0) return false;
+        if (Long.bitCount(byType[KNIGHT] | byType[BISHOP]) <= 1) return true;
+        if (byType[KNIGHT] != 0) return false;
+        return (byType[BISHOP] & DARK_SQUARES) == 0 || (byType[BISHOP] & ~DARK_SQUARES) == 0;
+    }
+
+    // ---- legalità ----
+
+    /**
+     * Verifica che la mossa sia legale: il pezzo è del lato che muove, raggiunge la casa secondo le regole
+     * (arrocco ed en passant compresi) e il proprio re non resta sotto scacco.
+     */
+    public boolean isLegal(int move) {
+        int from = from(move);
+        int to = to(move);
+        int promo = promotion(move);
+        int piece = board[from];
+        if (from == to || piece == 0 || colorOf(piece) != side) return false;
+        int target = board[to];
+        if (target != 0 && colorOf(target) == side) return false;
+
+        int type = typeOf(piece);
+        boolean lastRank = to >> 3 == (side == WHITE ? 7 : 0);
+        if (type == PAWN ? lastRank != (promo >= KNIGHT && promo <= QUEEN) : promo != 0) return false;
+
+        long occupied = occupied();
+        switch (type) {
+            case PAWN -> {
+                int push = side == WHITE ? 8 : -8;
+                if (to == from + push) {
+                    if (target != 0) return false;
+                } else if (to == from + 2 * push) {
+                    int startRank = side == WHITE ? 1 : 6;
+                    if (from >> 3 != startRank || target != 0 || board[from + push] != 0) return false;
+                } else if ((Bitboards.pawnAttacks(side, from) & bit(to)) == 0) {
+                    return false;
+                } else if (target == 0 && (to != epSquare || board[to - push] != ((side ^ 1) << 3 | PAWN))) {
+                    return false;
+                }
+            }
+            case KNIGHT -> { if ((Bitboards.knightAttacks(from) & bit(to)) == 0) return false; }
+            case BISHOP -> { if ((bishopAttacks(from, occupied) & bit(to)) == 0) return false; }
+            case ROOK -> { if ((rookAttacks(from, occupied) & bit(to)) == 0) return false; }
+            case QUEEN -> { if ((Bitboards.queenAttacks(from, occupied) & bit(to)) == 0) return false; }
+            default -> {
+                if (Math.abs(to - from) == 2 && from >> 3 == to >> 3) return canCastle(from, to);
+                if ((Bitboards.kingAttacks(from) & bit(to)) == 0) return false;
+            }
+        }
+
+        int us = side;
+        makeMove(move);
+        boolean legal = !isAttacked(kingSquare(us), us ^ 1);
+        unmakeMove(move);
+        return legal;
+    }
+
+    // Re sulla casa iniziale, diritto presente, torre al suo posto, case libere e nessuna casa attraversata sotto attacco
+    private boolean canCastle(int from, int to) {
+        int home = side == WHITE ? 4 : 60;
+        if (from != home) return false;
+        boolean kingside = to > from;
+        int right = side == WHITE ? (kingside ? WHITE_OO : WHITE_OOO) : (kingside ? BLACK_OO : BLACK_OOO);
+        int rookSquare = kingside ? from + 3 : from - 4;
+        if ((castling & right) == 0 || board[rookSquare] != (side << 3 | ROOK)) return false;
+        if ((Bitboards.between(from, rookSquare) & occupied()) != 0) return false;
+        int them = side ^ 1;
+        int step = kingside ? 1 : -1;
+        return !isAttacked(from, them) && !isAttacked(from + step, them) && !isAttacked(to, them);
+    }
+
+    // ---- esecuzione ----
+
+    /**
+     * Esegue la mossa sulla posizione, senza controllarne la legalità: arrocco (il re si sposta di due colonne),
+     * en passant, promozione (a donna se non indicata), diritti di arrocco, casa en passant dopo ogni spinta doppia,
+     * contatore delle semimosse e numero di mossa. Si annulla con {@link #unmakeMove}; non alloca nulla finché
+     * la partita resta entro {@link #MAX_PLY} semimosse (oltre, la pila raddoppia).
+     */
+    public void makeMove(int move) {
+        int from = from(move);
+        int to = to(move);
+        int piece = board[from];
+        int type = typeOf(piece);
+        int captured = board[to];
+        int special = 0;
+
+        if (ply == undo.length) {
+            undo = Arrays.copyOf(undo, ply * 2);
+            keys = Arrays.copyOf(keys, ply * 2);
+        }
+        long state = (long) halfmoveClock << 32 | (epSquare + 1) << 8 | castling << 4;
+        keys[ply] = key;
+        key ^= epKey();
+
+        halfmoveClock++;
+        if (side == BLACK) fullmoveNumber++;
+        int ep = epSquare;
+        epSquare = -1;
+
+        if (type == KING && (from == 4 || from == 60) && Math.abs(to - from) == 2) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            if (typeOf(board[rookFrom]) == ROOK) {
+                relocate(rookFrom, to > from ? from + 1 : from - 1);
+                special = CASTLED;
+            }
+        }
+        if (captured != 0) {
+            remove(to);
+            halfmoveClock = 0;
+        }
+        relocate(from, to);
+
+        if (type == PAWN) {
+            halfmoveClock = 0;
+            if (to == ep && captured == 0 && (from & 7) != (to & 7)) {
+                int victim = to + (side == WHITE ? -8 : 8);
+                captured = board[victim];
+                remove(victim);
+                special = EN_PASSANT;
+            }
+            if (Math.abs(to - from) == 16) {
+                epSquare = (from + to) / 2;
+            }
+            if (to >> 3 == 0 || to >> 3 == 7) {
+                int promo = promotion(move);
+                remove(to);
+                put(to, side << 3 | (promo >= KNIGHT && promo <= QUEEN ? promo : QUEEN));
+                special = PROMOTED;
+            }
+        }
+
+        undo[ply++] = state | special | captured;
+        int rights = castling & CASTLING_MASK[from] & CASTLING_MASK[to];
+        key ^= Zobrist.CASTLING[castling] ^ Zobrist.CASTLING[rights] ^ Zobrist.WHITE_TO_MOVE;
+        castling = rights;
+        side ^= 1;
+        key ^= epKey();
+    }
+
+    /**
+     * Annulla l'ultima mossa eseguita con {@link #makeMove}, che va ripassata identica
+     */
+    public void unmakeMove(int move) {
+        long state = undo[--ply];
+        int from = from(move);
+        int to = to(move);
+        int captured = (int) (state & 15);
+
+        side ^= 1;
+        if (side == BLACK) fullmoveNumber--;
+        castling = (int) (state >> 4) & 15;
+        epSquare = ((int) (state >> 8) & 127) - 1;
+        halfmoveClock = (int) (state >>> 32);
+
+        if ((state & PROMOTED) != 0) {
+            remove(to);
+            put(to, side << 3 | PAWN);
+        }
+        relocate(to, from);
+        if ((state & CASTLED) != 0) {
+            relocate(to > from ? from + 1 : from - 1, to > from ? from + 3 : from - 4);
+        }
+        if (captured != 0) {
+            put((state & EN_PASSANT) != 0 ? to + (side == WHITE ? -8 : 8) : to, captured);
+        }
+        key = keys[ply];
+    }
+
+    /** Semimosse eseguite con makeMove e non ancora annullate */
+    public int ply() {
+        return ply;
+    }
+
+    // La casa en passant conta nella chiave solo se un pedone del lato che muove può catturare
+    private long epKey() {
+        return epSquare >= 0 && (Bitboards.pawnAttacks(side ^ 1, epSquare) & pieces(side, PAWN)) != 0
+                ? Zobrist.EN_PASSANT[epSquare & 7] : 0;
+    }
+
+    private void put(int sq, int piece) {
+        long b = bit(sq);
+        key ^= Zobrist.PIECE[piece][sq];
+        board[sq] = (byte) piece;
+        byType[typeOf(piece)] |= b;
+        byColor[colorOf(piece)] |= b;
+    }
+
+    private void remove(int sq) {
+        int piece = board[sq];
+        long b = bit(sq);
+        key ^= Zobrist.PIECE[piece][sq];
+        board[sq] = 0;
+        byType[typeOf(piece)] &= ~b;
+        byColor[colorOf(piece)] &= ~b;
+    }
+
+    private void relocate(int from, int to) {
+        int piece = board[from];
+        long b = bit(from) | bit(to);
+        key ^= Zobrist.PIECE[piece][from] ^ Zobrist.PIECE[piece][to];
+        board[from] = 0;
+        board[to] = (byte) piece;
+        byType[typeOf(piece)] ^= b;
+        byColor[colorOf(piece)] ^= b;
+    }
+}
@@ -0,0 +1,80 @@
+package com.chess.chessverse.service.tablebase;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Cache LRU limitata dei blocchi Syzygy già decodificati. Le interrogazioni di una stessa partita
+ * (la ricerca sulle catture, le mosse alla radice) tornano spesso sugli stessi blocchi: tenerli decodificati
+ * evita di rileggere ogni volta il flusso di Huffman dall'inizio del blocco.
+ */
+final class BlockCache {
+
+    /**
+     * Simboli di un blocco in ordine e, per ciascuno, l'indice del primo valore che rappresenta
+     */
+    record Block(int[] symbols, int[] starts) {
+
+        // Ultimo simbolo che inizia prima (o proprio su) offset
+        int indexOf(int offset) {
+            int i = Arrays.binarySearch(starts, offset);
+            return i >= 0 ? i : -i - 2;
+        }
+    }
+
+    private final int maxBlocks;
+    private final Map<Long, Block> blocks;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    BlockCache(int maxBlocks) {
+        this.maxBlocks = Math.max(0, maxBlocks);
+        this.blocks = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                return size() > BlockCache.this.maxBlocks;
+            }
+        };
+    }
+
+    Block get(SyzygyTable.PairsData d, int block, BiFunction<SyzygyTable.PairsData, Integer, Block> decoder) {
+        long key = (long) d.id << 32 | Integer.toUnsignedLong(block);
+        synchronized (blocks) {
+            Block cached = blocks.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        // Decodifica fuori dal lock: due thread sullo stesso blocco producono lo stesso risultato
+        Block decoded = decoder.apply(d, block);
+        if (maxBlocks > 0) {
+            synchronized (blocks) {
+                blocks.put(key, decoded);
+            }
+        }
+        return decoded;
+    }
+
+    int size() {
+        synchronized (blocks) {
+            return blocks.size();
+        }
+    }
+
+    int getMaxBlocks() {
+        return maxBlocks;
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,692 @@
+package com.chess.chessverse.service.tablebase;
+
+import com.chess.chessverse.service.rules.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un file Syzygy (.rtbw WDL o .rtbz DTZ) mappato in memoria alla prima interrogazione.
+ * Il formato è quello del generatore di Ronald de Man, letto come fa tbprobe.cpp di Stockfish:
+ * intestazione con l'ordine dei pezzi e i gruppi, tabelle di Huffman canonico per blocco e
+ * simboli a coppie ricorsive (RE-PAIR), indice sparso per arrivare al blocco giusto senza scorrerli tutti.
+ * La posizione viene ridotta a un indice (simmetrie, re nel triangolo a1-d1-d4, pedoni per colonna)
+ * e il valore si legge decodificando solo il blocco che lo contiene.
+ */
+final class SyzygyTable {
+
+    static final int[] WDL_MAGIC = {0x71, 0xE8, 0x23, 0x5D};
+    static final int[] DTZ_MAGIC = {0xD7, 0x66, 0x0C, 0xA5};
+
+    // Flag di ogni sottotabella: tutti per il DTZ tranne SINGLE_VALUE
+    static final int STM = 1;
+    static final int MAPPED = 2;
+    static final int WIN_PLIES = 4;
+    static final int LOSS_PLIES = 8;
+    static final int WIDE = 16;
+    static final int SINGLE_VALUE = 128;
+
+    // Valore restituito da probe() quando il DTZ è memorizzato solo per l'altro lato
+    static final int CHANGE_STM = Integer.MIN_VALUE;
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    // Tabelle di codifica, identiche a quelle costruite da Tablebases::init()
+    static final int[] MAP_PAWNS = new int[64];
+    static final int[] MAP_B1H1H7 = new int[64];
+    static final int[] MAP_A1D1D4 = new int[64];
+    static final int[][] MAP_KK = new int[10][64];
+    static final long[][] BINOMIAL = new long[6][64];
+    static final long[][] LEAD_PAWN_IDX = new long[6][64];
+    static final long[][] LEAD_PAWNS_SIZE = new long[6][4];
+
+    static {
+        int code = 0;
+        for (int s = 0; s < 64; s++) {
+            if (offA1H8(s) < 0) MAP_B1H1H7[s] = code++;
+        }
+
+        code = 0;
+        int[] diagonal = new int[4];
+        int diagonalCount = 0;
+        for (int s = 0; s <= 27; s++) {
+            if (offA1H8(s) < 0 && (s & 7) <= 3) {
+                MAP_A1D1D4[s] = code++;
+            } else if (offA1H8(s) == 0 && (s & 7) <= 3) {
+                diagonal[diagonalCount++] = s;
+            }
+        }
+        for (int i = 0; i < diagonalCount; i++) {
+            MAP_A1D1D4[diagonal[i]] = code++;
+        }
+
+        // 462 coppie di re legali con il primo nel triangolo a1-d1-d4; entrambi sulla diagonale in coda
+        code = 0;
+        int[][] bothOnDiagonal = new int[64][];
+        int bothCount = 0;
+        for (int idx = 0; idx < 10; idx++) {
+            for (int s1 = 0; s1 <= 27; s1++) {
+                if (MAP_A1D1D4[s1] != idx || (idx == 0 && s1 != 1)) continue;
+                for (int s2 = 0; s2 < 64; s2++) {
+                    if (Math.abs((s1 & 7) - (s2 & 7)) <= 1 && Math.abs((s1 >> 3) - (s2 >> 3)) <= 1) continue;
+                    if (offA1H8(s1) == 0 && offA1H8(s2) > 0) continue;
+                    if (offA1H8(s1) == 0 && offA1H8(s2) == 0) {
+                        bothOnDiagonal[bothCount++] = new int[]{idx, s2};
+                    } else {
+                        MAP_KK[idx][s2] = code++;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < bothCount; i++) {
+            MAP_KK[bothOnDiagonal[i][0]][bothOnDiagonal[i][1]] = code++;
+        }
+
+        BINOMIAL[0][0] = 1;
+        for (int n = 1; n < 64; n++) {
+            for (int k = 0; k < 6 && k <= n; k++) {
+                BINOMIAL[k][n] = (k > 0 ? BINOMIAL[k - 1][n - 1] : 0) + (k < n ? BINOMIAL[k][n - 1] : 0);
+            }
+        }
+
+        int availableSquares = 47;
+        for (int leadPawnsCnt = 1; leadPawnsCnt <= 5; leadPawnsCnt++) {
+            for (int f = 0; f <= 3; f++) {
+                long idx = 0;
+                for (int r = 1; r <= 6; r++) {
+                    int sq = r * 8 + f;
+                    if (leadPawnsCnt == 1) {
+                        MAP_PAWNS[sq] = availableSquares--;
+                        MAP_PAWNS[sq ^ 7] = availableSquares--;
+                    }
+                    LEAD_PAWN_IDX[leadPawnsCnt][sq] = idx;
+                    idx += BINOMIAL[leadPawnsCnt - 1][MAP_PAWNS[sq]];
+                }
+                LEAD_PAWNS_SIZE[leadPawnsCnt][f] = idx;
+            }
+        }
+    }
+
+    /**
+     * Una sottotabella: lato che muove (e colonna del pedone guida, se ci sono pedoni) con il proprio
+     * alfabeto di simboli. Gli offset sono posizioni assolute nel file mappato.
+     */
+    static final class PairsData {
+        final int id = NEXT_ID.incrementAndGet();
+        int flags;
+        int sizeofBlock;
+        long span;
+        long blocksNum;
+        int maxSymLen;
+        int minSymLen;
+        int lowestSym;
+        int btree;
+        int blockLength;
+        long blockLengthSize;
+        int sparseIndex;
+        long sparseIndexSize;
+        int data;
+        long[] base64;
+        int[] symlen;
+        final int[] pieces = new int[7];
+        final long[] groupIdx = new long[8];
+        final int[] groupLen = new int[8];
+        final int[] mapIdx = new int[4];
+    }
+
+    final String name;
+    final Path path;
+    final boolean dtz;
+    final int pieceCount;
+    final boolean hasPawns;
+    final boolean hasUniquePieces;
+    final boolean symmetric;
+    final int[] pawnCount = new int[2];
+    // Pezzi del lato forte (quello a sinistra della "v" nel nome)
+    final String whiteMaterial;
+
+    private final BlockCache cache;
+    private volatile boolean ready;
+    private boolean available;
+    private ByteBuffer le;
+    private ByteBuffer be;
+    private int mapOffset;
+    private PairsData[][] items;
+
+    SyzygyTable(String name, Path path, boolean dtz, BlockCache cache) {
+        this.name = name;
+        this.path = path;
+        this.dtz = dtz;
+        this.cache = cache;
+        String[] sides = name.split("v");
+        this.whiteMaterial = sides[0];
+        this.symmetric = sides[0].equals(sides[1]);
+        this.pieceCount = sides[0].length() + sides[1].length();
+        this.hasPawns = name.indexOf('P') >= 0;
+
+        boolean unique = false;
+        for (String side : sides) {
+            for (char piece : "PNBRQ".toCharArray()) {
+                if (side.chars().filter(c -> c == piece).count() == 1) unique = true;
+            }
+        }
+        this.hasUniquePieces = unique;
+
+        // Colore guida: se entrambi hanno pedoni, quello con meno pedoni (comprime meglio)
+        int whitePawns = (int) sides[0].chars().filter(c -> c == 'P').count();
+        int blackPawns = (int) sides[1].chars().filter(c -> c == 'P').count();
+        boolean whiteLeads = blackPawns == 0 || (whitePawns > 0 && blackPawns >= whitePawns);
+        pawnCount[0] = whiteLeads ? whitePawns : blackPawns;
+        pawnCount[1] = whiteLeads ? blackPawns : whitePawns;
+    }
+
+    /**
+     * Mappa il file alla prima chiamata; false se manca, è corrotto o supera i 2 GB di un MappedByteBuffer
+     */
+    boolean ensureMapped() {
+        if (ready) return available;
+        synchronized (this) {
+            if (ready) return available;
+            try {
+                available = map();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("❌ Tablebase " + path.getFileName() + " non leggibile: " + e.getMessage());
+                available = false;
+            }
+            ready = true;
+            return available;
+        }
+    }
+
+    private boolean map() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % 64 != 16) {
+                System.out.println("❌ Tablebase " + path.getFileName() + " corrotta: dimensione " + size);
+                return false;
+            }
+            if (size > Integer.MAX_VALUE) {
+                System.out.println("⚠️ Tablebase " + path.getFileName() + " oltre 2 GB: ignorata");
+                return false;
+            }
+            // Il mapping resta valido anche dopo la chiusura del canale
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int[] magic = dtz ? DTZ_MAGIC : WDL_MAGIC;
+            for (int i = 0; i < 4; i++) {
+                if ((buffer.get(i) & 0xFF) != magic[i]) {
+                    System.out.println("❌ Tablebase " + path.getFileName() + " con intestazione non valida");
+                    return false;
+                }
+            }
+            le = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            be = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            init(4);
+            return true;
+        }
+    }
+
+    // Porta di set(): legge l'intestazione e calcola gli offset di tutte le sottotabelle
+    private void init(int data) {
+        int sides = !dtz && !symmetric ? 2 : 1;
+        int maxFile = hasPawns ? 3 : 0;
+        boolean pp = hasPawns && pawnCount[1] > 0;
+        items = new PairsData[sides][maxFile + 1];
+        data++; // flag del file: Split e HasPawns, già noti dal nome
+
+        for (int f = 0; f <= maxFile; f++) {
+            for (int i = 0; i < sides; i++) items[i][f] = new PairsData();
+            int b0 = u8(data);
+            int b1 = pp ? u8(data + 1) : 0;
+            int[][] order = {
+                    {b0 & 0xF, pp ? b1 & 0xF : 0xF},
+                    {b0 >> 4, pp ? b1 >> 4 : 0xF}
+            };
+            data += 1 + (pp ? 1 : 0);
+            for (int k = 0; k < pieceCount; k++, data++) {
+                for (int i = 0; i < sides; i++) {
+                    items[i][f].pieces[k] = i == 1 ? u8(data) >> 4 : u8(data) & 0xF;
+                }
+            }
+            for (int i = 0; i < sides; i++) setGroups(items[i][f], order[i], f);
+        }
+        data += data & 1;
+
+        for (int f = 0; f <= maxFile; f++) {
+            for (int i = 0; i < sides; i++) data = setSizes(items[i][f], data);
+        }
+
+        if (dtz) {
+            mapOffset = data;
+            for (int f = 0; f <= maxFile; f++) {
+                PairsData d = items[0][f];
+                if ((d.flags & MAPPED) == 0) continue;
+                if ((d.flags & WIDE) != 0) {
+                    data += data & 1;
+                    for (int i = 0; i < 4; i++) {
+                        d.mapIdx[i] = ((data - mapOffset) >> 1) + 1;
+                        data += 2 * u16(data) + 2;
+                    }
+                } else {
+                    for (int i = 0; i < 4; i++) {
+                        d.mapIdx[i] = data - mapOffset + 1;
+                        data += u8(data) + 1;
+                    }
+                }
+            }
+            data += data & 1;
+        }
+
+        for (int f = 0; f <= maxFile; f++) {
+            for (int i = 0; i < sides; i++) {
+                items[i][f].sparseIndex = data;
+                data += (int) (items[i][f].sparseIndexSize * 6);
+            }
+        }
+        for (int f = 0; f <= maxFile; f++) {
+            for (int i = 0; i < sides; i++) {
+                items[i][f].blockLength = data;
+                data += (int) (items[i][f].blockLengthSize * 2);
+            }
+        }
+        for (int f = 0; f <= maxFile; f++) {
+            for (int i = 0; i < sides; i++) {
+                data = (data + 0x3F) & ~0x3F;
+                items[i][f].data = data;
+                data += (int) (items[i][f].blocksNum * items[i][f].sizeofBlock);
+            }
+        }
+    }
+
+    // I pezzi dello stesso tipo e colore si codificano insieme; il gruppo guida sono i pedoni guida
+    // oppure i primi tre pezzi unici (o i due re se non ce ne sono)
+    private void setGroups(PairsData d, int[] order, int f) {
+        int n = 0;
+        int firstLen = hasPawns ? 0 : hasUniquePieces ? 3 : 2;
+        d.groupLen[n] = 1;
+        for (int i = 1; i < pieceCount; i++) {
+            if (--firstLen > 0 || d.pieces[i] == d.pieces[i - 1]) {
+                d.groupLen[n]++;
+            } else {
+                d.groupLen[++n] = 1;
+            }
+        }
+        d.groupLen[++n] = 0;
+
+        boolean pp = hasPawns && pawnCount[1] > 0;
+        int next = pp ? 2 : 1;
+        int freeSquares = 64 - d.groupLen[0] - (pp ? d.groupLen[1] : 0);
+        long idx = 1;
+        for (int k = 0; next < n || k == order[0] || k == order[1]; k++) {
+            if (k == order[0]) {
+                d.groupIdx[0] = idx;
+                idx *= hasPawns ? LEAD_PAWNS_SIZE[d.groupLen[0]][f] : hasUniquePieces ? 31332 : 462;
+            } else if (k == order[1]) {
+                d.groupIdx[1] = idx;
+                idx *= BINOMIAL[d.groupLen[1]][48 - d.groupLen[0]];
+            } else {
+                d.groupIdx[next] = idx;
+                idx *= BINOMIAL[d.groupLen[next]][freeSquares];
+                freeSquares -= d.groupLen[next++];
+            }
+        }
+        d.groupIdx[n] = idx;
+    }
+
+    private int setSizes(PairsData d, int data) {
+        d.flags = u8(data++);
+        if ((d.flags & SINGLE_VALUE) != 0) {
+            d.minSymLen = u8(data++);
+            return data;
+        }
+
+        int groups = 0;
+        while (groups < 7 && d.groupLen[groups] != 0) groups++;
+        long tbSize = d.groupIdx[groups];
+
+        d.sizeofBlock = 1 << u8(data++);
+        d.span = 1L << u8(data++);
+        d.sparseIndexSize = (tbSize + d.span - 1) / d.span;
+        int padding = u8(data++);
+        d.blocksNum = Integer.toUnsignedLong(le.getInt(data));
+        data += 4;
+        d.blockLengthSize = d.blocksNum + padding;
+        d.maxSymLen = u8(data++);
+        d.minSymLen = u8(data++);
+        d.lowestSym = data;
+
+        // Huffman canonico: base64[i] è il più piccolo codice di lunghezza i + minSymLen allineato a 64 bit
+        int base64Size = d.maxSymLen - d.minSymLen + 1;
+        d.base64 = new long[base64Size];
+        for (int i = base64Size - 2; i >= 0; i--) {
+            d.base64[i] = (d.base64[i + 1] + u16(d.lowestSym + 2 * i) - u16(d.lowestSym + 2 * (i + 1))) >>> 1;
+        }
+        for (int i = 0; i < base64Size; i++) {
+            d.base64[i] <<= 64 - i - d.minSymLen;
+        }
+        data += base64Size * 2;
+
+        int symCount = u16(data);
+        data += 2;
+        d.btree = data;
+        d.symlen = new int[symCount];
+        boolean[] visited = new boolean[symCount];
+        for (int sym = 0; sym < symCount; sym++) {
+            if (!visited[sym]) d.symlen[sym] = setSymlen(d, sym, visited);
+        }
+        return data + symCount * 3 + (symCount & 1);
+    }
+
+    // Numero di valori (meno uno) in cui si espande un simbolo seguendo le coppie fino alle foglie
+    private int setSymlen(PairsData d, int sym, boolean[] visited) {
+        visited[sym] = true;
+        int right = right(d, sym);
+        if (right == 0xFFF) return 0;
+        int left = left(d, sym);
+        if (!visited[left]) d.symlen[left] = setSymlen(d, left, visited);
+        if (!visited[right]) d.symlen[right] = setSymlen(d, right, visited);
+        return d.symlen[left] + d.symlen[right] + 1;
+    }
+
+    /**
+     * Pezzi di un colore come nei nomi dei file Syzygy, dal re al pedone: "KRP"
+     */
+    static String material(Position pos, int color) {
+        StringBuilder sb = new StringBuilder();
+        for (int type = Position.KING; type >= Position.PAWN; type--) {
+            int n = Long.bitCount(pos.pieces(color, type));
+            for (int i = 0; i < n; i++) sb.append(" PNBRQK".charAt(type));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Valore grezzo della posizione: WDL da -2 a 2, oppure DTZ in semimosse (wdl serve a scegliere la mappa),
+     * oppure CHANGE_STM se la tabella DTZ è memorizzata solo per l'altro lato
+     */
+    int probe(Position pos, int wdl) {
+        int[] squares = new int[7];
+        int[] pieces = new int[7];
+        int size = 0;
+        int leadPawnsCnt = 0;
+        int tbFile = 0;
+        long leadPawns = 0;
+
+        boolean symmetricBlackToMove = symmetric && pos.sideToMove() == Position.BLACK;
+        boolean blackStronger = !material(pos, Position.WHITE).equals(whiteMaterial);
+        boolean flip = symmetricBlackToMove || blackStronger;
+        int flipColor = flip ? 8 : 0;
+        int flipSquares = flip ? 56 : 0;
+        int stm = (flip ? 1 : 0) ^ pos.sideToMove();
+
+        if (hasPawns) {
+            int pc = items[0][0].pieces[0] ^ flipColor;
+            for (int s = 0; s < 64; s++) {
+                if (pos.pieceAt(s) == pc) {
+                    squares[size++] = s ^ flipSquares;
+                    leadPawns |= 1L << s;
+                }
+            }
+            leadPawnsCnt = size;
+            int best = 0;
+            for (int i = 1; i < leadPawnsCnt; i++) {
+                if (MAP_PAWNS[squares[i]] > MAP_PAWNS[squares[best]]) best = i;
+            }
+            swap(squares, 0, best);
+            int file = squares[0] & 7;
+            tbFile = Math.min(file, 7 - file);
+        }
+
+        if (dtz && !checkDtzStm(stm, tbFile)) return CHANGE_STM;
+
+        for (int s = 0; s < 64; s++) {
+            if (pos.pieceAt(s) == 0 || (leadPawns & 1L << s) != 0) continue;
+            squares[size] = s ^ flipSquares;
+            pieces[size++] = pos.pieceAt(s) ^ flipColor;
+        }
+
+        PairsData d = get(stm, tbFile);
+
+        // Stesso ordine dei pezzi della tabella
+        for (int i = leadPawnsCnt; i < size - 1; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (d.pieces[i] == pieces[j]) {
+                    swap(pieces, i, j);
+                    swap(squares, i, j);
+                    break;
+                }
+            }
+        }
+
+        if ((squares[0] & 7) > 3) {
+            for (int i = 0; i < size; i++) squares[i] ^= 7;
+        }
+
+        long idx;
+        if (hasPawns) {
+            idx = LEAD_PAWN_IDX[leadPawnsCnt][squares[0]];
+            sortByMapPawns(squares, 1, leadPawnsCnt);
+            for (int i = 1; i < leadPawnsCnt; i++) {
+                idx += BINOMIAL[i][MAP_PAWNS[squares[i]]];
+            }
+        } else {
+            if ((squares[0] >> 3) > 3) {
+                for (int i = 0; i < size; i++) squares[i] ^= 56;
+            }
+            // Il primo pezzo del gruppo guida fuori dalla diagonale a1-h8 va portato sotto la diagonale
+            for (int i = 0; i < d.groupLen[0]; i++) {
+                if (offA1H8(squares[i]) == 0) continue;
+                if (offA1H8(squares[i]) > 0) {
+                    for (int j = i; j < size; j++) {
+                        squares[j] = ((squares[j] >> 3) | (squares[j] << 3)) & 63;
+                    }
+                }
+                break;
+            }
+            if (hasUniquePieces) {
+                int adjust1 = squares[1] > squares[0] ? 1 : 0;
+                int adjust2 = (squares[2] > squares[0] ? 1 : 0) + (squares[2] > squares[1] ? 1 : 0);
+                if (offA1H8(squares[0]) != 0) {
+                    idx = (MAP_A1D1D4[squares[0]] * 63L + (squares[1] - adjust1)) * 62 + squares[2] - adjust2;
+                } else if (offA1H8(squares[1]) != 0) {
+                    idx = (6 * 63L + (squares[0] >> 3) * 28 + MAP_B1H1H7[squares[1]]) * 62 + squares[2] - adjust2;
+                } else if (offA1H8(squares[2]) != 0) {
+                    idx = 6 * 63 * 62 + 4 * 28 * 62 + (squares[0] >> 3) * 7 * 28
+                            + ((squares[1] >> 3) - adjust1) * 28 + MAP_B1H1H7[squares[2]];
+                } else {
+                    idx = 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + (squares[0] >> 3) * 7 * 6
+                            + ((squares[1] >> 3) - adjust1) * 6 + ((squares[2] >> 3) - adjust2);
+                }
+            } else {
+                idx = MAP_KK[MAP_A1D1D4[squares[0]]][squares[1]];
+            }
+        }
+
+        idx *= d.groupIdx[0];
+        int groupStart = d.groupLen[0];
+        boolean remainingPawns = hasPawns && pawnCount[1] > 0;
+        int next = 0;
+        while (d.groupLen[++next] != 0) {
+            int len = d.groupLen[next];
+            Arrays.sort(squares, groupStart, groupStart + len);
+            long n = 0;
+            for (int i = 0; i < len; i++) {
+                int adjust = 0;
+                for (int j = 0; j < groupStart; j++) {
+                    if (squares[groupStart + i] > squares[j]) adjust++;
+                }
+                n += BINOMIAL[i + 1][squares[groupStart + i] - adjust - (remainingPawns ? 8 : 0)];
+            }
+            remainingPawns = false;
+            idx += n * d.groupIdx[next];
+            groupStart += len;
+        }
+
+        int value = decompress(d, idx);
+        return dtz ? mapScore(tbFile, value, wdl) : value - 2;
+    }
+
+    private PairsData get(int stm, int file) {
+        return items[stm % items.length][hasPawns ? file : 0];
+    }
+
+    private boolean checkDtzStm(int stm, int file) {
+        return (get(stm, file).flags & STM) == stm || (symmetric && !hasPawns);
+    }
+
+    // I DTZ sono rinumerati per frequenza in ciascuna delle quattro classi WDL; la mappa nel file li riporta ai valori veri
+    private int mapScore(int file, int value, int wdl) {
+        final int[] wdlMap = {1, 3, 0, 2, 0};
+        PairsData d = get(0, file);
+        if ((d.flags & MAPPED) != 0) {
+            int base = d.mapIdx[wdlMap[wdl + 2]];
+            value = (d.flags & WIDE) != 0 ? u16(mapOffset + 2 * (base + value)) : u8(mapOffset + base + value);
+        }
+        // Alcune tabelle contano le mosse invece delle semimosse
+        if ((wdl == 2 && (d.flags & WIN_PLIES) == 0) || (wdl == -2 && (d.flags & LOSS_PLIES) == 0)
+                || wdl == 1 || wdl == -1) {
+            value *= 2;
+        }
+        return value + 1;
+    }
+
+    // Porta di decompress_pairs(): blocco dall'indice sparso, simbolo dal blocco decodificato, valore dalle coppie
+    private int decompress(PairsData d, long idx) {
+        if ((d.flags & SINGLE_VALUE) != 0) return d.minSymLen;
+
+        long k = idx / d.span;
+        int entry = (int) (d.sparseIndex + k * 6);
+        int block = le.getInt(entry);
+        int offset = u16(entry + 4);
+        offset += (int) (idx % d.span - d.span / 2);
+
+        while (offset < 0) {
+            offset += u16(d.blockLength + 2 * --block) + 1;
+        }
+        while (offset > u16(d.blockLength + 2 * block)) {
+            offset -= u16(d.blockLength + 2 * block++) + 1;
+        }
+
+        BlockCache.Block decoded = cache.get(d, block, this::decodeBlock);
+        int i = decoded.indexOf(offset);
+        return expand(d, offset - decoded.starts()[i], decoded.symbols()[i]);
+    }
+
+    // Il simbolo si espande in symlen + 1 valori: si scende nella coppia sinistra o destra fino alla foglia
+    private int expand(PairsData d, int offset, int sym) {
+        while (d.symlen[sym] != 0) {
+            int left = left(d, sym);
+            if (offset < d.symlen[left] + 1) {
+                sym = left;
+            } else {
+                offset -= d.symlen[left] + 1;
+                sym = right(d, sym);
+            }
+        }
+        return left(d, sym);
+    }
+
+    /**
+     * Decodifica Huffman di un intero blocco: la sequenza dei suoi simboli e, per ciascuno,
+     * l'indice del primo valore che rappresenta. Le espansioni delle coppie restano lazy.
+     */
+    private BlockCache.Block decodeBlock(PairsData d, int block) {
+        int values = u16(d.blockLength + 2 * block) + 1;
+        int[] symbols = new int[Math.min(values, 256)];
+        int[] starts = new int[symbols.length];
+        int count = 0;
+
+        int ptr = (int) (d.data + (long) block * d.sizeofBlock);
+        long buf64 = readBigEndianLong(ptr);
+        ptr += 8;
+        int buf64Size = 64;
+        int covered = 0;
+        while (covered < values) {
+            int len = 0;
+            while (Long.compareUnsigned(buf64, d.base64[len]) < 0) len++;
+            int sym = (int) ((buf64 - d.base64[len]) >>> (64 - len - d.minSymLen));
+            sym += u16(d.lowestSym + 2 * len);
+
+            if (count == symbols.length) {
+                symbols = Arrays.copyOf(symbols, count * 2);
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            symbols[count] = sym;
+            starts[count++] = covered;
+            covered += d.symlen[sym] + 1;
+
+            len += d.minSymLen;
+            buf64 <<= len;
+            buf64Size -= len;
+            if (buf64Size <= 32) {
+                buf64Size += 32;
+                buf64 |= Integer.toUnsignedLong(readBigEndianInt(ptr)) << (64 - buf64Size);
+                ptr += 4;
+            }
+        }
+        return new BlockCache.Block(Arrays.copyOf(symbols, count), Arrays.copyOf(starts, count));
+    }
+
+    // Nodi dell'albero delle coppie: 3 byte con due simboli da 12 bit; a destra 0xFFF indica una foglia
+    private int left(PairsData d, int sym) {
+        int off = d.btree + 3 * sym;
+        return ((le.get(off + 1) & 0xF) << 8) | (le.get(off) & 0xFF);
+    }
+
+    private int right(PairsData d, int sym) {
+        int off = d.btree + 3 * sym;
+        return ((le.get(off + 2) & 0xFF) << 4) | ((le.get(off + 1) & 0xFF) >> 4);
+    }
+
+    // L'ultimo blocco può far leggere qualche byte oltre la fine dei dati: fuori dal file vale zero
+    private long readBigEndianLong(int off) {
+        return off + 8 <= be.capacity() ? be.getLong(off)
+                : (Integer.toUnsignedLong(readBigEndianInt(off)) << 32) | Integer.toUnsignedLong(readBigEndianInt(off + 4));
+    }
+
+    private int readBigEndianInt(int off) {
+        if (off + 4 <= be.capacity()) return be.getInt(off);
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | (off + i < be.capacity() ? be.get(off + i) & 0xFF : 0);
+        }
+        return value;
+    }
+
+    private int u8(int off) {
+        return le.get(off) & 0xFF;
+    }
+
+    private int u16(int off) {
+        return Short.toUnsignedInt(le.getShort(off));
+    }
+
+    static int offA1H8(int sq) {
+        return (sq >> 3) - (sq & 7);
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+
+    // Ordinamento stabile per MAP_PAWNS crescente (al massimo 5 pedoni: basta l'inserzione)
+    private static void sortByMapPawns(int[] squares, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int sq = squares[i];
+            int j = i - 1;
+            while (j >= from && MAP_PAWNS[squares[j]] > MAP_PAWNS[sq]) {
+                squares[j + 1] = squares[j];
+                j--;
+            }
+            squares[j + 1] = sq;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.chess.chessverse.service.tablebase;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.rules.MoveGenerator;
+import com.chess.chessverse.service.rules.MoveList;
+import com.chess.chessverse.service.rules.Position;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Tablebase Syzygy lette direttamente dalla JVM: nei finali con pochi pezzi la mossa del bot e la valutazione
+ * si ottengono dai file .rtbw/.rtbz mappati in memoria, senza occupare un motore del pool.
+ * La logica di sondaggio è quella di Stockfish (tbprobe.cpp): le tabelle WDL non memorizzano le posizioni con
+ * una cattura vincente, quindi si esplorano prima le catture; il DTZ è memorizzato per un solo lato e per
+ * l'altro si fa una ricerca di una semimossa. Le mosse alla radice si ordinano per DTZ nel rispetto della
+ * regola delle 50 mosse, così una vittoria viene sempre convertita.
+ */
+@Component
+public class SyzygyTablebase {
+
+    // Esito di un sondaggio, come ProbeState di Stockfish
+    private static final int FAIL = 0;
+    private static final int OK = 1;
+    private static final int CHANGE_STM = -1;
+    private static final int ZEROING_BEST_MOVE = 2;
+
+    private static final int MAX_DTZ = 1 << 18;
+
+    // Punteggio di una vittoria certa, in centipedoni meno il DTZ: stesso ordine di grandezza dei punteggi TB di Stockfish
+    private static final int TB_WIN_CP = 20000;
+
+    private static final Pattern TABLE_NAME = Pattern.compile("K[QRBNP]*vK[QRBNP]*");
+
+    /**
+     * Esito per una posizione, dal punto di vista del lato che muove: wdl da -2 (persa) a 2 (vinta),
+     * con ±1 per le vittorie/sconfitte annullate dalla regola delle 50 mosse; dtz in semimosse fino alla
+     * prossima cattura o mossa di pedone (null senza file DTZ); bestMove null se mancano i DTZ.
+     */
+    public record Result(int wdl, Integer dtz, String bestMove, int scoreCp) { }
+
+    private static final class State {
+        int value = OK;
+    }
+
+    @Autowired
+    private EngineProperties properties;
+
+    private final Map<String, SyzygyTable> wdlTables = new HashMap<>();
+    private final Map<String, SyzygyTable> dtzTables = new HashMap<>();
+    private BlockCache blockCache = new BlockCache(0);
+    private int maxPieces = 0;
+    private int wdlFiles = 0;
+    private int dtzFiles = 0;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder probeNanos = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        EngineProperties.Syzygy settings = properties.getSyzygy();
+        blockCache = new BlockCache(settings.getBlockCacheSize());
+        if (!settings.isEnabled()) return;
+
+        for (String dir : settings.getPath().split(File.pathSeparator)) {
+            if (dir.isBlank()) continue;
+            Path path = Path.of(dir.trim());
+            if (!Files.isDirectory(path)) continue;
+            try (Stream<Path> files = Files.list(path)) {
+                files.forEach(this::register);
+            } catch (IOException e) {
+                System.out.println("❌ Directory tablebase non leggibile (" + path + "): " + e.getMessage());
+            }
+        }
+        // Un DTZ senza il rispettivo WDL non serve: Stockfish li ignora allo stesso modo
+        dtzTables.keySet().removeIf(key -> !wdlTables.containsKey(key));
+        dtzFiles = (int) dtzTables.values().stream().distinct().count();
+
+        if (wdlTables.isEmpty()) {
+            System.out.println("♟️ Nessuna tablebase Syzygy in " + settings.getPath() + ": i finali li calcola Stockfish");
+            return;
+        }
+        System.out.println("♟️ Tablebase Syzygy: " + wdlFiles + " WDL e " + dtzFiles + " DTZ, fino a " + maxPieces + " pezzi");
+    }
+
+    private void register(Path file) {
+        String fileName = file.getFileName().toString();
+        boolean wdl = fileName.endsWith(".rtbw");
+        if (!wdl && !fileName.endsWith(".rtbz")) return;
+        String name = fileName.substring(0, fileName.length() - 5);
+        if (!TABLE_NAME.matcher(name).matches() || name.length() - 1 > 7) return;
+
+        Map<String, SyzygyTable> tables = wdl ? wdlTables : dtzTables;
+        if (tables.containsKey(name)) return; // la prima directory dell'elenco ha la precedenza
+        SyzygyTable table = new SyzygyTable(name, file, !wdl, blockCache);
+        String[] sides = name.split("v");
+        tables.put(name, table);
+        tables.put(sides[1] + "v" + sides[0], table);
+        if (wdl) {
+            wdlFiles++;
+            maxPieces = Math.max(maxPieces, table.pieceCount);
+        }
+    }
+
+    public boolean isAvailable() {
+        return !wdlTables.isEmpty();
+    }
+
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Sonda la posizione: null se la tablebase non la copre (troppi pezzi, arrocchi possibili, file mancanti),
+     * se la FEN non può nascere da una partita o se la partita è già finita. Senza i DTZ restituisce solo
+     * il risultato, senza mossa.
+     */
+    public Result probe(String fen) {
+        if (!isAvailable()) return null;
+        Position pos = Position.playable(fen);
+        if (pos == null || pos.castlingRights() != 0 || Long.bitCount(pos.occupied()) > maxPieces) return null;
+        MoveList moves = new MoveList();
+        if (MoveGenerator.generate(pos, moves) == 0) return null;
+
+        long startedAt = System.nanoTime();
+        try {
+            State state = new State();
+            int wdl = probeWdl(pos, state);
+            if (state.value == FAIL) {
+                failures.increment();
+                return null;
+            }
+            probes.increment();
+
+            int[] ranked = rootProbe(pos, moves);
+            if (ranked == null) {
+                return new Result(wdl, null, null, wdlScore(wdl));
+            }
+            int best = ranked[0];
+            return new Result(wdl, ranked[2], Position.uci(moves.get(best)), rankScore(ranked[1], ranked[2]));
+        } catch (RuntimeException e) {
+            // Un file troncato o inatteso non deve far fallire la richiesta: la posizione passa al motore
+            System.out.println("❌ Errore nella lettura delle tablebase: " + e.getMessage());
+            failures.increment();
+            return null;
+        } finally {
+            probeNanos.add(System.nanoTime() - startedAt);
+        }
+    }
+
+    /**
+     * WDL dal punto di vista del lato che muove (-2..2). state.value vale FAIL se manca una tabella.
+     */
+    int probeWdl(Position pos, State state) {
+        state.value = OK;
+        return search(pos, state, false);
+    }
+
+    /**
+     * DTZ dal punto di vista del lato che muove: positivo se vince, oltre 100 se la vittoria è annullata
+     * dalla regola delle 50 mosse, -1 se è sotto scacco matto, 0 se patta (o se manca una tabella).
+     */
+    int probeDtz(Position pos, State state) {
+        state.value = OK;
+        int wdl = search(pos, state, true);
+        if (state.value == FAIL || wdl == 0) return 0;
+
+        // Con una mossa azzerante migliore il DTZ memorizzato non è affidabile
+        if (state.value == ZEROING_BEST_MOVE) return dtzBeforeZeroing(wdl);
+
+        int dtz = probeTable(pos, true, wdl, state);
+        if (state.value == FAIL) return 0;
+        if (state.value != CHANGE_STM) {
+            return (dtz + (wdl == -1 || wdl == 1 ? 100 : 0)) * Integer.signum(wdl);
+        }
+
+        // DTZ memorizzato per l'altro lato: ricerca di una semimossa tenendo la mossa vincente più rapida
+        int minDtz = 0xFFFF;
+        MoveList moves = new MoveList();
+        int count = MoveGenerator.generate(pos, moves);
+        for (int i = 0; i < count; i++) {
+            int move = moves.get(i);
+            boolean zeroing = isZeroing(pos, move);
+            pos.makeMove(move);
+            dtz = zeroing ? -dtzBeforeZeroing(search(pos, state, false)) : -probeDtz(pos, state);
+            if (dtz == 1 && isCheckmate(pos)) minDtz = 1;
+            pos.unmakeMove(move);
+
+            if (!zeroing) dtz += Integer.signum(dtz);
+            if (dtz < minDtz && Integer.signum(dtz) == Integer.signum(wdl)) minDtz = dtz;
+
+            if (state.value == FAIL) return 0;
+        }
+        return minDtz == 0xFFFF ? -1 : minDtz;
+    }
+
+    // Porta di search<CheckZeroingMoves>: le tabelle non memorizzano le posizioni con catture (o spinte) vincenti
+    private int search(Position pos, State state, boolean checkZeroingMoves) {
+        int bestValue = -2;
+        MoveList moves = new MoveList();
+        int count = MoveGenerator.generate(pos, moves);
+        int moveCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            int move = moves.get(i);
+            boolean pawnMove = Position.typeOf(pos.pieceAt(Position.from(move))) == Position.PAWN;
+            if (!isCapture(pos, move) && (!checkZeroingMoves || !pawnMove)) continue;
+            moveCount++;
+
+            pos.makeMove(move);
+            int value = -search(pos, state, false);
+            pos.unmakeMove(move);
+            if (state.value == FAIL) return 0;
+            if (value > bestValue) {
+                bestValue = value;
+                if (value >= 2) {
+                    state.value = ZEROING_BEST_MOVE;
+                    return value;
+                }
+            }
+        }
+
+        // Se le catture erano tutte le mosse legali il valore memorizzato potrebbe essere sbagliato: non serve leggerlo
+        boolean noMoreMoves = moveCount > 0 && moveCount == count;
+        int value;
+        if (noMoreMoves) {
+            value = bestValue;
+        } else {
+            value = probeTable(pos, false, 0, state);
+            if (state.value == FAIL) return 0;
+        }
+
+        if (bestValue >= value) {
+            state.value = bestValue > 0 || noMoreMoves ? ZEROING_BEST_MOVE : OK;
+            return bestValue;
+        }
+        state.value = OK;
+        return value;
+    }
+
+    private int probeTable(Position pos, boolean dtz, int wdl, State state) {
+        if (Long.bitCount(pos.occupied()) == 2) return 0; // KvK
+
+        String key = SyzygyTable.material(pos, Position.WHITE) + "v" + SyzygyTable.material(pos, Position.BLACK);
+        SyzygyTable table = (dtz ? dtzTables : wdlTables).get(key);
+        if (table == null || !table.ensureMapped()) {
+            state.value = FAIL;
+            return 0;
+        }
+        int value = table.probe(pos, wdl);
+        if (value == SyzygyTable.CHANGE_STM) {
+            state.value = CHANGE_STM;
+            return 0;
+        }
+        return value;
+    }
+
+    /**
+     * Ordina le mosse alla radice come root_probe() con la regola delle 50 mosse: vittorie certe per DTZ crescente,
+     * poi vittorie annullate dalle 50 mosse, patte, sconfitte il più lunghe possibile.
+     * Restituisce {indice della mossa migliore, rank, dtz} o null se mancano i DTZ.
+     * La storia della partita non è nota, quindi le ripetizioni non sono considerate.
+     */
+    private int[] rootProbe(Position pos, MoveList moves) {
+        State state = new State();
+        int cnt50 = pos.halfmoveClock();
+        int[] best = null;
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            pos.makeMove(move);
+            int dtz;
+            if (pos.halfmoveClock() == 0) {
+                dtz = dtzBeforeZeroing(-probeWdl(pos, state));
+            } else if (isFiftyMoveDraw(pos)) {
+                dtz = 0;
+            } else {
+                dtz = -probeDtz(pos, state);
+                dtz = dtz > 0 ? dtz + 1 : dtz < 0 ? dtz - 1 : 0;
+            }
+            if (dtz == 2 && isCheckmate(pos)) dtz = 1;
+            pos.unmakeMove(move);
+            if (state.value == FAIL) return null;
+
+            int rank = dtz > 0 ? (dtz + cnt50 <= 99 ? MAX_DTZ - dtz : MAX_DTZ / 2 - (dtz + cnt50))
+                    : dtz < 0 ? (-dtz * 2 + cnt50 < 100 ? -MAX_DTZ - dtz : -MAX_DTZ / 2 + (-dtz + cnt50))
+                    : 0;
+            if (best == null || rank > best[1]) {
+                best = new int[]{i, rank, dtz};
+            }
+        }
+        return best;
+    }
+
+    // Cattura, anche en passant: l'unico pedone che può arrivare sulla casa en passant è quello che prende
+    private static boolean isCapture(Position pos, int move) {
+        return pos.pieceAt(Position.to(move)) != 0
+                || (Position.typeOf(pos.pieceAt(Position.from(move))) == Position.PAWN && Position.to(move) == pos.epSquare());
+    }
+
+    private static boolean isZeroing(Position pos, int move) {
+        return isCapture(pos, move) || Position.typeOf(pos.pieceAt(Position.from(move))) == Position.PAWN;
+    }
+
+    private static boolean isCheckmate(Position pos) {
+        return pos.inCheck() && MoveGenerator.generate(pos, new MoveList()) == 0;
+    }
+
+    private static boolean isFiftyMoveDraw(Position pos) {
+        return pos.halfmoveClock() > 99 && (!pos.inCheck() || MoveGenerator.generate(pos, new MoveList()) != 0);
+    }
+
+    // Vittorie certe vicino a TB_WIN_CP; vittorie annullate dalle 50 mosse tra 1 e 50 cp, come fa Stockfish
+    private static int rankScore(int rank, int dtz) {
+        int bound = MAX_DTZ / 2 - 100;
+        if (rank >= bound) return TB_WIN_CP - Math.abs(dtz);
+        if (rank > 0) return Math.max(1, (rank - (MAX_DTZ / 2 - 200)) / 2);
+        if (rank == 0) return 0;
+        if (rank > -bound) return Math.min(-1, (rank + (MAX_DTZ / 2 - 200)) / 2);
+        return -TB_WIN_CP + Math.abs(dtz);
+    }
+
+    // Solo WDL: distanza ignota, si usa il punteggio più basso delle vittorie certe
+    private static int wdlScore(int wdl) {
+        switch (wdl) {
+            case 2: return TB_WIN_CP - 100;
+            case 1: return 2;
+            case -1: return -2;
+            case -2: return -TB_WIN_CP + 100;
+            default: return 0;
+        }
+    }
+
+    // DTZ della mossa che precede una cattura o una spinta di pedone, noto il WDL dopo la mossa
+    private static int dtzBeforeZeroing(int wdl) {
+        switch (wdl) {
+            case 2: return 1;
+            case 1: return 101;
+            case -1: return -101;
+            case -2: return -1;
+            default: return 0;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", properties.getSyzygy().isEnabled());
+        stats.put("path", properties.getSyzygy().getPath());
+        stats.put("wdlFiles", wdlFiles);
+        stats.put("dtzFiles", dtzFiles);
+        stats.put("maxPieces", maxPieces);
+        long count = probes.sum();
+        stats.put("probes", count);
+        stats.put("failures", failures.sum());
+        stats.put("avgProbeMicros", count > 0 ? Math.round(probeNanos.sum() / 10.0 / count) / 100.0 : 0);
+        stats.put("blockCacheSize", blockCache.size());
+        stats.put("blockCacheMax", blockCache.getMaxBlocks());
+        stats.put("blockCacheHits", blockCache.getHits());
+        stats.put("blockCacheMisses", blockCache.getMisses());
+        return stats;
+    }
+}
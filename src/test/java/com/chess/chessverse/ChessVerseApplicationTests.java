@@ -3,7 +3,7 @@ package com.chess.chessverse;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "stockfish.store.path=target/evalstore-test.bin")
 class ChessVerseApplicationTests {
 
 	@Test
@@ -0,0 +1,93 @@
+package com.chess.chessverse.service;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.engine.EnginePool;
+import com.chess.chessverse.service.engine.EvalCache;
+import com.chess.chessverse.service.engine.InProcessEngines;
+import com.chess.chessverse.service.engine.SearchInfo;
+import com.chess.chessverse.service.engine.SearchResult;
+import com.chess.chessverse.service.engine.UciInfoParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchEvaluationServiceTests {
+
+	private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	private final BatchEvaluationService service = new BatchEvaluationService();
+
+	@AfterEach
+	void stopWorkers() {
+		service.shutdown();
+	}
+
+	@Test
+	void lastWorkerFailsPositionRequeuedAfterLeaseTimeout() throws Exception {
+		EnginePool pool = mock(EnginePool.class);
+		EvalCache cache = mock(EvalCache.class);
+		InProcessEngines inProcess = mock(InProcessEngines.class);
+		EngineProperties properties = new EngineProperties();
+		properties.getPool().setMaxSize(2);
+		properties.getInProcess().setBatch(true);
+		ReflectionTestUtils.setField(service, "enginePool", pool);
+		ReflectionTestUtils.setField(service, "evalCache", cache);
+		ReflectionTestUtils.setField(service, "inProcessEngines", inProcess);
+		ReflectionTestUtils.setField(service, "properties", properties);
+		when(pool.isAvailable()).thenReturn(true);
+		when(inProcess.isAvailable()).thenReturn(true);
+
+		// Worker A: Stockfish nel processo risponde, poi A trova la coda vuota ed esce.
+		// Worker B: il processo è occupato e il lease scade; B rimette la posizione in coda ed esce per primo
+		AtomicReference<Thread> workerA = new AtomicReference<>();
+		CountDownLatch secondSearch = new CountDownLatch(1);
+		CountDownLatch aLeftLoop = new CountDownLatch(1);
+		CountDownLatch bExited = new CountDownLatch(1);
+		AtomicInteger searches = new AtomicInteger();
+		SearchInfo info = new SearchInfo();
+		new UciInfoParser().parse("info depth 12 score cp 20 pv e2e4", info);
+		when(inProcess.search(anyString(), anyString(), anyInt())).thenAnswer(call -> {
+			if (searches.incrementAndGet() == 1) {
+				workerA.set(Thread.currentThread());
+				secondSearch.await(5, TimeUnit.SECONDS);
+				return new SearchResult("e2e4", null, info);
+			}
+			secondSearch.countDown();
+			return null;
+		});
+		when(pool.lease(any(), anyLong())).thenAnswer(call -> {
+			aLeftLoop.await(5, TimeUnit.SECONDS);
+			return null;
+		});
+		doAnswer(call -> {
+			if (Thread.currentThread() == workerA.get()) {
+				aLeftLoop.countDown();
+				bExited.await(5, TimeUnit.SECONDS);
+			} else {
+				bExited.countDown();
+			}
+			return null;
+		}).when(pool).release(isNull());
+
+		List<BatchEvaluationService.Result> results = new CopyOnWriteArrayList<>();
+		BatchEvaluationService.BatchRun run = service.submit(List.of(
+				new BatchEvaluationService.Job(0, "a", START, 12, 0, 0),
+				new BatchEvaluationService.Job(1, "b", START, 12, 0, 0)), results::add);
+
+		run.done().get(10, TimeUnit.SECONDS);
+		assertEquals(2, results.size());
+		assertEquals(1, results.stream().filter(r -> r.entry() != null).count());
+		assertEquals(1, results.stream().filter(r -> "Nessun motore Stockfish libero".equals(r.error())).count());
+	}
+}
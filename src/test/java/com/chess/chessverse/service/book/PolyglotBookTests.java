@@ -0,0 +1,68 @@
+package com.chess.chessverse.service.book;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PolyglotBookTests {
+
+	private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	@Test
+	void keysMatchPolyglotReferencePositions() {
+		// Posizioni e chiavi della specifica del formato Polyglot
+		assertEquals(0x463b96181691fc9cL, PolyglotKey.of(START));
+		assertEquals(0x823c9b50fd114196L, PolyglotKey.of("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1"));
+		assertEquals(0x0756b94461c50fb0L, PolyglotKey.of("rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2"));
+		assertEquals(0x662fafb965db29d4L, PolyglotKey.of("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2"));
+		assertEquals(0x22a48b5a8e47ff78L, PolyglotKey.of("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"));
+		assertEquals(0x652a607ca3f242c1L, PolyglotKey.of("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3"));
+		assertEquals(0x00fdd303c946bdd9L, PolyglotKey.of("rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4"));
+		assertEquals(0x3c8123ea7b067637L, PolyglotKey.of("rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3"));
+		assertEquals(0x5c3f9b829b279560L, PolyglotKey.of("rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4"));
+	}
+
+	@Test
+	void lookupFindsAllEntriesForKey(@TempDir Path dir) throws IOException {
+		long start = PolyglotKey.of(START);
+		Path file = dir.resolve("book.bin");
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+			// Chiavi ordinate senza segno: quella della posizione iniziale sta tra una chiave piccola e una "negativa"
+			writeEntry(out, 0x0000000000000001L, move("a2", "a3", 0), 5);
+			writeEntry(out, start, move("e2", "e4", 0), 100);
+			writeEntry(out, start, move("d2", "d4", 0), 80);
+			writeEntry(out, start, move("g1", "f3", 0), 0);
+			writeEntry(out, 0xF000000000000000L, move("e1", "h1", 0), 1);
+			writeEntry(out, 0xF000000000000001L, move("b7", "b8", 1), 1);
+		}
+
+		try (PolyglotBook book = PolyglotBook.open(file)) {
+			assertEquals(6, book.size());
+			assertEquals(List.of(new PolyglotBook.Entry("e2e4", 100), new PolyglotBook.Entry("d2d4", 80),
+					new PolyglotBook.Entry("g1f3", 0)), book.lookup(start));
+			assertEquals(List.of(new PolyglotBook.Entry("e1h1", 1)), book.lookup(0xF000000000000000L));
+			assertEquals(List.of(new PolyglotBook.Entry("b7b8n", 1)), book.lookup(0xF000000000000001L));
+			assertTrue(book.lookup(0x0000000000000002L).isEmpty());
+			assertTrue(book.lookup(0xFFFFFFFFFFFFFFFFL).isEmpty());
+		}
+	}
+
+	private static int move(String from, String to, int promotion) {
+		return (to.charAt(0) - 'a') | (to.charAt(1) - '1') << 3 | (from.charAt(0) - 'a') << 6
+				| (from.charAt(1) - '1') << 9 | promotion << 12;
+	}
+
+	private static void writeEntry(DataOutputStream out, long key, int move, int weight) throws IOException {
+		out.writeLong(key);
+		out.writeShort(move);
+		out.writeShort(weight);
+		out.writeInt(0);
+	}
+}
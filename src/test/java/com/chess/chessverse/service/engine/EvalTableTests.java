@@ -0,0 +1,69 @@
+package com.chess.chessverse.service.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvalTableTests {
+
+	private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	@Test
+	void entriesSurviveReopen(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("evalstore.bin");
+		long start = PositionKey.of(START);
+		long mated = PositionKey.of("6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1");
+		try (EvalTable table = EvalTable.open(file, 1024)) {
+			assertTrue(table.put(start, new EvalEntry(22, 31, null, "e2e4", List.of("e2e4", "e7e5"))));
+			assertTrue(table.put(mated, new EvalEntry(40, null, 1, "d1d8", List.of("d1d8"))));
+			assertEquals(1, table.getGeneration());
+		}
+		try (EvalTable table = EvalTable.open(file, 1024)) {
+			assertEquals(2, table.getGeneration());
+			assertEquals(new EvalEntry(22, 31, null, "e2e4", List.of("e2e4")), table.get(start));
+			assertEquals(new EvalEntry(40, null, 1, "d1d8", List.of("d1d8")), table.get(mated));
+			assertNull(table.get(start ^ 1));
+			assertEquals(2, table.count());
+		}
+		// Con un altro numero di slot il file viene ricreato vuoto
+		try (EvalTable table = EvalTable.open(file, 2048)) {
+			assertNull(table.get(start));
+			assertEquals(0, table.count());
+		}
+	}
+
+	@Test
+	void shallowerResultDoesNotReplaceCurrentEntry(@TempDir Path dir) throws IOException {
+		try (EvalTable table = EvalTable.open(dir.resolve("evalstore.bin"), 64)) {
+			long key = PositionKey.of(START);
+			table.put(key, new EvalEntry(20, 25, null, "e2e4", List.of()));
+			assertFalse(table.put(key, new EvalEntry(12, -40, null, "a2a3", List.of())));
+			assertEquals(20, table.get(key).depth());
+
+			// Promozioni e punteggi negativi passano dalla codifica a 64 bit senza perdite
+			assertTrue(table.put(key, new EvalEntry(24, -812, null, "a7a8n", List.of())));
+			assertEquals(new EvalEntry(24, -812, null, "a7a8n", List.of("a7a8n")), table.get(key));
+		}
+	}
+
+	@Test
+	void compactionRemovesEntriesOlderThanMaxAge(@TempDir Path dir) throws IOException {
+		try (EvalTable table = EvalTable.open(dir.resolve("evalstore.bin"), 64)) {
+			long old = PositionKey.of(START);
+			table.put(old, new EvalEntry(18, 20, null, "d2d4", List.of()));
+			table.nextGeneration();
+			table.nextGeneration();
+			long recent = PositionKey.of("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1");
+			table.put(recent, new EvalEntry(18, -30, null, "c7c5", List.of()));
+
+			assertEquals(1, table.compact(1));
+			assertNull(table.get(old));
+			assertNotNull(table.get(recent));
+		}
+	}
+}
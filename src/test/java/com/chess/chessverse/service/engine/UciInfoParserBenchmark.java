@@ -0,0 +1,101 @@
+package com.chess.chessverse.service.engine;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo per riga dell'analisi delle righe "info": {@link UciInfoParser} contro il ciclo di lettura che c'era prima
+ * in getEvaluation (log di debug, split e String.format su ogni riga con il punteggio).
+ * Non è un test JUnit; si avvia dall'IDE (metodo main) oppure con
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.chess.chessverse.service.engine.UciInfoParserBenchmark
+ * </pre>
+ * Con "-prof gc" (opzione di JMH) si vede anche l'allocazione per riga.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UciInfoParserBenchmark {
+
+	// Righe tipiche di Stockfish 17 durante una ricerca, dalla più corta alla più lunga
+	private static final String[] LINES = {
+			"info depth 1 seldepth 2 multipv 1 score cp 18 nodes 20 nps 20000 hashfull 0 tbhits 0 time 1 pv e2e4",
+			"info depth 12 seldepth 17 multipv 1 score cp 31 wdl 68 919 13 nodes 76543 nps 1530860 hashfull 27 tbhits 0 time 50 pv e2e4 e7e5 g1f3 b8c6 f1b5 a7a6 b5a4 g8f6",
+			"info depth 24 seldepth 33 multipv 2 score cp -12 upperbound wdl 21 950 29 nodes 12345678 nps 1834210 hashfull 512 tbhits 0 time 6731 pv d2d4 d7d5 c2c4 e7e6 b1c3 g8f6 c4d5 e6d5 c1g5 f8e7 e2e3 e8g8 f1d3 b8d7 g1e2 f8e8 e1g1 d7f8",
+			"info depth 31 seldepth 40 multipv 1 score mate -7 nodes 98765432 nps 2101234 hashfull 999 tbhits 3 time 47000 pv h7h8q g8h8 f1f8 h8h7 f8f7 h7h6 f7f6 h6h5 f6f5 h5h4 f5f4 h4h3 f4f3",
+	};
+
+	private final UciInfoParser parser = new UciInfoParser();
+	private final SearchInfo info = new SearchInfo();
+	private LegacyReader legacy = new LegacyReader();
+	private int index;
+
+	@Benchmark
+	public void reusableParser(Blackhole bh) {
+		String line = LINES[index++ & 3];
+		bh.consume(parser.parse(line, info));
+		bh.consume(info.getScore());
+		bh.consume(info.getPvMove(0));
+	}
+
+	@Benchmark
+	public void legacyReader(Blackhole bh) {
+		// Ogni ricerca aveva il suo log: uno nuovo ogni LINES.length righe
+		if ((index & 3) == 0) legacy = new LegacyReader();
+		String line = LINES[index++ & 3];
+		legacy.accept(line);
+		bh.consume(legacy.lastScore);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(UciInfoParserBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+	/**
+	 * Il ciclo di lettura di StockfishSimpleService.getEvaluation prima di {@link UciInfoParser}, passo per passo:
+	 * ogni riga finiva nel log di debug, e quelle con "score " passavano da substring, split e String.format
+	 */
+	static final class LegacyReader {
+		final StringBuilder debugLog = new StringBuilder();
+		String lastScore;
+
+		void accept(String l) {
+			debugLog.append(l).append("\n");
+			if (l.contains("score ")) {
+				int idx = l.indexOf("score ");
+				String sub = l.substring(idx + 6);
+				if (sub.startsWith("cp ")) {
+					String[] parts = sub.split(" ");
+					if (parts.length >= 2) {
+						try {
+							int cp = Integer.parseInt(parts[1]);
+							double pawns = cp / 100.0;
+							lastScore = String.format("%+.2f", pawns);
+						} catch (Exception ignore) {}
+					}
+				} else if (sub.startsWith("mate ")) {
+					String[] parts = sub.split(" ");
+					if (parts.length >= 2) {
+						try {
+							int mate = Integer.parseInt(parts[1]);
+							lastScore = (mate > 0 ? "#" : "#-") + Math.abs(mate);
+						} catch (Exception ignore) {}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.chess.chessverse.service.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UciInfoParserTests {
+
+	private final UciInfoParser parser = new UciInfoParser();
+	private final SearchInfo info = new SearchInfo();
+
+	@Test
+	void parsesFullInfoLine() {
+		String line = "info depth 24 seldepth 33 multipv 2 score cp -12 upperbound wdl 21 950 29 nodes 12345678"
+				+ " nps 1834210 hashfull 512 tbhits 0 time 6731 pv d2d4 d7d5 e7e8q";
+
+		assertTrue(parser.parse(line, info));
+		assertEquals(24, info.getDepth());
+		assertEquals(33, info.getSelDepth());
+		assertEquals(2, info.getMultiPv());
+		assertFalse(info.isMate());
+		assertEquals(-12, info.getScore());
+		assertEquals(SearchInfo.BOUND_UPPER, info.getBound());
+		assertTrue(info.hasWdl());
+		assertEquals(21, info.getWdlWin());
+		assertEquals(950, info.getWdlDraw());
+		assertEquals(29, info.getWdlLoss());
+		assertEquals(12345678L, info.getNodes());
+		assertEquals(1834210L, info.getNps());
+		assertEquals(512, info.getHashfull());
+		assertEquals(6731L, info.getTimeMs());
+		assertEquals(List.of("d2d4", "d7d5", "e7e8q"), info.getPv());
+		assertEquals("-0.12", info.formatScore());
+	}
+
+	@Test
+	void reusedInstanceIsResetBetweenLines() {
+		assertTrue(parser.parse("info depth 20 multipv 3 score mate -4 wdl 0 0 1000 nodes 99 pv h7h8q", info));
+		assertEquals("#-4", info.formatScore());
+
+		assertTrue(parser.parse("info depth 5 score cp 7 lowerbound nodes 10", info));
+		assertEquals(1, info.getMultiPv());
+		assertEquals(SearchInfo.BOUND_LOWER, info.getBound());
+		assertFalse(info.hasWdl());
+		assertEquals(0, info.getPvLength());
+		assertNull(info.getBestMove());
+		assertEquals("+0.07", info.formatScore());
+	}
+
+	@Test
+	void ignoresLinesWithoutScore() {
+		assertFalse(parser.parse("info depth 12 currmove e2e4 currmovenumber 1", info));
+		assertFalse(parser.parse("info string NNUE evaluation using nn-1111cefa1111.nnue enabled", info));
+		assertFalse(parser.parse("info string score cp 100", info));
+		assertFalse(parser.parse("bestmove e2e4", info));
+	}
+}
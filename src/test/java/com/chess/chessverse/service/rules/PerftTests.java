@@ -0,0 +1,45 @@
+package com.chess.chessverse.service.rules;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerftTests {
+
+	// Abbastanza per passare da arrocchi, en passant e promozioni in ogni posizione, restando sotto il secondo
+	private static final long NODE_BUDGET = 1_000_000;
+
+	@Test
+	void suiteMatchesKnownCounts() {
+		for (Perft.Case c : Perft.SUITE) {
+			Position pos = Position.fromFen(c.fen());
+			int depth = 1;
+			while (depth < c.maxDepth() && c.expected(depth + 1) <= NODE_BUDGET) depth++;
+			assertEquals(c.expected(depth), Perft.count(pos, depth), c.name() + " a profondità " + depth);
+			// Il perft rigioca tutto con make/unmake: la posizione torna quella di partenza
+			assertEquals(c.fen(), pos.toFen(), c.name());
+		}
+	}
+
+	@Test
+	void parallelAndDivideAgreeWithSingleThread() {
+		Perft.Case kiwipete = Perft.SUITE.get(1);
+		Position pos = Position.fromFen(kiwipete.fen());
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			assertEquals(kiwipete.expected(3), Perft.countParallel(pos, 3, pool));
+		} finally {
+			pool.shutdown();
+		}
+
+		Map<String, Long> divide = Perft.divide(pos, 3);
+		assertEquals(48, divide.size());
+		assertEquals(kiwipete.expected(3), divide.values().stream().mapToLong(Long::longValue).sum());
+		// Chiavi in UCI come le righe di "go perft": arrocchi con la casa del re
+		assertTrue(divide.containsKey("e1g1"));
+		assertTrue(divide.containsKey("e1c1"));
+	}
+}
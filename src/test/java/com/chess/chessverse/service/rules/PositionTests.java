@@ -0,0 +1,192 @@
+package com.chess.chessverse.service.rules;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionTests {
+
+	@Test
+	void fenRoundTripIsExact() {
+		String[] fens = {
+				Position.START_FEN,
+				"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+				"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+				"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 b - - 17 42",
+				"4k3/8/8/8/8/8/8/4K2R w K - 99 120"
+		};
+		for (String fen : fens) {
+			assertEquals(fen, Position.fromFen(fen).toFen());
+		}
+		assertThrows(IllegalArgumentException.class, () -> Position.fromFen("8/8/8/8/8/8/8 w - - 0 1"));
+		assertThrows(IllegalArgumentException.class, () -> Position.fromFen("9/8/8/8/8/8/8/8 w - - 0 1"));
+	}
+
+	@Test
+	void magicSliderAttacksStopAtBlockers() {
+		// Torre in d4, pezzi in d6, b4 e d2: le case oltre i pezzi non sono attaccate
+		int d4 = Position.square("d4");
+		long occupied = Bitboards.bit(Position.square("d6")) | Bitboards.bit(Position.square("b4")) | Bitboards.bit(Position.square("d2"));
+		long rook = Bitboards.rookAttacks(d4, occupied);
+		assertEquals(2 + 2 + 2 + 4, Long.bitCount(rook));
+		assertNotEquals(0, rook & Bitboards.bit(Position.square("d6")));
+		assertEquals(0, rook & Bitboards.bit(Position.square("d7")));
+		assertEquals(0, rook & Bitboards.bit(Position.square("a4")));
+
+		long bishop = Bitboards.bishopAttacks(Position.square("a1"), Bitboards.bit(Position.square("e5")));
+		assertEquals(4, Long.bitCount(bishop));
+		assertEquals(Bitboards.bit(Position.square("b2")) | Bitboards.bit(Position.square("c3")),
+				Bitboards.between(Position.square("a1"), Position.square("d4")));
+	}
+
+	@Test
+	void legalityHandlesCastlingEnPassantAndPins() {
+		Position castle = Position.fromFen("r3k2r/8/8/8/8/8/5r2/R3K2R w KQkq - 0 1");
+		// La torre in f2 attacca f1: l'arrocco corto attraverserebbe una casa sotto scacco
+		assertFalse(castle.isLegal(castle.move("e1", "g1", null)));
+		assertTrue(castle.isLegal(castle.move("e1", "c1", null)));
+
+		Position enPassant = Position.fromFen("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3");
+		int capture = enPassant.move("e5", "f6", null);
+		assertTrue(enPassant.isLegal(capture));
+		assertFalse(enPassant.isLegal(enPassant.move("e5", "d6", null)));
+		enPassant.makeMove(capture);
+		assertEquals("rnbqkbnr/ppp1p1pp/5P2/3p4/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 3", enPassant.toFen());
+
+		// Torre bianca inchiodata dalla torre nera sulla colonna e
+		Position pin = Position.fromFen("4r2k/8/8/8/8/8/4R3/4K3 w - - 0 1");
+		assertEquals(Bitboards.bit(Position.square("e2")), pin.pinned());
+		assertFalse(pin.isLegal(pin.move("e2", "d2", null)));
+		assertTrue(pin.isLegal(pin.move("e2", "e8", null)));
+	}
+
+	@Test
+	void makeMoveUpdatesRightsAndClocks() {
+		Position pos = Position.fromFen(Position.START_FEN);
+		pos.makeMove(pos.move("e2", "e4", null));
+		assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", pos.toFen());
+		pos.makeMove(pos.move("g8", "f6", null));
+		assertEquals("rnbqkb1r/pppppppp/5n2/8/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 1 2", pos.toFen());
+
+		Position castle = Position.fromFen("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 3 10");
+		castle.makeMove(castle.move("e8", "c8", null));
+		assertEquals("2kr3r/8/8/8/8/8/8/R3K2R w KQ - 4 11", castle.toFen());
+
+		Position promotion = Position.fromFen("7k/1P6/8/8/8/8/8/K7 w - - 5 40");
+		promotion.makeMove(promotion.move("b7", "b8", "n"));
+		assertEquals("1N5k/8/8/8/8/8/8/K7 b - - 0 40", promotion.toFen());
+	}
+
+	@Test
+	void generatorFindsAllLegalMovesAndGameEnds() {
+		MoveList moves = new MoveList();
+		assertEquals(20, MoveGenerator.generate(Position.fromFen(Position.START_FEN), moves));
+		assertEquals(48, MoveGenerator.generate(Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"), moves));
+
+		// Scacco doppio: solo il re può muovere
+		Position doubleCheck = Position.fromFen("4k3/8/8/8/8/5n2/8/r3K3 w - - 0 1");
+		assertEquals(2, Long.bitCount(doubleCheck.checkers()));
+		MoveGenerator.generate(doubleCheck, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			assertEquals(Position.square("e1"), Position.from(moves.get(i)));
+		}
+
+		// Matto del barbiere e stallo classico
+		Position mate = Position.fromFen("r1bqkb1r/pppp1Qpp/2n2n2/4p3/2B1P3/8/PPPP1PPP/RNB1K1NR b KQkq - 0 4");
+		assertTrue(mate.inCheck());
+		assertFalse(MoveGenerator.hasLegalMove(mate, moves));
+		Position stalemate = Position.fromFen("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1");
+		assertFalse(stalemate.inCheck());
+		assertFalse(MoveGenerator.hasLegalMove(stalemate, moves));
+
+		// En passant che scoprirebbe il re sulla traversa
+		Position pinnedEp = Position.fromFen("8/8/8/K2pP2r/8/8/8/7k w - d6 0 1");
+		MoveGenerator.generate(pinnedEp, moves);
+		assertFalse(moves.contains(pinnedEp.move("e5", "d6", null)));
+	}
+
+	@Test
+	void unmakeRestoresEveryMoveOfKiwipete() {
+		// Arrocchi, catture, promozioni ed en passant a due semimosse di profondità: ogni annullamento riporta la FEN iniziale
+		String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+		Position pos = Position.fromFen(fen);
+		MoveList first = new MoveList();
+		MoveList second = new MoveList();
+		MoveGenerator.generate(pos, first);
+		for (int i = 0; i < first.size(); i++) {
+			pos.makeMove(first.get(i));
+			String after = pos.toFen();
+			MoveGenerator.generate(pos, second);
+			for (int j = 0; j < second.size(); j++) {
+				pos.makeMove(second.get(j));
+				pos.unmakeMove(second.get(j));
+				assertEquals(after, pos.toFen());
+			}
+			pos.unmakeMove(first.get(i));
+			assertEquals(fen, pos.toFen());
+		}
+		assertEquals(0, pos.ply());
+	}
+
+	@Test
+	void zobristKeyIsIncrementalAndDetectsDraws() {
+		// Chiavi di riferimento Polyglot: posizione iniziale e dopo 1.e4 (e3 non catturabile, non conta)
+		Position pos = Position.fromFen(Position.START_FEN);
+		assertEquals(0x463b96181691fc9cL, pos.key());
+		pos.makeMove(pos.move("e2", "e4", null));
+		assertEquals(0x823c9b50fd114196L, pos.key());
+		pos.unmakeMove(pos.move("e2", "e4", null));
+		assertEquals(0x463b96181691fc9cL, pos.key());
+
+		// Dopo make/unmake la chiave incrementale è quella ricalcolata dalla FEN
+		String kiwipete = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+		Position kiwi = Position.fromFen(kiwipete);
+		MoveList moves = new MoveList();
+		MoveGenerator.generate(kiwi, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			kiwi.makeMove(moves.get(i));
+			assertEquals(Position.fromFen(kiwi.toFen()).key(), kiwi.key());
+			kiwi.unmakeMove(moves.get(i));
+		}
+
+		// I cavalli vanno e tornano due volte: la posizione iniziale compare per la terza volta
+		GameHistory history = GameHistory.fromFen(Position.START_FEN);
+		for (int round = 0; round < 2; round++) {
+			for (String uci : new String[]{"g1f3", "g8f6", "f3g1", "f6g8"}) {
+				assertFalse(history.isThreefoldRepetition());
+				history.play(history.position().parseUci(uci));
+			}
+		}
+		assertEquals(3, history.repetitions());
+		assertTrue(history.isThreefoldRepetition());
+		history.play(history.position().parseUci("e2e4"));
+		assertEquals(1, history.repetitions());
+
+		assertTrue(GameHistory.fromFen("4k3/8/8/8/8/8/8/4K2R w - - 100 80").isFiftyMoveRule());
+		assertFalse(GameHistory.fromFen("4k3/8/8/8/8/8/8/4K2R w - - 100 80").isSeventyFiveMoveRule());
+		assertTrue(Position.fromFen("4k3/8/8/8/8/8/8/2B1K3 w - - 0 1").isInsufficientMaterial());
+		// Alfieri su case di colore diverso (c1 e d5) o dello stesso colore (c1 ed e5, scure)
+		assertFalse(Position.fromFen("4k3/8/8/3b4/8/8/8/2B1K3 w - - 0 1").isInsufficientMaterial());
+		assertTrue(Position.fromFen("4k3/8/8/4b3/8/8/8/2B1K3 w - - 0 1").isInsufficientMaterial());
+		assertFalse(Position.fromFen("4k3/8/8/8/8/8/8/1NB1K3 w - - 0 1").isInsufficientMaterial());
+	}
+
+	@Test
+	void playableRejectsPositionsThatCannotArise() {
+		assertNotNull(Position.playable(Position.START_FEN));
+		assertNull(Position.playable("not a fen"));
+		// Nessun re nero, due re bianchi
+		assertNull(Position.playable("8/8/8/8/8/8/8/4K3 w - - 0 1"));
+		assertNull(Position.playable("4k3/8/8/8/8/8/8/3KK3 w - - 0 1"));
+		// Tocca al Bianco ma il re nero è già sotto scacco della torre
+		assertNull(Position.playable("7k/8/8/8/8/8/8/4K2R w - - 0 1"));
+		assertNotNull(Position.playable("7k/8/8/8/8/8/8/4K2R b - - 0 1"));
+
+		// KQkq senza torri in h1/a1, en passant senza il pedone che ha fatto il doppio passo, pedone in ottava
+		assertNull(Position.playable("r3k2r/8/8/8/8/8/8/4K3 w KQkq - 0 1"));
+		assertNotNull(Position.playable("r3k2r/8/8/8/8/8/8/4K3 w kq - 0 1"));
+		assertNull(Position.playable("4k3/8/8/8/8/8/8/4K3 w - e6 0 1"));
+		assertNull(Position.playable("3Pk3/8/8/8/8/8/8/4K3 b - - 0 1"));
+		assertNotNull(Position.playable("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3"));
+	}
+}
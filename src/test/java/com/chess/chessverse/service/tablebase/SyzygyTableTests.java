@@ -0,0 +1,55 @@
+package com.chess.chessverse.service.tablebase;
+
+import com.chess.chessverse.service.rules.Position;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyzygyTableTests {
+
+	@Test
+	void encodingTablesMatchSyzygyLayout() {
+		// Le 462 coppie di re non equivalenti per simmetria, numerate da 0 a 461
+		Set<Integer> kingPairs = new HashSet<>();
+		for (int idx = 0; idx < 10; idx++) {
+			for (int sq = 0; sq < 64; sq++) {
+				kingPairs.add(SyzygyTable.MAP_KK[idx][sq]);
+			}
+		}
+		assertEquals(462, kingPairs.size());
+		assertTrue(kingPairs.stream().allMatch(code -> code >= 0 && code < 462));
+
+		// a2-h7 numerate da 47 a 0: prima le case vicine al bordo e in basso, dove cade il pedone guida
+		Set<Integer> pawnSquares = new HashSet<>();
+		for (int sq = 8; sq < 56; sq++) {
+			pawnSquares.add(SyzygyTable.MAP_PAWNS[sq]);
+		}
+		assertEquals(48, pawnSquares.size());
+		assertEquals(47, SyzygyTable.MAP_PAWNS[8]);
+		assertEquals(46, SyzygyTable.MAP_PAWNS[15]);
+		assertEquals(0, SyzygyTable.MAP_PAWNS[52]);
+		// Un solo pedone guida: sei traverse possibili per colonna
+		assertEquals(6, SyzygyTable.LEAD_PAWNS_SIZE[1][0]);
+		assertEquals(1891, SyzygyTable.BINOMIAL[2][62]);
+	}
+
+	@Test
+	void materialFollowsTableNamesAfterEnPassantAndPromotion() {
+		// Dopo la presa en passant resta solo il pedone bianco, spostato sulla casa di arrivo
+		Position enPassant = Position.fromFen("8/8/8/3Pp3/8/8/k7/4K3 w - e6 0 1");
+		enPassant.makeMove(enPassant.parseUci("d5e6"));
+		assertEquals("KPvK", SyzygyTable.material(enPassant, Position.WHITE) + "v" + SyzygyTable.material(enPassant, Position.BLACK));
+
+		// La sottopromozione cambia tabella: KNvK, non KQvK
+		Position promotion = Position.fromFen("8/4P3/8/8/8/8/k7/4K3 w - - 0 1");
+		promotion.makeMove(promotion.parseUci("e7e8n"));
+		assertEquals("KN", SyzygyTable.material(promotion, Position.WHITE));
+
+		Position rooks = Position.fromFen("4r2k/8/8/8/8/8/4R3/4K3 w - - 0 1");
+		assertEquals("KR", SyzygyTable.material(rooks, Position.WHITE));
+		assertEquals("KR", SyzygyTable.material(rooks, Position.BLACK));
+	}
+}
@@ -0,0 +1,103 @@
+package com.chess.chessverse.service.tablebase;
+
+import com.chess.chessverse.config.EngineProperties;
+import com.chess.chessverse.service.rules.MoveGenerator;
+import com.chess.chessverse.service.rules.MoveList;
+import com.chess.chessverse.service.rules.Position;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sondaggi su file Syzygy a 3 pezzi (src/test/resources/syzygy): KQvK, KRvK e KPvK, nel formato .rtbw/.rtbz
+ * letto da Stockfish, con valori ottenuti per analisi retrograda di tutte le posizioni.
+ */
+class SyzygyTablebaseTests {
+
+	private SyzygyTablebase tablebase;
+
+	@BeforeEach
+	void openFixtures() throws URISyntaxException {
+		EngineProperties properties = new EngineProperties();
+		properties.getSyzygy().setPath(Path.of(getClass().getResource("/syzygy/KQvK.rtbw").toURI()).getParent().toString());
+		tablebase = new SyzygyTablebase();
+		ReflectionTestUtils.setField(tablebase, "properties", properties);
+		tablebase.init();
+		assertEquals(3, tablebase.getMaxPieces());
+	}
+
+	@Test
+	void mateInOneIsFoundFromBothSides() {
+		// Re nero chiuso in a1 dal re in b3: Dg1, Da2 e Db2 danno matto, vale qualunque delle tre
+		SyzygyTablebase.Result queen = tablebase.probe("8/8/8/8/8/1K6/7Q/k7 w - - 0 1");
+		assertEquals(2, queen.wdl());
+		assertEquals(1, queen.dtz());
+		assertTrue(isMate("8/8/8/8/8/1K6/7Q/k7 w - - 0 1", queen.bestMove()), queen.bestMove());
+
+		// Stessa posizione a colori invertiti: la tabella KQvK serve anche al lato nero
+		SyzygyTablebase.Result mirrored = tablebase.probe("K7/7q/1k6/8/8/8/8/8 b - - 0 1");
+		assertEquals(2, mirrored.wdl());
+		assertEquals(1, mirrored.dtz());
+		assertTrue(isMate("K7/7q/1k6/8/8/8/8/8 b - - 0 1", mirrored.bestMove()), mirrored.bestMove());
+
+		// Con la torre il matto è uno solo
+		SyzygyTablebase.Result rook = tablebase.probe("8/8/8/8/8/1K6/7R/k7 w - - 0 1");
+		assertEquals(new SyzygyTablebase.Result(2, 1, "h2h1", rook.scoreCp()), rook);
+	}
+
+	@Test
+	void losingSideCountsPliesToTheZeroingMove() {
+		// Il nero muove, poi il bianco dà matto: due semimosse
+		SyzygyTablebase.Result mated = tablebase.probe("8/8/8/8/8/1K6/7R/k7 b - - 0 1");
+		assertEquals(-2, mated.wdl());
+		assertEquals(-2, mated.dtz());
+
+		// Re nero troppo lontano dal pedone: la prossima mossa del bianco è la spinta che azzera il contatore
+		SyzygyTablebase.Result pawn = tablebase.probe("8/8/8/8/4P3/8/8/k3K3 b - - 0 1");
+		assertEquals(-2, pawn.wdl());
+		assertEquals(-2, pawn.dtz());
+	}
+
+	@Test
+	void captureIsChosenWhenItSavesTheGame() {
+		// Torre indifesa accanto al re nero: ogni altra mossa perde, la cattura porta a KvK
+		SyzygyTablebase.Result result = tablebase.probe("8/8/8/8/8/8/2R5/1k2K3 b - - 0 1");
+		assertEquals(0, result.wdl());
+		assertEquals(0, result.dtz());
+		assertEquals("b1c2", result.bestMove());
+	}
+
+	@Test
+	void enPassantSquareWithoutCaptureDoesNotChangeTheProbe() {
+		// Dopo e2e4 la FEN indica e3 anche senza pedoni neri che possano prendere: le tabelle non hanno la casa en passant
+		SyzygyTablebase.Result withSquare = tablebase.probe("8/8/8/8/4P3/8/8/k3K3 b - e3 0 1");
+		assertEquals(tablebase.probe("8/8/8/8/4P3/8/8/k3K3 b - - 0 1"), withSquare);
+		assertEquals(-2, withSquare.wdl());
+	}
+
+	@Test
+	void gameOverAndMissingTablesAreNotProbed() {
+		// Matto già sulla scacchiera
+		assertNull(tablebase.probe("8/8/8/8/8/1K6/8/k6R b - - 0 1"));
+		// Quattro pezzi: oltre i file disponibili, la posizione resta al motore
+		assertNull(tablebase.probe("8/4K3/8/2Pp4/8/8/8/k7 w - d6 0 1"));
+	}
+
+	private static boolean isMate(String fen, String move) {
+		Position position = Position.fromFen(fen);
+		MoveList moves = new MoveList();
+		MoveGenerator.generate(position, moves);
+		for (int i = 0; i < moves.size(); i++) {
+			if (Position.uci(moves.get(i)).equals(move)) {
+				position.makeMove(moves.get(i));
+				return position.inCheck() && MoveGenerator.generate(position, moves) == 0;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+  ChessVerse - Stockfish in-process
+
+  Implementation of chessverse_engine.h on top of Stockfish::Engine. The engine reports
+  through callbacks: the last full info line of the first PV and the best move are decoded
+  straight into the caller's cv_search_result while the search runs.
+*/
+
+#include "chessverse_engine.h"
+
+#include <cstring>
+#include <mutex>
+#include <sstream>
+#include <string>
+#include <string_view>
+#include <vector>
+
+#include "bitboard.h"
+#include "engine.h"
+#include "misc.h"
+#include "position.h"
+#include "score.h"
+#include "search.h"
+
+using namespace Stockfish;
+
+namespace {
+
+constexpr std::string_view Promotions = " nbrq";
+
+// Same encoding as SearchInfo.encodeMove on the Java side, 0 for "(none)" or malformed moves
+int32_t encode_move(std::string_view uci) {
+    if (uci.size() < 4 || uci[0] < 'a' || uci[0] > 'h' || uci[1] < '1' || uci[1] > '8'
+        || uci[2] < 'a' || uci[2] > 'h' || uci[3] < '1' || uci[3] > '8')
+        return 0;
+
+    int32_t from  = (uci[1] - '1') * 8 + (uci[0] - 'a');
+    int32_t to    = (uci[3] - '1') * 8 + (uci[2] - 'a');
+    size_t  promo = uci.size() > 4 ? Promotions.find(uci[4]) : 0;
+    return from | (to << 6) | (promo == std::string_view::npos ? 0 : int32_t(promo) << 12);
+}
+
+void set_score(const Score& score, cv_search_result* out) {
+    if (score.is<Score::Mate>())
+    {
+        int plies       = score.get<Score::Mate>().plies;
+        out->score_type = CV_SCORE_MATE;
+        out->score      = (plies > 0 ? plies + 1 : plies) / 2;
+    }
+    else if (score.is<Score::Tablebase>())
+    {
+        // As printed by the UCI front end: a tablebase win is just below a mate score
+        auto tb         = score.get<Score::Tablebase>();
+        out->score_type = CV_SCORE_CP;
+        out->score      = tb.win ? 20000 - tb.plies : -20000 - tb.plies;
+    }
+    else
+    {
+        out->score_type = CV_SCORE_CP;
+        out->score      = score.get<Score::InternalUnits>().value;
+    }
+}
+
+struct CvEngine {
+    Engine            engine;
+    cv_search_result* out = nullptr;
+
+    CvEngine() {
+        engine.set_on_update_no_moves([this](const Engine::InfoShort& info) {
+            out->depth = info.depth;
+            set_score(info.score, out);
+        });
+
+        engine.set_on_update_full([this](const Engine::InfoFull& info) {
+            if (info.multiPV != 1)
+                return;
+
+            out->depth    = info.depth;
+            out->seldepth = info.selDepth;
+            out->hashfull = info.hashfull;
+            out->nodes    = int64_t(info.nodes);
+            out->time_ms  = int64_t(info.timeMs);
+            set_score(info.score, out);
+
+            int32_t          length = 0;
+            std::string_view pv     = info.pv;
+            while (!pv.empty() && length < CV_MAX_PV)
+            {
+                size_t end = pv.find(' ');
+                if (end != 0)
+                    out->pv[length++] = encode_move(pv.substr(0, end));
+                pv.remove_prefix(end == std::string_view::npos ? pv.size() : end + 1);
+            }
+            out->pv_length = length;
+        });
+
+        engine.set_on_iter([](const Engine::InfoIter&) {});
+
+        engine.set_on_bestmove([this](std::string_view best, std::string_view ponder) {
+            out->best_move   = encode_move(best);
+            out->ponder_move = encode_move(ponder);
+        });
+    }
+};
+
+void set_option(CvEngine* e, const std::string& name, const std::string& value) {
+    std::istringstream is("name " + name + " value " + value);
+    e->engine.get_options().setoption(is);
+}
+
+std::once_flag initialized;
+
+}  // namespace
+
+extern "C" {
+
+void* cv_engine_create(int32_t threads, int32_t hash_mb) {
+    std::call_once(initialized, [] {
+        Bitboards::init();
+        Position::init();
+    });
+
+    auto* e = new CvEngine();
+
+    // The networks are embedded in the library: verified once here instead of at every search
+    e->engine.verify_networks();
+
+    set_option(e, "Threads", std::to_string(threads > 0 ? threads : 1));
+    set_option(e, "Hash", std::to_string(hash_mb > 0 ? hash_mb : 16));
+    return e;
+}
+
+int32_t cv_engine_set_option(void* engine, const char* name, const char* value) {
+    auto* e = static_cast<CvEngine*>(engine);
+    if (!e->engine.get_options().count(name))
+        return -1;
+
+    set_option(e, name, value != nullptr ? value : "");
+    return 0;
+}
+
+void cv_engine_new_game(void* engine) { static_cast<CvEngine*>(engine)->engine.search_clear(); }
+
+int32_t cv_engine_search(void*             engine,
+                         const char*       fen,
+                         const char*       moves,
+                         int32_t           depth,
+                         int64_t           nodes,
+                         int32_t           movetime_ms,
+                         cv_search_result* out) {
+    auto* e = static_cast<CvEngine*>(engine);
+
+    Search::LimitsType limits;
+    limits.startTime = now();
+    if (depth > 0)
+        limits.depth = depth;
+    else if (nodes > 0)
+        limits.nodes = uint64_t(nodes);
+    else if (movetime_ms > 0)
+        limits.movetime = movetime_ms;
+    else
+        return -1;
+
+    std::vector<std::string> moveList;
+    if (moves != nullptr)
+    {
+        std::istringstream is(moves);
+        std::string        move;
+        while (is >> move)
+            moveList.push_back(move);
+    }
+
+    std::memset(out, 0, sizeof(cv_search_result));
+    e->out = out;
+    e->engine.set_position(fen, moveList);
+    e->engine.go_verified(limits);
+    e->engine.wait_for_search_finished();
+    e->out = nullptr;
+    return 0;
+}
+
+void cv_engine_destroy(void* engine) { delete static_cast<CvEngine*>(engine); }
+
+}  // extern "C"
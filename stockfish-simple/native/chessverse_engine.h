@@ -0,0 +1,69 @@
+/*
+  ChessVerse - Stockfish in-process
+
+  Minimal C entry point over Stockfish::Engine, loaded by the JVM through
+  java.lang.foreign (see NativeEngineLibrary in the "native-engine" Maven profile).
+  Searches are synchronous and fill a plain struct: no UCI text goes through a pipe
+  and nothing has to be parsed on the Java side.
+
+  An engine handle must be used by one thread at a time.
+*/
+
+#ifndef CHESSVERSE_ENGINE_H_INCLUDED
+#define CHESSVERSE_ENGINE_H_INCLUDED
+
+#include <stdint.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+#define CV_MAX_PV 64
+
+#define CV_SCORE_NONE 0
+#define CV_SCORE_CP 1
+#define CV_SCORE_MATE 2
+
+// Moves are encoded as in SearchInfo.encodeMove: bits 0-5 from square, 6-11 to square
+// (a1 = 0, h8 = 63), 12-14 promotion (0 none, 1 n, 2 b, 3 r, 4 q). 0 means no move.
+typedef struct cv_search_result {
+    int32_t depth;
+    int32_t seldepth;
+    int32_t score_type;  // CV_SCORE_*
+    int32_t score;       // centipawns, or moves to mate (negative if mated)
+    int32_t best_move;
+    int32_t ponder_move;
+    int32_t hashfull;
+    int32_t pv_length;
+    int64_t nodes;
+    int64_t time_ms;
+    int32_t pv[CV_MAX_PV];
+} cv_search_result;
+
+// New engine with the given search threads and hash size; NULL if the networks are not available
+void* cv_engine_create(int32_t threads, int32_t hash_mb);
+
+// Same as "setoption name <name> value <value>"; returns 0, or -1 for an unknown option
+int32_t cv_engine_set_option(void* engine, const char* name, const char* value);
+
+// Same as "ucinewgame": clears the hash and the search history
+void cv_engine_new_game(void* engine);
+
+// Searches the position reached from fen with the moves (UCI, space separated, may be NULL).
+// The first limit greater than zero among depth, nodes and movetime_ms applies.
+// Returns 0 when the search completed, -1 if no limit was given.
+int32_t cv_engine_search(void*             engine,
+                         const char*       fen,
+                         const char*       moves,
+                         int32_t           depth,
+                         int64_t           nodes,
+                         int32_t           movetime_ms,
+                         cv_search_result* out);
+
+void cv_engine_destroy(void* engine);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif  // #ifndef CHESSVERSE_ENGINE_H_INCLUDED
@@ -124,6 +124,11 @@ std::uint64_t Engine::perft(const std::string& fen, Depth depth, bool isChess960
 void Engine::go(Search::LimitsType& limits) {
     assert(limits.perft == 0);
     verify_networks();
+    go_verified(limits);
+}
+
+void Engine::go_verified(Search::LimitsType& limits) {
+    assert(limits.perft == 0);
     limits.capSq = capSq;
 
     threads.start_thinking(options, pos, states, limits);
@@ -61,6 +61,9 @@ class Engine {
 
     // non blocking call to start searching
     void go(Search::LimitsType&);
+    // as go(), but without verifying the networks on every call: for embedders
+    // that already called verify_networks() once after loading them
+    void go_verified(Search::LimitsType&);
     // non blocking call to stop searching
     void stop();
 